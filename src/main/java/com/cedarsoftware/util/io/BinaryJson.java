@@ -0,0 +1,943 @@
+package com.cedarsoftware.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.cedarsoftware.util.io.JsonObject.ID;
+import static com.cedarsoftware.util.io.JsonObject.TYPE;
+
+/**
+ * Compact binary form of json-io's JSON, for use between JVMs that both run json-io.  Set JsonWriter.BINARY
+ * (JsonWriter(OutputStream, args)) and JsonReader.BINARY (JsonReader(InputStream, args) / JsonReader(byte[], args))
+ * to use it.  toJson() / fromJson() convert between the binary and text forms (e.g. for debugging).<br>
+ * <br>
+ * The binary form is a token stream with exactly the content of the JSON text, so @type, @id, @ref, @keys and
+ * @items (and custom writer output) mean what they always do, and the same resolvers build the Java objects:
+ * <pre>
+ * header    'J' 'B' 1
+ * {  }  [  ]         BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY
+ * null false true    NULL, FALSE, TRUE
+ * integer            LONG + zig-zag varint
+ * decimal            DOUBLE + 8 byte IEEE 754 (big endian)
+ * string             STRING + varint byte length + UTF-8
+ * field / @type name NAME_DEF + varint byte length + UTF-8 (first use, numbered 0, 1, ...) or NAME_REF + varint
+ * other number text  NUMBER_TEXT + varint byte length + UTF-8 (e.g. integers beyond long range)
+ * </pre>
+ * The writing side (Encoder) is the JsonWriter's Writer.  Strings, longs and doubles that JsonWriter writes are
+ * handed to it as values (writeString(), writeLong(), writeDouble()) and go straight to tokens.  Everything else -
+ * structure, pre-encoded field names, floats, custom writer output - arrives as text and is turned into tokens as
+ * it is written, so custom writers need no changes.  The text that does pass through is lexed once more, which is
+ * the cost of that compatibility; with the value path, writing the binary form takes about as long as writing
+ * the text (and the output is about half the size).  The reading side (Parser) builds the JsonObject graph straight
+ * from the tokens, without lexing text.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public final class BinaryJson
+{
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int LONG = 3;
+    static final int DOUBLE = 4;
+    static final int STRING = 5;
+    static final int NAME_DEF = 6;
+    static final int NAME_REF = 7;
+    static final int BEGIN_OBJECT = 8;
+    static final int END_OBJECT = 9;
+    static final int BEGIN_ARRAY = 10;
+    static final int END_ARRAY = 11;
+    static final int NUMBER_TEXT = 12;
+    private static final byte[] HEADER = {'J', 'B', 1};
+
+    private BinaryJson() {}
+
+    /**
+     * Convert JSON text to the binary form.
+     * @param json String JSON (one or more JSON values, as written by JsonWriter)
+     * @return byte[] binary form, readable by a JsonReader with JsonReader.BINARY set.
+     */
+    public static byte[] fromJson(String json)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Encoder encoder = new Encoder(bytes);
+        try
+        {
+            encoder.write(json);
+            encoder.close();
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to convert JSON to binary form", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Convert the binary form back to (compact) JSON text.  Use JsonWriter.formatJson() to make it readable.
+     * @param binary byte[] written by a JsonWriter with JsonWriter.BINARY set
+     * @return String JSON equivalent of the binary form
+     */
+    public static String toJson(byte[] binary)
+    {
+        return toJson(new ByteArrayInputStream(binary));
+    }
+
+    /**
+     * Convert the binary form back to (compact) JSON text.
+     * @param binary InputStream of the binary form.  It is read to the end, but not closed.
+     * @return String JSON equivalent of the binary form
+     */
+    public static String toJson(InputStream binary)
+    {
+        Parser parser = new Parser(binary, new HashMap<Long, JsonObject>(), new HashMap<String, Object>(), Integer.MAX_VALUE);
+        StringWriter json = new StringWriter();
+        try
+        {
+            int tag;
+            while ((tag = parser.nextTag(true)) != -1)
+            {
+                parser.writeText(tag, json);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to convert binary form to JSON", e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Writer that accepts JSON text and writes its binary form to an OutputStream.  Whitespace (PRETTY_PRINT) is
+     * dropped.  A number (or true/false/null) at the very end of the text is written when flush() or close() is
+     * called outside any object or array.
+     */
+    static final class Encoder extends Writer
+    {
+        private static final int DEFAULT = 0;
+        private static final int IN_STRING = 1;
+        private static final int IN_ESCAPE = 2;
+        private static final int IN_UNICODE = 3;
+        private static final int IN_NUMBER = 4;
+        private static final int IN_LITERAL = 5;
+
+        private final OutputStream out;
+        private final byte[] buf = new byte[8192];
+        private int count = 0;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean[] inObject = new boolean[32];
+        private int depth = 0;
+        private int state = DEFAULT;
+        private int hexValue;
+        private int hexDigits;
+        private boolean isFloat;
+        private boolean expectName;
+        private boolean typeValue;
+
+        Encoder(OutputStream out)
+        {
+            this.out = out;
+            System.arraycopy(HEADER, 0, buf, 0, HEADER.length);
+            count = HEADER.length;
+        }
+
+        public void write(int c) throws IOException
+        {
+            accept((char) c);
+        }
+
+        public void write(char[] chars, int off, int len) throws IOException
+        {
+            final int end = off + len;
+            int i = off;
+            while (i < end)
+            {
+                if (state == IN_STRING)
+                {   // Copy the run of plain characters in one go
+                    int start = i;
+                    char c;
+                    while (i < end && (c = chars[i]) != '"' && c != '\\')
+                    {
+                        i++;
+                    }
+                    text.append(chars, start, i - start);
+                    if (i == end)
+                    {
+                        return;
+                    }
+                }
+                accept(chars[i++]);
+            }
+        }
+
+        public void write(String s, int off, int len) throws IOException
+        {
+            final int end = off + len;
+            int i = off;
+            while (i < end)
+            {
+                if (state == IN_STRING)
+                {
+                    int start = i;
+                    char c;
+                    while (i < end && (c = s.charAt(i)) != '"' && c != '\\')
+                    {
+                        i++;
+                    }
+                    text.append(s, start, i);
+                    if (i == end)
+                    {
+                        return;
+                    }
+                }
+                accept(s.charAt(i++));
+            }
+        }
+
+        /**
+         * Write a String token without going through its JSON text (JsonWriter.writeJsonUtf8String()).
+         * @return false (nothing written) when the Encoder is inside a token, e.g. a custom writer that
+         * writes a quote and then the String.  The caller then writes the text as usual.
+         */
+        boolean writeString(String s) throws IOException
+        {
+            if (state != DEFAULT)
+            {
+                return false;
+            }
+            string(s);
+            return true;
+        }
+
+        /**
+         * Write a LONG token without going through its text (NumberEncoder).
+         * @return false (nothing written) when the Encoder is inside a token, e.g. WRITE_LONGS_AS_STRINGS.
+         */
+        boolean writeLong(long value) throws IOException
+        {
+            if (state != DEFAULT)
+            {
+                return false;
+            }
+            writeTag(LONG);
+            writeVarLong((value << 1) ^ (value >> 63));
+            return true;
+        }
+
+        /**
+         * Write a DOUBLE token without going through its text (NumberEncoder).  Double.toString() text parses
+         * back to the same value, so the result is the same as for the text.  Not used for float, whose text
+         * reads back as a different double.
+         * @return false (nothing written) when the Encoder is inside a token.
+         */
+        boolean writeDouble(double value) throws IOException
+        {
+            if (state != DEFAULT)
+            {
+                return false;
+            }
+            writeDoubleBits(Double.isNaN(value) ? Double.NaN : value);
+            return true;
+        }
+
+        public void flush() throws IOException
+        {
+            if (depth == 0)
+            {
+                endToken();
+            }
+            flushBuffer();
+            out.flush();
+        }
+
+        public void close() throws IOException
+        {
+            endToken();
+            flushBuffer();
+            out.close();
+        }
+
+        private void accept(char c) throws IOException
+        {
+            switch (state)
+            {
+                case IN_STRING:
+                    if (c == '"')
+                    {
+                        state = DEFAULT;
+                        endString();
+                    }
+                    else if (c == '\\')
+                    {
+                        state = IN_ESCAPE;
+                    }
+                    else
+                    {
+                        text.append(c);
+                    }
+                    return;
+
+                case IN_ESCAPE:
+                    state = IN_STRING;
+                    switch (c)
+                    {
+                        case 'b': text.append('\b'); break;
+                        case 'f': text.append('\f'); break;
+                        case 'n': text.append('\n'); break;
+                        case 'r': text.append('\r'); break;
+                        case 't': text.append('\t'); break;
+                        case '"':
+                        case '\\':
+                        case '/':
+                            text.append(c);
+                            break;
+                        case 'u':
+                            state = IN_UNICODE;
+                            hexValue = 0;
+                            hexDigits = 0;
+                            break;
+                        default:
+                            throw new JsonIoException("Invalid character escape sequence specified: " + c);
+                    }
+                    return;
+
+                case IN_UNICODE:
+                    int digit = Character.digit(c, 16);
+                    if (digit < 0)
+                    {
+                        throw new JsonIoException("Expected hexadecimal digits");
+                    }
+                    hexValue = (hexValue << 4) | digit;
+                    if (++hexDigits == 4)
+                    {
+                        text.append((char) hexValue);
+                        state = IN_STRING;
+                    }
+                    return;
+
+                case IN_NUMBER:
+                    if ((c >= '0' && c <= '9') || c == '-' || c == '+')
+                    {
+                        text.append(c);
+                        return;
+                    }
+                    if (c == '.' || c == 'e' || c == 'E')
+                    {
+                        text.append(c);
+                        isFloat = true;
+                        return;
+                    }
+                    if (Character.isLetter(c) && text.length() == 1 && text.charAt(0) == '-')
+                    {   // -Infinity
+                        text.append(c);
+                        state = IN_LITERAL;
+                        return;
+                    }
+                    endToken();
+                    break;
+
+                case IN_LITERAL:
+                    if (Character.isLetter(c))
+                    {
+                        text.append(c);
+                        return;
+                    }
+                    endToken();
+                    break;
+            }
+            structure(c);
+        }
+
+        private void structure(char c) throws IOException
+        {
+            switch (c)
+            {
+                case ' ':
+                case '\n':
+                case '\r':
+                case '\t':
+                case ':':
+                    return;
+                case ',':
+                    expectName = depth > 0 && inObject[depth - 1];
+                    return;
+                case '{':
+                    push(true);
+                    writeTag(BEGIN_OBJECT);
+                    return;
+                case '[':
+                    push(false);
+                    writeTag(BEGIN_ARRAY);
+                    return;
+                case '}':
+                case ']':
+                    if (depth == 0 || inObject[depth - 1] != (c == '}'))
+                    {
+                        throw new JsonIoException("Unbalanced '" + c + "' in JSON written to binary form");
+                    }
+                    depth--;
+                    expectName = false;
+                    writeTag(c == '}' ? END_OBJECT : END_ARRAY);
+                    return;
+                case '"':
+                    state = IN_STRING;
+                    text.setLength(0);
+                    return;
+            }
+            text.setLength(0);
+            text.append(c);
+            if ((c >= '0' && c <= '9') || c == '-')
+            {
+                state = IN_NUMBER;
+                isFloat = false;
+            }
+            else if (Character.isLetter(c))
+            {
+                state = IN_LITERAL;
+            }
+            else
+            {
+                throw new JsonIoException("Unexpected character in JSON written to binary form: " + c);
+            }
+        }
+
+        private void push(boolean object)
+        {
+            if (depth == inObject.length)
+            {
+                boolean[] bigger = new boolean[depth * 2];
+                System.arraycopy(inObject, 0, bigger, 0, depth);
+                inObject = bigger;
+            }
+            inObject[depth++] = object;
+            expectName = object;
+            typeValue = false;
+        }
+
+        private void endString() throws IOException
+        {
+            string(text.toString());
+        }
+
+        private void string(String s) throws IOException
+        {
+            if (expectName)
+            {
+                writeName(s);
+                expectName = false;
+                typeValue = s.equals(TYPE) || s.equals("@t");
+            }
+            else if (typeValue)
+            {
+                writeName(s);
+                typeValue = false;
+            }
+            else
+            {
+                writeText(STRING, s);
+            }
+        }
+
+        /**
+         * Write out a pending number or literal (true, false, null, NaN, Infinity).
+         */
+        private void endToken() throws IOException
+        {
+            if (state == IN_NUMBER)
+            {
+                state = DEFAULT;
+                String number = text.toString();
+                try
+                {
+                    if (isFloat)
+                    {
+                        writeDoubleBits(Double.parseDouble(number));
+                    }
+                    else
+                    {
+                        long value = Long.parseLong(number);
+                        writeTag(LONG);
+                        writeVarLong((value << 1) ^ (value >> 63));
+                    }
+                }
+                catch (NumberFormatException e)
+                {   // Left for the reading side to report (or handle), as it would have in text
+                    writeText(NUMBER_TEXT, number);
+                }
+            }
+            else if (state == IN_LITERAL)
+            {
+                state = DEFAULT;
+                String literal = text.toString().toLowerCase();
+                if ("true".equals(literal))
+                {
+                    writeTag(TRUE);
+                }
+                else if ("false".equals(literal))
+                {
+                    writeTag(FALSE);
+                }
+                else if ("null".equals(literal))
+                {
+                    writeTag(NULL);
+                }
+                else if ("nan".equals(literal))
+                {
+                    writeDoubleBits(Double.NaN);
+                }
+                else if ("infinity".equals(literal))
+                {
+                    writeDoubleBits(Double.POSITIVE_INFINITY);
+                }
+                else if ("-infinity".equals(literal))
+                {
+                    writeDoubleBits(Double.NEGATIVE_INFINITY);
+                }
+                else
+                {
+                    throw new JsonIoException("Unknown JSON value in JSON written to binary form: " + text);
+                }
+            }
+        }
+
+        private void writeName(String name) throws IOException
+        {
+            Integer index = names.get(name);
+            if (index == null)
+            {
+                names.put(name, names.size());
+                writeText(NAME_DEF, name);
+            }
+            else
+            {
+                writeTag(NAME_REF);
+                writeVarLong(index);
+            }
+        }
+
+        private void writeDoubleBits(double value) throws IOException
+        {
+            writeTag(DOUBLE);
+            long bits = Double.doubleToRawLongBits(value);
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                buf[count++] = (byte) (bits >>> shift);
+            }
+        }
+
+        private void writeText(int tag, String s) throws IOException
+        {
+            writeTag(tag);
+            final int len = s.length();
+            if (len <= buf.length - 10 && isAscii(s, len))
+            {   // UTF-8 is the chars themselves
+                writeVarLong(len);
+                ensure(len);
+                for (int i = 0; i < len; i++)
+                {
+                    buf[count++] = (byte) s.charAt(i);
+                }
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            if (utf8.length > buf.length - count)
+            {
+                flushBuffer();
+                if (utf8.length > buf.length)
+                {
+                    out.write(utf8);
+                    return;
+                }
+            }
+            System.arraycopy(utf8, 0, buf, count, utf8.length);
+            count += utf8.length;
+        }
+
+        private static boolean isAscii(String s, int len)
+        {
+            for (int i = 0; i < len; i++)
+            {
+                if (s.charAt(i) >= 0x80)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void writeTag(int tag) throws IOException
+        {
+            typeValue = typeValue && (tag == NAME_DEF || tag == NAME_REF);
+            ensure(1);
+            buf[count++] = (byte) tag;
+        }
+
+        private void writeVarLong(long value) throws IOException
+        {
+            ensure(10);
+            while ((value & ~0x7fL) != 0)
+            {
+                buf[count++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        private void ensure(int room) throws IOException
+        {
+            if (buf.length - count < room)
+            {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException
+        {
+            if (count > 0)
+            {
+                out.write(buf, 0, count);
+                count = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads the binary form into the same values JsonParser produces from text: JsonObject (with @type, @id, @ref,
+     * @keys, @items), Object[], String, Long, Double, Boolean, null - so the resolvers work on it unchanged.
+     */
+    static final class Parser
+    {
+        private final InputStream in;
+        private final Map<Long, JsonObject> objsRead;
+        private final Map<String, String> typeNameMap;
+        private final boolean useMaps;
+        private final int maxParseDepth;
+        private final List<String> names = new ArrayList<>();
+        private final SymbolTable symbols;    // null unless JsonReader.SYMBOL_TABLE is set
+        private final boolean columnar;       // JsonReader.COLUMNAR
+        private byte[] bytes = new byte[256];
+        private boolean headerRead = false;
+        private int curParseDepth = 0;
+
+        Parser(InputStream in, Map<Long, JsonObject> objsRead, Map<String, Object> args, int maxDepth)
+        {
+            this.in = in;
+            this.objsRead = objsRead;
+            typeNameMap = (Map<String, String>) args.get(JsonReader.TYPE_NAME_MAP_REVERSE);
+            useMaps = Boolean.TRUE.equals(args.get(JsonReader.USE_MAPS));
+            maxParseDepth = maxDepth;
+            symbols = Boolean.TRUE.equals(args.get(JsonReader.SYMBOL_TABLE)) ? new SymbolTable() : null;
+            columnar = Boolean.TRUE.equals(args.get(JsonReader.COLUMNAR));
+        }
+
+        /**
+         * Read the next JSON value (JsonParser.EMPTY_OBJECT for {}).
+         */
+        Object readValue() throws IOException
+        {
+            int tag = nextTag(true);
+            if (tag == -1)
+            {
+                throw new JsonIoException("EOF reached prematurely");
+            }
+            if (symbols != null)
+            {
+                symbols.clear();
+            }
+            return readValue(tag);
+        }
+
+        int nextTag(boolean eofAllowed) throws IOException
+        {
+            if (!headerRead)
+            {
+                for (int i = 0; i < HEADER.length; i++)
+                {
+                    int c = in.read();
+                    if (c == -1 && i == 0 && eofAllowed)
+                    {
+                        return -1;
+                    }
+                    if (c != HEADER[i])
+                    {
+                        throw new JsonIoException("Input is not json-io binary form (missing 'JB' header, or unsupported version)");
+                    }
+                }
+                headerRead = true;
+            }
+            int tag = in.read();
+            if (tag == -1 && !eofAllowed)
+            {
+                throw new JsonIoException("EOF reached prematurely");
+            }
+            return tag;
+        }
+
+        private Object readValue(int tag) throws IOException
+        {
+            if (curParseDepth > maxParseDepth)
+            {
+                throw new JsonIoException("Maximum parsing depth exceeded");
+            }
+            switch (tag)
+            {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case LONG:
+                    long zigzag = readVarLong();
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                case DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++)
+                    {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                case STRING:
+                    String s = JsonParser.cachedString(readUtf8());
+                    return symbols == null ? s : symbols.expand(s);
+                case NAME_DEF:
+                case NAME_REF:
+                    return symbols == null ? readName(tag) : symbols.expand(readName(tag));
+                case NUMBER_TEXT:
+                    return readNumberText();
+                case BEGIN_OBJECT:
+                    return readObject();
+                case BEGIN_ARRAY:
+                    return readArray();
+            }
+            throw new JsonIoException("Unknown binary JSON token: " + tag);
+        }
+
+        private Object readObject() throws IOException
+        {
+            int tag = nextTag(false);
+            if (tag == END_OBJECT)
+            {
+                return JsonParser.EMPTY_OBJECT;
+            }
+            ++curParseDepth;
+            JsonObject<String, Object> object = new JsonObject<>();
+            while (tag != END_OBJECT)
+            {
+                if (tag != NAME_DEF && tag != NAME_REF)
+                {
+                    throw new JsonIoException("Expected field name in binary JSON object, found token: " + tag);
+                }
+                String name = readName(tag);
+                String field = JsonParser.expandMetaKey(symbols == null ? name : symbols.expand(name), columnar);
+                Object value = readValue(nextTag(false));
+                if (TYPE.equals(field) && typeNameMap != null)
+                {
+                    final String substitute = typeNameMap.get(value);
+                    if (substitute != null)
+                    {
+                        value = substitute;
+                    }
+                }
+                object.put(field, value);
+                if (ID.equals(field))
+                {
+                    objsRead.put((Long) value, object);
+                }
+                tag = nextTag(false);
+            }
+            --curParseDepth;
+
+            if (useMaps && object.isLogicalPrimitive())
+            {
+                return object.getPrimitiveValue();
+            }
+            return object;
+        }
+
+        private Object[] readArray() throws IOException
+        {
+            List<Object> array = new ArrayList<>();
+            ++curParseDepth;
+            int tag;
+            while ((tag = nextTag(false)) != END_ARRAY)
+            {
+                array.add(readValue(tag));
+            }
+            --curParseDepth;
+            return columnar ? JsonObject.expandColumns(array.toArray()) : array.toArray();
+        }
+
+        private String readName(int tag) throws IOException
+        {
+            if (tag == NAME_DEF)
+            {
+                String name = JsonParser.cachedString(readUtf8());
+                names.add(name);
+                return name;
+            }
+            long index = readVarLong();
+            if (index < 0 || index >= names.size())
+            {
+                throw new JsonIoException("Binary JSON name reference out of range: " + index);
+            }
+            return names.get((int) index);
+        }
+
+        private Number readNumberText() throws IOException
+        {
+            String number = readUtf8();
+            try
+            {
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0)
+                {
+                    return Double.parseDouble(number);
+                }
+                return Long.parseLong(number);
+            }
+            catch (Exception e)
+            {
+                throw new JsonIoException("Invalid number: " + number, e);
+            }
+        }
+
+        /**
+         * Write the value starting with the given token as JSON text.
+         */
+        void writeText(int tag, Writer out) throws IOException
+        {
+            switch (tag)
+            {
+                case BEGIN_OBJECT:
+                    out.write('{');
+                    boolean first = true;
+                    while ((tag = nextTag(false)) != END_OBJECT)
+                    {
+                        if (!first)
+                        {
+                            out.write(',');
+                        }
+                        first = false;
+                        JsonWriter.writeJsonUtf8String(readName(tag), out);
+                        out.write(':');
+                        writeText(nextTag(false), out);
+                    }
+                    out.write('}');
+                    return;
+                case BEGIN_ARRAY:
+                    out.write('[');
+                    first = true;
+                    while ((tag = nextTag(false)) != END_ARRAY)
+                    {
+                        if (!first)
+                        {
+                            out.write(',');
+                        }
+                        first = false;
+                        writeText(tag, out);
+                    }
+                    out.write(']');
+                    return;
+                case NUMBER_TEXT:
+                    out.write(readUtf8());
+                    return;
+            }
+            Object value = readValue(tag);
+            if (value instanceof String)
+            {
+                JsonWriter.writeJsonUtf8String((String) value, out);
+            }
+            else if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))
+            {   // Only present when written with JsonWriter.allowNanAndInfinity
+                out.write(((Double) value).isNaN() ? "NaN" : ((Double) value) > 0 ? "Infinity" : "-Infinity");
+            }
+            else
+            {
+                out.write(String.valueOf(value));
+            }
+        }
+
+        private String readUtf8() throws IOException
+        {
+            long len = readVarLong();
+            if (len < 0 || len > Integer.MAX_VALUE)
+            {
+                throw new JsonIoException("Invalid binary JSON string length: " + len);
+            }
+            int length = (int) len;
+            if (bytes.length < length)
+            {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            int read = 0;
+            while (read < length)
+            {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0)
+                {
+                    throw new EOFException("EOF reached inside binary JSON string");
+                }
+                read += n;
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private long readVarLong() throws IOException
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+            throw new JsonIoException("Malformed varint in binary JSON");
+        }
+
+        private int readByte() throws IOException
+        {
+            int b = in.read();
+            if (b == -1)
+            {
+                throw new EOFException("EOF reached prematurely");
+            }
+            return b;
+        }
+
+        void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
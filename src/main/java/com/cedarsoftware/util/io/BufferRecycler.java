@@ -0,0 +1,244 @@
+package com.cedarsoftware.util.io;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the scratch memory a JsonReader or JsonWriter needs (I/O buffers, the parser's StringBuilders,
+ * the snippet ring used in error messages, the writer's identity maps), and takes it back when the reader or
+ * writer is closed, so that the next one can use it instead of allocating its own.  Pass an instance with
+ * JsonReader.BUFFER_RECYCLER / JsonWriter.BUFFER_RECYCLER:<br>
+ * <ul>
+ * <li>BufferRecycler.shared(n) - lock-free pool shared by all threads, keeping at most n sets of buffers.
+ * This is the default (n = 32), and works for platform and virtual threads alike.</li>
+ * <li>BufferRecycler.threadLocal() - one set of buffers per thread.  No contention at all, but only
+ * worthwhile for a fixed set of long-lived (platform) threads.</li>
+ * <li>BufferRecycler.NONE - no pooling, every reader / writer allocates its own buffers.</li>
+ * </ul>
+ * A set of buffers that grew unusually large (a huge String, a huge object graph) is dropped instead of kept,
+ * so retention stays bounded.  A reader or writer that is never closed simply does not return its buffers.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public abstract class BufferRecycler
+{
+    static final int BUFFER_SIZE = 8192;
+    private static final int MAX_RETAINED_CHARS = 65536;
+    private static final int MAX_RETAINED_OBJECTS = 4096;
+
+    /** No pooling - every JsonReader / JsonWriter allocates its own buffers. */
+    public static final BufferRecycler NONE = new BufferRecycler()
+    {
+        Buffers acquire()
+        {
+            return new Buffers();
+        }
+
+        void release(Buffers buffers) { }
+    };
+
+    static final BufferRecycler DEFAULT = shared(32);
+
+    /**
+     * @param maxRetained maximum number of sets of buffers kept for reuse.
+     * @return BufferRecycler backed by a lock-free pool shared by all threads.
+     */
+    public static BufferRecycler shared(final int maxRetained)
+    {
+        return new BufferRecycler()
+        {
+            private final Queue<Buffers> pool = new ConcurrentLinkedQueue<>();
+            private final AtomicInteger pooled = new AtomicInteger();
+
+            Buffers acquire()
+            {
+                Buffers buffers = pool.poll();
+                if (buffers == null)
+                {
+                    return new Buffers();
+                }
+                pooled.decrementAndGet();
+                return buffers;
+            }
+
+            void release(Buffers buffers)
+            {
+                if (!buffers.reset())
+                {
+                    return;
+                }
+                if (pooled.incrementAndGet() <= maxRetained)
+                {
+                    pool.offer(buffers);
+                }
+                else
+                {
+                    pooled.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return BufferRecycler that keeps one set of buffers per thread.  A thread that uses a second reader or
+     * writer before closing the first (for example from within a custom reader) allocates for the second.
+     */
+    public static BufferRecycler threadLocal()
+    {
+        return new BufferRecycler()
+        {
+            private final ThreadLocal<Buffers> local = new ThreadLocal<>();
+
+            Buffers acquire()
+            {
+                Buffers buffers = local.get();
+                if (buffers == null)
+                {
+                    return new Buffers();
+                }
+                local.set(null);
+                return buffers;
+            }
+
+            void release(Buffers buffers)
+            {
+                if (buffers.reset())
+                {
+                    local.set(buffers);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the BufferRecycler set in args (under JsonReader.BUFFER_RECYCLER / JsonWriter.BUFFER_RECYCLER),
+     * otherwise the default shared pool.
+     */
+    static BufferRecycler from(Object setting)
+    {
+        if (setting == null)
+        {
+            return DEFAULT;
+        }
+        if (setting instanceof BufferRecycler)
+        {
+            return (BufferRecycler) setting;
+        }
+        throw new JsonIoException("BUFFER_RECYCLER must be a BufferRecycler, found: " + setting.getClass().getName());
+    }
+
+    abstract Buffers acquire();
+
+    abstract void release(Buffers buffers);
+
+    /**
+     * One set of scratch memory.  Members are created on first use, so a set used only for reading never
+     * holds the writing members and the other way around.
+     */
+    static final class Buffers
+    {
+        private char[] chars;
+        private byte[] bytes;
+        private int[] snippet;
+        private StringBuilder strBuf;
+        private StringBuilder hexBuf;
+        private StringBuilder numBuf;
+        private Map<Object, Long> visited;
+        private Map<Object, Long> referenced;
+
+        char[] chars()
+        {
+            return chars == null ? chars = new char[BUFFER_SIZE] : chars;
+        }
+
+        byte[] bytes()
+        {
+            return bytes == null ? bytes = new byte[BUFFER_SIZE] : bytes;
+        }
+
+        /**
+         * @return the (all zero) ring of recently read characters, for error messages.
+         */
+        int[] snippet()
+        {
+            return snippet == null ? snippet = new int[256] : snippet;
+        }
+
+        StringBuilder strBuf()
+        {
+            return strBuf == null ? strBuf = new StringBuilder(256) : strBuf;
+        }
+
+        StringBuilder hexBuf()
+        {
+            return hexBuf == null ? hexBuf = new StringBuilder() : hexBuf;
+        }
+
+        StringBuilder numBuf()
+        {
+            return numBuf == null ? numBuf = new StringBuilder() : numBuf;
+        }
+
+        Map<Object, Long> visited()
+        {
+            return visited == null ? visited = new IdentityHashMap<>() : visited;
+        }
+
+        Map<Object, Long> referenced()
+        {
+            return referenced == null ? referenced = new IdentityHashMap<>() : referenced;
+        }
+
+        /**
+         * Empty all members for the next user.
+         * @return false if a member grew too large to be worth keeping.
+         */
+        private boolean reset()
+        {
+            if (snippet != null)
+            {
+                Arrays.fill(snippet, 0);
+            }
+            return reset(strBuf) & reset(hexBuf) & reset(numBuf) & reset(visited) & reset(referenced);
+        }
+
+        private static boolean reset(StringBuilder s)
+        {
+            if (s == null)
+            {
+                return true;
+            }
+            s.setLength(0);
+            return s.capacity() <= MAX_RETAINED_CHARS;
+        }
+
+        private static boolean reset(Map<Object, Long> map)
+        {
+            if (map == null)
+            {
+                return true;
+            }
+            boolean small = map.size() <= MAX_RETAINED_OBJECTS;
+            map.clear();
+            return small;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.cedarsoftware.util.io;
+
+import java.lang.reflect.Field;
+
+/**
+ * Reflection-free field access for a single class.  Subclasses are normally generated at compile
+ * time by the {@code com.cedarsoftware.util.io.processor.CodecProcessor} annotation processor for
+ * classes marked with {@link JsonIoCodec}, and are discovered at runtime through
+ * {@code java.util.ServiceLoader} (META-INF/services/com.cedarsoftware.util.io.ClassCodec).
+ * A codec can also be installed by hand with {@link #register(ClassCodec)}.<br>
+ * <br>
+ * A registered codec becomes the ClassPlan for its class: JsonWriter and the ObjectResolver write,
+ * trace and set fields through the generated accessors instead of java.lang.reflect.Field, and the
+ * JSON produced is identical to the reflective output (same field order, same @type, @id and @ref
+ * handling).  Members the generated code cannot reach (private or final fields, package-private
+ * fields of a superclass in another package) are delegated to the default implementations below,
+ * which fall back to reflection for that one field.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public abstract class ClassCodec implements JsonReader.ClassFactory
+{
+    private final Class type;
+    private final String[] names;
+    private final Class[] types;
+    private final boolean[] transients;
+    private final boolean instantiable;
+    private final Field[] fields;
+
+    /**
+     * @param type Class handled by this codec.
+     * @param names String[] field names, in MetaUtils.getDeepDeclaredFields() order and naming.
+     * @param types Class[] declared (erased) type of each field.
+     * @param transients boolean[] true for each transient field (read, but never written).
+     * @param instantiable boolean true if newInstance(Class) is implemented by the codec.
+     */
+    protected ClassCodec(Class type, String[] names, Class[] types, boolean[] transients, boolean instantiable)
+    {
+        if (names.length != types.length || names.length != transients.length)
+        {
+            throw new JsonIoException("ClassCodec for " + type.getName() + " has mismatched field metadata");
+        }
+        this.type = type;
+        this.names = names;
+        this.types = types;
+        this.transients = transients;
+        this.instantiable = instantiable;
+        this.fields = new Field[names.length];
+    }
+
+    /**
+     * Install a codec for the lifetime of the JVM.
+     * @param codec ClassCodec to use for codec.getType().
+     */
+    public static void register(ClassCodec codec)
+    {
+        ClassPlan.addCodec(codec);
+        if (codec.instantiable)
+        {
+            JsonReader.assignInstantiator(codec.type, codec);
+        }
+    }
+
+    /**
+     * Used by generated codecs for field types that cannot be named from the codec's package
+     * (e.g. a private nested class).
+     * @param anchor Class whose ClassLoader is used.
+     * @param name String Class.getName() of the field type.
+     * @return Class for the name.
+     */
+    protected static Class loadType(Class anchor, String name)
+    {
+        return MetaUtils.classForName(name, anchor.getClassLoader(), true);
+    }
+
+    /**
+     * @return Class handled by this codec.
+     */
+    public Class getType()
+    {
+        return type;
+    }
+
+    int getFieldCount()
+    {
+        return names.length;
+    }
+
+    String getName(int index)
+    {
+        return names[index];
+    }
+
+    Class getFieldType(int index)
+    {
+        return types[index];
+    }
+
+    boolean isTransient(int index)
+    {
+        return transients[index];
+    }
+
+    /**
+     * Generated codecs override this when the class has an accessible no-arg constructor.
+     */
+    public Object newInstance(Class c)
+    {
+        return MetaUtils.newInstance(c);
+    }
+
+    /**
+     * @return Field for the given index, looked up (once) only for members the generated code cannot reach.
+     */
+    Field getField(int index)
+    {
+        Field field = fields[index];
+        if (field == null)
+        {
+            field = MetaUtils.getField(type, names[index]);
+            if (field == null)
+            {
+                throw new JsonIoException("Field '" + names[index] + "' not found on class: " + type.getName() + ".  Regenerate its codec.");
+            }
+            fields[index] = field;
+        }
+        return field;
+    }
+
+    protected Object get(Object obj, int index)
+    {
+        try
+        {
+            return getField(index).get(obj);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new JsonIoException("Unable to read field '" + names[index] + "' on class: " + type.getName(), e);
+        }
+    }
+
+    protected void set(Object obj, int index, Object value)
+    {
+        try
+        {
+            getField(index).set(obj, value);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new JsonIoException("Unable to set field '" + names[index] + "' on class: " + type.getName(), e);
+        }
+    }
+
+    protected boolean getBoolean(Object obj, int index)
+    {
+        return (Boolean) get(obj, index);
+    }
+
+    protected byte getByte(Object obj, int index)
+    {
+        return (Byte) get(obj, index);
+    }
+
+    protected short getShort(Object obj, int index)
+    {
+        return (Short) get(obj, index);
+    }
+
+    protected int getInt(Object obj, int index)
+    {
+        return (Integer) get(obj, index);
+    }
+
+    protected long getLong(Object obj, int index)
+    {
+        return (Long) get(obj, index);
+    }
+
+    protected float getFloat(Object obj, int index)
+    {
+        return (Float) get(obj, index);
+    }
+
+    protected double getDouble(Object obj, int index)
+    {
+        return (Double) get(obj, index);
+    }
+
+    protected char getChar(Object obj, int index)
+    {
+        return (Character) get(obj, index);
+    }
+
+    protected void setBoolean(Object obj, int index, boolean value)
+    {
+        set(obj, index, value);
+    }
+
+    protected void setByte(Object obj, int index, byte value)
+    {
+        set(obj, index, value);
+    }
+
+    protected void setShort(Object obj, int index, short value)
+    {
+        set(obj, index, value);
+    }
+
+    protected void setInt(Object obj, int index, int value)
+    {
+        set(obj, index, value);
+    }
+
+    protected void setLong(Object obj, int index, long value)
+    {
+        set(obj, index, value);
+    }
+
+    protected void setFloat(Object obj, int index, float value)
+    {
+        set(obj, index, value);
+    }
+
+    protected void setDouble(Object obj, int index, double value)
+    {
+        set(obj, index, value);
+    }
+}
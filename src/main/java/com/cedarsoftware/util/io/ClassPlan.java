@@ -0,0 +1,452 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Specialized field access plan for a single class, used by the tiered SPECIALIZE_AFTER mode
+ * of JsonWriter and JsonReader.  Every class starts out on the generic reflective path.  After
+ * it has been written or read the configured number of times, a plan is built once and published
+ * (atomically) for all JsonWriter / ObjectResolver instances to share.<br>
+ * <br>
+ * A plan holds the fields of the class in output order with their JSON names pre-escaped, plus
+ * a 'kind' for each primitive field, so that primitive values are moved with the typed Field
+ * accessors (getInt(), setDouble(), ...) instead of being boxed and run through the generic
+ * conversion cascade.  Classes that cannot be planned (arrays, enums, primitive wrappers and other
+ * logical primitives) are remembered as such and stay on the reflective path.<br>
+ * <br>
+ * Classes with a {@link ClassCodec} (generated for {@link JsonIoCodec} classes, or registered by hand)
+ * get their plan up front, regardless of SPECIALIZE_AFTER, with field access going through the codec.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class ClassPlan
+{
+    static final int OBJECT = 0;
+    static final int BOOLEAN = 1;
+    static final int BYTE = 2;
+    static final int SHORT = 3;
+    static final int INT = 4;
+    static final int LONG = 5;
+    static final int FLOAT = 6;
+    static final int DOUBLE = 7;
+    static final int CHAR = 8;
+
+    private static final ClassPlan NONE = new ClassPlan(new FieldPlan[0], Collections.<String, FieldPlan>emptyMap());
+    private static final ConcurrentMap<Class, ClassPlan> plans = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class, AtomicInteger> uses = new ConcurrentHashMap<>();
+    private static volatile boolean codecsLoaded = false;
+    /** ClassLoaders whose codecs have been registered (guarded by ClassPlan.class) */
+    private static final Map<ClassLoader, Boolean> codecLoaders = new WeakHashMap<>();
+    /** ClassLoader most recently checked, so that the common single-loader case skips the lock */
+    private static volatile WeakReference<ClassLoader> lastCodecLoader = new WeakReference<>(null);
+
+    /** Fields written by JsonWriter, in output order (transient fields excluded) */
+    final FieldPlan[] fields;
+    /** All fields by (JSON) name, used when reading */
+    private final Map<String, FieldPlan> byName;
+
+    private ClassPlan(FieldPlan[] fields, Map<String, FieldPlan> byName)
+    {
+        this.fields = fields;
+        this.byName = byName;
+    }
+
+    /**
+     * Fetch the plan for the passed in class, counting this call as one use of the class.
+     * @param c Class being written or read.
+     * @param threshold int number of uses that stay on the reflective path before the plan is built.
+     * @return ClassPlan for the class, or null if the class has not (yet) been specialized.
+     */
+    static ClassPlan getPlan(Class c, int threshold)
+    {
+        if (!codecsLoaded)
+        {
+            loadCodecs();
+        }
+        final ClassLoader loader = c.getClassLoader();
+        if (loader != null && loader != lastCodecLoader.get())
+        {   // A class from a ClassLoader created after the first use (webapp, plugin) may bring its own codecs
+            loadCodecs(loader);
+        }
+        ClassPlan plan = plans.get(c);
+        if (plan == null)
+        {
+            if (threshold < 0)
+            {   // Tiered specialization not enabled - only codec plans apply.
+                return null;
+            }
+            AtomicInteger count = uses.get(c);
+            if (count == null)
+            {
+                AtomicInteger first = new AtomicInteger();
+                count = uses.putIfAbsent(c, first);
+                if (count == null)
+                {
+                    count = first;
+                }
+            }
+            if (count.incrementAndGet() <= threshold)
+            {
+                return null;
+            }
+
+            plan = buildPlan(c);
+            ClassPlan existing = plans.putIfAbsent(c, plan);
+            if (existing != null)
+            {   // Another thread published first - everyone uses the same instance.
+                plan = existing;
+            }
+            uses.remove(c);
+        }
+        return plan == NONE ? null : plan;
+    }
+
+    static void addCodec(ClassCodec codec)
+    {
+        final int count = codec.getFieldCount();
+        final List<FieldPlan> written = new ArrayList<>(count);
+        final Map<String, FieldPlan> byName = new HashMap<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            FieldPlan fieldPlan = new FieldPlan(codec.getName(i), codec.getFieldType(i), null, codec, i);
+            byName.put(fieldPlan.name, fieldPlan);
+            if (!codec.isTransient(i))
+            {
+                written.add(fieldPlan);
+            }
+        }
+        plans.put(codec.getType(), new ClassPlan(written.toArray(new FieldPlan[0]), byName));
+        uses.remove(codec.getType());
+    }
+
+    /**
+     * Register the codecs listed in META-INF/services/com.cedarsoftware.util.io.ClassCodec, as seen by
+     * json-io's own ClassLoader and by the context ClassLoader of the first thread using json-io.  The
+     * ClassLoader of each class planned afterwards is searched too (once per ClassLoader).
+     */
+    private static synchronized void loadCodecs()
+    {
+        if (codecsLoaded)
+        {
+            return;
+        }
+        ClassLoader ownLoader = ClassPlan.class.getClassLoader();
+        if (ownLoader != null)
+        {
+            loadCodecs(ownLoader);
+        }
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        if (contextLoader != null)
+        {
+            loadCodecs(contextLoader);
+        }
+        codecsLoaded = true;
+    }
+
+    private static synchronized void loadCodecs(ClassLoader classLoader)
+    {
+        if (!codecLoaders.containsKey(classLoader))
+        {
+            try
+            {
+                for (ClassCodec codec : ServiceLoader.load(ClassCodec.class, classLoader))
+                {
+                    ClassCodec.register(codec);
+                }
+            }
+            catch (ServiceConfigurationError e)
+            {
+                throw new JsonIoException("Unable to load json-io ClassCodec (check META-INF/services/" + ClassCodec.class.getName() + ")", e);
+            }
+            codecLoaders.put(classLoader, Boolean.TRUE);
+        }
+        lastCodecLoader = new WeakReference<>(classLoader);
+    }
+
+    /**
+     * @param name String field name as it appears in the JSON.
+     * @return FieldPlan for the field, or null if the class has no such field.
+     */
+    FieldPlan getField(String name)
+    {
+        return byName.get(name);
+    }
+
+    private static ClassPlan buildPlan(Class c)
+    {
+        if (c.isArray() || Enum.class.isAssignableFrom(c) || ObjectResolver.isBasicWrapperType(c) || MetaUtils.isLogicalPrimitive(c))
+        {   // These have special handling within writeField() / assignField() - leave them on the generic path.
+            return NONE;
+        }
+
+        final Map<String, Field> classFields = MetaUtils.getDeepDeclaredFields(c);
+        final List<FieldPlan> written = new ArrayList<>(classFields.size());
+        final Map<String, FieldPlan> byName = new HashMap<>();
+
+        for (Map.Entry<String, Field> entry : classFields.entrySet())
+        {
+            final Field field = entry.getValue();
+            FieldPlan fieldPlan = new FieldPlan(entry.getKey(), field.getType(), field, null, -1);
+            byName.put(fieldPlan.name, fieldPlan);
+            if ((field.getModifiers() & Modifier.TRANSIENT) == 0)
+            {
+                written.add(fieldPlan);
+            }
+        }
+        return new ClassPlan(written.toArray(new FieldPlan[0]), byName);
+    }
+
+    private static int kindOf(Class type)
+    {
+        if (!type.isPrimitive())
+        {
+            return OBJECT;
+        }
+        if (type == int.class)
+        {
+            return INT;
+        }
+        if (type == long.class)
+        {
+            return LONG;
+        }
+        if (type == double.class)
+        {
+            return DOUBLE;
+        }
+        if (type == boolean.class)
+        {
+            return BOOLEAN;
+        }
+        if (type == float.class)
+        {
+            return FLOAT;
+        }
+        if (type == short.class)
+        {
+            return SHORT;
+        }
+        if (type == byte.class)
+        {
+            return BYTE;
+        }
+        return CHAR;
+    }
+
+    /**
+     * Per-field portion of a ClassPlan.  Values are accessed either through the Field (tiered plans)
+     * or through the generated ClassCodec accessors (codec plans).
+     */
+    static final class FieldPlan
+    {
+        final String name;
+        final Class type;
+        final int kind;
+        /** "name": already escaped, ready to be copied to the output */
+        final char[] jsonName;
+        private final Field field;
+        private final ClassCodec codec;
+        private final int index;
+
+        private FieldPlan(String name, Class type, Field field, ClassCodec codec, int index)
+        {
+            this.name = name;
+            this.type = type;
+            this.kind = kindOf(type);
+            this.field = field;
+            this.codec = codec;
+            this.index = index;
+
+            StringWriter writer = new StringWriter(name.length() + 3);
+            try
+            {
+                JsonWriter.writeJsonUtf8String(name, writer);
+            }
+            catch (IOException e)
+            {
+                throw new JsonIoException("Unable to encode field name: " + name, e);
+            }
+            writer.write(':');
+            this.jsonName = writer.toString().toCharArray();
+        }
+
+        /**
+         * @return Field for the generic (assignField) path.  Codec plans only look it up when needed.
+         */
+        Field getField()
+        {
+            return codec == null ? field : codec.getField(index);
+        }
+
+        Object get(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.get(obj) : codec.get(obj, index);
+        }
+
+        boolean getBoolean(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getBoolean(obj) : codec.getBoolean(obj, index);
+        }
+
+        byte getByte(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getByte(obj) : codec.getByte(obj, index);
+        }
+
+        short getShort(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getShort(obj) : codec.getShort(obj, index);
+        }
+
+        int getInt(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getInt(obj) : codec.getInt(obj, index);
+        }
+
+        long getLong(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getLong(obj) : codec.getLong(obj, index);
+        }
+
+        float getFloat(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getFloat(obj) : codec.getFloat(obj, index);
+        }
+
+        double getDouble(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getDouble(obj) : codec.getDouble(obj, index);
+        }
+
+        char getChar(Object obj) throws IllegalAccessException
+        {
+            return codec == null ? field.getChar(obj) : codec.getChar(obj, index);
+        }
+
+        void set(Object obj, Object value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.set(obj, value);
+            }
+            else
+            {
+                codec.set(obj, index, value);
+            }
+        }
+
+        void setBoolean(Object obj, boolean value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setBoolean(obj, value);
+            }
+            else
+            {
+                codec.setBoolean(obj, index, value);
+            }
+        }
+
+        void setByte(Object obj, byte value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setByte(obj, value);
+            }
+            else
+            {
+                codec.setByte(obj, index, value);
+            }
+        }
+
+        void setShort(Object obj, short value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setShort(obj, value);
+            }
+            else
+            {
+                codec.setShort(obj, index, value);
+            }
+        }
+
+        void setInt(Object obj, int value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setInt(obj, value);
+            }
+            else
+            {
+                codec.setInt(obj, index, value);
+            }
+        }
+
+        void setLong(Object obj, long value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setLong(obj, value);
+            }
+            else
+            {
+                codec.setLong(obj, index, value);
+            }
+        }
+
+        void setFloat(Object obj, float value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setFloat(obj, value);
+            }
+            else
+            {
+                codec.setFloat(obj, index, value);
+            }
+        }
+
+        void setDouble(Object obj, double value) throws IllegalAccessException
+        {
+            if (codec == null)
+            {
+                field.setDouble(obj, value);
+            }
+            else
+            {
+                codec.setDouble(obj, index, value);
+            }
+        }
+    }
+}
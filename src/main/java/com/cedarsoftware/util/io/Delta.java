@@ -0,0 +1,889 @@
+package com.cedarsoftware.util.io;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Delta (patch) documents between two snapshots of an object graph.  JsonWriter.objectToJsonDelta() compares the
+ * previous snapshot with the current one and writes only what changed; JsonReader.applyDelta() makes the same
+ * changes to a copy of the previous snapshot held elsewhere.<br>
+ * <br>
+ * The patch is an ordinary json-io document: a JSON array of operations, each an array of the operation name, the
+ * path (from the root) of the object, Map, List, Set or array it changes, and its arguments:
+ * <pre>
+ * ["set", path, value]              field, element or Map value at path becomes value ([] = the root)
+ * ["setRef", path, fromPath]        ... becomes the object found at fromPath (before any change is made)
+ * ["insert", path, index, value]    List insert
+ * ["insertRef", path, index, fromPath]
+ * ["remove", path, index, count]    List removal
+ * ["add", path, value]              Set add
+ * ["addRef", path, fromPath]
+ * ["delete", path, keyOrElement]    Map key or Set element removal
+ * </pre>
+ * Path elements are field names (as in MetaUtils.getDeepDeclaredFields), List / array indices and Map keys.  The
+ * values are written by JsonWriter, so they keep their types, and objects shared between values keep their
+ * identity (@id / @ref).  When the two snapshots share instances, unchanged subgraphs are skipped without being
+ * compared, and an object that moved is sent as a reference to where it was (the -Ref operations).  So is an
+ * object of the previous snapshot that a new value refers to: the value is written with null in its place, and
+ * followed by a setRef for each such place.  Only places with a path (fields, List / array elements and Map
+ * values) can be set that way - an object reached through a Set element or Map key is written in full.<br>
+ * <br>
+ * Set elements are matched with equals(), or, for classes that do not override equals(), by comparing their
+ * contents (the same as List elements), so that an unchanged copy of an element is not deleted and added again.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class Delta
+{
+    static final String SET = "set";
+    static final String SET_REF = "setRef";
+    static final String INSERT = "insert";
+    static final String INSERT_REF = "insertRef";
+    static final String REMOVE = "remove";
+    static final String ADD = "add";
+    static final String ADD_REF = "addRef";
+    static final String DELETE = "delete";
+    private static final Object[] ROOT = new Object[0];
+
+    private Delta() { }
+
+    /**
+     * Thrown by a probe (see same()) at the first difference.
+     */
+    private static final class Different extends RuntimeException
+    {
+        private static final Different INSTANCE = new Different();
+
+        private Different()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Operations that turn one snapshot into another, and the objects to write as null in their values (see
+     * JsonWriter.NULL_OBJECTS), which the setRef operations after them fill in.
+     */
+    static final class Patch
+    {
+        final List<Object[]> ops;
+        final Map<Object, Object> nullObjects;
+
+        private Patch(List<Object[]> ops, Map<Object, Object> nullObjects)
+        {
+            this.ops = ops;
+            this.nullObjects = nullObjects;
+        }
+    }
+
+    /**
+     * Compare two snapshots.  A JsonObject tree from a previous read (JsonReader.jsonToMaps()) is compared as the
+     * Java objects it describes, so its @type values must name classes that can be loaded.
+     */
+    static Patch diff(Object previous, Object current)
+    {
+        if (previous instanceof JsonObject && !(current instanceof JsonObject))
+        {
+            previous = JsonReader.jsonToJava(JsonWriter.objectToJson(previous));
+        }
+        Differ differ = new Differ(previous, false);
+        differ.diff(previous, current, ROOT);
+        return differ.finish();
+    }
+
+    /**
+     * @return true if a and b are the same instance, or equal all the way down.
+     */
+    private static boolean same(Object a, Object b)
+    {
+        if (a == b)
+        {
+            return true;
+        }
+        if (a == null || b == null || a.getClass() != b.getClass())
+        {
+            return false;
+        }
+        if (isValue(a.getClass()))
+        {
+            return a.equals(b);
+        }
+        try
+        {
+            new Differ(null, true).diff(a, b, ROOT);
+            return true;
+        }
+        catch (Different e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if c overrides Object.equals().
+     */
+    private static boolean hasEquals(Class c)
+    {
+        try
+        {
+            return c.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return true;
+        }
+    }
+
+    /**
+     * @return true if instances of c are compared with equals() and replaced as a whole, rather than compared
+     * field by field: logical primitives, enums, and the (non container) JDK classes, whose fields are
+     * implementation details.
+     */
+    private static boolean isValue(Class c)
+    {
+        return MetaUtils.isLogicalPrimitive(c) || c.isEnum() || Enum.class.isAssignableFrom(c) ||
+                (c.getName().startsWith("java.") && !Collection.class.isAssignableFrom(c) && !Map.class.isAssignableFrom(c));
+    }
+
+    private static Object[] append(Object[] path, Object element)
+    {
+        Object[] longer = Arrays.copyOf(path, path.length + 1);
+        longer[path.length] = element;
+        return longer;
+    }
+
+    private static final class Differ
+    {
+        private final List<Object[]> ops = new ArrayList<>();
+        private final Map<Object, Object> visited = new IdentityHashMap<>();     // current -> previous
+        private final Object previousRoot;
+        private final boolean probe;
+        private Map<Object, Object[]> previousPaths = null;
+        private final Map<Object, Object> scanned = new IdentityHashMap<>();        // new values' objects
+        private final Map<Object[], Object> placeRefs = new IdentityHashMap<>();    // setRef op -> previous object it sets
+
+        private Differ(Object previousRoot, boolean probe)
+        {
+            this.previousRoot = previousRoot;
+            this.probe = probe;
+        }
+
+        private void op(Object... op)
+        {
+            if (probe)
+            {
+                throw Different.INSTANCE;
+            }
+            ops.add(op);
+        }
+
+        /**
+         * @return path of obj in the previous snapshot, or null if it is not part of it (or is a value).
+         */
+        private Object[] previousPath(Object obj)
+        {
+            if (obj == null || isValue(obj.getClass()))
+            {
+                return null;
+            }
+            if (previousPaths == null)
+            {
+                previousPaths = indexPaths(previousRoot);
+            }
+            return previousPaths.get(obj);
+        }
+
+        private void set(Object[] path, Object value)
+        {
+            Object[] from = previousPath(value);
+            if (from == null)
+            {
+                op(SET, path, value);
+                placeReferences(value, path);
+            }
+            else
+            {
+                op(SET_REF, path, from);
+            }
+        }
+
+        /**
+         * Follow a new value, at path, with a setRef for each place in it that holds an object of the previous
+         * snapshot, so that the value does not carry a copy of it.
+         */
+        private void placeReferences(Object value, Object[] path)
+        {
+            final Deque<Object[]> queue = new ArrayDeque<>();     // {object, path}
+            queue.add(new Object[] {value, path});
+            while (!queue.isEmpty())
+            {
+                final Object[] item = queue.removeFirst();
+                final Object obj = item[0];
+                final Object[] at = (Object[]) item[1];
+                if (obj == null || isValue(obj.getClass()) || scanned.containsKey(obj))
+                {
+                    continue;
+                }
+                if (obj != value)
+                {
+                    Object[] from = previousPath(obj);
+                    if (from != null)
+                    {
+                        Object[] setRef = new Object[] {SET_REF, at, from};
+                        ops.add(setRef);
+                        placeRefs.put(setRef, obj);
+                        continue;
+                    }
+                }
+                scanned.put(obj, null);
+
+                if (obj.getClass().isArray())
+                {
+                    if (!obj.getClass().getComponentType().isPrimitive())
+                    {
+                        for (int i = 0; i < Array.getLength(obj); i++)
+                        {
+                            queue.add(new Object[] {Array.get(obj, i), append(at, (long) i)});
+                        }
+                    }
+                }
+                else if (obj instanceof List)
+                {
+                    long i = 0;
+                    for (Object element : (List) obj)
+                    {
+                        queue.add(new Object[] {element, append(at, i++)});
+                    }
+                }
+                else if (obj instanceof Map)
+                {
+                    for (Object entry : ((Map) obj).entrySet())
+                    {
+                        Map.Entry e = (Map.Entry) entry;
+                        queue.add(new Object[] {e.getValue(), append(at, e.getKey())});
+                    }
+                }
+                else if (!(obj instanceof Collection))
+                {
+                    for (Map.Entry<String, Field> entry : MetaUtils.getDeepDeclaredFields(obj.getClass()).entrySet())
+                    {
+                        if ((entry.getValue().getModifiers() & Modifier.TRANSIENT) == 0)
+                        {
+                            try
+                            {
+                                queue.add(new Object[] {entry.getValue().get(obj), append(at, entry.getKey())});
+                            }
+                            catch (IllegalAccessException ignored) { }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the operations, with the setRefs of placeReferences() left out for objects that are written in
+         * full anyway - those reachable from a Map key, a Set or other non-List Collection, a path, or a value that
+         * is deleted or added to a Set - as there is no path to set them by, or writing them as null would change
+         * what the operation means.
+         */
+        private Patch finish()
+        {
+            if (placeRefs.isEmpty())
+            {
+                return new Patch(ops, null);
+            }
+            final Map<Object, Object> inFull = new IdentityHashMap<>();
+            for (Object[] op : ops)
+            {
+                final String name = (String) op[0];
+                if (DELETE.equals(name) || ADD.equals(name))
+                {
+                    reach(op[2], inFull);
+                }
+                for (Object element : (Object[]) op[1])
+                {
+                    reach(element, inFull);
+                }
+            }
+            for (Object obj : scanned.keySet())
+            {
+                if (obj instanceof Map)
+                {
+                    for (Object key : ((Map) obj).keySet())
+                    {
+                        reach(key, inFull);
+                    }
+                }
+                else if (obj instanceof Collection && !(obj instanceof List))
+                {
+                    for (Object element : (Collection) obj)
+                    {
+                        reach(element, inFull);
+                    }
+                }
+            }
+
+            final List<Object[]> kept = new ArrayList<>(ops.size());
+            final Map<Object, Object> nullObjects = new IdentityHashMap<>();
+            for (Object[] op : ops)
+            {
+                final Object placed = placeRefs.get(op);
+                if (placed == null)
+                {
+                    kept.add(op);
+                }
+                else if (!inFull.containsKey(placed))
+                {
+                    kept.add(op);
+                    nullObjects.put(placed, null);
+                }
+            }
+            return new Patch(kept, nullObjects);
+        }
+
+        private void diff(Object prev, Object cur, Object[] path)
+        {
+            if (prev == cur)
+            {
+                return;
+            }
+            if (prev == null || cur == null || prev.getClass() != cur.getClass() || previousPath(cur) != null)
+            {   // Different types, or an object that was elsewhere in previous (moved - it is not copied)
+                set(path, cur);
+                return;
+            }
+
+            final Class c = cur.getClass();
+            if (isValue(c))
+            {
+                if (!prev.equals(cur))
+                {
+                    set(path, cur);
+                }
+                return;
+            }
+            if (c.isArray())
+            {
+                diffArray(prev, cur, path);
+                return;
+            }
+
+            if (visited.containsKey(cur))
+            {   // Already compared - or reached again through a different previous object (sharing changed)
+                if (visited.get(cur) != prev)
+                {
+                    set(path, cur);
+                }
+                return;
+            }
+            visited.put(cur, prev);
+
+            if (cur instanceof List)
+            {
+                diffList(((List) prev).toArray(), ((List) cur).toArray(), path);
+            }
+            else if (cur instanceof Set)
+            {
+                diffSet((Set) prev, (Set) cur, path);
+            }
+            else if (cur instanceof Collection)
+            {   // Order matters, but there are no indices to address elements by
+                if (!same(prev, cur))
+                {
+                    set(path, cur);
+                }
+            }
+            else if (cur instanceof Map)
+            {
+                diffMap((Map) prev, (Map) cur, path);
+            }
+            else
+            {
+                diffFields(prev, cur, path);
+            }
+        }
+
+        private void diffArray(Object prev, Object cur, Object[] path)
+        {
+            final int len = Array.getLength(cur);
+            if (cur.getClass().getComponentType().isPrimitive())
+            {
+                if (!Objects.deepEquals(prev, cur))
+                {
+                    set(path, cur);
+                }
+                return;
+            }
+            if (Array.getLength(prev) != len)
+            {
+                set(path, cur);
+                return;
+            }
+            for (int i = 0; i < len; i++)
+            {
+                diff(Array.get(prev, i), Array.get(cur, i), append(path, (long) i));
+            }
+        }
+
+        /**
+         * Equal leading and trailing elements are skipped.  Of the rest, the elements at the same index are
+         * compared, and what is left over is inserted or removed (after them, so the indices of the compared
+         * elements still hold when the operations are applied in order).
+         */
+        private void diffList(Object[] prev, Object[] cur, Object[] path)
+        {
+            int start = 0;
+            while (start < prev.length && start < cur.length && same(prev[start], cur[start]))
+            {
+                start++;
+            }
+            int prevEnd = prev.length;
+            int curEnd = cur.length;
+            while (prevEnd > start && curEnd > start && same(prev[prevEnd - 1], cur[curEnd - 1]))
+            {
+                prevEnd--;
+                curEnd--;
+            }
+
+            final int common = Math.min(prevEnd - start, curEnd - start);
+            for (int i = start; i < start + common; i++)
+            {
+                diff(prev[i], cur[i], append(path, (long) i));
+            }
+            for (int i = start + common; i < curEnd; i++)
+            {
+                Object[] from = previousPath(cur[i]);
+                if (from == null)
+                {
+                    op(INSERT, path, (long) i, cur[i]);
+                    placeReferences(cur[i], append(path, (long) i));
+                }
+                else
+                {
+                    op(INSERT_REF, path, (long) i, from);
+                }
+            }
+            if (prevEnd - start > common)
+            {
+                op(REMOVE, path, (long) (start + common), (long) (prevEnd - start - common));
+            }
+        }
+
+        private void diffSet(Set prev, Set cur, Object[] path)
+        {
+            final List<Object> removed = new ArrayList<>();
+            for (Object element : prev)
+            {
+                if (!cur.contains(element))
+                {
+                    removed.add(element);
+                }
+            }
+            final List<Object> added = new ArrayList<>();
+            for (Object element : cur)
+            {
+                if (!prev.contains(element))
+                {
+                    added.add(element);
+                }
+            }
+            if (!removed.isEmpty() && !added.isEmpty())
+            {   // Without its own equals(), an element only equals itself - match copies by their contents
+                for (Iterator i = removed.iterator(); i.hasNext(); )
+                {
+                    final Object element = i.next();
+                    if (element != null && !hasEquals(element.getClass()) && removeSame(added, element))
+                    {
+                        i.remove();
+                    }
+                }
+            }
+
+            for (Object element : removed)
+            {
+                op(DELETE, path, element);
+            }
+            for (Object element : added)
+            {
+                Object[] from = previousPath(element);
+                if (from == null)
+                {
+                    op(ADD, path, element);
+                }
+                else
+                {
+                    op(ADD_REF, path, from);
+                }
+            }
+        }
+
+        private void diffMap(Map prev, Map cur, Object[] path)
+        {
+            for (Object key : prev.keySet())
+            {
+                if (!cur.containsKey(key))
+                {
+                    op(DELETE, path, key);
+                }
+            }
+            for (Object item : cur.entrySet())
+            {
+                Map.Entry entry = (Map.Entry) item;
+                Object key = entry.getKey();
+                if (prev.containsKey(key))
+                {
+                    diff(prev.get(key), entry.getValue(), append(path, key));
+                }
+                else
+                {
+                    set(append(path, key), entry.getValue());
+                }
+            }
+        }
+
+        private void diffFields(Object prev, Object cur, Object[] path)
+        {
+            for (Map.Entry<String, Field> entry : MetaUtils.getDeepDeclaredFields(cur.getClass()).entrySet())
+            {
+                Field field = entry.getValue();
+                if ((field.getModifiers() & Modifier.TRANSIENT) != 0)
+                {   // Not written by JsonWriter either
+                    continue;
+                }
+                try
+                {
+                    diff(field.get(prev), field.get(cur), append(path, entry.getKey()));
+                }
+                catch (IllegalAccessException e)
+                {
+                    throw new JsonIoException("Unable to read field: " + entry.getKey() + " of class: " + cur.getClass().getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add obj, and every object reachable from it, to reached.
+     */
+    private static void reach(Object obj, Map<Object, Object> reached)
+    {
+        final List<Object> stack = new ArrayList<>();     // may hold null
+        stack.add(obj);
+        while (!stack.isEmpty())
+        {
+            obj = stack.remove(stack.size() - 1);
+            if (obj == null || isValue(obj.getClass()) || reached.containsKey(obj))
+            {
+                continue;
+            }
+            reached.put(obj, null);
+
+            if (obj.getClass().isArray())
+            {
+                if (!obj.getClass().getComponentType().isPrimitive())
+                {
+                    for (int i = 0; i < Array.getLength(obj); i++)
+                    {
+                        stack.add(Array.get(obj, i));
+                    }
+                }
+            }
+            else if (obj instanceof Collection)
+            {
+                for (Object element : (Collection) obj)
+                {
+                    stack.add(element);
+                }
+            }
+            else if (obj instanceof Map)
+            {
+                for (Object entry : ((Map) obj).entrySet())
+                {
+                    Map.Entry e = (Map.Entry) entry;
+                    stack.add(e.getKey());
+                    stack.add(e.getValue());
+                }
+            }
+            else
+            {
+                for (Field field : MetaUtils.getDeepDeclaredFields(obj.getClass()).values())
+                {
+                    if ((field.getModifiers() & Modifier.TRANSIENT) == 0)
+                    {
+                        try
+                        {
+                            stack.add(field.get(obj));
+                        }
+                        catch (IllegalAccessException ignored) { }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the first element of collection that is the same as (see same()) element.
+     * @return true if one was removed.
+     */
+    private static boolean removeSame(Collection collection, Object element)
+    {
+        for (Iterator i = collection.iterator(); i.hasNext(); )
+        {
+            if (same(i.next(), element))
+            {
+                i.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the path of every object (other than values) reachable from root, by the first route found.
+     * Set elements have no path.
+     */
+    private static Map<Object, Object[]> indexPaths(Object root)
+    {
+        final Map<Object, Object[]> paths = new IdentityHashMap<>();
+        final Deque<Object[]> queue = new ArrayDeque<>();     // {object, path}
+        if (root != null)
+        {
+            queue.add(new Object[] {root, ROOT});
+        }
+        while (!queue.isEmpty())
+        {
+            final Object[] item = queue.removeFirst();
+            final Object obj = item[0];
+            final Object[] path = (Object[]) item[1];
+            if (obj == null || isValue(obj.getClass()) || paths.containsKey(obj))
+            {
+                continue;
+            }
+            paths.put(obj, path);
+
+            if (obj.getClass().isArray())
+            {
+                if (!obj.getClass().getComponentType().isPrimitive())
+                {
+                    for (int i = 0; i < Array.getLength(obj); i++)
+                    {
+                        queue.add(new Object[] {Array.get(obj, i), append(path, (long) i)});
+                    }
+                }
+            }
+            else if (obj instanceof List)
+            {
+                long i = 0;
+                for (Object element : (List) obj)
+                {
+                    queue.add(new Object[] {element, append(path, i++)});
+                }
+            }
+            else if (obj instanceof Map)
+            {
+                for (Object entry : ((Map) obj).entrySet())
+                {
+                    Map.Entry e = (Map.Entry) entry;
+                    queue.add(new Object[] {e.getValue(), append(path, e.getKey())});
+                }
+            }
+            else if (!(obj instanceof Collection))
+            {
+                for (Map.Entry<String, Field> entry : MetaUtils.getDeepDeclaredFields(obj.getClass()).entrySet())
+                {
+                    if ((entry.getValue().getModifiers() & Modifier.TRANSIENT) == 0)
+                    {
+                        try
+                        {
+                            queue.add(new Object[] {entry.getValue().get(obj), append(path, entry.getKey())});
+                        }
+                        catch (IllegalAccessException ignored) { }
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Apply operations (as read from a delta document) to target.
+     * @return the root of the changed graph - target, unless the root itself was replaced.
+     */
+    static Object apply(Object target, Object[] ops)
+    {
+        // References point into the graph as it was, so they are all looked up before anything changes
+        final Map<Object[], Object> refs = new IdentityHashMap<>();
+        for (Object item : ops)
+        {
+            Object[] op = (Object[]) item;
+            String name = (String) op[0];
+            if (SET_REF.equals(name) || ADD_REF.equals(name))
+            {
+                refs.put(op, resolve(target, (Object[]) op[2], ((Object[]) op[2]).length));
+            }
+            else if (INSERT_REF.equals(name))
+            {
+                refs.put(op, resolve(target, (Object[]) op[3], ((Object[]) op[3]).length));
+            }
+        }
+
+        Object root = target;
+        for (Object item : ops)
+        {
+            final Object[] op = (Object[]) item;
+            final String name = (String) op[0];
+            final Object[] path = (Object[]) op[1];
+            if (SET.equals(name) || SET_REF.equals(name))
+            {
+                Object value = SET.equals(name) ? op[2] : refs.get(op);
+                if (path.length == 0)
+                {
+                    root = value;
+                }
+                else
+                {
+                    put(resolve(root, path, path.length - 1), path[path.length - 1], value, path);
+                }
+            }
+            else if (INSERT.equals(name) || INSERT_REF.equals(name))
+            {
+                Object value = INSERT.equals(name) ? op[3] : refs.get(op);
+                ((List) resolve(root, path, path.length)).add(((Number) op[2]).intValue(), value);
+            }
+            else if (REMOVE.equals(name))
+            {
+                List list = (List) resolve(root, path, path.length);
+                int index = ((Number) op[2]).intValue();
+                list.subList(index, index + ((Number) op[3]).intValue()).clear();
+            }
+            else if (ADD.equals(name) || ADD_REF.equals(name))
+            {
+                ((Collection) resolve(root, path, path.length)).add(ADD.equals(name) ? op[2] : refs.get(op));
+            }
+            else if (DELETE.equals(name))
+            {
+                Object container = resolve(root, path, path.length);
+                if (container instanceof Map)
+                {
+                    ((Map) container).remove(op[2]);
+                }
+                else if (!((Collection) container).remove(op[2]))
+                {   // Read from the delta, so a different instance - matched by contents unless it has equals()
+                    removeSame((Collection) container, op[2]);
+                }
+            }
+            else
+            {
+                throw new JsonIoException("Unknown delta operation: " + name);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * @return the object reached by following the first count elements of path from root.
+     */
+    private static Object resolve(Object root, Object[] path, int count)
+    {
+        Object obj = root;
+        for (int i = 0; i < count; i++)
+        {
+            final Object element = path[i];
+            if (obj == null)
+            {
+                throw new JsonIoException("Delta path not found: " + Arrays.toString(path));
+            }
+            if (obj instanceof Map)
+            {
+                obj = ((Map) obj).get(element);
+            }
+            else if (obj instanceof List)
+            {
+                obj = ((List) obj).get(((Number) element).intValue());
+            }
+            else if (obj.getClass().isArray())
+            {
+                obj = Array.get(obj, ((Number) element).intValue());
+            }
+            else
+            {
+                try
+                {
+                    obj = getField(obj, element, path).get(obj);
+                }
+                catch (IllegalAccessException e)
+                {
+                    throw new JsonIoException("Unable to read field: " + element + " of class: " + obj.getClass().getName(), e);
+                }
+            }
+        }
+        return obj;
+    }
+
+    private static void put(Object container, Object element, Object value, Object[] path)
+    {
+        if (container instanceof Map)
+        {
+            ((Map) container).put(element, value);
+        }
+        else if (container instanceof List)
+        {
+            ((List) container).set(((Number) element).intValue(), value);
+        }
+        else if (container != null && container.getClass().isArray())
+        {
+            Array.set(container, ((Number) element).intValue(), value);
+        }
+        else
+        {
+            if (container == null)
+            {
+                throw new JsonIoException("Delta path not found: " + Arrays.toString(path));
+            }
+            try
+            {
+                getField(container, element, path).set(container, value);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new JsonIoException("Unable to set field: " + element + " of class: " + container.getClass().getName(), e);
+            }
+        }
+    }
+
+    private static Field getField(Object obj, Object name, Object[] path)
+    {
+        Field field = MetaUtils.getDeepDeclaredFields(obj.getClass()).get(name);
+        if (field == null)
+        {
+            throw new JsonIoException("Delta path not found: " + Arrays.toString(path) + ", no field: " + name + " on class: " + obj.getClass().getName());
+        }
+        return field;
+    }
+}
@@ -0,0 +1,217 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FastPushbackReader used by JsonReader.  Reads UTF-8 from an InputStream (replacing malformed input, the same
+ * as InputStreamReader), or the chars of a String directly, into buffers obtained from a BufferRecycler.  Line,
+ * column and snippet tracking are the same as FastPushbackBufferedReader.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class FastPushbackInput implements FastPushbackReader
+{
+    private final InputStream stream;     // null when reading a String
+    private final String text;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final char[] buf;
+    private final int[] snippet;
+    private int textPos = 0;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private boolean decoded = false;      // all of the stream has been decoded (and the decoder flushed)
+    private int idx = 0;
+    private int unread = Integer.MAX_VALUE;
+    private int line = 1;
+    private int col = 0;
+
+    FastPushbackInput(InputStream stream, BufferRecycler.Buffers buffers)
+    {
+        this.stream = stream;
+        text = null;
+        decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes = ByteBuffer.wrap(buffers.bytes());
+        bytes.limit(0);
+        buf = buffers.chars();
+        chars = CharBuffer.wrap(buf);
+        snippet = buffers.snippet();
+    }
+
+    FastPushbackInput(String text, BufferRecycler.Buffers buffers)
+    {
+        stream = null;
+        this.text = text;
+        decoder = null;
+        bytes = null;
+        buf = buffers.chars();
+        chars = null;
+        snippet = buffers.snippet();
+    }
+
+    /**
+     * Refill buf.
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException
+    {
+        pos = 0;
+        limit = 0;
+        if (text != null)
+        {
+            limit = Math.min(buf.length, text.length() - textPos);
+            text.getChars(textPos, textPos + limit, buf, 0);
+            textPos += limit;
+            return limit > 0;
+        }
+
+        chars.clear();
+        while (!decoded)
+        {
+            if (decoder.decode(bytes, chars, eof).isUnderflow() && eof)
+            {
+                decoder.flush(chars);
+                decoded = true;
+            }
+            if (chars.position() > 0 || decoded)
+            {
+                limit = chars.position();
+                return limit > 0;
+            }
+
+            bytes.compact();
+            int count = stream.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (count < 0)
+            {
+                eof = true;
+            }
+            else
+            {
+                bytes.position(bytes.position() + count);
+            }
+            bytes.flip();
+        }
+        return false;
+    }
+
+    public int read() throws IOException
+    {
+        int ch;
+        if (unread == 0x7fffffff)
+        {
+            ch = pos < limit || fill() ? buf[pos++] : -1;
+        }
+        else
+        {
+            ch = unread;
+            unread = 0x7fffffff;
+        }
+
+        if ((snippet[idx++] = ch) == 0x0a)
+        {
+            line++;
+            col = 0;
+        }
+        else
+        {
+            col++;
+        }
+
+        if (idx >= snippet.length)
+        {
+            idx = 0;
+        }
+        return ch;
+    }
+
+    public void unread(int c) throws IOException
+    {
+        if ((unread = c) == 0x0a)
+        {
+            line--;
+        }
+        else
+        {
+            col--;
+        }
+
+        if (idx < 1)
+        {
+            idx = snippet.length - 1;
+        }
+        else
+        {
+            idx--;
+        }
+    }
+
+    public int getCol()
+    {
+        return col;
+    }
+
+    public int getLine()
+    {
+        return line;
+    }
+
+    public String getLastSnippet()
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i = idx; i < snippet.length; i++)
+        {
+            if (appendChar(s, snippet[i]))
+            {
+                break;
+            }
+        }
+        for (int i = 0; i < idx; i++)
+        {
+            if (appendChar(s, snippet[i]))
+            {
+                break;
+            }
+        }
+        return s.toString();
+    }
+
+    private static boolean appendChar(StringBuilder s, int snip)
+    {
+        if (snip <= 0)
+        {
+            return true;
+        }
+        s.appendCodePoint(snip);
+        return false;
+    }
+
+    public void close() throws IOException
+    {
+        if (stream != null)
+        {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.cedarsoftware.util.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the JSON written for instances of classes marked as cacheable, set with JsonWriter.FRAGMENT_CACHE.
+ * Meant for immutable reference data (instrument definitions, currency tables, ...) written again and again: the
+ * first time an instance is written, its JSON is kept, and after that it is copied to the output instead of
+ * walking the object's fields again.<br>
+ * <br>
+ * A fragment is found by the object's identity, or, for classes registered with a KeyProvider, by class plus the
+ * key it returns (so equal copies of the same data share one fragment).  It is only used for an object that is not
+ * referenced from elsewhere in the document (@id / @ref), and fragments are kept separately for each combination of
+ * the JsonWriter settings that change the JSON: the options (SHORT_META_KEYS, TYPE, ...), the custom writers (by
+ * identity), TYPE_NAME_MAP, DATE_FORMAT, FIELD_SPECIFIERS and FIELD_NAME_BLACK_LIST.  JsonWriters configured alike
+ * share fragments; give them the same custom writer instances for that.  Cached objects (and everything reachable
+ * from them) must not change while they are in the cache.<br>
+ * <br>
+ * The cache holds at most maxChars characters of JSON, evicting the least recently used fragments first.  It is
+ * thread-safe and may be shared by any number of JsonWriters.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public final class FragmentCache
+{
+    /**
+     * Supplies the cache key of an instance, for classes whose equal instances write the same JSON.
+     */
+    public interface KeyProvider
+    {
+        /**
+         * @param obj instance about to be written.
+         * @return key (with equals() and hashCode()) identifying its data, or null to not cache this instance.
+         */
+        Object getKey(Object obj);
+    }
+
+    private static final KeyProvider IDENTITY = new KeyProvider()
+    {
+        public Object getKey(Object obj)
+        {
+            return obj;
+        }
+    };
+
+    private static final int MAX_CONFIGURATIONS = 256;
+    private final Map<Class, KeyProvider> classes = new ConcurrentHashMap<>();
+    private final Map<List<Object>, Integer> configurations = new ConcurrentHashMap<>();
+    private final AtomicInteger nextConfiguration = new AtomicInteger();
+    private final LinkedHashMap<Key, Fragment> fragments = new LinkedHashMap<>(64, 0.75f, true);
+    private final long maxChars;
+    private long chars = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxChars long maximum total length of the cached JSON.
+     */
+    public FragmentCache(long maxChars)
+    {
+        if (maxChars < 1)
+        {
+            throw new JsonIoException("FragmentCache size must be at least 1, found: " + maxChars);
+        }
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Cache the JSON of instances of c (exactly c, not subclasses), by object identity.
+     * @return this FragmentCache
+     */
+    public FragmentCache cache(Class c)
+    {
+        classes.put(c, IDENTITY);
+        return this;
+    }
+
+    /**
+     * Cache the JSON of instances of c (exactly c, not subclasses), by the key keyProvider returns for them.
+     * Instances with equal keys must write the same JSON, and the objects reachable from them must not also be
+     * reachable from elsewhere in the same document (the cached JSON has no @id for them).
+     * @return this FragmentCache
+     */
+    public FragmentCache cache(Class c, KeyProvider keyProvider)
+    {
+        classes.put(c, keyProvider);
+        return this;
+    }
+
+    /**
+     * @return number of times a cached fragment was written.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return number of times no fragment was cached for an object (it was then written, and usually cached).
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return number of fragments evicted to stay within maxChars.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of fragments cached.
+     */
+    public synchronized int size()
+    {
+        return fragments.size();
+    }
+
+    /**
+     * @return total length of the cached JSON.
+     */
+    public synchronized long getChars()
+    {
+        return chars;
+    }
+
+    public synchronized void clear()
+    {
+        fragments.clear();
+        chars = 0;
+    }
+
+    boolean isCacheable(Class c)
+    {
+        return classes.containsKey(c);
+    }
+
+    /**
+     * @param configuration List of the JsonWriter settings (other than the on / off options) that change the JSON.
+     * @return number for configuration, the same for equal configurations.  Numbers are never re-used, so when
+     * more than MAX_CONFIGURATIONS have been seen (new custom writer instances for every JsonWriter), they start
+     * over, and the fragments of the old ones are evicted in time.
+     */
+    int configurationOf(List<Object> configuration)
+    {
+        Integer number = configurations.get(configuration);
+        if (number == null)
+        {
+            if (configurations.size() >= MAX_CONFIGURATIONS)
+            {
+                configurations.clear();
+            }
+            Integer next = nextConfiguration.getAndIncrement();
+            number = configurations.putIfAbsent(configuration, next);
+            if (number == null)
+            {
+                number = next;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * @param settings int JsonWriter options (and showType) that change the JSON of obj.
+     * @param configuration int number of the other JsonWriter settings, see configurationOf().
+     * @return key of the fragment for obj, or null if it is not to be cached.
+     */
+    Key keyOf(Object obj, int settings, int configuration)
+    {
+        KeyProvider provider = classes.get(obj.getClass());
+        if (provider == null)
+        {
+            return null;
+        }
+        Object id = provider.getKey(obj);
+        return id == null ? null : new Key(obj.getClass(), id, provider == IDENTITY, settings, configuration);
+    }
+
+    Fragment get(Key key)
+    {
+        Fragment fragment;
+        synchronized (this)
+        {
+            fragment = fragments.get(key);
+        }
+        if (fragment == null)
+        {
+            misses.incrementAndGet();
+        }
+        return fragment;
+    }
+
+    void hit()
+    {
+        hits.incrementAndGet();
+    }
+
+    void put(Key key, String json, Object[] members)
+    {
+        if (json.length() > maxChars)
+        {
+            return;
+        }
+        Fragment fragment = new Fragment(json, key.identity ? members : null);
+        synchronized (this)
+        {
+            Fragment old = fragments.put(key, fragment);
+            chars += json.length() - (old == null ? 0 : old.json.length());
+            Iterator<Fragment> i = fragments.values().iterator();
+            while (chars > maxChars)
+            {   // Least recently used first
+                chars -= i.next().json.length();
+                i.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    static final class Key
+    {
+        private final Class c;
+        private final Object id;
+        private final boolean identity;
+        private final int settings;
+        private final int configuration;
+        private final int hash;
+
+        private Key(Class c, Object id, boolean identity, int settings, int configuration)
+        {
+            this.c = c;
+            this.id = id;
+            this.identity = identity;
+            this.settings = settings;
+            this.configuration = configuration;
+            hash = 31 * (31 * (31 * c.hashCode() + (identity ? System.identityHashCode(id) : id.hashCode())) + settings) + configuration;
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key that = (Key) o;
+            return c == that.c && settings == that.settings && configuration == that.configuration && identity == that.identity &&
+                    (identity ? id == that.id : id.equals(that.id));
+        }
+    }
+
+    static final class Fragment
+    {
+        final String json;
+        final Object[] members;     // objects written inside the fragment (identity keys only)
+
+        private Fragment(String json, Object[] members)
+        {
+            this.json = json;
+            this.members = members;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Immutable, thread-safe formatter for the fixed date patterns json-io writes: JsonWriter.ISO_DATE_FORMAT,
+ * JsonWriter.ISO_DATE_TIME_FORMAT and the "yyyy-MM-dd'T'HH:mm:ss.SSSZ" form used for Calendar 'time'.
+ * Digits are written straight to the output, and no per-thread (or per-call) SimpleDateFormat is needed,
+ * so one instance can be shared by any number of (virtual) threads.<br>
+ * <br>
+ * The output is exactly that of SimpleDateFormat.  Years outside 1583..9999 (where SimpleDateFormat's
+ * Julian calendar or year padding come into play), and default Locales whose Calendar or digits are not
+ * plain Gregorian / ASCII, are handed to a new SimpleDateFormat.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class IsoDateFormat
+{
+    static final String CALENDAR_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final int DATE = 0;
+    private static final int DATE_TIME = 1;
+    private static final int CALENDAR = 2;
+    private static final IsoDateFormat calendarFormat = new IsoDateFormat(CALENDAR_FORMAT, CALENDAR, null, null);
+    private static volatile Object[] lastLocale = new Object[] {null, Boolean.FALSE};
+
+    private final String pattern;
+    private final int kind;
+    private final TimeZone zone;
+    private final Locale locale;    // null = default FORMAT Locale at the time of use
+
+    private IsoDateFormat(String pattern, int kind, TimeZone zone, Locale locale)
+    {
+        this.pattern = pattern;
+        this.kind = kind;
+        this.zone = zone;
+        this.locale = locale;
+    }
+
+    /**
+     * @param pattern SimpleDateFormat pattern (as passed with JsonWriter.DATE_FORMAT)
+     * @param zone TimeZone the dates are written in
+     * @return IsoDateFormat producing the same text as new SimpleDateFormat(pattern, Locale.ENGLISH) in
+     * the given zone, or null if the pattern is not one of the ISO patterns.
+     */
+    static IsoDateFormat forPattern(String pattern, TimeZone zone)
+    {
+        if (JsonWriter.ISO_DATE_FORMAT.equals(pattern))
+        {
+            return new IsoDateFormat(pattern, DATE, zone, Locale.ENGLISH);
+        }
+        if (JsonWriter.ISO_DATE_TIME_FORMAT.equals(pattern))
+        {
+            return new IsoDateFormat(pattern, DATE_TIME, zone, Locale.ENGLISH);
+        }
+        return null;
+    }
+
+    /**
+     * Write the date in this format's TimeZone.
+     */
+    void format(Date date, Writer out) throws IOException
+    {
+        format(date.getTime(), zone, out);
+    }
+
+    /**
+     * Write the Calendar's instant, in the Calendar's TimeZone, as "yyyy-MM-dd'T'HH:mm:ss.SSSZ".
+     */
+    static void formatCalendar(Calendar cal, Writer out) throws IOException
+    {
+        calendarFormat.format(cal.getTimeInMillis(), cal.getTimeZone(), out);
+    }
+
+    /**
+     * Parse text written by formatCalendar().
+     * @throws ParseException if the text is not in "yyyy-MM-dd'T'HH:mm:ss.SSSZ" form.
+     */
+    static Date parseCalendar(String text) throws ParseException
+    {
+        Date date = calendarFormat.parseFixed(text);
+        return date != null ? date : new SimpleDateFormat(CALENDAR_FORMAT).parse(text);
+    }
+
+    private void format(long millis, TimeZone tz, Writer out) throws IOException
+    {
+        int offset = tz.getOffset(millis);
+        long local = millis + offset;
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int msOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+        // Civil date from days since 1970-01-01 (proleptic Gregorian)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 1583 || year > 9999 || !isPlainLocale())
+        {
+            SimpleDateFormat fallback = locale == null ? new SimpleDateFormat(pattern) : new SimpleDateFormat(pattern, locale);
+            fallback.setTimeZone(tz);
+            out.write(fallback.format(new Date(millis)));
+            return;
+        }
+
+        writeDigits((int) year / 100, out);
+        writeDigits((int) year % 100, out);
+        out.write('-');
+        writeDigits(month, out);
+        out.write('-');
+        writeDigits(day, out);
+        if (kind == DATE)
+        {
+            return;
+        }
+
+        out.write('T');
+        writeDigits(msOfDay / 3600000, out);
+        out.write(':');
+        writeDigits(msOfDay / 60000 % 60, out);
+        out.write(':');
+        writeDigits(msOfDay / 1000 % 60, out);
+        if (kind == DATE_TIME)
+        {
+            return;
+        }
+
+        int ms = msOfDay % 1000;
+        out.write('.');
+        out.write('0' + ms / 100);
+        writeDigits(ms % 100, out);
+        int minutes = offset / 60000;
+        if (minutes < 0)
+        {
+            out.write('-');
+            minutes = -minutes;
+        }
+        else
+        {
+            out.write('+');
+        }
+        writeDigits(minutes / 60, out);
+        writeDigits(minutes % 60, out);
+    }
+
+    /**
+     * @return Date for "yyyy-MM-dd'T'HH:mm:ss.SSS(+|-)hhmm" text, or null when the text is not exactly in that
+     * form (or needs SimpleDateFormat's Julian / non-Gregorian handling).
+     */
+    private Date parseFixed(String s)
+    {
+        if (s.length() != 28 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T' || s.charAt(13) != ':' ||
+                s.charAt(16) != ':' || s.charAt(19) != '.' || (s.charAt(23) != '+' && s.charAt(23) != '-'))
+        {
+            return null;
+        }
+        int year = number(s, 0, 4);
+        int month = number(s, 5, 7);
+        int day = number(s, 8, 10);
+        int hour = number(s, 11, 13);
+        int minute = number(s, 14, 16);
+        int second = number(s, 17, 19);
+        int ms = number(s, 20, 23);
+        int offsetHours = number(s, 24, 26);
+        int offsetMinutes = number(s, 26, 28);
+        if ((year | month | day | hour | minute | second | ms | offsetHours | offsetMinutes) < 0 ||
+                year < 1583 || month < 1 || month > 12 || offsetHours > 23 || offsetMinutes > 59 || !isPlainLocale())
+        {
+            return null;
+        }
+
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long days = era * 146097L + yoe * 365 + yoe / 4 - yoe / 100 + doy - 719468L;
+        long offset = (offsetHours * 60 + offsetMinutes) * 60000L;
+        if (s.charAt(23) == '-')
+        {
+            offset = -offset;
+        }
+        return new Date(days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L + ms - offset);
+    }
+
+    /**
+     * @return true if SimpleDateFormat in this format's Locale uses a Gregorian Calendar and ASCII digits.
+     */
+    private boolean isPlainLocale()
+    {
+        if (locale != null)
+        {
+            return true;    // Locale.ENGLISH
+        }
+        Locale current = Locale.getDefault(Locale.Category.FORMAT);
+        Object[] last = lastLocale;
+        if (current.equals(last[0]))
+        {
+            return (Boolean) last[1];
+        }
+        boolean plain = isGregorian(current) && DecimalFormatSymbols.getInstance(current).getZeroDigit() == '0';
+        lastLocale = new Object[] {current, plain};
+        return plain;
+    }
+
+    /**
+     * @return true if Calendar.getInstance() returns a GregorianCalendar for the given Locale.
+     */
+    static boolean isGregorian(Locale locale)
+    {
+        String type = locale.getUnicodeLocaleType("ca");
+        if (type != null)
+        {
+            return "gregory".equals(type) || "iso8601".equals(type);
+        }
+        String lang = locale.getLanguage();
+        String country = locale.getCountry();
+        return !("th".equals(lang) && "TH".equals(country)) && !("ja".equals(lang) && "JP".equals(country) && "JP".equals(locale.getVariant()));
+    }
+
+    private static void writeDigits(int value, Writer out) throws IOException
+    {
+        out.write('0' + value / 10);
+        out.write('0' + value % 10);
+    }
+
+    /**
+     * @return value of the ASCII digits in [start, end), or -1 if any character is not a digit.
+     */
+    private static int number(String s, int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+}
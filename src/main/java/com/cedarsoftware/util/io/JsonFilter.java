@@ -0,0 +1,806 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming transform that drops or masks values in JSON on its way from an input to an output, for logging and
+ * data egress (passwords, card numbers, e-mail addresses, ...).  Rules select a value by:
+ * <ul>
+ *     <li>field name, at any depth - "password"</li>
+ *     <li>JSON Pointer (RFC 6901) from the root - "/customer/email", "/cards/0/pan"</li>
+ *     <li>@type - dropType("com.acme.Secret") selects every object whose @type (or @t) is that type.  The @type
+ *     must come first, or right after the @id, the way JsonWriter writes it.  A {"@ref":n} to a dropped or masked
+ *     object is dropped or masked the same way (a @ref ahead of its @id, which JsonWriter never writes, is not)</li>
+ * </ul>
+ * A dropped field or array element is removed, with its comma.  A masked value is replaced by the mask JSON
+ * (by default "****").  Everything else - including whitespace, escapes and number text - is copied exactly as it
+ * was read.  Nothing is parsed into objects: only the text of the field currently being decided is held back (plus
+ * the @id of each object removed by type), so memory use does not grow with the size of the input.  A field dropped
+ * by name or JSON Pointer is not looked into, so a @ref elsewhere to an object inside it is left as is (it carries
+ * no data, but no longer resolves).
+ * <pre>
+ *     JsonFilter filter = new JsonFilter().drop("password", "/session/token").mask("pan").dropType("com.acme.Secret");
+ *     filter.filter(request.getInputStream(), forwarded.getOutputStream());
+ * </pre>
+ * The structure of the input is checked as it is copied (a malformed document raises a JsonIoException with
+ * the line, column and snippet), but the text of dropped or masked values is only scanned for its extent.
+ * Configure the rules first, after that a JsonFilter may be used by any number of threads at the same time.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public final class JsonFilter
+{
+    private static final String DEFAULT_MASK = "\"****\"";
+
+    // rule -> replacement JSON, null to drop
+    private final Map<String, String> names = new HashMap<>();
+    private final Map<String, String> pointers = new HashMap<>();
+    private final Map<String, String> types = new HashMap<>();
+    private int pointerDepth = 0;       // most segments in a JSON Pointer rule
+
+    /**
+     * Remove the selected fields (and array elements, for JSON Pointers).
+     * @param rules String field names, or JSON Pointers (starting with '/').
+     * @return this JsonFilter
+     */
+    public JsonFilter drop(String... rules)
+    {
+        for (String rule : rules)
+        {
+            addRule(rule, null);
+        }
+        return this;
+    }
+
+    /**
+     * Replace the selected values with "****".
+     * @param rules String field names, or JSON Pointers (starting with '/').
+     * @return this JsonFilter
+     */
+    public JsonFilter mask(String... rules)
+    {
+        for (String rule : rules)
+        {
+            addRule(rule, DEFAULT_MASK);
+        }
+        return this;
+    }
+
+    /**
+     * Replace the selected values with the given JSON.
+     * @param rule String field name, or JSON Pointer (starting with '/').
+     * @param replacement String JSON value written instead, e.g. "null" or "\"[redacted]\"".
+     * @return this JsonFilter
+     */
+    public JsonFilter mask(String rule, String replacement)
+    {
+        addRule(rule, RawJson.of(replacement).validate().toString());
+        return this;
+    }
+
+    /**
+     * Remove objects with the given @type.  A dropped root value is written as null.
+     * @param typeNames String @type values (class names, or the aliases written with TYPE_NAME_MAP).
+     * @return this JsonFilter
+     */
+    public JsonFilter dropType(String... typeNames)
+    {
+        for (String type : typeNames)
+        {
+            types.put(type, null);
+        }
+        return this;
+    }
+
+    /**
+     * Replace objects with the given @type by "****".
+     * @param typeNames String @type values (class names, or the aliases written with TYPE_NAME_MAP).
+     * @return this JsonFilter
+     */
+    public JsonFilter maskType(String... typeNames)
+    {
+        for (String type : typeNames)
+        {
+            types.put(type, DEFAULT_MASK);
+        }
+        return this;
+    }
+
+    private void addRule(String rule, String replacement)
+    {
+        if (rule == null || rule.isEmpty())
+        {
+            throw new JsonIoException("JsonFilter rule must be a field name or a JSON Pointer, found: " + (rule == null ? null : "\"\""));
+        }
+        if (rule.charAt(0) == '/')
+        {
+            pointers.put(rule, replacement);
+            int segments = 0;
+            for (int i = 0; i < rule.length(); i++)
+            {
+                if (rule.charAt(i) == '/')
+                {
+                    segments++;
+                }
+            }
+            pointerDepth = Math.max(pointerDepth, segments);
+        }
+        else
+        {
+            names.put(rule, replacement);
+        }
+    }
+
+    /**
+     * Copy the JSON value read from in to out, dropping and masking the selected values.  Neither stream is
+     * closed, out is flushed.
+     * @param in InputStream of UTF-8 JSON holding one JSON value.
+     * @param out OutputStream receiving the filtered UTF-8 JSON.
+     * @throws JsonIoException if the input is not well-formed JSON.
+     */
+    public void filter(InputStream in, OutputStream out)
+    {
+        final BufferRecycler.Buffers input = BufferRecycler.DEFAULT.acquire();
+        final BufferRecycler.Buffers output = BufferRecycler.DEFAULT.acquire();
+        try
+        {
+            new Copier(new FastPushbackInput(in, input), new NioOutput(out, output.bytes()).writer()).copy();
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to filter JSON", e);
+        }
+        finally
+        {
+            BufferRecycler.DEFAULT.release(input);
+            BufferRecycler.DEFAULT.release(output);
+        }
+    }
+
+    /**
+     * @param json String holding one JSON value.
+     * @return String json with the selected values dropped and masked.
+     * @throws JsonIoException if json is not well-formed JSON.
+     */
+    public String filter(String json)
+    {
+        final BufferRecycler.Buffers buffers = BufferRecycler.DEFAULT.acquire();
+        try
+        {
+            StringWriter output = new StringWriter(json.length());
+            new Copier(new FastPushbackInput(json, buffers), output).copy();
+            return output.toString();
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to filter JSON", e);
+        }
+        finally
+        {
+            BufferRecycler.DEFAULT.release(buffers);
+        }
+    }
+
+    /**
+     * State of one filter() call.  Text is written straight to the output, except while a field or element is
+     * being decided: then it is held in pending, from which a dropped field is cut again.  Holds nest (a field
+     * whose value may turn out to be an object of a dropped @type, and that object's first field), and pending
+     * is written out when the last one is released.
+     */
+    private final class Copier
+    {
+        private final FastPushbackReader in;
+        private final Writer out;
+        private final StringBuilder pending = new StringBuilder();
+        private final StringBuilder token = new StringBuilder();
+        private final StringBuilder path = new StringBuilder();
+        private final Map<String, String> removedIds = new HashMap<>();    // @id -> @type, of objects removed by type
+        private int holds = 0;
+
+        private Copier(FastPushbackReader in, Writer out)
+        {
+            this.in = in;
+            this.out = out;
+        }
+
+        private void copy() throws IOException
+        {
+            int c = ws();
+            if (c == -1)
+            {
+                error("EOF reached, no JSON value found");
+            }
+            final int mark = hold();
+            final String type = copyValue(c, 0);
+            if (type != null)
+            {
+                final String replacement = types.get(type);
+                pending.setLength(mark);
+                emit(replacement == null ? "null" : replacement);
+                release();
+            }
+            if (ws() != -1)
+            {
+                error("Unexpected content after the end of the JSON value");
+            }
+            out.flush();
+        }
+
+        /**
+         * Copy one value.  The caller holds the output, and the hold is released here unless the value is an
+         * object with a selected @type.
+         * @return the selected @type (the rest of the object has then been skipped), or null.
+         */
+        private String copyValue(int c, int depth) throws IOException
+        {
+            if (depth >= JsonReader.DEFAULT_MAX_PARSE_DEPTH)
+            {
+                error("Maximum parsing depth exceeded");
+            }
+            if (c == '{')
+            {
+                return copyObject(depth + 1);
+            }
+            release();
+            if (c == '[')
+            {
+                copyArray(depth + 1);
+            }
+            else if (c == '"')
+            {
+                copyString();
+            }
+            else
+            {
+                copyScalar(c);
+            }
+            return null;
+        }
+
+        private String copyObject(int depth) throws IOException
+        {
+            emit('{');
+            boolean typeCheck = !types.isEmpty();
+            if (!typeCheck)
+            {
+                release();
+            }
+            boolean written = false;
+            boolean first = true;
+            String id = null;
+            int commaAt = -1;
+            int mark = hold();
+            int c = ws();
+            if (c == '}')
+            {
+                release();
+                if (typeCheck)
+                {
+                    release();
+                }
+                emit('}');
+                return null;
+            }
+
+            while (true)
+            {
+                if (c != '"')
+                {
+                    error("Expected quote before field name");
+                }
+                final String name = copyString();
+                if (ws() != ':')
+                {
+                    error("Expected ':' between field name and value");
+                }
+                emit(':');
+                c = ws();
+                final int pathLength = pushPath(name, depth);
+                final String pointer = pathLength < 0 ? null : path.toString();
+                final boolean byPointer = pointer != null && pointers.containsKey(pointer);
+                final boolean ruled = byPointer || names.containsKey(name);
+                final String replacement = byPointer ? pointers.get(pointer) : ruled ? names.get(name) : null;
+
+                final boolean isNumber = c == '-' || (c >= '0' && c <= '9');
+                final boolean isId = typeCheck && first && !ruled && isNumber && ("@id".equals(name) || "@i".equals(name));
+                final boolean isRef = typeCheck && first && !ruled && isNumber && ("@ref".equals(name) || "@r".equals(name));
+                if (typeCheck && !isId && !isRef && !(c == '"' && ("@type".equals(name) || "@t".equals(name))))
+                {   // the @type comes first (after the @id), or not at all
+                    typeCheck = false;
+                    release();
+                }
+
+                if (isId || isRef)
+                {   // still held: the object may yet be removed
+                    final int valueStart = pending.length();
+                    copyScalar(c);
+                    final String number = pending.substring(valueStart).trim();
+                    final String type = isRef ? removedIds.get(number) : null;
+                    if (type != null)
+                    {   // reference to an object removed by type
+                        skipRest('}');
+                        popPath(pathLength);
+                        pending.setLength(mark);
+                        holds--;
+                        return type;
+                    }
+                    if (isId)
+                    {
+                        id = number;
+                    }
+                    else
+                    {
+                        typeCheck = false;
+                        release();
+                    }
+                    written = true;
+                    release();
+                }
+                else if (ruled && replacement == null && !typeCheck)
+                {
+                    skipValue(c);
+                    pending.setLength(mark);
+                    release();
+                }
+                else
+                {
+                    if (!written && commaAt >= 0)
+                    {
+                        pending.deleteCharAt(commaAt);
+                    }
+                    final int valueStart = pending.length();
+                    if (typeCheck)
+                    {
+                        final String type = copyString();
+                        if (types.containsKey(type))
+                        {
+                            if (id != null)
+                            {
+                                removedIds.put(id, type);
+                            }
+                            skipRest('}');
+                            popPath(pathLength);
+                            pending.setLength(mark);
+                            holds--;
+                            return type;
+                        }
+                        typeCheck = false;
+                        release();
+                        if (ruled)
+                        {   // rule for the @type field itself
+                            pending.setLength(replacement == null ? mark : valueStart);
+                            emit(replacement == null ? "" : replacement);
+                        }
+                        written |= !ruled || replacement != null;
+                        release();
+                    }
+                    else if (ruled)
+                    {
+                        emit(replacement);
+                        skipValue(c);
+                        written = true;
+                        release();
+                    }
+                    else
+                    {
+                        written |= copyMember(c, depth, mark, valueStart);
+                    }
+                }
+                popPath(pathLength);
+                first = isId;
+
+                mark = hold();
+                c = ws();
+                if (c == '}')
+                {
+                    release();
+                    emit('}');
+                    return null;
+                }
+                if (c != ',')
+                {
+                    error("Object not ended with '}'");
+                }
+                commaAt = pending.length();
+                emit(',');
+                c = ws();
+            }
+        }
+
+        private void copyArray(int depth) throws IOException
+        {
+            emit('[');
+            boolean written = false;
+            int commaAt = -1;
+            int mark = hold();
+            int c = ws();
+            if (c == ']')
+            {
+                release();
+                emit(']');
+                return;
+            }
+
+            for (int index = 0; ; index++)
+            {
+                final int pathLength = pushPath(index, depth);
+                final String pointer = pathLength < 0 ? null : path.toString();
+                final boolean ruled = pointer != null && pointers.containsKey(pointer);
+                final String replacement = ruled ? pointers.get(pointer) : null;
+                if (ruled && replacement == null)
+                {
+                    skipValue(c);
+                    pending.setLength(mark);
+                    release();
+                }
+                else
+                {
+                    if (!written && commaAt >= 0)
+                    {
+                        pending.deleteCharAt(commaAt);
+                    }
+                    if (ruled)
+                    {
+                        emit(replacement);
+                        skipValue(c);
+                        written = true;
+                        release();
+                    }
+                    else
+                    {
+                        written |= copyMember(c, depth, mark, pending.length());
+                    }
+                }
+                popPath(pathLength);
+
+                mark = hold();
+                c = ws();
+                if (c == ']')
+                {
+                    release();
+                    emit(']');
+                    return;
+                }
+                if (c != ',')
+                {
+                    error("Expected ',' or ']' inside array");
+                }
+                commaAt = pending.length();
+                emit(',');
+                c = ws();
+            }
+        }
+
+        /**
+         * Copy a field value or array element that no rule selected by name or path, unless it turns out to be
+         * an object with a selected @type.  Releases the hold on the member.
+         * @return true if something was written for the member.
+         */
+        private boolean copyMember(int c, int depth, int mark, int valueStart) throws IOException
+        {
+            final String type = copyValue(c, depth);
+            if (type == null)
+            {
+                return true;
+            }
+            final String replacement = types.get(type);
+            pending.setLength(replacement == null ? mark : valueStart);
+            if (replacement != null)
+            {
+                emit(replacement);
+            }
+            release();
+            return replacement != null;
+        }
+
+        /**
+         * @return length of path before the segment was added, or -1 when no JSON Pointer rule is that deep.
+         */
+        private int pushPath(String name, int depth)
+        {
+            if (depth > pointerDepth)
+            {
+                return -1;
+            }
+            final int length = path.length();
+            path.append('/');
+            for (int i = 0; i < name.length(); i++)
+            {
+                final char ch = name.charAt(i);
+                if (ch == '~')
+                {
+                    path.append("~0");
+                }
+                else if (ch == '/')
+                {
+                    path.append("~1");
+                }
+                else
+                {
+                    path.append(ch);
+                }
+            }
+            return length;
+        }
+
+        private int pushPath(int index, int depth)
+        {
+            if (depth > pointerDepth)
+            {
+                return -1;
+            }
+            final int length = path.length();
+            path.append('/').append(index);
+            return length;
+        }
+
+        private void popPath(int length)
+        {
+            if (length >= 0)
+            {
+                path.setLength(length);
+            }
+        }
+
+        /**
+         * Copy a String, its opening quote already read, as is.
+         * @return the String's value.
+         */
+        private String copyString() throws IOException
+        {
+            final StringBuilder text = token;
+            text.setLength(0);
+            emit('"');
+            boolean escaped = false;
+            while (true)
+            {
+                int c = in.read();
+                if (c == '"')
+                {
+                    emit(c);
+                    return escaped ? unescape(text) : text.toString();
+                }
+                if (c == -1)
+                {
+                    error("EOF reached while reading JSON string");
+                }
+                emit(c);
+                text.append((char) c);
+                if (c == '\\')
+                {
+                    escaped = true;
+                    c = in.read();
+                    if (c == -1)
+                    {
+                        error("EOF reached while reading JSON string");
+                    }
+                    emit(c);
+                    text.append((char) c);
+                }
+            }
+        }
+
+        private String unescape(StringBuilder text)
+        {
+            final StringBuilder s = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++)
+            {
+                char ch = text.charAt(i);
+                if (ch != '\\')
+                {
+                    s.append(ch);
+                    continue;
+                }
+                ch = text.charAt(++i);
+                switch (ch)
+                {
+                    case 'b':
+                        s.append('\b');
+                        break;
+                    case 'f':
+                        s.append('\f');
+                        break;
+                    case 'n':
+                        s.append('\n');
+                        break;
+                    case 'r':
+                        s.append('\r');
+                        break;
+                    case 't':
+                        s.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= text.length())
+                        {
+                            error("Expected hexadecimal digits in \\u escape");
+                        }
+                        try
+                        {
+                            s.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            error("Expected hexadecimal digits in \\u escape");
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        s.append(ch);
+                }
+            }
+            return s.toString();
+        }
+
+        /**
+         * Copy a number, true, false or null (up to the next delimiter, the text is not checked further).
+         */
+        private void copyScalar(int c) throws IOException
+        {
+            if ("-0123456789tfnNI".indexOf(c) < 0)
+            {
+                error(c == -1 ? "EOF reached prematurely" : "Unknown JSON value type");
+            }
+            do
+            {
+                emit(c);
+                c = in.read();
+            } while (!isDelimiter(c));
+            in.unread(c);
+        }
+
+        private void skipValue(int c) throws IOException
+        {
+            if (c == '{' || c == '[')
+            {
+                skipRest(c == '{' ? '}' : ']');
+            }
+            else if (c == '"')
+            {
+                skipString();
+            }
+            else
+            {
+                if (c == -1)
+                {
+                    error("EOF reached prematurely");
+                }
+                while (!isDelimiter(c))
+                {
+                    c = in.read();
+                }
+                in.unread(c);
+            }
+        }
+
+        /**
+         * Skip the rest of an object or array, up to and including its closing bracket.
+         */
+        private void skipRest(int bracket) throws IOException
+        {
+            int level = 1;
+            while (level > 0)
+            {
+                final int c = in.read();
+                switch (c)
+                {
+                    case '"':
+                        skipString();
+                        break;
+                    case '{':
+                    case '[':
+                        level++;
+                        break;
+                    case '}':
+                    case ']':
+                        level--;
+                        break;
+                    case -1:
+                        error("EOF reached before the end of " + (bracket == '}' ? "an object" : "an array"));
+                }
+            }
+        }
+
+        private void skipString() throws IOException
+        {
+            while (true)
+            {
+                int c = in.read();
+                if (c == '"')
+                {
+                    return;
+                }
+                if (c == '\\')
+                {
+                    c = in.read();
+                }
+                if (c == -1)
+                {
+                    error("EOF reached while reading JSON string");
+                }
+            }
+        }
+
+        private boolean isDelimiter(int c)
+        {
+            return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == -1;
+        }
+
+        /**
+         * Copy whitespace.
+         * @return the next character after it (not copied).
+         */
+        private int ws() throws IOException
+        {
+            int c;
+            while ((c = in.read()) == ' ' || c == '\n' || c == '\r' || c == '\t')
+            {
+                emit(c);
+            }
+            return c;
+        }
+
+        private int hold()
+        {
+            holds++;
+            return pending.length();
+        }
+
+        private void release() throws IOException
+        {
+            if (--holds == 0 && pending.length() > 0)
+            {
+                out.append(pending);
+                pending.setLength(0);
+            }
+        }
+
+        private void emit(int c) throws IOException
+        {
+            if (holds > 0)
+            {
+                pending.append((char) c);
+            }
+            else
+            {
+                out.write(c);
+            }
+        }
+
+        private void emit(String s) throws IOException
+        {
+            if (holds > 0)
+            {
+                pending.append(s);
+            }
+            else
+            {
+                out.write(s);
+            }
+        }
+
+        private void error(String msg)
+        {
+            throw new JsonIoException(msg + "\nline: " + in.getLine() + ", col: " + in.getCol() + "\n" + in.getLastSnippet());
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Re-formats one JSON value token by token, for JsonWriter.formatJson(InputStream, OutputStream) and
+ * JsonWriter.minifyJson().  Strings (with their escapes), numbers and literals are copied exactly as they were
+ * read, only the whitespace between tokens changes: none at all, or the PRETTY_PRINT layout of JsonWriter.
+ * Nothing is parsed into objects, so the memory used depends only on the nesting depth, not on the size of the
+ * input.  The grammar is checked as the input is copied, and malformed input raises a JsonIoException with the
+ * line, column and snippet, the same as JsonReader (the output written up to that point is then incomplete).
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class JsonFormatter
+{
+    private static final String NEW_LINE = System.getProperty("line.separator");
+
+    private final FastPushbackReader in;
+    private final Writer out;
+    private final boolean isPrettyPrint;
+    private boolean[] objects = new boolean[32];   // per open container, true for an object, false for an array
+    private int depth = 0;
+
+    JsonFormatter(FastPushbackReader in, Writer out, boolean isPrettyPrint)
+    {
+        this.in = in;
+        this.out = out;
+        this.isPrettyPrint = isPrettyPrint;
+    }
+
+    /**
+     * Copy the JSON value from the input to the output, and flush the output.  Only whitespace may follow it.
+     */
+    void format() throws IOException
+    {
+        int c = skipWhitespaceRead();
+        if (c == -1)
+        {
+            error("EOF reached, no JSON value found");
+        }
+
+        while (true)
+        {   // c is the first character of a value
+            if (c == '{' || c == '[')
+            {
+                final boolean isObject = c == '{';
+                out.write(c);
+                c = skipWhitespaceRead();
+                if (c != (isObject ? '}' : ']'))
+                {
+                    push(isObject);
+                    newLine();
+                    c = isObject ? copyName(c) : c;
+                    continue;
+                }
+                out.write(c);
+            }
+            else if (c == '"')
+            {
+                copyString();
+            }
+            else
+            {
+                copyScalar(c);
+            }
+
+            // After a value: close containers until the next value starts, or the document ends
+            while (true)
+            {
+                if (depth == 0)
+                {
+                    if (skipWhitespaceRead() != -1)
+                    {
+                        error("Unexpected content after the end of the JSON value");
+                    }
+                    out.flush();
+                    return;
+                }
+                final boolean isObject = objects[depth - 1];
+                c = skipWhitespaceRead();
+                if (c == ',')
+                {
+                    out.write(',');
+                    newLine();
+                    c = skipWhitespaceRead();
+                    c = isObject ? copyName(c) : c;
+                    break;
+                }
+                if (c != (isObject ? '}' : ']'))
+                {
+                    error(isObject ? "Object not ended with '}'" : "Expected ',' or ']' inside array");
+                }
+                depth--;
+                newLine();
+                out.write(c);
+            }
+        }
+    }
+
+    /**
+     * Copy a field name and the ':' after it.
+     * @param c int first character of the name
+     * @return int first character of the value
+     */
+    private int copyName(int c) throws IOException
+    {
+        if (c != '"')
+        {
+            error("Expected quote before field name");
+        }
+        copyString();
+        if (skipWhitespaceRead() != ':')
+        {
+            error("Expected ':' between field name and value");
+        }
+        out.write(':');
+        return skipWhitespaceRead();
+    }
+
+    /**
+     * Copy a String, its opening quote already read, as is (escapes are checked, not decoded).
+     */
+    private void copyString() throws IOException
+    {
+        final FastPushbackReader input = in;
+        final Writer output = out;
+        output.write('"');
+        while (true)
+        {
+            int c = input.read();
+            if (c == '"')
+            {
+                output.write(c);
+                return;
+            }
+            if (c == -1)
+            {
+                error("EOF reached while reading JSON string");
+            }
+            output.write(c);
+            if (c == '\\')
+            {
+                c = input.read();
+                if (c == -1 || "\"\\/bfnrtu".indexOf(c) < 0)
+                {
+                    error("Invalid character escape sequence specified: " + (char) c);
+                }
+                output.write(c);
+                for (int i = c == 'u' ? 4 : 0; i > 0; i--)
+                {
+                    c = input.read();
+                    if (Character.digit(c, 16) < 0)
+                    {
+                        error("Expected hexadecimal digits in \\u escape");
+                    }
+                    output.write(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy a number, true, false or null (or NaN / Infinity, when JsonReader allows them).
+     */
+    private void copyScalar(int c) throws IOException
+    {
+        switch (c)
+        {
+            case 't':
+                copyLiteral("true");
+                return;
+            case 'f':
+                copyLiteral("false");
+                return;
+            case 'n':
+                copyLiteral("null");
+                return;
+            case 'N':
+                copyNonFinite("NaN");
+                return;
+            case 'I':
+                copyNonFinite("Infinity");
+                return;
+            case -1:
+                error("EOF reached prematurely");
+        }
+        if (c != '-' && (c < '0' || c > '9'))
+        {
+            error("Unknown JSON value type");
+        }
+
+        out.write(c);
+        boolean digits = c != '-';
+        while (true)
+        {
+            c = in.read();
+            if (c >= '0' && c <= '9')
+            {
+                digits = true;
+            }
+            else if (c == 'I' && !digits && JsonReader.isAllowNanAndInfinity())
+            {
+                copyLiteral("Infinity");
+                return;
+            }
+            else if (c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-')
+            {
+                break;
+            }
+            out.write(c);
+        }
+        in.unread(c);
+        if (!digits)
+        {
+            error("Invalid number, no digits found");
+        }
+    }
+
+    private void copyNonFinite(String word) throws IOException
+    {
+        if (!JsonReader.isAllowNanAndInfinity())
+        {
+            error("Unknown JSON value type");
+        }
+        copyLiteral(word);
+    }
+
+    /**
+     * Copy word, whose first character has been read.
+     */
+    private void copyLiteral(String word) throws IOException
+    {
+        for (int i = 1; i < word.length(); i++)
+        {
+            if (in.read() != word.charAt(i))
+            {
+                error("Expected token: " + word);
+            }
+        }
+        out.write(word);
+    }
+
+    private int skipWhitespaceRead() throws IOException
+    {
+        final FastPushbackReader input = in;
+        int c;
+        do
+        {
+            c = input.read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private void push(boolean isObject)
+    {
+        if (depth == objects.length)
+        {
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+        objects[depth++] = isObject;
+    }
+
+    private void newLine() throws IOException
+    {
+        if (!isPrettyPrint)
+        {
+            return;
+        }
+        out.write(NEW_LINE);
+        for (int i = 0; i < depth; i++)
+        {
+            out.write("  ");
+        }
+    }
+
+    private void error(String msg)
+    {
+        throw new JsonIoException(msg + "\nline: " + in.getLine() + ", col: " + in.getCol() + "\n" + in.getLastSnippet());
+    }
+}
@@ -0,0 +1,474 @@
+package com.cedarsoftware.util.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streaming JSON output.  Write JSON token by token - beginObject(), name(), value(), endObject(), ... -
+ * and the generator takes care of the commas, the quoting / escaping of Strings, and the indentation
+ * when PRETTY_PRINT is on.  It refuses calls that would produce malformed JSON (a value where a name
+ * is expected, a mismatched end, a second top-level value), so anything it writes is well-formed.
+ * Numbers are written straight to the output, without creating a String.<br>
+ * <br>
+ * Use it standalone to stream large documents:
+ * <pre>
+ *     JsonGenerator gen = new JsonGenerator(outputStream, args);
+ *     gen.beginArray();
+ *     for (Row row : rows)
+ *     {
+ *         gen.beginObject().name("id").value(row.getId()).name("name").value(row.getName()).endObject();
+ *     }
+ *     gen.endArray();
+ *     gen.close();
+ * </pre>
+ * or from within a custom writer, via {@link JsonWriter#getGenerator()} (or
+ * {@code JsonClassWriterEx.Support.getGenerator(args)}).  There the generator is positioned inside
+ * the object that JsonWriter opened for the custom writer (after any @type / @id), so the custom writer
+ * only writes name / value pairs.  {@link #value(Object)} hands any other object back to JsonWriter,
+ * with full @type / @id / @ref handling.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public class JsonGenerator implements Closeable, Flushable
+{
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+    /** Body of an object opened (and closed) by JsonWriter, already positioned for the first name */
+    private static final int FRAGMENT = 7;
+    private static final String NEW_LINE = System.getProperty("line.separator");
+
+    private final Writer out;
+    private final JsonWriter jsonWriter;
+    private final boolean isPrettyPrint;
+    private final boolean writeLongsAsStrings;
+    private final NumberEncoder numbers = new NumberEncoder();
+    private int[] stack = new int[32];
+    private int size = 0;
+    private int depth = 0;
+    private boolean inFragment = false;
+
+    /**
+     * @param out Writer to which the JSON is written.
+     */
+    public JsonGenerator(Writer out)
+    {
+        this(out, null);
+    }
+
+    /**
+     * @param out Writer to which the JSON is written.
+     * @param optionalArgs (optional) Map of JsonWriter options.  PRETTY_PRINT and WRITE_LONGS_AS_STRINGS
+     * are honored.
+     */
+    public JsonGenerator(Writer out, Map<String, Object> optionalArgs)
+    {
+        this(out, optionalArgs != null && JsonWriter.isTrue(optionalArgs.get(JsonWriter.PRETTY_PRINT)),
+                optionalArgs != null && JsonWriter.isTrue(optionalArgs.get(JsonWriter.WRITE_LONGS_AS_STRINGS)), null);
+        push(EMPTY_DOCUMENT);
+    }
+
+    /**
+     * @param out OutputStream to which the JSON is written (UTF-8).
+     * @param optionalArgs (optional) Map of JsonWriter options.  PRETTY_PRINT and WRITE_LONGS_AS_STRINGS
+     * are honored.
+     */
+    public JsonGenerator(OutputStream out, Map<String, Object> optionalArgs)
+    {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), optionalArgs);
+    }
+
+    /**
+     * Generator shared with custom writers by a JsonWriter.
+     */
+    JsonGenerator(Writer out, boolean isPrettyPrint, boolean writeLongsAsStrings, JsonWriter jsonWriter)
+    {
+        this.out = out;
+        this.isPrettyPrint = isPrettyPrint;
+        this.writeLongsAsStrings = writeLongsAsStrings;
+        this.jsonWriter = jsonWriter;
+    }
+
+    /**
+     * Position the generator inside an object whose '{' (and any @type / @id) JsonWriter has already
+     * written, at the given indentation depth.
+     */
+    void beginFragment(int depth)
+    {
+        size = 0;
+        this.depth = depth;
+        push(FRAGMENT);
+        inFragment = true;
+    }
+
+    /**
+     * @return true if the custom writer using this generator left every object and array it opened
+     * closed again (and no name without a value).
+     */
+    boolean endFragment()
+    {
+        inFragment = false;
+        return size == 1 && stack[0] != DANGLING_NAME;
+    }
+
+    boolean isInFragment()
+    {
+        return inFragment;
+    }
+
+    /**
+     * @return true once a complete top-level value has been written (standalone generator), or, for a
+     * generator obtained from JsonWriter, when every object and array that was begun has been ended.
+     */
+    public boolean isComplete()
+    {
+        return jsonWriter == null ? size == 1 && stack[0] == NONEMPTY_DOCUMENT : size == 1 && stack[0] != DANGLING_NAME;
+    }
+
+    public JsonGenerator beginObject() throws IOException
+    {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        depth++;
+        out.write('{');
+        return this;
+    }
+
+    public JsonGenerator endObject() throws IOException
+    {
+        int state = peek();
+        if (state == FRAGMENT || (state == NONEMPTY_OBJECT && size == 1 && jsonWriter != null))
+        {
+            throw new JsonIoException("endObject() called for the object opened by JsonWriter - JsonWriter closes it after the custom writer returns");
+        }
+        if (state == DANGLING_NAME)
+        {
+            throw new JsonIoException("endObject() called after name() - a value is expected");
+        }
+        if (state != EMPTY_OBJECT && state != NONEMPTY_OBJECT)
+        {
+            throw new JsonIoException("endObject() called without a matching beginObject()");
+        }
+        close(state == NONEMPTY_OBJECT, '}');
+        return this;
+    }
+
+    public JsonGenerator beginArray() throws IOException
+    {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        depth++;
+        out.write('[');
+        return this;
+    }
+
+    public JsonGenerator endArray() throws IOException
+    {
+        int state = peek();
+        if (state != EMPTY_ARRAY && state != NONEMPTY_ARRAY)
+        {
+            throw new JsonIoException("endArray() called without a matching beginArray()");
+        }
+        close(state == NONEMPTY_ARRAY, ']');
+        return this;
+    }
+
+    /**
+     * Write the name of the next object member.  Must be followed by exactly one value (or a nested
+     * object or array).
+     * @param name String member name, escaped as needed.
+     * @return this generator
+     */
+    public JsonGenerator name(String name) throws IOException
+    {
+        if (name == null)
+        {
+            throw new JsonIoException("name() cannot be null");
+        }
+        int state = peek();
+        if (state == NONEMPTY_OBJECT)
+        {
+            out.write(',');
+            newLine();
+        }
+        else if (state == EMPTY_OBJECT)
+        {
+            newLine();
+        }
+        else if (state != FRAGMENT)
+        {
+            throw new JsonIoException("name() is only valid inside an object, and only once per value");
+        }
+        stack[size - 1] = DANGLING_NAME;
+        JsonWriter.writeJsonUtf8String(name, out);
+        out.write(':');
+        return this;
+    }
+
+    public JsonGenerator value(String value) throws IOException
+    {
+        if (value == null)
+        {
+            return nullValue();
+        }
+        beforeValue();
+        JsonWriter.writeJsonUtf8String(value, out);
+        return this;
+    }
+
+    public JsonGenerator value(char value) throws IOException
+    {
+        beforeValue();
+        JsonWriter.writeJsonUtf8String(String.valueOf(value), out);
+        return this;
+    }
+
+    public JsonGenerator value(boolean value) throws IOException
+    {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Write an integral value.  With WRITE_LONGS_AS_STRINGS on, it is written as a quoted String.
+     * @param value long to write (int, short and byte widen to this method).
+     * @return this generator
+     */
+    public JsonGenerator value(long value) throws IOException
+    {
+        beforeValue();
+        if (writeLongsAsStrings)
+        {
+            out.write('"');
+            numbers.writeLong(value, out);
+            out.write('"');
+        }
+        else
+        {
+            numbers.writeLong(value, out);
+        }
+        return this;
+    }
+
+    /**
+     * Write a floating point value.  NaN and the infinities are written as null, unless
+     * JsonWriter.setAllowNanAndInfinity(true) has been called.
+     * @param value double to write.
+     * @return this generator
+     */
+    public JsonGenerator value(double value) throws IOException
+    {
+        beforeValue();
+        if (!JsonWriter.isAllowNanAndInfinity() && (Double.isNaN(value) || Double.isInfinite(value)))
+        {
+            out.write("null");
+        }
+        else
+        {
+            numbers.writeDouble(value, out);
+        }
+        return this;
+    }
+
+    /**
+     * Write a float value, in its (shorter) float form.  NaN and the infinities are written as null,
+     * unless JsonWriter.setAllowNanAndInfinity(true) has been called.
+     * @param value float to write.
+     * @return this generator
+     */
+    public JsonGenerator value(float value) throws IOException
+    {
+        beforeValue();
+        if (!JsonWriter.isAllowNanAndInfinity() && (Float.isNaN(value) || Float.isInfinite(value)))
+        {
+            out.write("null");
+        }
+        else
+        {
+            numbers.writeFloat(value, out);
+        }
+        return this;
+    }
+
+    /**
+     * Write any value.  Strings, Booleans, Characters, Numbers and null are written directly.  When the
+     * generator was obtained from a JsonWriter, everything else is written by that JsonWriter (with its
+     * custom writers, @type, @id and @ref handling).
+     * @param value Object to write.
+     * @return this generator
+     */
+    public JsonGenerator value(Object value) throws IOException
+    {
+        if (value == null)
+        {
+            return nullValue();
+        }
+        if (value instanceof String)
+        {
+            return value((String) value);
+        }
+        if (value instanceof Boolean)
+        {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof Character)
+        {
+            return value(((Character) value).charValue());
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof Double)
+        {
+            return value(((Double) value).doubleValue());
+        }
+        if (value instanceof Float)
+        {
+            return value(((Float) value).floatValue());
+        }
+        if (jsonWriter == null)
+        {
+            throw new JsonIoException("Unable to write " + value.getClass().getName() + " with a standalone JsonGenerator.  Use JsonWriter, or JsonWriter.getGenerator() from a custom writer.");
+        }
+        beforeValue();
+        jsonWriter.writeNested(value, depth);
+        return this;
+    }
+
+    public JsonGenerator nullValue() throws IOException
+    {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    /**
+     * Write already-formed JSON text as the next value.  The text is copied as-is (it is not checked),
+     * the generator only supplies the comma and indentation before it.
+     * @param json String JSON value (object, array, String, number, true, false or null).
+     * @return this generator
+     */
+    public JsonGenerator writeRaw(String json) throws IOException
+    {
+        beforeValue();
+        out.write(json);
+        return this;
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Flush and close the underlying output.  The JSON must be complete.
+     */
+    public void close() throws IOException
+    {
+        if (jsonWriter != null)
+        {
+            throw new JsonIoException("A JsonGenerator obtained from JsonWriter is closed by that JsonWriter");
+        }
+        boolean complete = isComplete();
+        out.close();
+        if (!complete)
+        {
+            throw new JsonIoException("Incomplete JSON document: every beginObject() / beginArray() needs a matching end, and a value is required");
+        }
+    }
+
+    private void beforeValue() throws IOException
+    {
+        switch (peek())
+        {
+            case EMPTY_DOCUMENT:
+                stack[size - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case DANGLING_NAME:
+                stack[size - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_ARRAY:
+                stack[size - 1] = NONEMPTY_ARRAY;
+                newLine();
+                break;
+            case NONEMPTY_ARRAY:
+                out.write(',');
+                newLine();
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new JsonIoException("JSON document already has its top-level value");
+            default:
+                throw new JsonIoException("name() must be called before writing a value inside an object");
+        }
+    }
+
+    private void close(boolean nonEmpty, char bracket) throws IOException
+    {
+        size--;
+        depth--;
+        if (nonEmpty)
+        {
+            newLine();
+        }
+        out.write(bracket);
+    }
+
+    private void push(int state)
+    {
+        if (size == stack.length)
+        {
+            stack = Arrays.copyOf(stack, size * 2);
+        }
+        stack[size++] = state;
+    }
+
+    private int peek()
+    {
+        if (size == 0)
+        {
+            throw new JsonIoException("JsonGenerator is not positioned within a JSON document");
+        }
+        return stack[size - 1];
+    }
+
+    private void newLine() throws IOException
+    {
+        if (!isPrettyPrint)
+        {
+            return;
+        }
+        out.write(NEW_LINE);
+        for (int i = 0; i < depth; i++)
+        {
+            out.write("  ");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.cedarsoftware.util.io;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which the {@code com.cedarsoftware.util.io.processor.CodecProcessor} annotation
+ * processor generates a {@link ClassCodec} at compile time.  The processor is opt-in: add it to the
+ * compiler's processor path (for example {@code javac -processor
+ * com.cedarsoftware.util.io.processor.CodecProcessor}, or the annotationProcessors section of the
+ * maven-compiler-plugin).  Generated codecs are registered in META-INF/services and picked up
+ * automatically the first time json-io writes or reads an object.<br>
+ * <br>
+ * Supported on top-level and static nested classes.  Inner (non-static), local and anonymous classes
+ * carry synthetic fields that only reflection can see, so they are rejected by the processor.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface JsonIoCodec
+{
+}
@@ -1,6 +1,7 @@
 package com.cedarsoftware.util.io;
 
 import java.lang.reflect.Array;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
@@ -41,6 +42,7 @@ public class JsonObject<K, V> extends LinkedHashMap<K, V>
     public static final String ID = "@id";
     public static final String REF = "@ref";
     public static final String TYPE = "@type";
+    public static final String COLUMNS = "@columns";
     static Set<String> primitives = new HashSet<>();
     static Set<String> primitiveWrappers = new HashSet<>();
 
@@ -261,6 +263,10 @@ public class JsonObject<K, V> extends LinkedHashMap<K, V>
         final byte[] bytes = (byte[]) target;
         final Object[] items = getArray();
         final int len = items.length;
+        if (isBase64(items))
+        {   // Already decoded into target when it was created
+            return;
+        }
 
         for (int i = 0; i < len; i++)
         {
@@ -268,6 +274,68 @@ public class JsonObject<K, V> extends LinkedHashMap<K, V>
         }
     }
 
+    /**
+     * @return true if @items holds the single Base64 String written for a byte[] with JsonWriter.BYTES_AS_BASE64,
+     * rather than one number per byte.
+     */
+    static boolean isBase64(Object[] items)
+    {
+        return items != null && items.length == 1 && items[0] instanceof String;
+    }
+
+    static byte[] decodeBase64(String value)
+    {
+        try
+        {
+            return Base64.getDecoder().decode(value);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new JsonIoException("Invalid Base64 byte[] value", e);
+        }
+    }
+
+    /**
+     * Expand the elements written with JsonWriter.COLUMNAR - a {"@type":..,"@columns":[field names]} header
+     * followed by one array of field values per element - back into one JsonObject per element (JsonReader.COLUMNAR).
+     * @return the expanded elements, or items itself when it does not start with a "@columns" header.
+     */
+    static Object[] expandColumns(Object[] items)
+    {
+        if (items.length == 0 || !(items[0] instanceof JsonObject) || !((JsonObject) items[0]).containsKey(COLUMNS))
+        {
+            return items;
+        }
+        final JsonObject header = (JsonObject) items[0];
+        if (!(header.get(COLUMNS) instanceof Object[]))
+        {
+            throw new JsonIoException("@columns must be an array of field names, line " + header.line + ", col " + header.col);
+        }
+        final Object[] names = (Object[]) header.get(COLUMNS);
+        final Object[] elements = new Object[items.length - 1];
+        for (int i = 0; i < elements.length; i++)
+        {
+            if (!(items[i + 1] instanceof Object[]) || ((Object[]) items[i + 1]).length != names.length)
+            {
+                throw new JsonIoException("Columnar element " + i + " does not have one value per @columns name, line " + header.line + ", col " + header.col);
+            }
+            final Object[] values = (Object[]) items[i + 1];
+            final JsonObject<String, Object> element = new JsonObject<>();
+            element.line = header.line;
+            element.col = header.col;
+            if (header.type != null)
+            {
+                element.put(TYPE, header.type);
+            }
+            for (int j = 0; j < names.length; j++)
+            {
+                element.put((String) names[j], values[j]);
+            }
+            elements[i] = element;
+        }
+        return elements;
+    }
+
     void moveCharsToMate()
     {
         Object[] items = getArray();
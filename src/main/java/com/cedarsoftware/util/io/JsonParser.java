@@ -2,9 +2,12 @@ package com.cedarsoftware.util.io;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.cedarsoftware.util.io.JsonObject.*;
 
@@ -42,7 +45,7 @@ import static com.cedarsoftware.util.io.JsonObject.*;
 class JsonParser
 {
     public static final String EMPTY_OBJECT = "~!o~";  // compared with ==
-    private static final String EMPTY_ARRAY = "~!a~";  // compared with ==
+    static final String EMPTY_ARRAY = "~!a~";  // compared with ==
     private static final int STATE_READ_START_OBJECT = 0;
     private static final int STATE_READ_FIELD = 1;
     private static final int STATE_READ_VALUE = 2;
@@ -52,12 +55,17 @@ class JsonParser
 
     private final FastPushbackReader input;
     private final Map<Long, JsonObject> objsRead;
-    private final StringBuilder strBuf = new StringBuilder(256);
-    private final StringBuilder hexBuf = new StringBuilder();
-    private final StringBuilder numBuf = new StringBuilder();
+    private final StringBuilder strBuf;
+    private final StringBuilder hexBuf;
+    private final StringBuilder numBuf;
     private final boolean useMaps;
     private final Map<String, String> typeNameMap;
     private final int maxParseDepth;
+    private final SymbolTable symbols;        // null unless JsonReader.SYMBOL_TABLE is set
+    private final boolean columnar;           // JsonReader.COLUMNAR
+    private Set<String> rawNames = null;       // RAW_JSON_FIELDS: field names (any depth)
+    private Set<String> rawPaths = null;       // ... and dotted paths from the root
+    private final List<String> path = new ArrayList<>();
 
     private int curParseDepth = 0;
 
@@ -89,6 +97,7 @@ class JsonParser
         stringCache.put(JsonObject.ITEMS, JsonObject.ITEMS);
         stringCache.put(TYPE, TYPE);
         stringCache.put(KEYS, KEYS);
+        stringCache.put(COLUMNS, COLUMNS);
         stringCache.put("0", "0");
         stringCache.put("1", "1");
         stringCache.put("2", "2");
@@ -102,12 +111,48 @@ class JsonParser
     }
 
     JsonParser(FastPushbackReader reader, Map<Long, JsonObject> objectsMap, Map<String, Object> args, int maxDepth)
+    {
+        this(reader, objectsMap, args, maxDepth, new BufferRecycler.Buffers());
+    }
+
+    JsonParser(FastPushbackReader reader, Map<Long, JsonObject> objectsMap, Map<String, Object> args, BufferRecycler.Buffers buffers)
+    {
+        this(reader, objectsMap, args, DEFAULT_MAX_PARSE_DEPTH, buffers);
+    }
+
+    JsonParser(FastPushbackReader reader, Map<Long, JsonObject> objectsMap, Map<String, Object> args, int maxDepth, BufferRecycler.Buffers buffers)
     {
         input = reader;
+        strBuf = buffers.strBuf();
+        hexBuf = buffers.hexBuf();
+        numBuf = buffers.numBuf();
         useMaps = Boolean.TRUE.equals(args.get(JsonReader.USE_MAPS));
         objsRead = objectsMap;
         typeNameMap = (Map<String, String>) args.get(JsonReader.TYPE_NAME_MAP_REVERSE);
         maxParseDepth = maxDepth;
+        symbols = Boolean.TRUE.equals(args.get(JsonReader.SYMBOL_TABLE)) ? new SymbolTable() : null;
+        columnar = Boolean.TRUE.equals(args.get(JsonReader.COLUMNAR));
+
+        Collection<String> rawFields = (Collection<String>) args.get(JsonReader.RAW_JSON_FIELDS);
+        if (rawFields != null && !rawFields.isEmpty())
+        {
+            rawNames = new HashSet<>();
+            for (String name : rawFields)
+            {
+                if (name.indexOf('.') == -1)
+                {
+                    rawNames.add(name);
+                }
+                else
+                {
+                    if (rawPaths == null)
+                    {
+                        rawPaths = new HashSet<>();
+                    }
+                    rawPaths.add(name);
+                }
+            }
+        }
     }
 
     JsonParser(FastPushbackReader reader, Map<Long, JsonObject> objectsMap, Map<String, Object> args)
@@ -160,29 +205,7 @@ class JsonParser
                             error("Expected ':' between string field and value");
                         }
 
-                        if (field.startsWith("@"))
-                        {   // Expand short-hand meta keys
-                            if (field.equals("@t"))
-                            {
-                                field = stringCache.get(TYPE);
-                            }
-                            else if (field.equals("@i"))
-                            {
-                                field = stringCache.get(ID);
-                            }
-                            else if (field.equals("@r"))
-                            {
-                                field = stringCache.get(REF);
-                            }
-                            else if (field.equals("@k"))
-                            {
-                                field = stringCache.get(KEYS);
-                            }
-                            else if (field.equals("@e"))
-                            {
-                                field = stringCache.get(ITEMS);
-                            }
-                        }
+                        field = expandMetaKey(symbols == null ? field : symbols.expand(field), columnar);
                         state = STATE_READ_VALUE;
                     }
                     else
@@ -198,7 +221,7 @@ class JsonParser
                         field = ITEMS;
                     }
 
-                    Object value = readValue(object);
+                    Object value = rawNames == null ? readValue(object) : readFieldValue(object, field);
                     if (TYPE.equals(field) && typeNameMap != null)
                     {
                         final String substitute = typeNameMap.get(value);
@@ -248,6 +271,51 @@ class JsonParser
         return object;
     }
 
+    /**
+     * @param columnar boolean true to also expand @c (JsonReader.COLUMNAR).
+     * @return the full meta key for short-hand meta keys (@t, @i, @r, @k, @e, @c), otherwise the passed in field name.
+     */
+    static String expandMetaKey(String field, boolean columnar)
+    {
+        if (field.startsWith("@"))
+        {   // Expand short-hand meta keys
+            if (field.equals("@t"))
+            {
+                field = stringCache.get(TYPE);
+            }
+            else if (field.equals("@i"))
+            {
+                field = stringCache.get(ID);
+            }
+            else if (field.equals("@r"))
+            {
+                field = stringCache.get(REF);
+            }
+            else if (field.equals("@k"))
+            {
+                field = stringCache.get(KEYS);
+            }
+            else if (field.equals("@e"))
+            {
+                field = stringCache.get(ITEMS);
+            }
+            else if (columnar && field.equals("@c"))
+            {
+                field = stringCache.get(COLUMNS);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * @return the shared instance for common Strings ("", "true", "0", meta keys, ...), otherwise the passed in String.
+     */
+    static String cachedString(String s)
+    {
+        final String translate = stringCache.get(s);
+        return translate == null ? s : translate;
+    }
+
     Object readValue(JsonObject object) throws IOException
     {
         if (curParseDepth > maxParseDepth) {
@@ -257,7 +325,7 @@ class JsonParser
         int c = skipWhitespaceRead();
         if (c == '"')
         {
-            return readString();
+            return symbols == null ? readString() : symbols.expand(readString());
         }
         else if (c >= '0' && c <= '9' || c == '-' || c == 'N' || c == 'I')
         {
@@ -292,6 +360,120 @@ class JsonParser
         return error("Unknown JSON value type");
     }
 
+    /**
+     * RAW_JSON_FIELDS: read the value of field - as RawJson if the field is listed, otherwise parsed.  Tracks the
+     * path of field names from the root (meta keys and array indices are not part of it).
+     */
+    private Object readFieldValue(JsonObject object, String field) throws IOException
+    {
+        if (rawPaths == null || field.startsWith("@"))
+        {
+            return rawNames.contains(field) ? readRaw() : readValue(object);
+        }
+
+        path.add(field);
+        try
+        {
+            if (rawNames.contains(field))
+            {
+                return readRaw();
+            }
+            StringBuilder dotted = new StringBuilder();
+            for (String name : path)
+            {
+                if (dotted.length() > 0)
+                {
+                    dotted.append('.');
+                }
+                dotted.append(name);
+            }
+            return rawPaths.contains(dotted.toString()) ? readRaw() : readValue(object);
+        }
+        finally
+        {
+            path.remove(path.size() - 1);
+        }
+    }
+
+    /**
+     * Copy the text of the next JSON value (object, array, string, number, true, false, null) into a RawJson,
+     * checking only that brackets and quotes balance.
+     */
+    private RawJson readRaw() throws IOException
+    {
+        final FastPushbackReader in = input;
+        final StringBuilder raw = new StringBuilder();
+        int nesting = 0;
+        boolean inString = false;
+        int c = skipWhitespaceRead();
+        while (true)
+        {
+            if (c == -1)
+            {
+                error("EOF reached while reading raw JSON value");
+            }
+            if (inString)
+            {
+                raw.append((char) c);
+                if (c == '\\')
+                {
+                    c = in.read();
+                    if (c == -1)
+                    {
+                        error("EOF reached while reading raw JSON value");
+                    }
+                    raw.append((char) c);
+                }
+                else if (c == '"')
+                {
+                    inString = false;
+                    if (nesting == 0)
+                    {
+                        break;
+                    }
+                }
+            }
+            else if (c == '"')
+            {
+                inString = true;
+                raw.append('"');
+            }
+            else if (c == '{' || c == '[')
+            {
+                nesting++;
+                raw.append((char) c);
+            }
+            else if (c == '}' || c == ']')
+            {
+                if (nesting == 0)
+                {   // End of the enclosing object or array, after a number / true / false / null
+                    in.unread(c);
+                    break;
+                }
+                raw.append((char) c);
+                if (--nesting == 0)
+                {
+                    break;
+                }
+            }
+            else if (nesting == 0 && (c == ',' || c == ' ' || c == '\n' || c == '\r' || c == '\t'))
+            {
+                in.unread(c);
+                break;
+            }
+            else
+            {
+                raw.append((char) c);
+            }
+            c = in.read();
+        }
+        if (raw.length() == 0)
+        {
+            error("Expected a JSON value");
+        }
+        return RawJson.of(raw.toString());
+    }
+
     /**
      * Read a JSON array
      */
@@ -320,7 +502,7 @@ class JsonParser
         }
 
         --curParseDepth;
-        return array.toArray();
+        return columnar ? JsonObject.expandColumns(array.toArray()) : array.toArray();
     }
 
     /**
@@ -546,9 +728,7 @@ class JsonParser
             }
         }
 
-        final String s = str.toString();
-        final String translate =  stringCache.get(s);
-        return translate == null ? s : translate;
+        return cachedString(str.toString());
     }
 
     /**
@@ -558,7 +738,7 @@ class JsonParser
      * @return int representing the next non-whitespace character in the stream.
      * @throws IOException for stream errors or parsing errors.
      */
-    private int skipWhitespaceRead() throws IOException
+    int skipWhitespaceRead() throws IOException
     {
         FastPushbackReader in = input;
         int c;
@@ -3,6 +3,7 @@ package com.cedarsoftware.util.io;
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.*;
@@ -77,6 +78,22 @@ public class JsonReader implements Closeable
     public static final String MISSING_FIELD_HANDLER = "MISSING_FIELD_HANDLER";
     /** If set, use the specified ClassLoader */
     public static final String CLASSLOADER = "CLASSLOADER";
+    /** If set (int), a class is read reflectively this many times, then through a specialized per-class plan */
+    public static final String SPECIALIZE_AFTER = "SPECIALIZE_AFTER";
+    /** If set, the InputStream (or byte[]) holds the binary form written with JsonWriter.BINARY (see BinaryJson) */
+    public static final String BINARY = "BINARY";
+    /** If set (BufferRecycler), where the read buffers come from and are returned to on close().  Default is a shared pool */
+    public static final String BUFFER_RECYCLER = "BUFFER_RECYCLER";
+    /** If set (Collection of field names, or dotted field paths from the root), those values are read as RawJson, unparsed */
+    public static final String RAW_JSON_FIELDS = "RAW_JSON_FIELDS";
+    /** If set (long), validate() rejects input longer than this many characters */
+    public static final String MAX_INPUT_SIZE = "MAX_INPUT_SIZE";
+    /** If set, validate() also checks that every @ref has an object with that @id in the document */
+    public static final String VALIDATE_REFERENCES = "VALIDATE_REFERENCES";
+    /** If set, "^" aliases written with JsonWriter.SYMBOL_TABLE or SHARED_STRINGS are expanded.  Without it, names and Strings starting with '^' are read literally */
+    public static final String SYMBOL_TABLE = "SYMBOL_TABLE";
+    /** If set, arrays starting with a "@columns" header (JsonWriter.COLUMNAR) are expanded to one object per row */
+    public static final String COLUMNAR = "COLUMNAR";
     /** This map is the reverse of the TYPE_NAME_MAP (value ==> key) */
     static final String TYPE_NAME_MAP_REVERSE = "TYPE_NAME_MAP_REVERSE";
     /** Default maximum parsing depth */
@@ -89,6 +106,8 @@ public class JsonReader implements Closeable
     private static final Map<String, Factory> factory = new ConcurrentHashMap<>();
     private final Map<Long, JsonObject> objsRead = new HashMap<>();
     private final FastPushbackReader input;
+    private final BinaryJson.Parser binaryInput;
+    private BufferRecycler.Buffers buffers;
     /** _args is using ThreadLocal so that static inner classes can have access to them */
     private final Map<String, Object> args = new HashMap<>();
     private final int maxParseDepth;
@@ -124,6 +143,14 @@ public class JsonReader implements Closeable
         assignInstantiator(Map.class, mapFactory);
         assignInstantiator(SortedMap.class, mapFactory);
 
+        Factory byteBufferFactory = new ByteBufferFactory();
+        assignInstantiator(ByteBuffer.class, byteBufferFactory);
+        for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(0), ByteBuffer.allocateDirect(0)})
+        {
+            assignInstantiator(buffer.getClass(), byteBufferFactory);
+            assignInstantiator(buffer.asReadOnlyBuffer().getClass(), byteBufferFactory);
+        }
+
         Map<Class, JsonClassReaderBase> temp = new HashMap<>();
         temp.put(String.class, new Readers.StringReader());
         temp.put(Date.class, new Readers.DateReader());
@@ -141,6 +168,7 @@ public class JsonReader implements Closeable
         temp.put(StringBuilder.class, new Readers.StringBuilderReader());
         temp.put(StringBuffer.class, new Readers.StringBufferReader());
         temp.put(UUID.class, new Readers.UUIDReader());
+        temp.put(ByteBuffer.class, new Readers.ByteBufferReader());
         try
         {
             Class recordClass = Class.forName("java.lang.Record");
@@ -310,6 +338,20 @@ public class JsonReader implements Closeable
         }
     }
 
+    /**
+     * Use to create placeholder ByteBuffer instances (heap or direct, read-only or not, matching the requested
+     * class).  The ByteBufferReader then replaces it with a buffer of the same kind holding the bytes.
+     */
+    public static class ByteBufferFactory implements ClassFactory
+    {
+        public Object newInstance(Class c)
+        {
+            String name = c.getName();
+            ByteBuffer buffer = name.contains("Direct") ? ByteBuffer.allocateDirect(0) : ByteBuffer.allocate(0);
+            return name.endsWith("R") ? buffer.asReadOnlyBuffer() : buffer;
+        }
+    }
+
     /**
      * For difficult to instantiate classes, you can add your own ClassFactory
      * or ClassFactoryEx which will be called when the passed in class 'c' is
@@ -490,6 +532,39 @@ public class JsonReader implements Closeable
         return jsonToJava(inputStream, optionalArgs, DEFAULT_MAX_PARSE_DEPTH);
     }
 
+    /**
+     * Apply a delta document written by JsonWriter.objectToJsonDelta() to target, which must hold the same
+     * graph as the previous snapshot passed to it.  target is changed in place.
+     *
+     * @param target Object graph to change.
+     * @param delta String delta document.
+     * @param optionalArgs (optional) Map of extra arguments for reading the values in the delta, the same as for
+     * jsonToJava(String, Map).
+     * @return the changed graph - target, unless the delta replaces the root object itself.
+     */
+    public static Object applyDelta(Object target, String delta, Map<String, Object> optionalArgs)
+    {
+        Map<String, Object> args = optionalArgs == null ? new HashMap<String, Object>() : new HashMap<String, Object>(optionalArgs);
+        args.put(USE_MAPS, false);
+        Object ops = jsonToJava(delta, args);
+        if (!(ops instanceof Object[]))
+        {
+            throw new JsonIoException("Delta must be a JSON array of operations, found: " + (ops == null ? "null" : ops.getClass().getName()));
+        }
+        try
+        {
+            return Delta.apply(target, (Object[]) ops);
+        }
+        catch (JsonIoException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
+        {   // ClassCastException, IndexOutOfBoundsException - the delta does not fit target
+            throw new JsonIoException("Unable to apply delta, target does not match it", e);
+        }
+    }
+
     /**
      * Map args = ["USE_MAPS": true]
      * Use JsonReader.jsonToJava(String json, args)
@@ -598,6 +673,105 @@ public class JsonReader implements Closeable
         return jsonToMaps(inputStream, optionalArgs, DEFAULT_MAX_PARSE_DEPTH);
     }
 
+    /**
+     * Check that the passed in String is well-formed JSON, without reading it into objects.  It accepts what
+     * jsonToMaps() accepts (with its leniencies, such as [1,] or TRUE, and its checks of @id, @type and @items),
+     * except that the String must hold exactly one value: jsonToMaps() reads the first value and ignores what
+     * follows ("1 2", "[1]x", "{}}").  Checks made while resolving the objects (@keys / @items pairs, class names)
+     * are not made.  No JsonObjects, Strings or numbers are created, so rejecting a payload costs little more than
+     * scanning it.
+     *
+     * @param json String JSON input
+     * @param optionalArgs (optional) Map of options: MAX_INPUT_SIZE, VALIDATE_REFERENCES (every @ref must then
+     * be an integer with a matching @id, which jsonToMaps() does not check), BUFFER_RECYCLER.
+     * @param maxDepth Maximum nesting depth of objects and arrays, counted as jsonToMaps(json, args, maxDepth) does.
+     * @throws JsonIoException describing the first problem, with its line, column and a snippet of the input.
+     */
+    public static void validate(String json, Map<String, Object> optionalArgs, int maxDepth)
+    {
+        if (json == null)
+        {
+            throw new JsonIoException("JSON to validate cannot be null");
+        }
+        final BufferRecycler recycler = BufferRecycler.from(optionalArgs == null ? null : optionalArgs.get(BUFFER_RECYCLER));
+        final BufferRecycler.Buffers buffers = recycler.acquire();
+        try
+        {
+            validate(new FastPushbackInput(json, buffers), optionalArgs, maxDepth);
+        }
+        finally
+        {
+            recycler.release(buffers);
+        }
+    }
+
+    /**
+     * @see JsonReader#validate(String, Map, int)
+     */
+    public static void validate(String json, Map<String, Object> optionalArgs)
+    {
+        validate(json, optionalArgs, DEFAULT_MAX_PARSE_DEPTH);
+    }
+
+    /**
+     * Check that the passed in InputStream holds well-formed JSON, without reading it into objects.  The stream
+     * is read to its end (or the first problem), and is not closed.
+     *
+     * @param inputStream InputStream containing UTF-8 JSON input
+     * @param optionalArgs (optional) Map of options: MAX_INPUT_SIZE, VALIDATE_REFERENCES, BUFFER_RECYCLER.
+     * @param maxDepth Maximum nesting depth of objects and arrays.
+     * @throws JsonIoException describing the first problem, with its line, column and a snippet of the input.
+     * @see JsonReader#validate(String, Map, int)
+     */
+    public static void validate(InputStream inputStream, Map<String, Object> optionalArgs, int maxDepth)
+    {
+        final BufferRecycler recycler = BufferRecycler.from(optionalArgs == null ? null : optionalArgs.get(BUFFER_RECYCLER));
+        final BufferRecycler.Buffers buffers = recycler.acquire();
+        try
+        {
+            validate(new FastPushbackInput(inputStream, buffers), optionalArgs, maxDepth);
+        }
+        finally
+        {
+            recycler.release(buffers);
+        }
+    }
+
+    /**
+     * @see JsonReader#validate(InputStream, Map, int)
+     */
+    public static void validate(InputStream inputStream, Map<String, Object> optionalArgs)
+    {
+        validate(inputStream, optionalArgs, DEFAULT_MAX_PARSE_DEPTH);
+    }
+
+    private static void validate(FastPushbackReader input, Map<String, Object> optionalArgs, int maxDepth)
+    {
+        long maxChars = Long.MAX_VALUE;
+        boolean checkReferences = false;
+        if (optionalArgs != null)
+        {
+            Object size = optionalArgs.get(MAX_INPUT_SIZE);
+            if (size instanceof Number)
+            {
+                maxChars = ((Number) size).longValue();
+            }
+            else if (size != null)
+            {
+                throw new JsonIoException("MAX_INPUT_SIZE must be a number, found: " + size.getClass().getName());
+            }
+            checkReferences = Boolean.TRUE.equals(optionalArgs.get(VALIDATE_REFERENCES));
+        }
+        try
+        {
+            new JsonValidator(input, maxDepth, maxChars, checkReferences).validate();
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to read JSON to validate", e);
+        }
+    }
+
     private static Map adjustOutputMap(Object ret)
     {
         if (ret instanceof Map)
@@ -619,6 +793,7 @@ public class JsonReader implements Closeable
     public JsonReader(int maxDepth)
     {
         input = null;
+        binaryInput = null;
         getArgs().put(USE_MAPS, false);
         getArgs().put(CLASSLOADER, JsonReader.class.getClassLoader());
         maxParseDepth = maxDepth;
@@ -682,9 +857,18 @@ public class JsonReader implements Closeable
     public JsonReader(InputStream inp, Map<String, Object> optionalArgs, int maxDepth)
     {
         initializeFromArgs(optionalArgs);
-
-        input = new FastPushbackBufferedReader(new InputStreamReader(inp, StandardCharsets.UTF_8));
         maxParseDepth = maxDepth;
+        if (isBinary())
+        {
+            input = null;
+            binaryInput = new BinaryJson.Parser(new BufferedInputStream(inp), objsRead, getArgs(), maxDepth);
+        }
+        else
+        {
+            buffers = getBufferRecycler().acquire();
+            input = new FastPushbackInput(inp, buffers);
+            binaryInput = null;
+        }
     }
 
     public JsonReader(InputStream inp, Map<String, Object> optionalArgs)
@@ -695,8 +879,9 @@ public class JsonReader implements Closeable
     public JsonReader(String inp, Map<String, Object> optionalArgs, int maxDepth)
     {
         initializeFromArgs(optionalArgs);
-        byte[] bytes = inp.getBytes(StandardCharsets.UTF_8);
-        input = new FastPushbackBufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        buffers = getBufferRecycler().acquire();
+        input = new FastPushbackInput(inp, buffers);
+        binaryInput = null;
         maxParseDepth = maxDepth;
     }
 
@@ -708,8 +893,18 @@ public class JsonReader implements Closeable
     public JsonReader(byte[] inp, Map<String, Object> optionalArgs, int maxDepth)
     {
         initializeFromArgs(optionalArgs);
-        input = new FastPushbackBufferedReader(new InputStreamReader(new ByteArrayInputStream(inp), StandardCharsets.UTF_8));
         maxParseDepth = maxDepth;
+        if (isBinary())
+        {
+            input = null;
+            binaryInput = new BinaryJson.Parser(new ByteArrayInputStream(inp), objsRead, getArgs(), maxDepth);
+        }
+        else
+        {
+            buffers = getBufferRecycler().acquire();
+            input = new FastPushbackInput(new ByteArrayInputStream(inp), buffers);
+            binaryInput = null;
+        }
     }
 
     public JsonReader(byte[] inp, Map<String, Object> optionalArgs)
@@ -795,12 +990,19 @@ public class JsonReader implements Closeable
      */
     public Object readObject()
     {
-        JsonParser parser = new JsonParser(input, objsRead, getArgs());
         JsonObject<String, Object> root = new JsonObject();
         Object o;
         try
         {
-            o = parser.readValue(root);
+            if (binaryInput != null)
+            {
+                o = binaryInput.readValue();
+            }
+            else
+            {
+                JsonParser parser = new JsonParser(input, objsRead, getArgs(), maxParseDepth, buffers);
+                o = parser.readValue(root);
+            }
             if (o == JsonParser.EMPTY_OBJECT)
             {
                 return new JsonObject();
@@ -849,6 +1051,16 @@ public class JsonReader implements Closeable
         return convertParsedMapsToJava(root);
     }
 
+    private BufferRecycler getBufferRecycler()
+    {
+        return BufferRecycler.from(getArgs().get(BUFFER_RECYCLER));
+    }
+
+    private boolean isBinary()
+    {
+        return Boolean.TRUE.equals(getArgs().get(BINARY));
+    }
+
     protected boolean useMaps()
     {
         return Boolean.TRUE.equals(getArgs().get(USE_MAPS));
@@ -885,6 +1097,8 @@ public class JsonReader implements Closeable
         }
         catch (Exception e)
         {
+            // Snippet first - close() returns the buffers holding it
+            String msg = e instanceof JsonIoException ? null : getErrorMessage(e.getMessage());
             try
             {
                 close();
@@ -896,7 +1110,7 @@ public class JsonReader implements Closeable
             {
                 throw (JsonIoException)e;
             }
-            throw new JsonIoException(getErrorMessage(e.getMessage()), e);
+            throw new JsonIoException(msg, e);
         }
     }
 
@@ -938,11 +1152,23 @@ public class JsonReader implements Closeable
             {
                 input.close();
             }
+            if (binaryInput != null)
+            {
+                binaryInput.close();
+            }
         }
         catch (Exception e)
         {
             throw new JsonIoException("Unable to close input", e);
         }
+        finally
+        {
+            if (buffers != null)
+            {
+                getBufferRecycler().release(buffers);
+                buffers = null;
+            }
+        }
     }
 
     private String getErrorMessage(String msg)
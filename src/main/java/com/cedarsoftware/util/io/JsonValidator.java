@@ -0,0 +1,562 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks that the input holds exactly one well-formed JSON value, for JsonReader.validate() and
+ * RawJson.validate().  It accepts what JsonParser accepts - including its leniencies: a trailing comma in an array,
+ * true / false / null in any case after the first letter ('T' / 'F' may be upper case), the \' escape, numbers
+ * such as 01, 1. and -.5 - and checks the meta keys the way JsonParser / JsonObject use them: @id (@i) must be an
+ * integer, @type (@t) a String or null, @items (@e) an array or null.  The differences from jsonToMaps() are:
+ * <ul>
+ * <li>The input must be exactly one value.  JsonReader reads the first value and leaves the rest, so jsonToMaps()
+ * accepts "1 2", "[1]x" or "{}}" (and a lone ']', read as an empty array).</li>
+ * <li>Checks made while resolving the JsonObjects (@keys / @items of the same length, class names, ...) are
+ * not made.</li>
+ * <li>With references checked, every @ref (@r) must be an integer with a matching @id somewhere in the document.
+ * JsonParser reads any value there.</li>
+ * </ul>
+ * Nothing it reads is kept: no Strings, numbers, JsonObjects or arrays are created, and nesting is tracked
+ * iteratively (a flag per level).  Optionally it limits the input size, and checks the @refs (the only state kept
+ * in proportion to the input).  Errors carry the line, column and snippet of the offending input, the same as
+ * JsonReader.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class JsonValidator
+{
+    private static final int META_NONE = 0;
+    private static final int META_ID = 1;
+    private static final int META_REF = 2;
+    private static final int META_TYPE = 3;
+    private static final int META_ITEMS = 4;
+
+    private static final int OBJECT = 0;
+    private static final int ARRAY = 1;
+    private static final int STRING = 2;
+    private static final int INTEGER = 3;
+    private static final int DECIMAL = 4;
+    private static final int BOOLEAN = 5;
+    private static final int NULL = 6;
+
+    private static final String ESCAPES = "\"\\/'bfnrt";
+    private static final String ESCAPED = "\"\\/'\b\f\n\r\t";
+
+    private final FastPushbackReader in;
+    private final int maxDepth;
+    private final long maxChars;
+    private final Set<Long> ids;                // null unless references are checked
+    private final Map<Long, String> refs;       // @ref value -> position of its first use
+    private boolean[] objects = new boolean[32];   // per open container, true for an object, false for an array
+    private int depth = 0;
+    private long chars = 0;
+    private int meta = META_NONE;               // the field whose value is being read is @id / @ref / @type / @items
+    private final char[] name = new char[6];    // start of the field name being read, to spot the meta keys
+    private long number;                        // value of the last integer read
+
+    /**
+     * @param maxDepth int maximum nesting of objects and arrays.
+     * @param maxChars long maximum length of the input in characters, or Long.MAX_VALUE.
+     * @param checkReferences boolean true to check that every @ref has a matching @id.
+     */
+    JsonValidator(FastPushbackReader in, int maxDepth, long maxChars, boolean checkReferences)
+    {
+        this.in = in;
+        this.maxDepth = maxDepth;
+        this.maxChars = maxChars;
+        ids = checkReferences ? new HashSet<Long>() : null;
+        refs = checkReferences ? new LinkedHashMap<Long, String>() : null;
+    }
+
+    void validate() throws IOException
+    {
+        int c = skipWhitespaceRead();
+        if (c == -1)
+        {
+            error("EOF reached, no JSON value found");
+        }
+
+        while (true)
+        {   // c is the first character of a value
+            if (c == '{' || c == '[')
+            {
+                final boolean isObject = c == '{';
+                checkMeta(isObject ? OBJECT : ARRAY);
+                c = skipWhitespaceRead();
+                if (c != (isObject ? '}' : ']'))
+                {
+                    push(isObject);
+                    c = isObject ? readName(c) : c;
+                    continue;
+                }
+                if (!isObject && depth >= maxDepth)
+                {   // JsonParser counts an empty array as a level, an empty object not
+                    error("Maximum parsing depth exceeded");
+                }
+            }
+            else
+            {
+                readScalar(c);
+            }
+
+            // After a value: close containers until the next value starts, or the document ends
+            while (true)
+            {
+                if (depth == 0)
+                {
+                    if (skipWhitespaceRead() != -1)
+                    {
+                        error("Unexpected content after the end of the JSON value");
+                    }
+                    checkReferences();
+                    return;
+                }
+                final boolean isObject = objects[depth - 1];
+                c = skipWhitespaceRead();
+                if (c == ',')
+                {
+                    c = skipWhitespaceRead();
+                    if (isObject)
+                    {
+                        c = readName(c);
+                        break;
+                    }
+                    if (c != ']')
+                    {
+                        break;
+                    }
+                    // [1,] - JsonParser reads a ']' where an element should be as the end of the array
+                }
+                else if (c == -1)
+                {
+                    error(isObject ? "EOF reached before closing '}'" : "EOF reached before closing ']'");
+                }
+                else if (c != (isObject ? '}' : ']'))
+                {
+                    error(isObject ? "Object not ended with '}'" : "Expected ',' or ']' inside array");
+                }
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Read a field name and the ':' after it, noting whether it is a meta key whose value is checked.
+     * @param c int first character of the name
+     * @return int first character of the value
+     */
+    private int readName(int c) throws IOException
+    {
+        if (c != '"')
+        {
+            error("Expected quote before field name");
+        }
+        final int length = readString(true);
+        meta = META_NONE;
+        if (isName(length, "@id") || isName(length, "@i"))
+        {
+            meta = META_ID;
+        }
+        else if (isName(length, "@ref") || isName(length, "@r"))
+        {
+            meta = META_REF;
+        }
+        else if (isName(length, "@type") || isName(length, "@t"))
+        {
+            meta = META_TYPE;
+        }
+        else if (isName(length, "@items") || isName(length, "@e"))
+        {
+            meta = META_ITEMS;
+        }
+        if (skipWhitespaceRead() != ':')
+        {
+            error("Expected ':' between string field and value");
+        }
+        return skipWhitespaceRead();
+    }
+
+    private boolean isName(int length, String key)
+    {
+        if (length != key.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (name[i] != key.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a String, its opening quote already read.
+     * @param keep boolean true to keep its first (unescaped) characters in name
+     * @return int its length when kept and it fits in name, otherwise -1
+     */
+    private int readString(boolean keep) throws IOException
+    {
+        int length = keep ? 0 : -1;
+        while (true)
+        {
+            int c = read();
+            if (c == '"')
+            {
+                return length;
+            }
+            if (c == -1)
+            {
+                error("EOF reached while reading JSON string");
+            }
+            if (c == '\\')
+            {
+                c = read();
+                if (c == 'u')
+                {
+                    int value = 0;
+                    for (int i = 0; i < 4; i++)
+                    {
+                        final int digit = hexDigit(read());
+                        if (digit < 0)
+                        {
+                            error("Expected hexadecimal digits");
+                        }
+                        value = value << 4 | digit;
+                    }
+                    c = value;
+                }
+                else
+                {
+                    final int escape = c == -1 ? -1 : ESCAPES.indexOf(c);
+                    if (escape < 0)
+                    {
+                        error("Invalid character escape sequence specified: " + c);
+                    }
+                    c = ESCAPED.charAt(escape);
+                }
+            }
+            if (length >= 0)
+            {
+                if (length < name.length)
+                {
+                    name[length++] = (char) c;
+                }
+                else
+                {
+                    length = -1;
+                }
+            }
+        }
+    }
+
+    private static int hexDigit(int c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f')
+        {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F')
+        {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Read a String, number, true, false or null (or NaN / Infinity, when JsonReader allows them).
+     */
+    private void readScalar(int c) throws IOException
+    {
+        switch (c)
+        {
+            case '"':
+                readString(false);
+                checkMeta(STRING);
+                return;
+            case 't':
+            case 'T':
+                readToken("true");
+                checkMeta(BOOLEAN);
+                return;
+            case 'f':
+            case 'F':
+                readToken("false");
+                checkMeta(BOOLEAN);
+                return;
+            case 'n':
+                readToken("null");
+                checkMeta(NULL);
+                return;
+            case -1:
+                error("EOF reached prematurely");
+        }
+        if (c != '-' && c != 'N' && c != 'I' && (c < '0' || c > '9'))
+        {
+            error("Unknown JSON value type");
+        }
+        final int field = meta;
+        final boolean isInteger = readNumber(c);
+        checkMeta(isInteger ? INTEGER : DECIMAL);
+        if (isInteger && ids != null)
+        {
+            if (field == META_ID)
+            {
+                ids.add(number);
+            }
+            else if (field == META_REF && !refs.containsKey(number))
+            {
+                refs.put(number, "line: " + in.getLine() + ", col: " + in.getCol());
+            }
+        }
+    }
+
+    /**
+     * Check the value of the field being read, if it is a meta key, and clear meta.
+     * @param kind int what the value is: OBJECT, ARRAY, STRING, INTEGER, DECIMAL, BOOLEAN or NULL
+     */
+    private void checkMeta(int kind)
+    {
+        final int field = meta;
+        meta = META_NONE;
+        switch (field)
+        {
+            case META_ID:
+                if (kind != INTEGER)
+                {
+                    error("@id must be an integer");
+                }
+                break;
+            case META_REF:
+                if (ids != null && kind != INTEGER)
+                {
+                    error("@ref must be an integer (the @id of an object)");
+                }
+                break;
+            case META_TYPE:
+                if (kind != STRING && kind != NULL)
+                {
+                    error("@type must be a String");
+                }
+                break;
+            case META_ITEMS:
+                if (kind != ARRAY && kind != NULL)
+                {
+                    error("@items must be an array");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Read a number the way JsonParser does: it takes the run of digits, '+', '-', '.', 'e' and 'E', and parses
+     * it with Long.parseLong() (integers must fit in a long), or Double.parseDouble() if it has a '.', 'e' or 'E'.
+     * NaN, Infinity and -Infinity (any case after the first letter) when JsonReader allows them.
+     * @return true if it is an integer (its value is then in number).
+     */
+    private boolean readNumber(int c) throws IOException
+    {
+        if (JsonReader.isAllowNanAndInfinity() && (c == '-' || c == 'N' || c == 'I'))
+        {
+            final int first = c == '-' ? read() : c;
+            if (first == 'I')
+            {
+                readToken("infinity");
+                return false;
+            }
+            if (first == 'N')
+            {
+                readToken("nan");
+                return false;
+            }
+            if (c == '-')
+            {
+                unread(first);
+            }
+        }
+
+        final boolean negative = c == '-';
+        if (negative)
+        {
+            c = read();
+        }
+        int intDigits = 0;
+        int fracDigits = 0;
+        int expDigits = 0;
+        boolean dot = false;
+        boolean exp = false;
+        boolean expSign = false;
+        boolean valid = true;
+        long value = 0;         // accumulated negatively, to reach Long.MIN_VALUE
+        boolean overflow = false;
+        while (true)
+        {
+            if (c >= '0' && c <= '9')
+            {
+                if (exp)
+                {
+                    expDigits++;
+                }
+                else if (dot)
+                {
+                    fracDigits++;
+                }
+                else
+                {
+                    final int digit = c - '0';
+                    if (value < (Long.MIN_VALUE + digit) / 10)
+                    {
+                        overflow = true;
+                    }
+                    value = value * 10 - digit;
+                    intDigits++;
+                }
+            }
+            else if (c == '.')
+            {
+                valid &= !dot && !exp;
+                dot = true;
+            }
+            else if (c == 'e' || c == 'E')
+            {
+                valid &= !exp;
+                exp = true;
+            }
+            else if (c == '-' || c == '+')
+            {   // Only right after the 'e'
+                valid &= exp && expDigits == 0 && !expSign;
+                expSign = true;
+            }
+            else
+            {
+                break;
+            }
+            c = read();
+        }
+        unread(c);
+
+        if (dot || exp)
+        {
+            if (!valid || intDigits + fracDigits == 0 || (exp && expDigits == 0))
+            {
+                error("Invalid number");
+            }
+            return false;
+        }
+        if (!valid || intDigits == 0)
+        {
+            error("Invalid number");
+        }
+        if (overflow || (!negative && value == Long.MIN_VALUE))
+        {
+            error("Invalid number, integer too large for a long");
+        }
+        number = negative ? value : -value;
+        return true;
+    }
+    /**
+     * Read the rest of word, whose first character has been read.  Like JsonParser, the rest may be in any case.
+     */
+    private void readToken(String word) throws IOException
+    {
+        for (int i = 1; i < word.length(); i++)
+        {
+            final int c = read();
+            if (c == -1)
+            {
+                error("EOF reached while reading token: " + word);
+            }
+            if (Character.toLowerCase((char) c) != word.charAt(i))
+            {
+                error("Expected token: " + word);
+            }
+        }
+    }
+
+    private void checkReferences()
+    {
+        if (ids == null)
+        {
+            return;
+        }
+        for (Map.Entry<Long, String> ref : refs.entrySet())
+        {
+            if (!ids.contains(ref.getKey()))
+            {
+                throw new JsonIoException("Dangling @ref " + ref.getKey() + ", no object has that @id\n" + ref.getValue());
+            }
+        }
+    }
+
+    private int read() throws IOException
+    {
+        final int c = in.read();
+        if (c != -1 && ++chars > maxChars)
+        {
+            error("Input longer than the maximum of " + maxChars + " characters");
+        }
+        return c;
+    }
+
+    private void unread(int c) throws IOException
+    {
+        in.unread(c);
+        if (c != -1)
+        {
+            chars--;
+        }
+    }
+
+    private int skipWhitespaceRead() throws IOException
+    {
+        int c;
+        do
+        {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private void push(boolean isObject)
+    {
+        if (depth >= maxDepth)
+        {
+            error("Maximum parsing depth exceeded");
+        }
+        if (depth == objects.length)
+        {
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+        objects[depth++] = isObject;
+    }
+
+    private void error(String msg)
+    {
+        throw new JsonIoException(msg + "\nline: " + in.getLine() + ", col: " + in.getCol() + "\n" + in.getLastSnippet());
+    }
+}
@@ -4,14 +4,27 @@ import java.io.*;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.sql.Timestamp;
+import java.text.Format;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.BaseStream;
 
 import static com.cedarsoftware.util.io.JsonObject.ITEMS;
 
@@ -91,19 +104,70 @@ public class JsonWriter implements Closeable, Flushable
     public static final String CLASSLOADER = "CLASSLOADER";
     /** If set to true all maps are transferred to the format @keys[],@items[] regardless of the key_type */
     public static final String FORCE_MAP_FORMAT_ARRAY_KEYS_ITEMS = "FORCE_MAP_FORMAT_ARRAY_KEYS_ITEMS";
-
-    private static Map<Class, JsonClassWriterBase> BASE_WRITERS;
-    private final Map<Class, JsonClassWriterBase> writers = new HashMap<>(BASE_WRITERS);  // Add customer writers (these make common classes more succinct)
+    /** If set (int), a class is written reflectively this many times, then through a specialized per-class plan */
+    public static final String SPECIALIZE_AFTER = "SPECIALIZE_AFTER";
+    /** If set, byte[] (and ByteBuffer) contents are written as a Base64 String instead of a list of numbers */
+    public static final String BYTES_AS_BASE64 = "BYTES_AS_BASE64";
+    /** If set, the OutputStream receives json-io's compact binary form (see BinaryJson) instead of JSON text */
+    public static final String BINARY = "BINARY";
+    /** If set, @type values and field names get short per-document aliases ("^:name" on first use, then "^0", "^1", ...) */
+    public static final String SYMBOL_TABLE = "SYMBOL_TABLE";
+    /** If set, Collections and Object[]s of same-class objects are written as a "@columns" header plus one array of values per element */
+    public static final String COLUMNAR = "COLUMNAR";
+    /** If set, String values of 4+ characters are written in full once per document ("^:text"), then as "^index" */
+    public static final String SHARED_STRINGS = "SHARED_STRINGS";
+    /** If set (BufferRecycler), where the write buffers come from and are returned to on close().  Default is a shared pool */
+    public static final String BUFFER_RECYCLER = "BUFFER_RECYCLER";
+    /** If set (true, or a ForkJoinPool), large Collections, Object[]s and Maps are written in parts on a fork-join pool */
+    public static final String PARALLEL = "PARALLEL";
+    /** If set (true, or a ForkJoinPool), the reference trace runs on a fork-join pool, and @id values are numbered in document order */
+    public static final String PARALLEL_TRACE = "PARALLEL_TRACE";
+    /** If set (int), the deepest nesting of objects, arrays, Collections and Maps written.  Default is 1,000,000 */
+    public static final String MAX_DEPTH = "MAX_DEPTH";
+    /** If set (true), custom writers nested inside each other more than a few dozen deep continue on helper threads with large stacks */
+    public static final String STACK_SEGMENTS = "STACK_SEGMENTS";
+    /** If set (FragmentCache), the JSON of instances of the classes it caches is kept and re-used */
+    public static final String FRAGMENT_CACHE = "FRAGMENT_CACHE";
+    /** If set, @type is also left out of Collection elements and Map keys / values whose class the reader infers from the field's generic type */
+    public static final String MINIMAL_TYPES = "MINIMAL_TYPES";
+    /** If set (int), writing stops after this many characters - the output is cut off there, and the reference trace is skipped */
+    public static final String MAX_OUTPUT_CHARS = "MAX_OUTPUT_CHARS";
+    /** If set (int), only the first this many elements of each array, Collection and Map are written */
+    public static final String MAX_ELEMENTS = "MAX_ELEMENTS";
+    /** If set (int), objects, arrays, Collections and Maps nested deeper than this are written empty ({} or []) */
+    public static final String TRUNCATE_DEPTH = "TRUNCATE_DEPTH";
+    /** Delta: (identity Map) objects of the previous snapshot, written as null and filled in by setRef operations */
+    static final String NULL_OBJECTS = "NULL_OBJECTS";
+
+    private static volatile Map<Class, JsonClassWriterBase> BASE_WRITERS;    // Never changed once published - addWriterPermanent() replaces it
+    private Map<Class, JsonClassWriterBase> writers = BASE_WRITERS;  // Copied on first addWriter() (these make common classes more succinct)
+    private boolean ownWriters = false;
     private final Map<Class, JsonClassWriterBase> writerCache = new HashMap<>();
     private final Set<Class> notCustom = new HashSet<>();
 
-    private static final Object[] byteStrings = new Object[256];
+    static final Object[] byteStrings = new Object[256];     // char[] text of each byte value, at [value + 128]
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
     private static final String NEW_LINE = System.getProperty("line.separator");
     private static final Long ZERO = 0L;
     private static final NullClass nullWriter = new NullClass();
-    private final Map<Object, Long> objVisited = new IdentityHashMap<>();
-    private final Map<Object, Long> objsReferenced = new IdentityHashMap<>();
-    private final Writer out;
+    private static final Class[] NO_IMPLIED_TYPES = new Class[2];
+    private static final Map<Field, Class[]> impliedTypesByField = new ConcurrentHashMap<>();
+    private static final int MAX_PART_SIZE = 1024;
+    private static final int TRACE_STRIPES = 256;
+    private static final int TRACE_SPLIT_SIZE = 64;
+    private static final int DEFAULT_MAX_DEPTH = 1000000;
+    private static final int CALLER_STACK_LEVELS = 256;         // nesting written on the calling thread's stack
+    private static final int RECORDED_LEVELS = 128;             // nesting recorded at a time past that, see replay()
+    private static final int CALLER_CUSTOM_LEVELS = 64;         // STACK_SEGMENTS: nested custom writers on the calling thread's stack
+    private static final int SEGMENT_CUSTOM_LEVELS = 4096;      // ... and on each stack segment after that
+    private static final long SEGMENT_STACK_SIZE = 32L * 1024 * 1024;    // 4096 levels use a fraction of it
+    private final BufferRecycler recycler;
+    private BufferRecycler.Buffers buffers;
+    private final Map<Object, Long> objVisited;
+    private final Map<Object, Long> objsReferenced;
+    private final NumberEncoder numbers = new NumberEncoder();
+    private Writer out;
+    private Recorder recorder = null;    // deep graphs: set while a value is recorded, see writeDeep()
     private Map<String, String> typeNameMap = null;
     private boolean shortMetaKeys = false;
     private boolean neverShowType = false;
@@ -113,8 +177,33 @@ public class JsonWriter implements Closeable, Flushable
     private boolean writeLongsAsStrings = false;
     private boolean skipNullFields = false;
     private boolean forceMapFormatWithKeyArrays = false;
+    private boolean bytesAsBase64 = false;
+    private boolean columnar = false;
+    private boolean minimalTypes = false;
+    private Class[] impliedTypes = null;     // MINIMAL_TYPES: element (or key) and value class of the container about to be written
+    private int specializeAfter = -1;
+    private SymbolTable symbols = null;
+    private boolean aliasNames = false;
+    private boolean sharedStrings = false;
+    private ForkJoinPool pool = null;
+    private ForkJoinPool tracePool = null;
+    private final List<JsonGenerator> generators = new ArrayList<>();
+    private int customWriterDepth = 0;
     private long identity = 1;
     private int depth = 0;
+    private int nesting = 0;
+    private int segmentEnd = CALLER_STACK_LEVELS;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private boolean stackSegments = false;
+    private int replays = 0;
+    private int replayEnd = Integer.MAX_VALUE;
+    private FragmentCache fragments = null;
+    private int fragmentSettings = 0;
+    private int fragmentConfiguration = -1;     // see fragmentConfiguration(), -1 until needed (or changed)
+    private BudgetWriter budget = null;
+    private int maxElements = Integer.MAX_VALUE;
+    private int truncateDepth = Integer.MAX_VALUE;
+    private Map<Object, Object> nullObjects = null;
     /** _args is using ThreadLocal so that static inner classes can have access to them */
     final Map<String, Object> args = new HashMap<>();
 
@@ -143,6 +232,7 @@ public class JsonWriter implements Closeable, Flushable
         temp.put(StringBuilder.class, new Writers.StringBuilderWriter());
         temp.put(StringBuffer.class, new Writers.StringBufferWriter());
         temp.put(UUID.class, new Writers.UUIDWriter());
+        temp.put(ByteBuffer.class, new Writers.ByteBufferWriter());
         BASE_WRITERS = temp;
     }
 
@@ -232,6 +322,16 @@ public class JsonWriter implements Closeable, Flushable
             {
                 return (JsonWriter) args.get(JSON_WRITER);
             }
+
+            /**
+             * This method will return the streaming JsonGenerator for the custom writer currently running.
+             * @param args Map of settings initially passed to JsonWriter.
+             * @return JsonGenerator positioned inside the object being written.
+             */
+            public static JsonGenerator getGenerator(Map<String, Object> args)
+            {
+                return getWriter(args).getGenerator();
+            }
         }
     }
 
@@ -311,11 +411,63 @@ public class JsonWriter implements Closeable, Flushable
     {
         try
         {
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            JsonWriter writer = new JsonWriter(stream, optionalArgs);
+            if (optionalArgs != null && isTrue(optionalArgs.get(BINARY)))
+            {
+                throw new JsonIoException("BINARY output is not text, use new JsonWriter(OutputStream, args) or BinaryJson.fromJson()");
+            }
+            StringWriter text = new StringWriter();
+            JsonWriter writer = new JsonWriter(optionalArgs, null, text);
+            writer.write(item);
+            writer.close();
+            return text.toString();
+        }
+        catch (Exception e)
+        {
+            throw new JsonIoException("Unable to convert object to JSON", e);
+        }
+    }
+
+    /**
+     * Write only what changed between two snapshots of an object graph, as a delta document (a JSON array of
+     * operations, see Delta) that JsonReader.applyDelta() applies to a copy of previous.  The values in it are
+     * written with the passed in arguments.
+     *
+     * @param previous Object graph as it was (when last sent), or the JsonObject tree read from it with
+     * JsonReader.jsonToMaps() (written with its @type values).
+     * @param current Object graph as it is now.  previous and current may share unchanged instances, which are
+     * then skipped without being compared.
+     * @param optionalArgs (optional) Map of extra arguments, the same as for objectToJson(Object, Map).
+     * @return String containing the delta document.
+     */
+    public static String objectToJsonDelta(Object previous, Object current, Map<String, Object> optionalArgs)
+    {
+        Delta.Patch patch = Delta.diff(previous, current);
+        Map<String, Object> args = optionalArgs == null ? new HashMap<String, Object>() : new HashMap<>(optionalArgs);
+        args.put(NULL_OBJECTS, patch.nullObjects);
+        return objectToJson(patch.ops.toArray(), args);
+    }
+
+    /**
+     * Convert a Java Object to JSON, UTF-8 encoded into a ByteBuffer.  The output is put into the passed in
+     * buffer, starting at its position (so a header can be put in front of it).  If it does not fit, a buffer
+     * twice the size (direct or heap, the same as the passed in one) is allocated, the bytes so far are copied
+     * over, and writing continues there.  BINARY may be set, in which case the binary form is written.
+     *
+     * @param item Object to convert to JSON.
+     * @param optionalArgs (optional) Map of extra arguments, the same as for objectToJson(Object, Map).
+     * @param buffer ByteBuffer to write into, or null for a new direct buffer.
+     * @return the ByteBuffer holding the output (buffer, or the larger one that replaced it), flipped - ready for
+     * WritableByteChannel.write().
+     */
+    public static ByteBuffer objectToJson(Object item, Map<String, Object> optionalArgs, ByteBuffer buffer)
+    {
+        try
+        {
+            NioOutput output = new NioOutput(buffer);
+            JsonWriter writer = new JsonWriter(optionalArgs, output, null);
             writer.write(item);
             writer.close();
-            return new String(stream.toByteArray(), "UTF-8");
+            return output.toBuffer();
         }
         catch (Exception e)
         {
@@ -358,6 +510,76 @@ public class JsonWriter implements Closeable, Flushable
         return objectToJson(obj, args);
     }
 
+    /**
+     * Pretty-print the JSON read from in onto out, in the same layout as PRETTY_PRINT.  Unlike formatJson(String),
+     * the JSON is not read into Maps and written again: it is copied token by token (Strings and numbers exactly
+     * as they appear in the input), so memory use does not grow with the size of the input.  Neither stream is
+     * closed, out is flushed.
+     * @param in InputStream of UTF-8 JSON holding one JSON value.
+     * @param out OutputStream receiving the UTF-8 formatted JSON.
+     * @throws JsonIoException if the input is not well-formed JSON.
+     */
+    public static void formatJson(InputStream in, OutputStream out)
+    {
+        reformat(in, out, true);
+    }
+
+    /**
+     * Copy the JSON read from in onto out without any whitespace between tokens, token by token (Strings and
+     * numbers exactly as they appear in the input).  Neither stream is closed, out is flushed.
+     * @param in InputStream of UTF-8 JSON holding one JSON value.
+     * @param out OutputStream receiving the UTF-8 minified JSON.
+     * @throws JsonIoException if the input is not well-formed JSON.
+     */
+    public static void minifyJson(InputStream in, OutputStream out)
+    {
+        reformat(in, out, false);
+    }
+
+    /**
+     * @param json String holding one JSON value.
+     * @return String json without any whitespace between tokens.
+     * @throws JsonIoException if json is not well-formed JSON.
+     */
+    public static String minifyJson(String json)
+    {
+        final BufferRecycler.Buffers buffers = BufferRecycler.DEFAULT.acquire();
+        try
+        {
+            StringWriter output = new StringWriter(json.length());
+            new JsonFormatter(new FastPushbackInput(json, buffers), output, false).format();
+            return output.toString();
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to minify JSON", e);
+        }
+        finally
+        {
+            BufferRecycler.DEFAULT.release(buffers);
+        }
+    }
+
+    private static void reformat(InputStream in, OutputStream out, boolean isPrettyPrint)
+    {
+        final BufferRecycler.Buffers input = BufferRecycler.DEFAULT.acquire();
+        final BufferRecycler.Buffers output = BufferRecycler.DEFAULT.acquire();
+        try
+        {
+            Writer writer = new NioOutput(out, output.bytes()).writer();
+            new JsonFormatter(new FastPushbackInput(in, input), writer, isPrettyPrint).format();
+        }
+        catch (IOException e)
+        {
+            throw new JsonIoException("Unable to format JSON", e);
+        }
+        finally
+        {
+            BufferRecycler.DEFAULT.release(input);
+            BufferRecycler.DEFAULT.release(output);
+        }
+    }
+
     /**
      * @see JsonWriter#JsonWriter(OutputStream, Map)
      * @param out OutputStream to which the JSON will be written.
@@ -378,6 +600,38 @@ public class JsonWriter implements Closeable, Flushable
      * be turned back into a date by using 'new Date(longValue)'.
      */
     public JsonWriter(OutputStream out, Map<String, Object> optionalArgs)
+    {
+        this(optionalArgs, out, null);
+    }
+
+    /**
+     * @see JsonWriter#JsonWriter(WritableByteChannel, Map)
+     * @param channel WritableByteChannel to which the JSON will be written.
+     */
+    public JsonWriter(WritableByteChannel channel)
+    {
+        this(channel, null);
+    }
+
+    /**
+     * Write to a WritableByteChannel (SocketChannel, FileChannel, ...).  The UTF-8 bytes are encoded straight
+     * into a pooled direct ByteBuffer, which is handed to channel.write() whenever it fills up, and on flush()
+     * and close().  There is no OutputStream adapter or intermediate byte[] in between.  close() closes the
+     * channel.
+     * @param channel WritableByteChannel to which the JSON output will be written.
+     * @param optionalArgs (optional) Map of extra arguments, the same as for JsonWriter(OutputStream, Map).
+     */
+    public JsonWriter(WritableByteChannel channel, Map<String, Object> optionalArgs)
+    {
+        this(optionalArgs, new NioOutput(channel), null);
+    }
+
+    /**
+     * @param optionalArgs (optional) Map of extra arguments
+     * @param stream OutputStream the output is written to, or null when writer is given
+     * @param writer Writer the (text) output is written to directly, or null
+     */
+    private JsonWriter(Map<String, Object> optionalArgs, OutputStream stream, Writer writer)
     {
         if (optionalArgs == null)
         {
@@ -395,6 +649,41 @@ public class JsonWriter implements Closeable, Flushable
         writeLongsAsStrings = isTrue(args.get(WRITE_LONGS_AS_STRINGS));
         skipNullFields = isTrue(args.get(SKIP_NULL_FIELDS));
         forceMapFormatWithKeyArrays = isTrue(args.get(FORCE_MAP_FORMAT_ARRAY_KEYS_ITEMS));
+        specializeAfter = getIntSetting(args.get(SPECIALIZE_AFTER), -1);
+        bytesAsBase64 = isTrue(args.get(BYTES_AS_BASE64));
+        columnar = isTrue(args.get(COLUMNAR));
+        minimalTypes = isTrue(args.get(MINIMAL_TYPES));
+        aliasNames = isTrue(args.get(SYMBOL_TABLE));
+        sharedStrings = isTrue(args.get(SHARED_STRINGS));
+        symbols = aliasNames || sharedStrings ? new SymbolTable() : null;
+        fragmentSettings = (shortMetaKeys ? 1 : 0) | (alwaysShowType ? 2 : 0) | (neverShowType ? 4 : 0) |
+                (writeLongsAsStrings ? 8 : 0) | (skipNullFields ? 16 : 0) | (isEnumPublicOnly ? 32 : 0) |
+                (bytesAsBase64 ? 64 : 0) | (columnar ? 128 : 0) | (forceMapFormatWithKeyArrays ? 256 : 0) | (minimalTypes ? 512 : 0);
+        pool = getPool(args.get(PARALLEL));
+        tracePool = getPool(args.get(PARALLEL_TRACE));
+        maxDepth = getIntSetting(args.get(MAX_DEPTH), DEFAULT_MAX_DEPTH);
+        segmentEnd = Math.min(CALLER_STACK_LEVELS, maxDepth);
+        stackSegments = isTrue(args.get(STACK_SEGMENTS));
+        replayEnd = stackSegments ? CALLER_CUSTOM_LEVELS : Integer.MAX_VALUE;
+        fragments = getFragmentCache(args.get(FRAGMENT_CACHE));
+        maxElements = Math.max(0, getIntSetting(args.get(MAX_ELEMENTS), Integer.MAX_VALUE));
+        truncateDepth = getIntSetting(args.get(TRUNCATE_DEPTH), Integer.MAX_VALUE);
+        final int maxOutputChars = getIntSetting(args.get(MAX_OUTPUT_CHARS), -1);
+        if (maxOutputChars >= 0 || maxElements < Integer.MAX_VALUE || truncateDepth < Integer.MAX_VALUE)
+        {   // Parts and fragments are written by other JsonWriters, which would not see the budget
+            pool = null;
+            fragments = null;
+        }
+        nullObjects = (Map<Object, Object>) args.get(NULL_OBJECTS);
+        if (nullObjects != null)
+        {   // Fragments would keep the nulls, and the parallel trace would walk into the previous snapshot
+            fragments = null;
+            tracePool = null;
+        }
+        recycler = BufferRecycler.from(args.get(BUFFER_RECYCLER));
+        buffers = recycler.acquire();
+        objVisited = buffers.visited();
+        objsReferenced = buffers.referenced();
         if (!args.containsKey(CLASSLOADER))
         {
             args.put(CLASSLOADER, JsonWriter.class.getClassLoader());
@@ -477,14 +766,28 @@ public class JsonWriter implements Closeable, Flushable
             args.put(FIELD_BLACK_LIST, new HashMap());
         }
 
-        try
+        Writer output;
+        if (writer != null)
         {
-            this.out = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            output = writer;
         }
-        catch (UnsupportedEncodingException e)
+        else if (isTrue(args.get(BINARY)))
         {
-            throw new JsonIoException("UTF-8 not supported on your JVM.  Unable to convert object to JSON.", e);
+            output = new BinaryJson.Encoder(stream);
         }
+        else if (stream instanceof NioOutput)
+        {
+            output = new BufferedWriter(((NioOutput) stream).writer());
+        }
+        else
+        {   // UTF-8 encoded straight into the recycled byte[] (no BufferedWriter / OutputStreamWriter buffers)
+            output = new NioOutput(stream, buffers.bytes()).writer();
+        }
+        if (maxOutputChars >= 0)
+        {
+            output = budget = new BudgetWriter(output, maxOutputChars);
+        }
+        this.out = output;
     }
 
     /**
@@ -495,6 +798,70 @@ public class JsonWriter implements Closeable, Flushable
         return (ClassLoader) args.get(CLASSLOADER);
     }
 
+    /**
+     * Writer for one part of a PARALLEL Collection, Object[] or Map.  It has the settings of parent, its own
+     * output and visited set, and never splits further.  Reaching an object that is referenced from elsewhere
+     * in the graph (it needs an @id, or is a @ref) aborts the part, see PartReferences.  A DATE_FORMAT Format
+     * (SimpleDateFormat is not thread-safe) is cloned, so that no two parts format with the same instance.
+     * @param parent JsonWriter writing the Collection, Object[] or Map
+     * @param out Writer receiving this part
+     */
+    private JsonWriter(JsonWriter parent, Writer out)
+    {
+        args.putAll(parent.args);
+        args.put(JsonClassWriterEx.JSON_WRITER, this);
+        Object dateFormat = args.get(DATE_FORMAT);
+        if (dateFormat instanceof Format)
+        {
+            args.put(DATE_FORMAT, ((Format) dateFormat).clone());
+        }
+        writers = parent.writers;
+        notCustom.addAll(parent.notCustom);
+        typeNameMap = parent.typeNameMap;
+        shortMetaKeys = parent.shortMetaKeys;
+        neverShowType = parent.neverShowType;
+        alwaysShowType = parent.alwaysShowType;
+        isPrettyPrint = parent.isPrettyPrint;
+        isEnumPublicOnly = parent.isEnumPublicOnly;
+        writeLongsAsStrings = parent.writeLongsAsStrings;
+        skipNullFields = parent.skipNullFields;
+        forceMapFormatWithKeyArrays = parent.forceMapFormatWithKeyArrays;
+        bytesAsBase64 = parent.bytesAsBase64;
+        columnar = parent.columnar;
+        minimalTypes = parent.minimalTypes;
+        specializeAfter = parent.specializeAfter;
+        customWriterDepth = parent.customWriterDepth;
+        depth = parent.depth;
+        maxDepth = parent.maxDepth - parent.nesting;
+        segmentEnd = Math.min(CALLER_STACK_LEVELS, maxDepth);
+        stackSegments = parent.stackSegments;
+        replayEnd = stackSegments ? CALLER_CUSTOM_LEVELS : Integer.MAX_VALUE;
+        nullObjects = parent.nullObjects;
+        recycler = parent.recycler;
+        buffers = recycler.acquire();
+        objVisited = buffers.visited();
+        objsReferenced = new PartReferences(parent.objsReferenced);
+        this.out = out;
+    }
+
+    private static FragmentCache getFragmentCache(Object setting)
+    {
+        if (setting == null || setting instanceof FragmentCache)
+        {
+            return (FragmentCache) setting;
+        }
+        throw new JsonIoException("FRAGMENT_CACHE must be a FragmentCache, found: " + setting.getClass().getName());
+    }
+
+    private static ForkJoinPool getPool(Object setting)
+    {
+        if (setting instanceof ForkJoinPool)
+        {
+            return (ForkJoinPool) setting;
+        }
+        return isTrue(setting) ? ForkJoinPool.commonPool() : null;
+    }
+
     /**
      * @param setting Object setting value from JsonWriter args map.
      * @return boolean true if the value is (boolean) true, Boolean.TRUE, "true" (any case), or non-zero if a Number.
@@ -517,6 +884,75 @@ public class JsonWriter implements Closeable, Flushable
         return false;
     }
 
+    /**
+     * @param setting Object setting value from JsonWriter / JsonReader args map.
+     * @param defaultValue int value to use when the setting is absent.
+     * @return int value of the setting when it is a Number or a numeric String, defaultValue otherwise.
+     */
+    static int getIntSetting(Object setting, int defaultValue)
+    {
+        if (setting instanceof Number)
+        {
+            return ((Number) setting).intValue();
+        }
+        else if (setting instanceof String)
+        {
+            try
+            {
+                return Integer.parseInt(((String) setting).trim());
+            }
+            catch (NumberFormatException e)
+            {
+                throw new JsonIoException("Expected an integer setting, found: " + setting, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Streaming access to the output for custom writers.  The returned generator is positioned inside
+     * the object JsonWriter opened for the custom writer (after any @type / @id), at the current
+     * indentation, and follows this JsonWriter's PRETTY_PRINT and WRITE_LONGS_AS_STRINGS settings.
+     * The custom writer writes name / value pairs only - JsonWriter closes the object when the custom
+     * writer returns, and raises a JsonIoException if the generator was left mid-value.
+     * @return JsonGenerator for the custom writer currently running.
+     */
+    public JsonGenerator getGenerator()
+    {
+        if (customWriterDepth == 0)
+        {
+            throw new JsonIoException("JsonWriter.getGenerator() is only available to a custom writer while it is writing.  Use new JsonGenerator() to stream JSON directly.");
+        }
+        final int level = customWriterDepth - 1;
+        while (generators.size() <= level)
+        {
+            generators.add(new JsonGenerator(out, isPrettyPrint, writeLongsAsStrings, this));
+        }
+        JsonGenerator generator = generators.get(level);
+        if (!generator.isInFragment())
+        {
+            generator.beginFragment(depth);
+        }
+        return generator;
+    }
+
+    /**
+     * Write a value on behalf of a JsonGenerator, indented to the generator's depth.
+     */
+    void writeNested(Object obj, int depth) throws IOException
+    {
+        final int saved = this.depth;
+        this.depth = depth;
+        try
+        {
+            writeImpl(obj, true);
+        }
+        finally
+        {
+            this.depth = saved;
+        }
+    }
+
     /**
      * Tab the output left (less indented)
      * @throws IOException
@@ -659,6 +1095,10 @@ public class JsonWriter implements Closeable, Flushable
                     {
                         ((Writers.DateWriter)writer).writePrimitiveForm(o, output, args);
                     }
+                    else if (writer instanceof Writers.JsonStringWriter && o instanceof String)
+                    {
+                        writeString((String) o, output);
+                    }
                     else
                     {
                         writer.writePrimitiveForm(o, output);
@@ -668,6 +1108,19 @@ public class JsonWriter implements Closeable, Flushable
             }
         }
 
+        if (output == recorder)
+        {   // Deep graphs: the custom writer runs once the text recorded before it has been written
+            recorder.defer(new DeferredCustom(closestWriter, o, showType, referenced));
+            return true;
+        }
+        return writeCustomObject(closestWriter, o, showType, referenced, output);
+    }
+
+    /**
+     * Write o with its custom writer, as a JSON object.
+     */
+    private boolean writeCustomObject(JsonClassWriterBase closestWriter, Object o, boolean showType, boolean referenced, Writer output) throws IOException
+    {
         output.write('{');
         tabIn();
         if (referenced)
@@ -691,13 +1144,27 @@ public class JsonWriter implements Closeable, Flushable
             newLine();
         }
 
-        if (closestWriter instanceof JsonClassWriterEx)
+        final int level = customWriterDepth++;
+        boolean complete;
+        try
+        {
+            if (closestWriter instanceof JsonClassWriterEx)
+            {
+                ((JsonClassWriterEx)closestWriter).write(o, showType || referenced, output, args);
+            }
+            else
+            {
+                ((JsonClassWriter)closestWriter).write(o, showType || referenced, output);
+            }
+        }
+        finally
         {
-            ((JsonClassWriterEx)closestWriter).write(o, showType || referenced, output, args);
+            customWriterDepth = level;
+            complete = level >= generators.size() || !generators.get(level).isInFragment() || generators.get(level).endFragment();
         }
-        else
+        if (!complete)
         {
-            ((JsonClassWriter)closestWriter).write(o, showType || referenced, output);
+            throw new JsonIoException("Custom writer for class: " + o.getClass().getName() + " left incomplete JSON in its JsonGenerator (unclosed object / array, or a name without a value)");
         }
         tabOut();
         output.write('}');
@@ -772,18 +1239,26 @@ public class JsonWriter implements Closeable, Flushable
      */
     public void addWriter(Class c, JsonClassWriterBase writer)
     {
+        if (!ownWriters)
+        {
+            writers = new HashMap<>(writers);
+            ownWriters = true;
+        }
         writers.put(c, writer);
+        fragmentConfiguration = -1;
     }
 
     /**
-     * Add a permanent Customer Writer (Lifetime of JVM)
+     * Add a permanent Customer Writer (Lifetime of JVM).  JsonWriters created after this call use it.
      * @param c Class to associate a custom JSON writer too
      * @param writer JsonClassWriterBase which implements the appropriate
      * subclass of JsonClassWriterBase (JsonClassWriter or JsonClassWriterEx).
      */
-    public static void addWriterPermanent(Class c, JsonClassWriterBase writer)
-    {
-        BASE_WRITERS.put(c, writer);
+    public static synchronized void addWriterPermanent(Class c, JsonClassWriterBase writer)
+    {   // Copy on write, so JsonWriters reading the current map (on any thread) are not disturbed
+        Map<Class, JsonClassWriterBase> copy = new HashMap<>(BASE_WRITERS);
+        copy.put(c, writer);
+        BASE_WRITERS = copy;
     }
 
     /**
@@ -794,6 +1269,7 @@ public class JsonWriter implements Closeable, Flushable
     public void addNotCustomWriter(Class c)
     {
         notCustom.add(c);
+        fragmentConfiguration = -1;
     }
 
     /**
@@ -802,21 +1278,191 @@ public class JsonWriter implements Closeable, Flushable
      */
     public void write(Object obj)
     {
-        traceReferences(obj);
-        objVisited.clear();
+        if (symbols != null)
+        {
+            symbols.clear();
+        }
+        if (isLazySource(obj))
+        {
+            writeLazily(obj);
+            return;
+        }
+        if (budget == null)
+        {   // With MAX_OUTPUT_CHARS only what fits is visited, so objects are written again instead of referenced
+            traceReferences(obj);
+            objVisited.clear();
+        }
         try
         {
             writeImpl(obj, true);
         }
         catch (Exception e)
         {
-            throw new JsonIoException("Error writing object to JSON:", e);
+            if (!isBudgetSpent(e))
+            {
+                throw new JsonIoException("Error writing object to JSON:", e);
+            }
         }
         flush();
         objVisited.clear();
         objsReferenced.clear();
     }
 
+    /**
+     * @return true if e (or its cause, when a custom writer wrapped it) is the end of the MAX_OUTPUT_CHARS budget,
+     * which ends the write normally.
+     */
+    private boolean isBudgetSpent(Throwable e)
+    {
+        return budget != null && (e == BudgetWriter.SPENT || e.getCause() == BudgetWriter.SPENT);
+    }
+
+    /**
+     * MAX_OUTPUT_CHARS: passes at most limit characters on to out, then ends the write by throwing SPENT from
+     * wherever the writer is in the object graph, so nothing past the budget is visited.
+     */
+    private static final class BudgetWriter extends Writer
+    {
+        /** Thrown (always this instance, without a stack trace) when the budget is used up */
+        static final RuntimeException SPENT = new BudgetSpent();
+        private final Writer out;
+        private int remaining;
+
+        private BudgetWriter(Writer out, int limit)
+        {
+            this.out = out;
+            remaining = limit;
+        }
+
+        public void write(int c) throws IOException
+        {
+            if (remaining == 0)
+            {
+                throw SPENT;
+            }
+            remaining--;
+            out.write(c);
+        }
+
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            if (len > remaining)
+            {   // Cut before a split surrogate pair
+                int n = remaining > 0 && Character.isHighSurrogate(cbuf[off + remaining - 1]) ? remaining - 1 : remaining;
+                out.write(cbuf, off, n);
+                remaining = 0;
+                throw SPENT;
+            }
+            remaining -= len;
+            out.write(cbuf, off, len);
+        }
+
+        public void write(String str, int off, int len) throws IOException
+        {
+            if (len > remaining)
+            {   // Cut before a split surrogate pair
+                int n = remaining > 0 && Character.isHighSurrogate(str.charAt(off + remaining - 1)) ? remaining - 1 : remaining;
+                out.write(str, off, n);
+                remaining = 0;
+                throw SPENT;
+            }
+            remaining -= len;
+            out.write(str, off, len);
+        }
+
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    private static final class BudgetSpent extends RuntimeException
+    {
+        private BudgetSpent()
+        {
+            super("MAX_OUTPUT_CHARS reached", null, false, false);
+        }
+    }
+
+    /**
+     * Only the JDK's own Iterators, Streams and Spliterators are written lazily.  A user class that happens
+     * to implement Iterator has fields of its own, and is written as an object, as it always was.  Wrap such
+     * a source with Spliterators.spliteratorUnknownSize() to stream its elements.
+     */
+    private static boolean isLazySource(Object obj)
+    {
+        return (obj instanceof Iterator || obj instanceof BaseStream || obj instanceof Spliterator) &&
+                obj.getClass().getName().startsWith("java.");
+    }
+
+    /**
+     * Write an Iterator, Stream (any BaseStream) or Spliterator as a JSON array, pulling one element at a
+     * time.  The source is never materialized: each element is traced, written and released before the
+     * next one is requested, so the size of the output is not limited by the heap.  Reference tracking
+     * is scoped to each element - an object reachable from two elements is written in full in both - while
+     * @id values stay unique across the whole document.  The source is not closed.
+     * @param source Iterator, BaseStream or Spliterator supplying the array elements.
+     */
+    private void writeLazily(Object source)
+    {
+        final Iterator i;
+        if (source instanceof BaseStream)
+        {
+            i = ((BaseStream) source).iterator();
+        }
+        else if (source instanceof Spliterator)
+        {
+            i = Spliterators.iterator((Spliterator) source);
+        }
+        else
+        {
+            i = (Iterator) source;
+        }
+
+        try
+        {
+            out.write('[');
+            if (i.hasNext())
+            {
+                tabIn();
+                boolean first = true;
+                while (i.hasNext())
+                {
+                    final Object element = i.next();
+                    if (!first)
+                    {
+                        out.write(',');
+                        newLine();
+                    }
+                    first = false;
+                    if (budget == null)
+                    {
+                        traceReferences(element);
+                        objVisited.clear();
+                    }
+                    writeCollectionElement(element);
+                    objVisited.clear();
+                    objsReferenced.clear();
+                }
+                tabOut();
+            }
+            out.write(']');
+        }
+        catch (Exception e)
+        {
+            if (!isBudgetSpent(e))
+            {
+                throw new JsonIoException("Error writing object to JSON:", e);
+            }
+        }
+        flush();
+    }
+
     /**
      * Walk object graph and visit each instance, following each field, each Collection, Map and so on.
      * Tracks visited to handle cycles and to determine if an item is referenced elsewhere.  If an
@@ -830,6 +1476,11 @@ public class JsonWriter implements Closeable, Flushable
         {
             return;
         }
+        if (tracePool != null)
+        {
+            traceInParallel(root);
+            return;
+        }
         Map<Class, List<Field>> fieldSpecifiers = (Map) args.get(FIELD_SPECIFIERS);
         final Deque<Object> stack = new ArrayDeque<Object>();
         stack.addFirst(root);
@@ -839,8 +1490,12 @@ public class JsonWriter implements Closeable, Flushable
         while (!stack.isEmpty())
         {
             final Object obj = stack.removeFirst();
+            if (nullObjects != null && nullObjects.containsKey(obj))
+            {
+                continue;
+            }
 
-            if (!MetaUtils.isLogicalPrimitive(obj.getClass()))
+            if (!MetaUtils.isLogicalPrimitive(obj.getClass()) && !(obj instanceof RawJson))
             {
                 Long id = visited.get(obj);
                 if (id != null)
@@ -860,67 +1515,186 @@ public class JsonWriter implements Closeable, Flushable
                 }
             }
 
-            final Class clazz = obj.getClass();
-
-            if (clazz.isArray())
-            {
-                if (!MetaUtils.isLogicalPrimitive(clazz.getComponentType()))
-                {   // Speed up: do not traceReferences of primitives, they cannot reference anything
-                    final int len = Array.getLength(obj);
+            traceChildren(stack, obj, fieldSpecifiers);
+        }
+    }
 
-                    for (int i = 0; i < len; i++)
-                    {
-                        final Object o = Array.get(obj, i);
-                        if (o != null)
-                        {   // Slight perf gain (null is legal)
-                            stack.addFirst(o);
-                        }
-                    }
+    /**
+     * PARALLEL_TRACE: the same walk as traceReferences(), by TraceTasks on the pool, which split their stack
+     * when other workers run out of work.  Visits are recorded in a striped identity table.  The result is the
+     * same set of referenced objects, but the order in which they are found varies from run to run.  They are
+     * therefore put in objsReferenced without a number (ZERO), and getId() numbers them as they are first
+     * written - so the @id values follow the document, and are the same on every run.
+     */
+    private void traceInParallel(Object root)
+    {
+        final TraceVisits visits = new TraceVisits();
+        final Deque<Object> stack = new ArrayDeque<Object>();
+        stack.addFirst(root);
+        tracePool.invoke(new TraceTask(stack, visits, (Map<Class, List<Field>>) args.get(FIELD_SPECIFIERS)));
+        for (Object obj : visits.referenced)
+        {
+            objsReferenced.put(obj, ZERO);
+        }
+    }
+
+    /**
+     * Identity 'visited' table shared by the TraceTasks.  Each stripe is an IdentityHashMap guarded by its own
+     * lock, picked by identity hash code.
+     */
+    private static final class TraceVisits
+    {
+        private final Map<Object, Boolean>[] stripes = new Map[TRACE_STRIPES];
+        private final Queue<Object> referenced = new ConcurrentLinkedQueue<>();
+
+        private TraceVisits()
+        {
+            for (int i = 0; i < TRACE_STRIPES; i++)
+            {
+                stripes[i] = new IdentityHashMap<>();
+            }
+        }
+
+        /**
+         * @return true the first time obj is visited (its children need to be traced).  The second visit marks
+         * it referenced.
+         */
+        private boolean visit(Object obj)
+        {
+            final int hash = System.identityHashCode(obj);
+            final Map<Object, Boolean> stripe = stripes[(hash ^ (hash >>> 16)) & (TRACE_STRIPES - 1)];
+            synchronized (stripe)
+            {
+                final Boolean seen = stripe.get(obj);
+                if (seen == null)
+                {
+                    stripe.put(obj, Boolean.FALSE);
+                    return true;
+                }
+                if (!seen)
+                {
+                    stripe.put(obj, Boolean.TRUE);
+                    referenced.add(obj);
                 }
+                return false;
             }
-            else if (Map.class.isAssignableFrom(clazz))
-            {   // Speed up - logically walk maps, as opposed to following their internal structure.
-                try
+        }
+    }
+
+    /**
+     * Walks the objects on its stack (and everything reachable from them that has not been visited).  While
+     * the stack is deep and the pool has idle workers, the bottom half of the stack - the oldest, typically
+     * largest, subtrees - is handed to a new task.
+     */
+    private final class TraceTask extends RecursiveAction
+    {
+        private final Deque<Object> stack;
+        private final TraceVisits visits;
+        private final Map<Class, List<Field>> fieldSpecifiers;
+
+        private TraceTask(Deque<Object> stack, TraceVisits visits, Map<Class, List<Field>> fieldSpecifiers)
+        {
+            this.stack = stack;
+            this.visits = visits;
+            this.fieldSpecifiers = fieldSpecifiers;
+        }
+
+        protected void compute()
+        {
+            final List<TraceTask> forked = new ArrayList<>();
+            while (!stack.isEmpty())
+            {
+                if (stack.size() > TRACE_SPLIT_SIZE && getSurplusQueuedTaskCount() < 2)
                 {
-                    Map map = (Map) obj;
-                    for (final Object item : map.entrySet())
+                    final Deque<Object> half = new ArrayDeque<Object>();
+                    for (int i = stack.size() / 2; i > 0; i--)
                     {
-                        final Entry entry = (Entry) item;
-                        if (entry.getValue() != null)
-                        {
-                            stack.addFirst(entry.getValue());
-                        }
-                        if (entry.getKey() != null)
-                        {
-                            stack.addFirst(entry.getKey());
-                        }
+                        half.addFirst(stack.removeLast());
                     }
+                    TraceTask task = new TraceTask(half, visits, fieldSpecifiers);
+                    task.fork();
+                    forked.add(task);
+                }
+
+                final Object obj = stack.removeFirst();
+                if (MetaUtils.isLogicalPrimitive(obj.getClass()) || obj instanceof RawJson || visits.visit(obj))
+                {
+                    traceChildren(stack, obj, fieldSpecifiers);
                 }
-                catch (UnsupportedOperationException e)
+            }
+            for (TraceTask task : forked)
+            {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * Push the objects obj refers to (array elements, Collection elements, Map keys and values, fields)
+     * onto the trace stack.
+     */
+    private void traceChildren(final Deque<Object> stack, final Object obj, final Map<Class, List<Field>> fieldSpecifiers)
+    {
+        final Class clazz = obj.getClass();
+
+        if (clazz.isArray())
+        {
+            if (!MetaUtils.isLogicalPrimitive(clazz.getComponentType()))
+            {   // Speed up: do not traceReferences of primitives, they cannot reference anything
+                final int len = Array.getLength(obj);
+
+                for (int i = 0; i < len; i++)
                 {
-                    // Some kind of Map that does not support .entrySet() - some Maps throw UnsupportedOperation for
-                    // this API.  Do not attempt any further tracing of references.  Likely a ClassLoader field or
-                    // something unusual like that.
+                    final Object o = Array.get(obj, i);
+                    if (o != null)
+                    {   // Slight perf gain (null is legal)
+                        stack.addFirst(o);
+                    }
                 }
             }
-            else if (Collection.class.isAssignableFrom(clazz))
+        }
+        else if (Map.class.isAssignableFrom(clazz))
+        {   // Speed up - logically walk maps, as opposed to following their internal structure.
+            try
             {
-                for (final Object item : (Collection)obj)
+                Map map = (Map) obj;
+                for (final Object item : map.entrySet())
                 {
-                    if (item != null)
+                    final Entry entry = (Entry) item;
+                    if (entry.getValue() != null)
+                    {
+                        stack.addFirst(entry.getValue());
+                    }
+                    if (entry.getKey() != null)
                     {
-                        stack.addFirst(item);
+                        stack.addFirst(entry.getKey());
                     }
                 }
             }
-            else
-            {   // Speed up: do not traceReferences of primitives, they cannot reference anything
-                if (!MetaUtils.isLogicalPrimitive(obj.getClass()))
+            catch (UnsupportedOperationException e)
+            {
+                // Some kind of Map that does not support .entrySet() - some Maps throw UnsupportedOperation for
+                // this API.  Do not attempt any further tracing of references.  Likely a ClassLoader field or
+                // something unusual like that.
+            }
+        }
+        else if (Collection.class.isAssignableFrom(clazz))
+        {
+            for (final Object item : (Collection)obj)
+            {
+                if (item != null)
                 {
-                    traceFields(stack, obj, fieldSpecifiers);
+                    stack.addFirst(item);
                 }
             }
         }
+        else
+        {   // Speed up: do not traceReferences of primitives (or RawJson), they cannot reference anything
+            if (!MetaUtils.isLogicalPrimitive(obj.getClass()) && !(obj instanceof RawJson))
+            {
+                traceFields(stack, obj, fieldSpecifiers);
+            }
+        }
     }
 
     /**
@@ -939,11 +1713,17 @@ public class JsonWriter implements Closeable, Flushable
         // then use it, otherwise use reflection.
         Collection<Field> fields = getFieldsUsingSpecifier(obj.getClass(), fieldSpecifiers);
         Collection<Field> fieldsBySpec = fields;
+        final List<Field> fieldBlackListForClass = getFieldsUsingSpecifier(obj.getClass(), (Map) args.get(FIELD_BLACK_LIST));
+        ClassPlan plan;
+        if (fields == null && fieldBlackListForClass == null && (plan = getPlan(obj.getClass())) != null)
+        {   // Specialized class - only reference (non-primitive) fields need to be followed
+            traceFields(stack, obj, plan);
+            return;
+        }
         if (fields == null)
         {   // Trace fields using reflection, could filter this with black list here
             fields = MetaUtils.getDeepDeclaredFields(obj.getClass()).values();
         }
-        final List<Field> fieldBlackListForClass = getFieldsUsingSpecifier(obj.getClass(), (Map) args.get(FIELD_BLACK_LIST));
 
         for (final Field field : fields)
         {
@@ -973,6 +1753,26 @@ public class JsonWriter implements Closeable, Flushable
         }
     }
 
+    private static void traceFields(final Deque<Object> stack, final Object obj, final ClassPlan plan)
+    {
+        for (final ClassPlan.FieldPlan fieldPlan : plan.fields)
+        {
+            if (fieldPlan.kind != ClassPlan.OBJECT)
+            {
+                continue;
+            }
+            try
+            {
+                final Object o = fieldPlan.get(obj);
+                if (o != null && !MetaUtils.isLogicalPrimitive(o.getClass()))
+                {
+                    stack.addFirst(o);
+                }
+            }
+            catch (Exception ignored) { }
+        }
+    }
+
     private static List<Field> getFieldsUsingSpecifier(final Class classBeingWritten, final Map<Class, List<Field>> fieldSpecifiers)
     {
         final Iterator<Map.Entry<Class, List<Field>>> i = fieldSpecifiers.entrySet().iterator();
@@ -1065,147 +1865,671 @@ public class JsonWriter implements Closeable, Flushable
      */
     public void writeImpl(Object obj, boolean showType, boolean allowRef, boolean allowCustom) throws IOException
     {
-        if (neverShowType)
+        if (nesting >= segmentEnd)
         {
-            showType = false;
+            writeDeep(obj, showType, allowRef, allowCustom);
+            return;
         }
-        if (obj == null)
+        nesting++;
+        try
         {
-            out.write("null");
-            return;
+            writeValue(obj, showType, allowRef, allowCustom);
         }
-
-        if (allowCustom && writeIfMatching(obj, showType, out))
+        finally
         {
-            return;
+            nesting--;
         }
+    }
 
-        if (allowRef && writeOptionalReference(obj))
+    /**
+     * Write a value nested too deep to recurse into.  While a value is being recorded (see Recorder), the nested
+     * value is only noted in the recording, to be written after the text recorded before it.  Otherwise the value
+     * is written by replay(), without adding to the depth of the stack.
+     */
+    private void writeDeep(Object obj, boolean showType, boolean allowRef, boolean allowCustom) throws IOException
+    {
+        if (nesting >= maxDepth)
         {
-            return;
+            throw new JsonIoException("Maximum nesting depth of " + maxDepth + " exceeded while writing JSON, see JsonWriter.MAX_DEPTH");
         }
-
-        if (obj.getClass().isArray())
+        final Deferred value = new DeferredValue(obj, showType, allowRef, allowCustom, impliedTypes);
+        impliedTypes = null;
+        if (recorder != null)
         {
-            writeArray(obj, showType);
+            recorder.defer(value);
         }
-        else if (obj instanceof Collection)
+        else if (replays >= replayEnd)
         {
-            writeCollection((Collection) obj, showType);
+            writeOnNewStack(value);
         }
-        else if (obj instanceof JsonObject)
-        {   // symmetric support for writing Map of Maps representation back as equivalent JSON format.
-            JsonObject jObj = (JsonObject) obj;
-            if (jObj.isArray())
-            {
-                writeJsonObjectArray(jObj, showType);
-            }
-            else if (jObj.isCollection())
+        else
+        {
+            replay(value);
+        }
+    }
+
+    /**
+     * Write a deferred value with a loop instead of recursion: each value is recorded down to RECORDED_LEVELS below
+     * it, with the values nested deeper (and the custom writers it reaches) deferred, and the recording is then
+     * pushed onto a work stack, in order, in place of the value.  Text is written as it comes off the stack, so the
+     * output is the same as when written recursively.  Only custom writers, which write directly, nest a replay()
+     * inside another.
+     */
+    private void replay(Deferred first) throws IOException
+    {
+        final Writer output = out;
+        final int savedEnd = segmentEnd;
+        final int savedDepth = depth;
+        final int savedNesting = nesting;
+        final int savedCustomWriterDepth = customWriterDepth;
+        final Recorder recording = new Recorder(budget);
+        final Deque<Object> work = new ArrayDeque<>();
+        work.push(first);
+        replays++;
+        try
+        {
+            while (!work.isEmpty())
             {
-                writeJsonObjectCollection(jObj, showType);
+                final Object action = work.pop();
+                if (action instanceof String)
+                {
+                    output.write((String) action);
+                    continue;
+                }
+                final Deferred deferred = (Deferred) action;
+                depth = deferred.atDepth;
+                nesting = deferred.atNesting;
+                customWriterDepth = deferred.atCustomWriterDepth;
+                impliedTypes = null;
+                if (deferred instanceof DeferredValue)
+                {
+                    segmentEnd = (int) Math.min((long) nesting + RECORDED_LEVELS, maxDepth);
+                    out = recorder = recording;
+                    try
+                    {
+                        deferred.write();
+                    }
+                    catch (RuntimeException e)
+                    {   // MAX_OUTPUT_CHARS: the budget runs out within what was recorded so far
+                        if (e != Recorder.FULL)
+                        {
+                            throw e;
+                        }
+                    }
+                    finally
+                    {
+                        out = output;
+                        recorder = null;
+                    }
+                    recording.drainTo(work);
+                }
+                else
+                {   // Values a custom writer writes are nested too deep as well
+                    segmentEnd = nesting;
+                    deferred.write();
+                }
             }
-            else if (jObj.isMap())
+        }
+        finally
+        {
+            out = output;
+            recorder = null;
+            segmentEnd = savedEnd;
+            depth = savedDepth;
+            nesting = savedNesting;
+            customWriterDepth = savedCustomWriterDepth;
+            impliedTypes = null;
+            replays--;
+        }
+    }
+
+    /**
+     * STACK_SEGMENTS: replay a deferred value on a new thread with a large stack (a stack segment), while this
+     * thread waits for it.  Only needed for custom writers nested inside each other, each of which adds a
+     * replay() to the stack.  The output is the same - only one thread writes at a time.
+     */
+    private void writeOnNewStack(final Deferred value) throws IOException
+    {
+        final int savedReplayEnd = replayEnd;
+        final Throwable[] error = new Throwable[1];
+        Thread segment = new Thread(null, new Runnable()
+        {
+            public void run()
             {
-                if (!writeJsonObjectMapWithStringKeys(jObj, showType))
+                try
                 {
-                    writeJsonObjectMap(jObj, showType);
+                    replayEnd = replays + SEGMENT_CUSTOM_LEVELS;
+                    replay(value);
+                }
+                catch (Throwable t)
+                {
+                    error[0] = t;
                 }
             }
-            else
+        }, "json-io-writer-" + nesting, SEGMENT_STACK_SIZE);
+        segment.setDaemon(true);
+        segment.start();
+
+        boolean interrupted = false;
+        while (true)
+        {   // The segment owns the output until it finishes, so wait for it regardless
+            try
             {
-                writeJsonObjectObject(jObj, showType);
+                segment.join();
+                break;
             }
-        }
-        else if (obj instanceof Map)
-        {
-            if (!writeMapWithStringKeys((Map) obj, showType))
+            catch (InterruptedException e)
             {
-                writeMap((Map) obj, showType);
+                interrupted = true;
             }
         }
-        else
+        if (interrupted)
         {
-            writeObject(obj, showType, false);
+            Thread.currentThread().interrupt();
+        }
+        replayEnd = savedReplayEnd;
+
+        final Throwable t = error[0];
+        if (t instanceof IOException)
+        {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException)
+        {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error)
+        {
+            throw (Error) t;
         }
     }
 
-    private void writeId(final String id) throws IOException
+    /**
+     * Part of the output left for replay() to write, with the writer state it is written in.
+     */
+    private abstract class Deferred
     {
-        out.write(shortMetaKeys ? "\"@i\":" : "\"@id\":");
-        out.write(id == null ? "0" : id);
+        final int atDepth = depth;
+        final int atNesting = nesting;
+        final int atCustomWriterDepth = customWriterDepth;
+
+        abstract void write() throws IOException;
     }
 
-    private void writeType(Object obj, Writer output) throws IOException
+    /**
+     * A value nested too deep to recurse into.
+     */
+    private final class DeferredValue extends Deferred
     {
-        if (neverShowType)
+        private final Object obj;
+        private final boolean showType;
+        private final boolean allowRef;
+        private final boolean allowCustom;
+        private final Class[] implied;
+
+        private DeferredValue(Object obj, boolean showType, boolean allowRef, boolean allowCustom, Class[] implied)
         {
-            return;
+            this.obj = obj;
+            this.showType = showType;
+            this.allowRef = allowRef;
+            this.allowCustom = allowCustom;
+            this.implied = implied;
         }
-        output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
-        final Class c = obj.getClass();
-        String typeName = c.getName();
-        String shortName = getSubstituteTypeNameIfExists(typeName);
 
-        if (shortName != null)
+        void write() throws IOException
         {
-            output.write(shortName);
-            output.write('"');
-            return;
+            impliedTypes = implied;
+            nesting++;
+            try
+            {
+                writeValue(obj, showType, allowRef, allowCustom);
+            }
+            finally
+            {
+                nesting--;
+            }
         }
+    }
 
-        String s = c.getName();
-        if (s.equals("java.lang.Boolean"))
+    /**
+     * A custom writer reached while recording - it writes straight to the output, so it runs in document order.
+     */
+    private final class DeferredCustom extends Deferred
+    {
+        private final JsonClassWriterBase writer;
+        private final Object obj;
+        private final boolean showType;
+        private final boolean referenced;
+
+        private DeferredCustom(JsonClassWriterBase writer, Object obj, boolean showType, boolean referenced)
         {
-            output.write("boolean");
+            this.writer = writer;
+            this.obj = obj;
+            this.showType = showType;
+            this.referenced = referenced;
         }
-        else if (s.equals("java.lang.Byte"))
+
+        void write() throws IOException
         {
-            output.write("byte");
+            writeCustomObject(writer, obj, showType, referenced, out);
         }
-        else if (s.equals("java.lang.Character"))
+    }
+
+    /**
+     * An @type name, field name or String value reached while recording with SYMBOL_TABLE or SHARED_STRINGS.
+     * Aliases are numbered in the order the reader meets them, so these are written in document order too.
+     */
+    private final class DeferredSymbol extends Deferred
+    {
+        private final int kind;
+        private final String text;
+
+        private DeferredSymbol(int kind, String text)
         {
-            output.write("char");
+            this.kind = kind;
+            this.text = text;
         }
-        else if (s.equals("java.lang.Class"))
+
+        void write() throws IOException
         {
-            output.write("class");
+            if (kind == 0)
+            {
+                writeTypeName(text, out);
+            }
+            else if (kind == 1)
+            {
+                writeName(text, out);
+            }
+            else
+            {
+                writeString(text, out);
+            }
         }
-        else if (s.equals("java.lang.Double"))
+    }
+
+    /**
+     * Deep graphs: collects the text written for a value, split around the parts of it that are deferred, so that
+     * replay() can write them all in document order.
+     */
+    private static final class Recorder extends Writer
+    {
+        /** Thrown (always this instance, without a stack trace) when more was recorded than MAX_OUTPUT_CHARS has left */
+        static final RuntimeException FULL = new BudgetSpent();
+        private final StringBuilder text = new StringBuilder();
+        private final List<Object> recorded = new ArrayList<>();
+        private final BudgetWriter budget;
+        private int length = 0;
+
+        private Recorder(BudgetWriter budget)
         {
-            output.write("double");
+            this.budget = budget;
         }
-        else if (s.equals("java.lang.Float"))
+
+        void defer(Deferred deferred)
         {
-            output.write("float");
+            endText();
+            recorded.add(deferred);
         }
-        else if (s.equals("java.lang.Integer"))
+
+        /**
+         * Push what was recorded onto work, so that it comes off in the order it was recorded, and start over.
+         */
+        void drainTo(Deque<Object> work)
         {
-            output.write("int");
+            endText();
+            for (int i = recorded.size() - 1; i >= 0; i--)
+            {
+                work.push(recorded.get(i));
+            }
+            recorded.clear();
+            length = 0;
         }
-        else if (s.equals("java.lang.Long"))
+
+        private void endText()
         {
-            output.write("long");
+            if (text.length() > 0)
+            {
+                length += text.length();
+                recorded.add(text.toString());
+                text.setLength(0);
+            }
         }
-        else if (s.equals("java.lang.Short"))
+
+        private void checkBudget()
         {
-            output.write("short");
+            if (budget != null && length + text.length() > budget.remaining)
+            {
+                throw FULL;
+            }
         }
-        else if (s.equals("java.lang.String"))
+
+        public void write(int c)
         {
-            output.write("string");
+            text.append((char) c);
+            checkBudget();
+        }
+
+        public void write(char[] cbuf, int off, int len)
+        {
+            text.append(cbuf, off, len);
+            checkBudget();
+        }
+
+        public void write(String str)
+        {
+            text.append(str);
+            checkBudget();
+        }
+
+        public void write(String str, int off, int len)
+        {
+            text.append(str, off, off + len);
+            checkBudget();
+        }
+
+        public void flush() { }
+
+        public void close() { }
+    }
+
+    private void writeValue(Object obj, boolean showType, boolean allowRef, boolean allowCustom) throws IOException
+    {
+        final Class[] implied = impliedTypes == null ? NO_IMPLIED_TYPES : impliedTypes;
+        impliedTypes = null;
+        if (neverShowType)
+        {
+            showType = false;
+        }
+        if (obj == null)
+        {
+            out.write("null");
+            return;
+        }
+        if (obj instanceof RawJson)
+        {   // Already JSON - copied as is
+            out.write(obj.toString());
+            return;
+        }
+        if (nullObjects != null && nullObjects.containsKey(obj))
+        {   // Delta: an object the target already has, set by a setRef operation after this value
+            out.write("null");
+            return;
+        }
+        if (nesting > truncateDepth && !MetaUtils.isLogicalPrimitive(obj.getClass()))
+        {   // TRUNCATE_DEPTH - an object already written is still a cheap @ref, only unwritten ones are cut
+            if (allowRef && objVisited.containsKey(obj) && writeOptionalReference(obj))
+            {
+                return;
+            }
+            boolean isList = obj.getClass().isArray() || obj instanceof Collection ||
+                    (obj instanceof JsonObject && (((JsonObject) obj).isArray() || ((JsonObject) obj).isCollection()));
+            out.write(isList ? "[]" : "{}");
+            return;
+        }
+
+        if (fragments != null && allowRef && allowCustom && symbols == null && fragments.isCacheable(obj.getClass()) &&
+                writeFragment(obj, showType))
+        {
+            return;
+        }
+
+        if (allowCustom && writeIfMatching(obj, showType, out))
+        {
+            return;
+        }
+
+        if (allowRef && writeOptionalReference(obj))
+        {
+            return;
+        }
+
+        if (obj.getClass().isArray())
+        {
+            writeArray(obj, showType);
+        }
+        else if (obj instanceof Collection)
+        {
+            writeCollection((Collection) obj, showType, implied);
+        }
+        else if (obj instanceof JsonObject)
+        {   // symmetric support for writing Map of Maps representation back as equivalent JSON format.
+            JsonObject jObj = (JsonObject) obj;
+            if (jObj.isArray())
+            {
+                writeJsonObjectArray(jObj, showType);
+            }
+            else if (jObj.isCollection())
+            {
+                writeJsonObjectCollection(jObj, showType);
+            }
+            else if (jObj.isMap())
+            {
+                if (!writeJsonObjectMapWithStringKeys(jObj, showType))
+                {
+                    writeJsonObjectMap(jObj, showType);
+                }
+            }
+            else
+            {
+                writeJsonObjectObject(jObj, showType);
+            }
+        }
+        else if (obj instanceof Map)
+        {
+            if (!writeMapWithStringKeys((Map) obj, showType, implied))
+            {
+                writeMap((Map) obj, showType, implied);
+            }
+        }
+        else
+        {
+            writeObject(obj, showType, false);
+        }
+    }
+
+    /**
+     * FRAGMENT_CACHE: write obj by copying its cached JSON, or write it into a new fragment (with a part writer,
+     * which stops if it reaches an object shared with the rest of the document) and cache that.
+     * @return false if obj (or an object in its fragment) is referenced elsewhere in the document, in which case
+     * nothing was written.
+     */
+    private boolean writeFragment(Object obj, boolean showType) throws IOException
+    {
+        if (objsReferenced.containsKey(obj))
+        {
+            return false;
+        }
+        if (fragmentConfiguration == -1)
+        {
+            fragmentConfiguration = fragmentConfiguration();
+        }
+        final int settings = fragmentSettings | (showType ? 1024 : 0) | (isPrettyPrint ? (depth + 1) << 11 : 0);
+        final FragmentCache.Key key = fragments.keyOf(obj, settings, fragmentConfiguration);
+        if (key == null)
+        {
+            return false;
+        }
+
+        FragmentCache.Fragment fragment = fragments.get(key);
+        if (fragment != null)
+        {
+            if (fragment.members != null)
+            {
+                for (Object member : fragment.members)
+                {
+                    if (objsReferenced.containsKey(member))
+                    {
+                        return false;
+                    }
+                }
+            }
+            out.write(fragment.json);
+            fragments.hit();
+            return true;
+        }
+
+        final JsonWriter part = new JsonWriter(this, new StringWriter());
+        final String json;
+        try
+        {
+            part.writeValue(obj, showType, true, true);
+            json = part.out.toString();
+            fragments.put(key, json, part.objVisited.keySet().toArray());
+        }
+        catch (Exception e)
+        {   // Reached a shared object (or failed) - write it the normal way
+            return false;
+        }
+        finally
+        {   // Not close() - writers is the parent's
+            part.recycler.release(part.buffers);
+            part.buffers = null;
+        }
+        out.write(json);
+        return true;
+    }
+
+    /**
+     * FRAGMENT_CACHE: the settings other than the on / off options that change the JSON written for an object -
+     * custom writers, TYPE_NAME_MAP, DATE_FORMAT, field specifiers and black lists, NaN / Infinity - as a number,
+     * the same for JsonWriters with equal settings, so only they share fragments.
+     */
+    private int fragmentConfiguration()
+    {
+        return fragments.configurationOf(Arrays.asList(new HashMap<>(writers), new HashSet<>(notCustom), typeNameMap,
+                args.get(DATE_FORMAT), args.get(FIELD_SPECIFIERS), args.get(FIELD_BLACK_LIST), allowNanAndInfinity));
+    }
+
+    private void writeId(final String id) throws IOException
+    {
+        out.write(shortMetaKeys ? "\"@i\":" : "\"@id\":");
+        out.write(id == null ? "0" : id);
+    }
+
+    private void writeType(Object obj, Writer output) throws IOException
+    {
+        if (neverShowType)
+        {
+            return;
+        }
+        output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
+        final Class c = obj.getClass();
+        String typeName = c.getName();
+        String shortName = getSubstituteTypeNameIfExists(typeName);
+
+        if (shortName != null)
+        {
+            writeTypeName(shortName, output);
+            output.write('"');
+            return;
+        }
+
+        String s = c.getName();
+        if (s.equals("java.lang.Boolean"))
+        {
+            writeTypeName("boolean", output);
+        }
+        else if (s.equals("java.lang.Byte"))
+        {
+            writeTypeName("byte", output);
+        }
+        else if (s.equals("java.lang.Character"))
+        {
+            writeTypeName("char", output);
+        }
+        else if (s.equals("java.lang.Class"))
+        {
+            writeTypeName("class", output);
+        }
+        else if (s.equals("java.lang.Double"))
+        {
+            writeTypeName("double", output);
+        }
+        else if (s.equals("java.lang.Float"))
+        {
+            writeTypeName("float", output);
+        }
+        else if (s.equals("java.lang.Integer"))
+        {
+            writeTypeName("int", output);
+        }
+        else if (s.equals("java.lang.Long"))
+        {
+            writeTypeName("long", output);
+        }
+        else if (s.equals("java.lang.Short"))
+        {
+            writeTypeName("short", output);
+        }
+        else if (s.equals("java.lang.String"))
+        {
+            writeTypeName("string", output);
         }
         else if (s.equals("java.util.Date"))
         {
-            output.write("date");
+            writeTypeName("date", output);
         }
         else
         {
-            output.write(c.getName());
+            writeTypeName(c.getName(), output);
         }
 
         output.write('"');
     }
 
+    /**
+     * Write an @type value (without its quotes), aliased when SYMBOL_TABLE is set.
+     */
+    private void writeTypeName(String typeName, Writer output) throws IOException
+    {
+        if (symbols != null && output == recorder)
+        {
+            recorder.defer(new DeferredSymbol(0, typeName));
+            return;
+        }
+        output.write(symbol(typeName, aliasNames));
+    }
+
+    /**
+     * Write a field name (or String Map key) and its ':', aliased when SYMBOL_TABLE is set.
+     */
+    private void writeName(String name, Writer output) throws IOException
+    {
+        if (symbols != null && output == recorder)
+        {
+            recorder.defer(new DeferredSymbol(1, name));
+            return;
+        }
+        writeJsonUtf8String(symbol(name, aliasNames), output);
+        output.write(':');
+    }
+
+    /**
+     * Write a String value, as a shared string when SHARED_STRINGS is set.
+     */
+    private void writeString(String value, Writer output) throws IOException
+    {
+        if (symbols != null && output == recorder)
+        {
+            recorder.defer(new DeferredSymbol(2, value));
+            return;
+        }
+        writeJsonUtf8String(symbol(value, sharedStrings), output);
+    }
+
+    /**
+     * @return the text to write for s.  Once a document has a symbol table, text starting with '^' always goes
+     * through it (so it can not be mistaken for an alias), and other text only when share is true.
+     */
+    private String symbol(String s, boolean share)
+    {
+        if (symbols == null || !(share || (!s.isEmpty() && s.charAt(0) == SymbolTable.MARK)))
+        {
+            return s;
+        }
+        return symbols.alias(s);
+    }
+
     private void writePrimitive(final Object obj, boolean showType) throws IOException
     {
         if (neverShowType)
@@ -1223,15 +2547,15 @@ public class JsonWriter implements Closeable, Flushable
                 if (showType)
                 {
                     out.write(shortMetaKeys ? "{\"@t\":\"" : "{\"@type\":\"");
-                    out.write(getSubstituteTypeName("long"));
+                    writeTypeName(getSubstituteTypeName("long"), out);
                     out.write("\",\"value\":\"");
-                    out.write(obj.toString());
+                    numbers.writeLong((Long) obj, out);
                     out.write("\"}");
                 }
                 else
                 {
                     out.write('"');
-                    out.write(obj.toString());
+                    numbers.writeLong((Long) obj, out);
                     out.write('"');
                 }
             }
@@ -1245,11 +2569,47 @@ public class JsonWriter implements Closeable, Flushable
             }
             else
             {
-                out.write(obj.toString());
+                writeNumberOrBoolean(obj);
             }
         }
     }
 
+    /**
+     * Write a Number or Boolean as its toString() text, without creating the String for the common types.
+     * NaN / Infinity are written as-is - callers apply the allowNanAndInfinity setting.
+     */
+    private void writeNumberOrBoolean(final Object obj) throws IOException
+    {
+        if (obj instanceof Long)
+        {
+            numbers.writeLong((Long) obj, out);
+        }
+        else if (obj instanceof Integer)
+        {
+            numbers.writeInt((Integer) obj, out);
+        }
+        else if (obj instanceof Double)
+        {
+            numbers.writeDouble((Double) obj, out);
+        }
+        else if (obj instanceof Boolean)
+        {
+            out.write((Boolean) obj ? "true" : "false");
+        }
+        else if (obj instanceof Float)
+        {
+            numbers.writeFloat((Float) obj, out);
+        }
+        else if (obj instanceof Short || obj instanceof Byte)
+        {
+            numbers.writeInt(((Number) obj).intValue(), out);
+        }
+        else
+        {
+            out.write(obj.toString());
+        }
+    }
+
     private void writeArray(final Object array, boolean showType) throws IOException
     {
         if (neverShowType)
@@ -1257,7 +2617,7 @@ public class JsonWriter implements Closeable, Flushable
             showType = false;
         }
         Class arrayType = array.getClass();
-        int len = Array.getLength(array);
+        int len = Math.min(Array.getLength(array), maxElements);
         boolean referenced = objsReferenced.containsKey(array);
 //        boolean typeWritten = showType && !(Object[].class == arrayType);    // causes IDE warning in NetBeans 7/4 Java 1.7
         boolean typeWritten = showType && !(arrayType.equals(Object[].class));
@@ -1315,11 +2675,20 @@ public class JsonWriter implements Closeable, Flushable
         // reflective Array.get() but it is slower.  I chose speed over code length.
         if (byte[].class == arrayType)
         {
-            writeByteArray((byte[]) array, lenMinus1);
+            if (bytesAsBase64)
+            {   // Single String element, read back (like char[]) straight into the byte[]
+                output.write('"');
+                writeBase64((byte[]) array, 0, len, output);
+                output.write('"');
+            }
+            else
+            {
+                writeByteArray((byte[]) array, lenMinus1);
+            }
         }
         else if (char[].class == arrayType)
         {
-            writeJsonUtf8String(new String((char[]) array), output);
+            writeString(new String((char[]) array), output);
         }
         else if (short[].class == arrayType)
         {
@@ -1345,41 +2714,20 @@ public class JsonWriter implements Closeable, Flushable
         {
             writeBooleanArray((boolean[]) array, lenMinus1);
         }
-        else
+        else if (columnar && writeColumns(Arrays.asList((Object[]) array).subList(0, len), output)) { }
+        else if (isParallel(len))
         {
-            final Class componentClass = array.getClass().getComponentType();
-            final boolean isPrimitiveArray = MetaUtils.isPrimitive(componentClass);
-
-            for (int i = 0; i < len; i++)
+            writeParts(len, new Part()
             {
-                final Object value = Array.get(array, i);
-
-                if (value == null)
+                public void write(JsonWriter writer, int from, int to) throws IOException
                 {
-                    output.write("null");
-                }
-                else if (writeArrayElementIfMatching(componentClass, value, false, output)) { }
-                else if (isPrimitiveArray || value instanceof Boolean || value instanceof Long || value instanceof Double)
-                {
-                    writePrimitive(value, value.getClass() != componentClass);
-                }
-                else if (neverShowType && MetaUtils.isPrimitive(value.getClass()))
-                {   // When neverShowType specified, do not allow primitives to show up as {"value":6} for example.
-                    writePrimitive(value, false);
-                }
-                else
-                {   // Specific Class-type arrays - only force type when
-                    // the instance is derived from array base class.
-                    boolean forceType = !(value.getClass() == componentClass);
-                    writeImpl(value, forceType || alwaysShowType);
-                }
-
-                if (i != lenMinus1)
-                {
-                    output.write(',');
-                    newLine();
+                    writer.writeArrayElements(array, from, to);
                 }
-            }
+            });
+        }
+        else
+        {
+            writeArrayElements(array, 0, len);
         }
 
         tabOut();
@@ -1391,6 +2739,48 @@ public class JsonWriter implements Closeable, Flushable
         }
     }
 
+    /**
+     * Write elements [from, to) of an Object[] (of any component type), separated by commas.
+     */
+    private void writeArrayElements(final Object array, int from, int to) throws IOException
+    {
+        final Writer output = this.out;
+        final Class componentClass = array.getClass().getComponentType();
+        final boolean isPrimitiveArray = MetaUtils.isPrimitive(componentClass);
+        final int lastIndex = to - 1;
+
+        for (int i = from; i < to; i++)
+        {
+            final Object value = Array.get(array, i);
+
+            if (value == null)
+            {
+                output.write("null");
+            }
+            else if (writeArrayElementIfMatching(componentClass, value, false, output)) { }
+            else if (isPrimitiveArray || value instanceof Boolean || value instanceof Long || value instanceof Double)
+            {
+                writePrimitive(value, value.getClass() != componentClass);
+            }
+            else if (neverShowType && MetaUtils.isPrimitive(value.getClass()))
+            {   // When neverShowType specified, do not allow primitives to show up as {"value":6} for example.
+                writePrimitive(value, false);
+            }
+            else
+            {   // Specific Class-type arrays - only force type when
+                // the instance is derived from array base class.
+                boolean forceType = !(value.getClass() == componentClass);
+                writeImpl(value, forceType || alwaysShowType);
+            }
+
+            if (i != lastIndex)
+            {
+                output.write(',');
+                newLine();
+            }
+        }
+    }
+
     private void writeBooleanArray(boolean[] booleans, int lenMinus1) throws IOException
     {
         final Writer output = this.out;
@@ -1406,10 +2796,10 @@ public class JsonWriter implements Closeable, Flushable
         final Writer output = this.out;
         for (int i = 0; i < lenMinus1; i++)
         {
-            output.write(doubleToString(doubles[i]));
+            writeDouble(doubles[i]);
             output.write(',');
         }
-        output.write(doubleToString(doubles[lenMinus1]));
+        writeDouble(doubles[lenMinus1]);
     }
 
     private void writeFloatArray(float[] floats, int lenMinus1) throws IOException
@@ -1417,26 +2807,34 @@ public class JsonWriter implements Closeable, Flushable
         final Writer output = this.out;
         for (int i = 0; i < lenMinus1; i++)
         {
-            output.write(floatToString(floats[i]));
+            writeFloat(floats[i]);
             output.write(',');
         }
-        output.write(floatToString(floats[lenMinus1]));
+        writeFloat(floats[lenMinus1]);
     }
 
-    private String doubleToString(double d)
+    private void writeDouble(double d) throws IOException
     {
-        if (isAllowNanAndInfinity()) {
-            return Double.toString(d);
+        if (!isAllowNanAndInfinity() && (Double.isNaN(d) || Double.isInfinite(d)))
+        {
+            out.write("null");
+        }
+        else
+        {
+            numbers.writeDouble(d, out);
         }
-        return (Double.isNaN(d) || Double.isInfinite(d)) ? "null" : Double.toString(d);
     }
 
-    private String floatToString(float d)
+    private void writeFloat(float f) throws IOException
     {
-        if (isAllowNanAndInfinity()) {
-            return Float.toString(d);
+        if (!isAllowNanAndInfinity() && (Float.isNaN(f) || Float.isInfinite(f)))
+        {
+            out.write("null");
+        }
+        else
+        {
+            numbers.writeFloat(f, out);
         }
-        return (Float.isNaN(d) || Float.isInfinite(d)) ? "null" : Float.toString(d);
     }
 
     private void writeLongArray(long[] longs, int lenMinus1) throws IOException
@@ -1447,22 +2845,22 @@ public class JsonWriter implements Closeable, Flushable
             for (int i = 0; i < lenMinus1; i++)
             {
                 output.write('"');
-                output.write(Long.toString(longs[i]));
+                numbers.writeLong(longs[i], output);
                 output.write('"');
                 output.write(',');
             }
             output.write('"');
-            output.write(Long.toString(longs[lenMinus1]));
+            numbers.writeLong(longs[lenMinus1], output);
             output.write('"');
         }
         else
         {
             for (int i = 0; i < lenMinus1; i++)
             {
-                output.write(Long.toString(longs[i]));
+                numbers.writeLong(longs[i], output);
                 output.write(',');
             }
-            output.write(Long.toString(longs[lenMinus1]));
+            numbers.writeLong(longs[lenMinus1], output);
         }
     }
 
@@ -1471,10 +2869,10 @@ public class JsonWriter implements Closeable, Flushable
         final Writer output = this.out;
         for (int i = 0; i < lenMinus1; i++)
         {
-            output.write(Integer.toString(ints[i]));
+            numbers.writeInt(ints[i], output);
             output.write(',');
         }
-        output.write(Integer.toString(ints[lenMinus1]));
+        numbers.writeInt(ints[lenMinus1], output);
     }
 
     private void writeShortArray(short[] shorts, int lenMinus1) throws IOException
@@ -1482,10 +2880,10 @@ public class JsonWriter implements Closeable, Flushable
         final Writer output = this.out;
         for (int i = 0; i < lenMinus1; i++)
         {
-            output.write(Integer.toString(shorts[i]));
+            numbers.writeInt(shorts[i], output);
             output.write(',');
         }
-        output.write(Integer.toString(shorts[lenMinus1]));
+        numbers.writeInt(shorts[lenMinus1], output);
     }
 
     private void writeByteArray(byte[] bytes, int lenMinus1) throws IOException
@@ -1500,66 +2898,447 @@ public class JsonWriter implements Closeable, Flushable
         output.write((char[]) byteStrs[bytes[lenMinus1] + 128]);
     }
 
-    private void writeCollection(Collection col, boolean showType) throws IOException
+    /**
+     * @param implied Class[] MINIMAL_TYPES element class (at [0]) that needs no @type, or null.  Only used when the
+     * Collection is written as an object ({"@type":..,"@items":[..]}), which is what the reader infers from.
+     */
+    private void writeCollection(Collection col, boolean showType, Class[] implied) throws IOException
     {
         if (neverShowType)
         {
-            showType = false;
+            showType = false;
+        }
+        final Writer output = this.out;
+        boolean referenced = objsReferenced.containsKey(col);
+        boolean isEmpty = col.isEmpty();
+
+        if (referenced || showType)
+        {
+            output.write('{');
+            tabIn();
+        }
+        else if (isEmpty)
+        {
+            output.write('[');
+        }
+
+        writeIdAndTypeIfNeeded(col, showType, referenced);
+
+        if (isEmpty)
+        {
+            if (referenced || showType)
+            {
+                tabOut();
+                output.write('}');
+            }
+            else
+            {
+                output.write(']');
+            }
+            return;
+        }
+
+        beginCollection(showType, referenced);
+        if (!columnar || !writeColumns(firstElements(col), output))
+        {
+            writeElements(output, col, showType || referenced ? implied[0] : null);
+        }
+
+        tabOut();
+        output.write(']');
+        if (showType || referenced)
+        {   // Finished object, as it was output as an object if @id or @type was output
+            tabOut();
+            output.write("}");
+        }
+    }
+
+    /**
+     * @param implied Class of the elements that are written without @type (MINIMAL_TYPES), or null.
+     */
+    private void writeElements(Writer output, Collection elements, final Class implied) throws IOException
+    {
+        if (!isParallel(elements.size()) || elements.size() > maxElements)
+        {
+            writeElements(output, elements.iterator(), implied);
+            return;
+        }
+
+        final List<Object> list = Arrays.asList(elements.toArray());
+        writeParts(list.size(), new Part()
+        {
+            public void write(JsonWriter writer, int from, int to) throws IOException
+            {
+                writer.writeElements(writer.out, list.subList(from, to).iterator(), implied);
+            }
+        });
+    }
+
+    private void writeElements(Writer output, Iterator i, Class implied) throws IOException
+    {
+        int count = maxElements;
+        while (count-- > 0 && i.hasNext())
+        {
+            writeCollectionElement(i.next(), implied);
+
+            if (count > 0 && i.hasNext())
+            {
+                output.write(',');
+                newLine();
+            }
+        }
+    }
+
+    /**
+     * @return col, or a List of its first MAX_ELEMENTS elements when it has more.
+     */
+    private Collection firstElements(Collection col)
+    {
+        if (col.size() <= maxElements)
+        {
+            return col;
+        }
+        List<Object> first = new ArrayList<>(maxElements);
+        Iterator i = col.iterator();
+        while (first.size() < maxElements)
+        {
+            first.add(i.next());
+        }
+        return first;
+    }
+
+    /**
+     * Writes the elements [from, to) of a PARALLEL Collection, Object[] or Map, separated by commas.
+     */
+    private interface Part
+    {
+        void write(JsonWriter writer, int from, int to) throws IOException;
+    }
+
+    /**
+     * @return true if a container of this size is written in parts on the PARALLEL pool.  Parts are never
+     * split again, and SYMBOL_TABLE / SHARED_STRINGS number their aliases in document order, so they turn it off.
+     */
+    private boolean isParallel(int size)
+    {
+        return pool != null && symbols == null && size > 1 && size >= 2 * pool.getParallelism();
+    }
+
+    /**
+     * PARALLEL: write size elements as consecutive parts.  Each part is written by its own JsonWriter on the
+     * pool into a String, and the Strings are copied to the output in order, so the output is identical to
+     * writing on this thread.  Only a window of parts is in flight (and in memory) at a time.<br>
+     * <br>
+     * The @id values come from traceReferences() as usual.  An object that the trace found more than once
+     * in the graph has to be defined (@id) and referenced (@ref) in document order, so a part that reaches
+     * one gives up, and is written on this thread when its turn comes (custom writers of the elements it wrote
+     * before giving up run again).  Any other exception thrown while writing a part is rethrown here, when that
+     * part's turn comes, and the parts still in flight are cancelled.
+     */
+    private void writeParts(final int size, final Part part) throws IOException
+    {
+        final int parallelism = pool.getParallelism();
+        final int partSize = Math.max(1, Math.min(MAX_PART_SIZE, size / (parallelism * 4)));
+        final int count = (size + partSize - 1) / partSize;
+        final Deque<ForkJoinTask<String>> window = new ArrayDeque<>();
+        final Writer output = out;
+        int submitted = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            while (submitted < count && window.size() < parallelism * 4)
+            {
+                final int from = submitted * partSize;
+                final int to = Math.min(size, from + partSize);
+                final JsonWriter writer = new JsonWriter(this, new StringWriter());
+                window.addLast(pool.submit(new Callable<String>()
+                {
+                    public String call() throws IOException
+                    {
+                        return writer.writePart(part, from, to);
+                    }
+                }));
+                submitted++;
+            }
+
+            if (i > 0)
+            {
+                output.write(',');
+                newLine();
+            }
+            final String text;
+            try
+            {
+                text = window.removeFirst().get();
+            }
+            catch (ExecutionException e)
+            {
+                cancel(window);
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new JsonIoException("Error writing PARALLEL part", cause);
+            }
+            catch (InterruptedException e)
+            {
+                cancel(window);
+                Thread.currentThread().interrupt();
+                throw new JsonIoException("Interrupted waiting for PARALLEL part", e);
+            }
+            if (text == null)
+            {
+                final int from = i * partSize;
+                part.write(this, from, Math.min(size, from + partSize));
+            }
+            else
+            {
+                output.write(text);
+            }
+        }
+    }
+
+    private static void cancel(Deque<ForkJoinTask<String>> window)
+    {
+        for (ForkJoinTask<String> task : window)
+        {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Runs on the pool, in a writer created with JsonWriter(parent, StringWriter).
+     * @return the JSON of the part, or null if it reached a shared object.
+     */
+    private String writePart(Part part, int from, int to) throws IOException
+    {
+        try
+        {
+            part.write(this, from, to);
+            return out.toString();
+        }
+        catch (SharedObjectException e)
+        {
+            return null;
+        }
+        finally
+        {   // Not close() - writers is the parent's
+            recycler.release(buffers);
+            buffers = null;
+        }
+    }
+
+    /**
+     * objsReferenced of a PARALLEL part writer.  Every check of whether an object is referenced goes through
+     * containsKey() / get(), so this is where a part finds out that it reached an object shared with the rest
+     * of the graph.  For all other objects the answer is 'no' - they occur exactly once.
+     */
+    private static final class PartReferences extends AbstractMap<Object, Long>
+    {
+        private final Map<Object, Long> referenced;
+
+        private PartReferences(Map<Object, Long> referenced)
+        {
+            this.referenced = referenced;
+        }
+
+        public boolean containsKey(Object o)
+        {
+            if (referenced.containsKey(o))
+            {
+                throw new SharedObjectException();
+            }
+            return false;
+        }
+
+        public Long get(Object o)
+        {
+            containsKey(o);
+            return null;
+        }
+
+        public Set<Entry<Object, Long>> entrySet()
+        {
+            return Collections.emptySet();
+        }
+    }
+
+    private static final class SharedObjectException extends RuntimeException
+    {
+        private SharedObjectException()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * COLUMNAR: write the elements as a {"@type":..,"@columns":[field names]} header followed by one array of
+     * field values per element.  Only done when there are at least 2 elements, all of the same plain class (no
+     * custom writer, no field specifiers or black list, not referenced by @ref).  Otherwise nothing is written.
+     * @return true if the elements were written.
+     */
+    private boolean writeColumns(Collection elements, Writer output) throws IOException
+    {
+        final Class c = getColumnarClass(elements);
+        if (c == null)
+        {
+            return false;
         }
-        final Writer output = this.out;
-        boolean referenced = objsReferenced.containsKey(col);
-        boolean isEmpty = col.isEmpty();
 
-        if (referenced || showType)
+        final ClassPlan plan = getPlan(c);
+        final List<String> names = new ArrayList<>();
+        final List<Field> fields = new ArrayList<>();
+        if (plan != null)
         {
-            output.write('{');
-            tabIn();
+            for (ClassPlan.FieldPlan fieldPlan : plan.fields)
+            {
+                names.add(fieldPlan.name);
+            }
         }
-        else if (isEmpty)
+        else
         {
-            output.write('[');
+            for (Map.Entry<String, Field> entry : MetaUtils.getDeepDeclaredFields(c).entrySet())
+            {
+                if ((entry.getValue().getModifiers() & Modifier.TRANSIENT) == 0)
+                {
+                    names.add(entry.getKey());
+                    fields.add(entry.getValue());
+                }
+            }
         }
 
-        writeIdAndTypeIfNeeded(col, showType, referenced);
+        output.write('{');
+        if (!neverShowType)
+        {
+            output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
+            writeTypeName(getSubstituteTypeName(c.getName()), output);
+            output.write("\",");
+        }
+        output.write(shortMetaKeys ? "\"@c\":[" : "\"@columns\":[");
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (i > 0)
+            {
+                output.write(',');
+            }
+            writeJsonUtf8String(names.get(i), output);
+        }
+        output.write("]}");
 
-        if (isEmpty)
+        for (Object element : elements)
         {
-            if (referenced || showType)
+            output.write(',');
+            newLine();
+            output.write('[');
+            if (plan != null)
             {
-                tabOut();
-                output.write('}');
+                writeRow(element, plan);
             }
             else
             {
-                output.write(']');
+                for (int i = 0; i < fields.size(); i++)
+                {
+                    if (i > 0)
+                    {
+                        output.write(',');
+                    }
+                    Object value = getValueByReflect(element, fields.get(i));
+                    if (value == null)
+                    {
+                        output.write("null");
+                    }
+                    else
+                    {
+                        writeFieldValue(value, fields.get(i).getType());
+                    }
+                }
             }
-            return;
+            output.write(']');
         }
+        return true;
+    }
 
-        beginCollection(showType, referenced);
-        Iterator i = col.iterator();
-
-        writeElements(output, i);
+    /**
+     * @return the Class shared by all elements, if they can be written by writeColumns(), otherwise null.
+     */
+    private Class getColumnarClass(Collection elements)
+    {
+        if (skipNullFields || elements.size() < 2)
+        {
+            return null;
+        }
+        Class c = null;
+        for (Object element : elements)
+        {
+            if (element == null || (c != null && element.getClass() != c) || objsReferenced.containsKey(element))
+            {
+                return null;
+            }
+            c = element.getClass();
+        }
 
-        tabOut();
-        output.write(']');
-        if (showType || referenced)
-        {   // Finished object, as it was output as an object if @id or @type was output
-            tabOut();
-            output.write("}");
+        if (c.isArray() || Collection.class.isAssignableFrom(c) || Map.class.isAssignableFrom(c) || Enum.class.isAssignableFrom(c) ||
+                MetaUtils.isLogicalPrimitive(c) || c == RawJson.class || (!notCustom.contains(c) && getCustomWriter(c) != null) ||
+                getFieldsUsingSpecifier(c, (Map) args.get(FIELD_SPECIFIERS)) != null ||
+                getFieldsUsingSpecifier(c, (Map) args.get(FIELD_BLACK_LIST)) != null)
+        {
+            return null;
         }
+        return c;
     }
 
-    private void writeElements(Writer output, Iterator i) throws IOException
+    /**
+     * Write the field values of an Object, in ClassPlan order, separated by commas (one COLUMNAR row).
+     */
+    private void writeRow(final Object obj, final ClassPlan plan) throws IOException
     {
-        while (i.hasNext())
+        final Writer output = out;
+        boolean first = true;
+        for (final ClassPlan.FieldPlan fieldPlan : plan.fields)
         {
-            writeCollectionElement(i.next());
-
-            if (i.hasNext())
+            if (!first)
             {
                 output.write(',');
-                newLine();
+            }
+            first = false;
+            if (fieldPlan.kind != ClassPlan.OBJECT)
+            {
+                try
+                {
+                    writePrimitiveField(obj, fieldPlan);
+                }
+                catch (IllegalAccessException e)
+                {   // Same as getValueByReflect() on the reflective path
+                    output.write("null");
+                }
+                continue;
+            }
+
+            Object o;
+            try
+            {
+                o = fieldPlan.get(obj);
+            }
+            catch (Exception ignored)
+            {
+                o = null;
+            }
+            if (o == null)
+            {
+                output.write("null");
+            }
+            else
+            {
+                writeFieldValue(o, fieldPlan.type, minimalTypes ? fieldPlan.getField() : null);
             }
         }
     }
@@ -1607,7 +3386,7 @@ public class JsonWriter implements Closeable, Flushable
         {
             showType = false;
         }
-        int len = jObj.getLength();
+        int len = Math.min(jObj.getLength(), maxElements);
         String type = jObj.type;
         Class arrayClass;
 
@@ -1642,7 +3421,7 @@ public class JsonWriter implements Closeable, Flushable
         if (typeWritten)
         {
             output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
-            output.write(getSubstituteTypeName(arrayClass.getName()));
+            writeTypeName(getSubstituteTypeName(arrayClass.getName()), output);
             output.write("\",");
             newLine();
         }
@@ -1685,7 +3464,7 @@ public class JsonWriter implements Closeable, Flushable
             }
             else if (Character.class == componentClass || char.class == componentClass)
             {
-                writeJsonUtf8String((String) value, output);
+                writeString((String) value, output);
             }
             else if (value instanceof Boolean || value instanceof Long || value instanceof Double)
             {
@@ -1697,7 +3476,7 @@ public class JsonWriter implements Closeable, Flushable
             }
             else if (value instanceof String)
             {   // Have to specially treat String because it could be referenced, but we still want inline (no @type, value:)
-                writeJsonUtf8String((String) value, output);
+                writeString((String) value, output);
             }
             else if (writeArrayElementIfMatching(componentClass, value, false, output)) { }
             else
@@ -1754,7 +3533,7 @@ public class JsonWriter implements Closeable, Flushable
                 newLine();
             }
             output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
-            output.write(getSubstituteTypeName(colClass.getName()));
+            writeTypeName(getSubstituteTypeName(colClass.getName()), output);
             output.write('"');
         }
 
@@ -1768,7 +3547,7 @@ public class JsonWriter implements Closeable, Flushable
         beginCollection(showType, referenced);
 
         Object[] items = (Object[]) jObj.get(ITEMS);
-        final int itemsLen = items.length;
+        final int itemsLen = Math.min(items.length, maxElements);
         final int itemsLenMinus1 = itemsLen - 1;
 
         for (int i=0; i < itemsLen; i++)
@@ -1819,7 +3598,7 @@ public class JsonWriter implements Closeable, Flushable
             {
                 Class mapClass = MetaUtils.classForName(type, getClassLoader());
                 output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
-                output.write(getSubstituteTypeName(mapClass.getName()));
+                writeTypeName(getSubstituteTypeName(mapClass.getName()), output);
                 output.write('"');
             }
             else
@@ -1845,7 +3624,7 @@ public class JsonWriter implements Closeable, Flushable
         tabIn();
         Iterator i = jObj.keySet().iterator();
 
-        writeElements(output, i);
+        writeElements(output, i, null);
 
         tabOut();
         output.write("],");
@@ -1854,7 +3633,7 @@ public class JsonWriter implements Closeable, Flushable
         tabIn();
         i =jObj.values().iterator();
 
-        writeElements(output, i);
+        writeElements(output, i, null);
 
         tabOut();
         output.write(']');
@@ -1897,7 +3676,7 @@ public class JsonWriter implements Closeable, Flushable
             {
                 Class mapClass = MetaUtils.classForName(type, getClassLoader());
                 output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
-                output.write(getSubstituteTypeName(mapClass.getName()));
+                writeTypeName(getSubstituteTypeName(mapClass.getName()), output);
                 output.write('"');
             }
             else
@@ -1951,7 +3730,7 @@ public class JsonWriter implements Closeable, Flushable
                 newLine();
             }
             output.write(shortMetaKeys ? "\"@t\":\"" : "\"@type\":\"");
-            output.write(getSubstituteTypeName(jObj.type));
+            writeTypeName(getSubstituteTypeName(jObj.type), output);
             output.write('"');
             try  { type = MetaUtils.classForName(jObj.type, getClassLoader()); } catch(Exception ignored) { type = null; }
         }
@@ -2006,11 +3785,11 @@ public class JsonWriter implements Closeable, Flushable
             }
             else if (value instanceof Number || value instanceof Boolean)
             {
-                output.write(value.toString());
+                writeNumberOrBoolean(value);
             }
             else if (value instanceof String)
             {
-                writeJsonUtf8String((String) value, output);
+                writeString((String) value, output);
             }
             else if (value instanceof Character)
             {
@@ -2036,7 +3815,7 @@ public class JsonWriter implements Closeable, Flushable
         return false;
     }
 
-    private void writeMap(Map map, boolean showType) throws IOException
+    private void writeMap(Map map, boolean showType, Class[] implied) throws IOException
     {
         if (neverShowType)
         {
@@ -2077,18 +3856,14 @@ public class JsonWriter implements Closeable, Flushable
 
         output.write(shortMetaKeys ? "\"@k\":[" : "\"@keys\":[");
         tabIn();
-        Iterator i = map.keySet().iterator();
-
-        writeElements(output, i);
+        writeElements(output, map.keySet(), implied[0]);
 
         tabOut();
         output.write("],");
         newLine();
         output.write(shortMetaKeys ? "\"@e\":[" : "\"@items\":[");
         tabIn();
-        i = map.values().iterator();
-
-        writeElements(output, i);
+        writeElements(output, map.values(), implied[1]);
 
         tabOut();
         output.write(']');
@@ -2097,7 +3872,7 @@ public class JsonWriter implements Closeable, Flushable
     }
 
 
-    private boolean writeMapWithStringKeys(Map map, boolean showType) throws IOException
+    private boolean writeMapWithStringKeys(Map map, boolean showType, final Class[] implied) throws IOException
     {
         if (neverShowType)
         {
@@ -2127,30 +3902,52 @@ public class JsonWriter implements Closeable, Flushable
             newLine();
         }
 
-        return writeMapBody(map.entrySet().iterator());
+        if (!isParallel(map.size()) || map.size() > maxElements)
+        {
+            writeEntries(map.entrySet().iterator(), implied[1]);
+            tabOut();
+            out.write('}');
+            return true;
+        }
+
+        final List<Object> entries = Arrays.asList(map.entrySet().toArray());
+        writeParts(entries.size(), new Part()
+        {
+            public void write(JsonWriter writer, int from, int to) throws IOException
+            {
+                writer.writeEntries(entries.subList(from, to).iterator(), implied[1]);
+            }
+        });
+        tabOut();
+        out.write('}');
+        return true;
     }
 
     private boolean writeMapBody(final Iterator i) throws IOException
+    {
+        writeEntries(i, null);
+        tabOut();
+        out.write('}');
+        return true;
+    }
+
+    private void writeEntries(final Iterator i, final Class implied) throws IOException
     {
         final Writer output = out;
-        while (i.hasNext())
+        int count = maxElements;
+        while (count-- > 0 && i.hasNext())
         {
             Entry att2value = (Entry) i.next();
-            writeJsonUtf8String((String)att2value.getKey(), output);
-            output.write(":");
+            writeName((String) att2value.getKey(), output);
 
-            writeCollectionElement(att2value.getValue());
+            writeCollectionElement(att2value.getValue(), implied);
 
-            if (i.hasNext())
+            if (count > 0 && i.hasNext())
             {
                 output.write(',');
                 newLine();
             }
         }
-
-        tabOut();
-        output.write('}');
-        return true;
     }
 
     /**
@@ -2179,6 +3976,14 @@ public class JsonWriter implements Closeable, Flushable
      * @throws IOException if an error occurs writing to the output stream.
      */
     private void writeCollectionElement(Object o) throws IOException
+    {
+        writeCollectionElement(o, null);
+    }
+
+    /**
+     * @param implied Class that o is written without @type for (MINIMAL_TYPES), or null.
+     */
+    private void writeCollectionElement(Object o, Class implied) throws IOException
     {
         if (o == null)
         {
@@ -2194,7 +3999,7 @@ public class JsonWriter implements Closeable, Flushable
         }
         else if (o instanceof String)
         {   // Never do an @ref to a String (they are treated as logical primitives and intern'ed on read)
-            writeJsonUtf8String((String) o, out);
+            writeString((String) o, out);
         }
         else if (neverShowType && MetaUtils.isPrimitive(o.getClass()))
         {   // If neverShowType, then force primitives (and primitive wrappers)
@@ -2203,7 +4008,7 @@ public class JsonWriter implements Closeable, Flushable
         }
         else
         {
-            writeImpl(o, true);
+            writeImpl(o, o.getClass() != implied);
         }
     }
 
@@ -2252,6 +4057,7 @@ public class JsonWriter implements Closeable, Flushable
         final Map<Class, List<Field>> fieldSpecifiers = (Map) args.get(FIELD_SPECIFIERS);
         final List<Field> fieldBlackListForClass = getFieldsUsingSpecifier(obj.getClass(), (Map) args.get(FIELD_BLACK_LIST));
         final List<Field> externallySpecifiedFields = getFieldsUsingSpecifier(obj.getClass(), fieldSpecifiers);
+        ClassPlan plan;
         if (externallySpecifiedFields != null)
         {
             for (Field field : externallySpecifiedFields)
@@ -2262,6 +4068,10 @@ public class JsonWriter implements Closeable, Flushable
                 }//else field is black listed.
             }
         }
+        else if (fieldBlackListForClass == null && (plan = getPlan(obj.getClass())) != null)
+        {   // Class has been specialized - write through its ClassPlan
+            first = writeFields(obj, first, plan);
+        }
         else
         {   // Reflectively use fields, skipping transient and static fields
             final Map<String, Field> classFields = MetaUtils.getDeepDeclaredFields(obj.getClass());
@@ -2337,8 +4147,7 @@ public class JsonWriter implements Closeable, Flushable
             newLine();
         }
 
-        writeJsonUtf8String(fieldName, out);
-        out.write(':');
+        writeName(fieldName, out);
 
 
         if (o == null)
@@ -2347,8 +4156,26 @@ public class JsonWriter implements Closeable, Flushable
             return false;
         }
 
-        Class type = field.getType();
+        writeFieldValue(o, field.getType(), field);
+        return false;
+    }
+
+    private void writeFieldValue(Object o, Class type) throws IOException
+    {
+        writeFieldValue(o, type, null);
+    }
+
+    /**
+     * @param field Field being written, or null.  With MINIMAL_TYPES, its generic type tells which Collection
+     * elements / Map keys and values the reader can type without @type.
+     */
+    private void writeFieldValue(Object o, Class type, Field field) throws IOException
+    {
         boolean forceType = o.getClass() != type;     // If types are not exactly the same, write "@type" field
+        if (minimalTypes && field != null && !alwaysShowType && (o instanceof Collection || o instanceof Map))
+        {
+            impliedTypes = getImpliedTypes(field);
+        }
 
         //When no type is written we can check the Object itself not the declaration
         if (MetaUtils.isPrimitive(type) || (neverShowType && MetaUtils.isPrimitive(o.getClass())))
@@ -2359,7 +4186,231 @@ public class JsonWriter implements Closeable, Flushable
         {
             writeImpl(o, forceType || alwaysShowType, true, true);
         }
-        return false;
+    }
+
+    /**
+     * MINIMAL_TYPES: the classes the reader stamps on untyped Collection elements, or Map keys and values, of field
+     * (ObjectResolver.markUntypedObjects()), from its generic type - List&lt;Order&gt;, Map&lt;String, Price&gt;.
+     * @return Class[] {element or key class, value class}, null where the reader cannot be relied on.
+     */
+    private Class[] getImpliedTypes(Field field)
+    {
+        Class[] implied = impliedTypesByField.get(field);
+        if (implied == null)
+        {
+            implied = NO_IMPLIED_TYPES;
+            final Type type = field.getGenericType();
+            if (type instanceof ParameterizedType)
+            {
+                final Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+                final Class raw = field.getType();
+                if (Collection.class.isAssignableFrom(raw) && args.length == 1)
+                {
+                    implied = new Class[] {impliedClass(args[0]), null};
+                }
+                else if (Map.class.isAssignableFrom(raw) && args.length == 2)
+                {
+                    implied = new Class[] {impliedClass(args[0]), impliedClass(args[1])};
+                }
+            }
+            impliedTypesByField.put(field, implied);
+        }
+        if ((implied[0] == null || !hasCustomWriter(implied[0])) && (implied[1] == null || !hasCustomWriter(implied[1])))
+        {
+            return implied;
+        }
+        return new Class[] {implied[0] == null || hasCustomWriter(implied[0]) ? null : implied[0],
+                implied[1] == null || hasCustomWriter(implied[1]) ? null : implied[1]};
+    }
+
+    /**
+     * @return t if it is a plain class whose untyped JSON object the reader turns into an instance of t: not a
+     * logical primitive (those are written without a JSON object), enum, array, Collection or Map.
+     */
+    private static Class impliedClass(Type t)
+    {
+        if (!(t instanceof Class))
+        {
+            return null;
+        }
+        final Class c = (Class) t;
+        if (c.isInterface() || Modifier.isAbstract(c.getModifiers()) || c.isArray() || c.isEnum() || c.isPrimitive() ||
+                MetaUtils.isLogicalPrimitive(c) || Collection.class.isAssignableFrom(c) || Map.class.isAssignableFrom(c))
+        {
+            return null;
+        }
+        return c;
+    }
+
+    private boolean hasCustomWriter(Class c)
+    {
+        return !notCustom.contains(c) && getCustomWriter(c) != null;
+    }
+
+    private ClassPlan getPlan(Class c)
+    {
+        return ClassPlan.getPlan(c, specializeAfter);
+    }
+
+    /**
+     * Write the pre-encoded "name": of a planned field, or its alias when SYMBOL_TABLE is set.
+     */
+    private void writeFieldName(ClassPlan.FieldPlan fieldPlan, Writer output) throws IOException
+    {
+        if (symbols == null)
+        {
+            output.write(fieldPlan.jsonName);
+        }
+        else
+        {
+            writeName(fieldPlan.name, output);
+        }
+    }
+
+    /**
+     * Write the fields of an Object using its ClassPlan.  Output is identical to the reflective
+     * writeField() loop, but primitive fields are read with the typed Field accessors (no boxing).
+     */
+    private boolean writeFields(final Object obj, boolean first, final ClassPlan plan) throws IOException
+    {
+        final Writer output = out;
+        for (final ClassPlan.FieldPlan fieldPlan : plan.fields)
+        {
+            if (fieldPlan.kind == ClassPlan.OBJECT)
+            {
+                Object o;
+                try
+                {
+                    o = fieldPlan.get(obj);
+                }
+                catch (Exception ignored)
+                {   // Same as getValueByReflect() on the reflective path
+                    o = null;
+                }
+                if (skipNullFields && o == null)
+                {
+                    continue;
+                }
+                if (!first)
+                {
+                    output.write(',');
+                    newLine();
+                }
+                first = false;
+                writeFieldName(fieldPlan, output);
+                if (o == null)
+                {
+                    output.write("null");
+                }
+                else
+                {
+                    writeFieldValue(o, fieldPlan.type, minimalTypes ? fieldPlan.getField() : null);
+                }
+                continue;
+            }
+
+            if (!first)
+            {
+                output.write(',');
+                newLine();
+            }
+            first = false;
+            writeFieldName(fieldPlan, output);
+            try
+            {
+                writePrimitiveField(obj, fieldPlan);
+            }
+            catch (IllegalAccessException e)
+            {   // Same as getValueByReflect() on the reflective path
+                output.write("null");
+            }
+        }
+        return first;
+    }
+
+    private void writePrimitiveField(final Object obj, final ClassPlan.FieldPlan fieldPlan) throws IOException, IllegalAccessException
+    {
+        final Writer output = out;
+        switch (fieldPlan.kind)
+        {
+            case ClassPlan.INT:
+                numbers.writeInt(fieldPlan.getInt(obj), output);
+                break;
+            case ClassPlan.LONG:
+                if (writeLongsAsStrings)
+                {
+                    output.write('"');
+                    numbers.writeLong(fieldPlan.getLong(obj), output);
+                    output.write('"');
+                }
+                else
+                {
+                    numbers.writeLong(fieldPlan.getLong(obj), output);
+                }
+                break;
+            case ClassPlan.DOUBLE:
+                writeDouble(fieldPlan.getDouble(obj));
+                break;
+            case ClassPlan.BOOLEAN:
+                output.write(fieldPlan.getBoolean(obj) ? "true" : "false");
+                break;
+            case ClassPlan.FLOAT:
+                writeFloat(fieldPlan.getFloat(obj));
+                break;
+            case ClassPlan.SHORT:
+                numbers.writeInt(fieldPlan.getShort(obj), output);
+                break;
+            case ClassPlan.BYTE:
+                output.write((char[]) byteStrings[fieldPlan.getByte(obj) + 128]);
+                break;
+            default:
+                writeJsonUtf8String(String.valueOf(fieldPlan.getChar(obj)), output);
+                break;
+        }
+    }
+
+    /**
+     * Write bytes as Base64 (RFC 4648, with padding), in chunks, without building the encoded String.
+     * @param bytes source bytes
+     * @param offset index of first byte to encode
+     * @param length number of bytes to encode
+     * @param output Writer to which the Base64 text is written
+     * @throws IOException if an error occurs writing to the output stream.
+     */
+    static void writeBase64(byte[] bytes, int offset, int length, Writer output) throws IOException
+    {
+        final char[] chunk = new char[Math.min(4096, (length + 2) / 3 * 4)];
+        final int end = offset + length;
+        final int wholeEnd = offset + length / 3 * 3;
+        int pos = 0;
+        int i = offset;
+        while (i < wholeEnd)
+        {
+            int bits = (bytes[i++] & 0xff) << 16 | (bytes[i++] & 0xff) << 8 | (bytes[i++] & 0xff);
+            chunk[pos++] = BASE64[bits >>> 18];
+            chunk[pos++] = BASE64[(bits >>> 12) & 0x3f];
+            chunk[pos++] = BASE64[(bits >>> 6) & 0x3f];
+            chunk[pos++] = BASE64[bits & 0x3f];
+            if (pos == chunk.length)
+            {
+                output.write(chunk, 0, pos);
+                pos = 0;
+            }
+        }
+        if (i < end)
+        {
+            int bits = (bytes[i++] & 0xff) << 16;
+            boolean two = i < end;
+            if (two)
+            {
+                bits |= (bytes[i] & 0xff) << 8;
+            }
+            chunk[pos++] = BASE64[bits >>> 18];
+            chunk[pos++] = BASE64[(bits >>> 12) & 0x3f];
+            chunk[pos++] = two ? BASE64[(bits >>> 6) & 0x3f] : '=';
+            chunk[pos++] = '=';
+        }
+        output.write(chunk, 0, pos);
     }
 
     /**
@@ -2373,6 +4424,10 @@ public class JsonWriter implements Closeable, Flushable
      */
     public static void writeJsonUtf8String(String s, final Writer output) throws IOException
     {
+        if (output instanceof BinaryJson.Encoder && ((BinaryJson.Encoder) output).writeString(s))
+        {
+            return;
+        }
         output.write('\"');
         final int len = s.length();
 
@@ -2437,7 +4492,15 @@ public class JsonWriter implements Closeable, Flushable
         }
         catch (Exception ignore) { }
         writerCache.clear();
-        writers.clear();
+        if (ownWriters)
+        {
+            writers.clear();
+        }
+        if (buffers != null)
+        {
+            recycler.release(buffers);
+            buffers = null;
+        }
     }
 
     private String getId(Object o)
@@ -2451,6 +4514,11 @@ public class JsonWriter implements Closeable, Flushable
             }
         }
         Long id = objsReferenced.get(o);
+        if (id == ZERO)
+        {   // PARALLEL_TRACE - numbered on first use
+            id = identity++;
+            objsReferenced.put(o, id);
+        }
         return id == null ? null : Long.toString(id);
     }
 }
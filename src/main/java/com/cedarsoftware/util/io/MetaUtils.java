@@ -6,7 +6,6 @@ import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -50,13 +49,6 @@ public class MetaUtils
     private static final Collection unmodifiableSortedSet = Collections.unmodifiableSortedSet(new TreeSet());
     private static final Map unmodifiableMap = Collections.unmodifiableMap(new HashMap());
     private static final Map unmodifiableSortedMap = Collections.unmodifiableSortedMap(new TreeMap());
-    static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>()
-    {
-        public SimpleDateFormat initialValue()
-        {
-            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-        }
-    };
     private static boolean useUnsafe = false;
     private static Unsafe unsafe;
     static Exception loadClassException;
@@ -1003,6 +995,7 @@ public class MetaUtils
         Map<String, Object> args = new HashMap<String, Object>();
         args.put(JsonWriter.TYPE, false);
         args.put(JsonWriter.SHORT_META_KEYS, true);
+        args.put(JsonWriter.MAX_OUTPUT_CHARS, argCharLen + 1);    // one more, to know whether it was cut off
         String arg = JsonWriter.objectToJson(obj, args);
         if (arg.length() > argCharLen)
         {
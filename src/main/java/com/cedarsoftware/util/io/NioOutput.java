@@ -0,0 +1,345 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Byte sink for JsonWriter's NIO targets.  For a WritableByteChannel, the bytes are collected in a direct
+ * ByteBuffer taken from a small shared pool, and handed to channel.write() each time it fills up (and on
+ * flush / close).  For a caller supplied ByteBuffer, the bytes are put into it, and when it is full a buffer
+ * twice the size (direct or heap, like the original) takes its place.  For an OutputStream, the bytes are
+ * collected in a (recycled) byte[] and written to the stream each time it fills up.<br>
+ * <br>
+ * Text is UTF-8 encoded by writer() straight into the buffer - there is no intermediate byte[] as with an
+ * OutputStreamWriter.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class NioOutput extends OutputStream
+{
+    static final int CHUNK_SIZE = 8192;
+    private static final int MAX_POOLED = 32;
+    private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private final WritableByteChannel channel;    // null = OutputStream or growable ByteBuffer
+    private final OutputStream stream;            // null = WritableByteChannel or growable ByteBuffer
+    private ByteBuffer buffer;
+    private boolean closed = false;
+
+    NioOutput(WritableByteChannel channel)
+    {
+        if (channel == null)
+        {
+            throw new JsonIoException("WritableByteChannel cannot be null");
+        }
+        this.channel = channel;
+        stream = null;
+        buffer = acquire();
+    }
+
+    NioOutput(OutputStream stream, byte[] bytes)
+    {
+        channel = null;
+        this.stream = stream;
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    NioOutput(ByteBuffer buffer)
+    {
+        channel = null;
+        stream = null;
+        this.buffer = buffer == null ? ByteBuffer.allocateDirect(CHUNK_SIZE) : buffer;
+    }
+
+    private static ByteBuffer acquire()
+    {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null)
+        {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void release(ByteBuffer buffer)
+    {
+        if (pooled.incrementAndGet() <= MAX_POOLED)
+        {
+            pool.offer(buffer);
+        }
+        else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return a Writer that UTF-8 encodes into this output.  Unpaired surrogates are written as '?', the
+     * same as OutputStreamWriter.
+     */
+    Writer writer()
+    {
+        return new Utf8Writer();
+    }
+
+    /**
+     * @return for a ByteBuffer target, the buffer holding the output (the supplied one, or a larger one
+     * that replaced it), flipped so that it is ready for channel.write() / get().
+     */
+    ByteBuffer toBuffer()
+    {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Make room for more bytes: hand the full buffer to the channel / stream, or grow it.
+     * @param wanted number of bytes about to be written
+     */
+    private void makeRoom(int wanted) throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("JsonWriter output is closed");
+        }
+        if (channel != null || stream != null)
+        {
+            drain();
+            return;
+        }
+        int size = Math.max(buffer.capacity() * 2, buffer.position() + wanted);
+        ByteBuffer bigger = buffer.isDirect() ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    private void drain() throws IOException
+    {
+        if (stream != null)
+        {
+            stream.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public void write(int b) throws IOException
+    {
+        if (!buffer.hasRemaining())
+        {
+            makeRoom(1);
+        }
+        buffer.put((byte) b);
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            if (!buffer.hasRemaining())
+            {
+                makeRoom(length);
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public void flush() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        if (channel != null)
+        {
+            drain();
+        }
+        else if (stream != null)
+        {
+            drain();
+            stream.flush();
+        }
+    }
+
+    /**
+     * Write out what is left and return the pooled buffer.  The channel / stream is closed, the same as
+     * JsonWriter.close() always closed its OutputStream.
+     */
+    public void close() throws IOException
+    {
+        if (closed || (channel == null && stream == null))
+        {
+            closed = true;
+            return;
+        }
+        closed = true;
+        try
+        {
+            drain();
+        }
+        finally
+        {
+            if (channel != null)
+            {
+                release(buffer);
+                buffer = null;
+                channel.close();
+            }
+            else
+            {
+                buffer = null;
+                stream.close();
+            }
+        }
+    }
+
+    private final class Utf8Writer extends Writer
+    {
+        private char highSurrogate = 0;
+
+        public void write(char[] chars, int offset, int length) throws IOException
+        {
+            final int end = offset + length;
+            for (int i = offset; i < end; i++)
+            {
+                final char c = chars[i];
+                if (c < 0x80 && highSurrogate == 0)
+                {
+                    if (!buffer.hasRemaining())
+                    {
+                        makeRoom(end - i);
+                    }
+                    buffer.put((byte) c);
+                }
+                else
+                {
+                    writeChar(c);
+                }
+            }
+        }
+
+        public void write(int c) throws IOException
+        {
+            if (c < 0x80 && highSurrogate == 0 && buffer.hasRemaining())
+            {
+                buffer.put((byte) c);
+            }
+            else
+            {
+                writeChar((char) c);
+            }
+        }
+
+        public void write(String str, int offset, int length) throws IOException
+        {
+            final int end = offset + length;
+            for (int i = offset; i < end; i++)
+            {
+                final char c = str.charAt(i);
+                if (c < 0x80 && highSurrogate == 0 && buffer.hasRemaining())
+                {
+                    buffer.put((byte) c);
+                }
+                else
+                {
+                    writeChar(c);
+                }
+            }
+        }
+
+        private void writeChar(char c) throws IOException
+        {
+            if (buffer.remaining() < 4)
+            {
+                makeRoom(4);
+            }
+            if (highSurrogate != 0)
+            {
+                final char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c))
+                {
+                    final int codePoint = Character.toCodePoint(high, c);
+                    buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+                    return;
+                }
+                buffer.put((byte) '?');
+            }
+
+            if (c < 0x80)
+            {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+            else if (Character.isHighSurrogate(c))
+            {
+                highSurrogate = c;
+            }
+            else if (Character.isLowSurrogate(c))
+            {
+                buffer.put((byte) '?');
+            }
+            else
+            {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+
+        public void flush() throws IOException
+        {
+            NioOutput.this.flush();
+        }
+
+        public void close() throws IOException
+        {
+            if (highSurrogate != 0 && !closed)
+            {
+                highSurrogate = 0;
+                write('?');
+            }
+            NioOutput.this.close();
+        }
+    }
+}
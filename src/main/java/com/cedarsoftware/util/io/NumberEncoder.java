@@ -0,0 +1,721 @@
+package com.cedarsoftware.util.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+
+/**
+ * Writes the text of numbers directly to a Writer, without creating a String per number.  The text is
+ * exactly that of Long.toString(), Integer.toString(), Double.toString() and Float.toString(), so
+ * switching to this class does not change any JSON output.<br>
+ * <br>
+ * Integers are converted two digits at a time from a 100-entry table.  Doubles and floats use the
+ * Schubfach algorithm (Raffaello Giulietti, "The Schubfach way to render doubles", 2020), which picks
+ * the shortest decimal that rounds back to the same binary value.  This is the algorithm behind
+ * Double.toString() and Float.toString() since Java 19.  Earlier JDKs sometimes print a longer digit
+ * string for the same value (e.g. 1.9999999999999998E23 for 2.0E23), so on those JDKs doubles and floats
+ * are still written with Double.toString() / Float.toString(), keeping the output byte-for-byte the same.<br>
+ * <br>
+ * Instances hold a small scratch buffer and are not thread-safe - each JsonWriter (and JsonGenerator)
+ * owns one.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class NumberEncoder
+{
+    private static final char[] DIGIT_TENS = new char[100];
+    private static final char[] DIGIT_ONES = new char[100];
+    private static final char[] MIN_LONG = "-9223372036854775808".toCharArray();
+    private static final long[] POW10 = new long[18];
+
+    // double (binary64) parameters
+    private static final int D_P = 53;
+    private static final int D_W = 11;
+    private static final int D_Q_MIN = -1074;
+    private static final int D_H = 17;
+    private static final long D_C_MIN = 1L << (D_P - 1);
+    private static final int D_BQ_MASK = (1 << D_W) - 1;
+    private static final long D_T_MASK = (1L << (D_P - 1)) - 1;
+    private static final long D_C_TINY = 3;
+
+    // float (binary32) parameters
+    private static final int F_P = 24;
+    private static final int F_W = 8;
+    private static final int F_Q_MIN = -149;
+    private static final int F_H = 9;
+    private static final int F_C_MIN = 1 << (F_P - 1);
+    private static final int F_BQ_MASK = (1 << F_W) - 1;
+    private static final int F_T_MASK = (1 << (F_P - 1)) - 1;
+    private static final int F_C_TINY = 8;
+
+    private static final int MASK_28 = (1 << 28) - 1;
+    private static final long MASK_32 = (1L << 32) - 1;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /** Range of decimal exponents k for which 10^-k is tabulated in G */
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    /**
+     * For each k, the 126-bit g = floor(10^-k 2^-r) + 1 (with r such that 2^125 &lt;= 10^-k 2^-r &lt; 2^126),
+     * split into g1 = g &gt;&gt; 63 (at index 2(k - K_MIN)) and g0 = g mod 2^63 (at the next index).
+     */
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            DIGIT_TENS[i] = (char) ('0' + i / 10);
+            DIGIT_ONES[i] = (char) ('0' + i % 10);
+        }
+
+        long pow = 1;
+        for (int i = 0; i < POW10.length; i++)
+        {
+            POW10[i] = pow;
+            pow *= 10;
+        }
+
+        final BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++)
+        {
+            BigInteger floor;
+            if (k <= 0)
+            {
+                BigInteger n = BigInteger.TEN.pow(-k);
+                int r = n.bitLength() - 126;
+                floor = r >= 0 ? n.shiftRight(r) : n.shiftLeft(-r);
+            }
+            else
+            {
+                BigInteger d = BigInteger.TEN.pow(k);
+                floor = BigInteger.ONE.shiftLeft(125 + d.bitLength()).divide(d);
+            }
+            BigInteger g = floor.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.and(mask63).longValue();
+        }
+    }
+
+    /** true when this JDK's Double.toString() is the shortest (Schubfach) rendering (Java 19+) */
+    private static final boolean SHORTEST_DOUBLE = "2.0E23".equals(Double.toString(2.0E23));
+    /** true when this JDK's Float.toString() is the shortest (Schubfach) rendering (Java 19+) */
+    private static final boolean SHORTEST_FLOAT = "4.0371408E11".equals(Float.toString(4.0371408E11f));
+
+    private final char[] buf = new char[32];
+    private int index;
+
+    /**
+     * Write the decimal text of value (same as Long.toString()).  A BinaryJson.Encoder gets the value itself.
+     */
+    void writeLong(long value, Writer out) throws IOException
+    {
+        if (out instanceof BinaryJson.Encoder && ((BinaryJson.Encoder) out).writeLong(value))
+        {
+            return;
+        }
+        if (value == Long.MIN_VALUE)
+        {
+            out.write(MIN_LONG);
+            return;
+        }
+        final char[] chars = buf;
+        int pos = chars.length;
+        final boolean negative = value < 0;
+        if (negative)
+        {
+            value = -value;
+        }
+        while (value > Integer.MAX_VALUE)
+        {
+            long q = value / 100;
+            int r = (int) (value - q * 100);
+            value = q;
+            chars[--pos] = DIGIT_ONES[r];
+            chars[--pos] = DIGIT_TENS[r];
+        }
+        pos = putDigits((int) value, chars, pos);
+        if (negative)
+        {
+            chars[--pos] = '-';
+        }
+        out.write(chars, pos, chars.length - pos);
+    }
+
+    /**
+     * Write the decimal text of value (same as Integer.toString()).
+     */
+    void writeInt(int value, Writer out) throws IOException
+    {
+        if (value == Integer.MIN_VALUE || out instanceof BinaryJson.Encoder)
+        {
+            writeLong(value, out);
+            return;
+        }
+        final char[] chars = buf;
+        int pos;
+        if (value < 0)
+        {
+            pos = putDigits(-value, chars, chars.length);
+            chars[--pos] = '-';
+        }
+        else
+        {
+            pos = putDigits(value, chars, chars.length);
+        }
+        out.write(chars, pos, chars.length - pos);
+    }
+
+    /**
+     * Write the digits of a non-negative int right-aligned, ending just before pos.
+     * @return position of the first digit.
+     */
+    private static int putDigits(int value, char[] chars, int pos)
+    {
+        while (value >= 100)
+        {
+            int q = value / 100;
+            int r = value - q * 100;
+            value = q;
+            chars[--pos] = DIGIT_ONES[r];
+            chars[--pos] = DIGIT_TENS[r];
+        }
+        chars[--pos] = DIGIT_ONES[value];
+        if (value >= 10)
+        {
+            chars[--pos] = DIGIT_TENS[value];
+        }
+        return pos;
+    }
+
+    /**
+     * Write the text of value, identical to Double.toString() - including "NaN", "Infinity", "-0.0".
+     * A BinaryJson.Encoder gets the value itself.
+     */
+    void writeDouble(double value, Writer out) throws IOException
+    {
+        if (out instanceof BinaryJson.Encoder && ((BinaryJson.Encoder) out).writeDouble(value))
+        {
+            return;
+        }
+        if (SHORTEST_DOUBLE)
+        {
+            writeShortest(value, out);
+        }
+        else
+        {
+            out.write(Double.toString(value));
+        }
+    }
+
+    /**
+     * Write the text of value, identical to Float.toString() - including "NaN", "Infinity", "-0.0".
+     */
+    void writeFloat(float value, Writer out) throws IOException
+    {
+        if (SHORTEST_FLOAT)
+        {
+            writeShortest(value, out);
+        }
+        else
+        {
+            out.write(Float.toString(value));
+        }
+    }
+
+    /**
+     * Write the shortest decimal that uniquely identifies value, in the Double.toString() layout
+     * (Java 19+ Double.toString() output).
+     */
+    void writeShortest(double value, Writer out) throws IOException
+    {
+        index = -1;
+        final long bits = Double.doubleToRawLongBits(value);
+        final long t = bits & D_T_MASK;
+        final int bq = (int) (bits >>> (D_P - 1)) & D_BQ_MASK;
+        if (bq == D_BQ_MASK)
+        {
+            out.write(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+        if (bits < 0)
+        {
+            append('-');
+        }
+        if (bq != 0)
+        {   // normal value.  Here mq = -q
+            final int mq = -D_Q_MIN + 1 - bq;
+            final long c = D_C_MIN | t;
+            if (0 < mq & mq < D_P)
+            {   // Fast path for integral values
+                final long f = c >> mq;
+                if (f << mq == c)
+                {
+                    doubleChars(f, 0);
+                    out.write(buf, 0, index + 1);
+                    return;
+                }
+            }
+            toDecimal(-mq, c, 0);
+        }
+        else if (t != 0)
+        {   // subnormal value
+            if (t < D_C_TINY)
+            {
+                toDecimal(D_Q_MIN, 10 * t, -1);
+            }
+            else
+            {
+                toDecimal(D_Q_MIN, t, 0);
+            }
+        }
+        else
+        {
+            append('0');
+            append('.');
+            append('0');
+        }
+        out.write(buf, 0, index + 1);
+    }
+
+    /**
+     * Write the shortest decimal that uniquely identifies value, in the Float.toString() layout
+     * (Java 19+ Float.toString() output).
+     */
+    void writeShortest(float value, Writer out) throws IOException
+    {
+        index = -1;
+        final int bits = Float.floatToRawIntBits(value);
+        final int t = bits & F_T_MASK;
+        final int bq = (bits >>> (F_P - 1)) & F_BQ_MASK;
+        if (bq == F_BQ_MASK)
+        {
+            out.write(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+        if (bits < 0)
+        {
+            append('-');
+        }
+        if (bq != 0)
+        {
+            final int mq = -F_Q_MIN + 1 - bq;
+            final int c = F_C_MIN | t;
+            if (0 < mq & mq < F_P)
+            {
+                final int f = c >> mq;
+                if (f << mq == c)
+                {
+                    floatChars(f, 0);
+                    out.write(buf, 0, index + 1);
+                    return;
+                }
+            }
+            toDecimal(-mq, c, 0);
+        }
+        else if (t != 0)
+        {
+            if (t < F_C_TINY)
+            {
+                toDecimal(F_Q_MIN, 10 * t, -1);
+            }
+            else
+            {
+                toDecimal(F_Q_MIN, t, 0);
+            }
+        }
+        else
+        {
+            append('0');
+            append('.');
+            append('0');
+        }
+        out.write(buf, 0, index + 1);
+    }
+
+    /**
+     * Schubfach core for doubles: v = c 2^q.  See figures 7 and 9 of the paper.
+     */
+    private void toDecimal(int q, long c, int dk)
+    {
+        final int out = (int) c & 0x1;
+        final long cb = c << 2;
+        final long cbr = cb + 2;
+        final long cbl;
+        final int k;
+        if (c != D_C_MIN | q == D_Q_MIN)
+        {   // regular spacing
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        }
+        else
+        {   // irregular spacing
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        final int h = q + flog2pow10(-k) + 2;
+
+        final long g1 = G[2 * (k - K_MIN)];
+        final long g0 = G[2 * (k - K_MIN) + 1];
+
+        final long vb = rop(g1, g0, cb << h);
+        final long vbl = rop(g1, g0, cbl << h);
+        final long vbr = rop(g1, g0, cbr << h);
+
+        final long s = vb >> 2;
+        if (s >= 100)
+        {   // s' = floor(s / 10), sp10 = 10 s', tp10 = 10 t'
+            final long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            final long tp10 = sp10 + 10;
+            final boolean upin = vbl + out <= sp10 << 2;
+            final boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+            {
+                doubleChars(upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+
+        final long t = s + 1;
+        final boolean uin = vbl + out <= s << 2;
+        final boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+        {   // Exactly one of u or w lies in the rounding interval
+            doubleChars(uin ? s : t, k + dk);
+            return;
+        }
+        // Both do: pick the one closest to v (even on a tie)
+        final long cmp = vb - ((s + t) << 1);
+        doubleChars(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Schubfach core for floats: v = c 2^q.
+     */
+    private void toDecimal(int q, int c, int dk)
+    {
+        final int out = c & 0x1;
+        final long cb = (long) c << 2;
+        final long cbr = cb + 2;
+        final long cbl;
+        final int k;
+        if (c != F_C_MIN | q == F_Q_MIN)
+        {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        }
+        else
+        {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        final int h = q + flog2pow10(-k) + 33;
+
+        final long g = G[2 * (k - K_MIN)] + 1;
+
+        final int vb = rop(g, cb << h);
+        final int vbl = rop(g, cbl << h);
+        final int vbr = rop(g, cbr << h);
+
+        final int s = vb >> 2;
+        if (s >= 100)
+        {   // s' = floor(s / 10) = floor(s 1717986919 / 2^34)
+            final int sp10 = 10 * (int) (s * 1717986919L >>> 34);
+            final int tp10 = sp10 + 10;
+            final boolean upin = vbl + out <= sp10 << 2;
+            final boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+            {
+                floatChars(upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+
+        final int t = s + 1;
+        final boolean uin = vbl + out <= s << 2;
+        final boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+        {
+            floatChars(uin ? s : t, k + dk);
+            return;
+        }
+        final int cmp = vb - ((s + t) << 1);
+        floatChars(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Computes rop(cp g 2^-127), where g = g1 2^63 + g0.
+     */
+    private static long rop(long g1, long g0, long cp)
+    {
+        final long x1 = multiplyHigh(g0, cp);
+        final long y0 = g1 * cp;
+        final long y1 = multiplyHigh(g1, cp);
+        final long z = (y0 >>> 1) + x1;
+        final long vbp = y1 + (z >>> 63);
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    /**
+     * Computes rop(cp g 2^-95).
+     */
+    private static int rop(long g, long cp)
+    {
+        final long x1 = multiplyHigh(g, cp);
+        final long vbp = x1 >>> 31;
+        return (int) (vbp | ((x1 & MASK_32) + MASK_32) >>> 32);
+    }
+
+    /**
+     * Format f 10^e (f has at most 17 digits) in the Double.toString() layout.
+     */
+    private void doubleChars(long f, int e)
+    {
+        // Determine len such that 10^(len-1) <= f < 10^len
+        int len = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+        if (f >= POW10[len])
+        {
+            len++;
+        }
+
+        // Normalize to 10^(H-1) <= f < 10^H, with f 10^(e-H) = 0.f 10^e
+        f *= POW10[D_H - len];
+        e += len;
+
+        // Split the 17 digits into h (1 digit), m (8 digits), l (8 digits)
+        final long hm = multiplyHigh(f, 193428131138340668L) >>> 20;
+        final int l = (int) (f - 100000000L * hm);
+        final int h = (int) (hm * 1441151881L >>> 57);
+        final int m = (int) (hm - 100000000 * h);
+
+        if (0 < e && e <= 7)
+        {   // plain format without leading zeroes
+            appendDigit(h);
+            int y = y(m);
+            int i = 1;
+            for (; i < e; i++)
+            {
+                int t = 10 * y;
+                appendDigit(t >>> 28);
+                y = t & MASK_28;
+            }
+            append('.');
+            for (; i <= 8; i++)
+            {
+                int t = 10 * y;
+                appendDigit(t >>> 28);
+                y = t & MASK_28;
+            }
+            lowDigits(l);
+        }
+        else if (-3 < e && e <= 0)
+        {   // plain format with leading zeroes
+            appendDigit(0);
+            append('.');
+            for (; e < 0; e++)
+            {
+                appendDigit(0);
+            }
+            appendDigit(h);
+            append8Digits(m);
+            lowDigits(l);
+        }
+        else
+        {   // computerized scientific notation
+            appendDigit(h);
+            append('.');
+            append8Digits(m);
+            lowDigits(l);
+            exponent(e - 1);
+        }
+    }
+
+    /**
+     * Format f 10^e (f has at most 9 digits) in the Float.toString() layout.
+     */
+    private void floatChars(int f, int e)
+    {
+        int len = flog10pow2(Integer.SIZE - Integer.numberOfLeadingZeros(f));
+        if (f >= POW10[len])
+        {
+            len++;
+        }
+
+        f *= (int) POW10[F_H - len];
+        e += len;
+
+        // Split the 9 digits into h (1 digit) and l (8 digits)
+        final int h = (int) (f * 1441151881L >>> 57);
+        final int l = f - 100000000 * h;
+
+        if (0 < e && e <= 7)
+        {
+            appendDigit(h);
+            int y = y(l);
+            int i = 1;
+            for (; i < e; i++)
+            {
+                int t = 10 * y;
+                appendDigit(t >>> 28);
+                y = t & MASK_28;
+            }
+            append('.');
+            for (; i <= 8; i++)
+            {
+                int t = 10 * y;
+                appendDigit(t >>> 28);
+                y = t & MASK_28;
+            }
+            removeTrailingZeroes();
+        }
+        else if (-3 < e && e <= 0)
+        {
+            appendDigit(0);
+            append('.');
+            for (; e < 0; e++)
+            {
+                appendDigit(0);
+            }
+            appendDigit(h);
+            append8Digits(l);
+            removeTrailingZeroes();
+        }
+        else
+        {
+            appendDigit(h);
+            append('.');
+            append8Digits(l);
+            removeTrailingZeroes();
+            exponent(e - 1);
+        }
+    }
+
+    private void lowDigits(int l)
+    {
+        if (l != 0)
+        {
+            append8Digits(l);
+        }
+        removeTrailingZeroes();
+    }
+
+    /**
+     * Left-to-right extraction of 8 digits (algorithm 1 of Bouvier and Zimmermann, b = 10, k = 8, n = 28).
+     */
+    private void append8Digits(int m)
+    {
+        int y = y(m);
+        for (int i = 0; i < 8; i++)
+        {
+            int t = 10 * y;
+            appendDigit(t >>> 28);
+            y = t & MASK_28;
+        }
+    }
+
+    private void removeTrailingZeroes()
+    {
+        while (buf[index] == '0')
+        {
+            index--;
+        }
+        // ... but keep the one directly after the '.'
+        if (buf[index] == '.')
+        {
+            index++;
+        }
+    }
+
+    /**
+     * floor((a + 1) 2^28 / 10^8) - 1, for a &lt; 10^8
+     */
+    private static int y(int a)
+    {
+        return (int) (multiplyHigh((long) (a + 1) << 28, 193428131138340668L) >>> 20) - 1;
+    }
+
+    private void exponent(int e)
+    {
+        append('E');
+        if (e < 0)
+        {
+            append('-');
+            e = -e;
+        }
+        if (e < 10)
+        {
+            appendDigit(e);
+            return;
+        }
+        int d;
+        if (e >= 100)
+        {   // floor(e / 100) = floor(1311 e / 2^17)
+            d = e * 1311 >>> 17;
+            appendDigit(d);
+            e -= 100 * d;
+        }
+        // floor(e / 10) = floor(103 e / 2^10)
+        d = e * 103 >>> 10;
+        appendDigit(d);
+        appendDigit(e - 10 * d);
+    }
+
+    private void append(char c)
+    {
+        buf[++index] = c;
+    }
+
+    private void appendDigit(int d)
+    {
+        buf[++index] = (char) ('0' + d);
+    }
+
+    /** floor(log10(2^e)) */
+    private static int flog10pow2(int e)
+    {
+        return (int) (e * 661971961083L >> 41);
+    }
+
+    /** floor(log10(3/4 2^e)) */
+    private static int flog10threeQuartersPow2(int e)
+    {
+        return (int) (e * 661971961083L + -274743187321L >> 41);
+    }
+
+    /** floor(log2(10^e)) */
+    private static int flog2pow10(int e)
+    {
+        return (int) (e * 913124641741L >> 38);
+    }
+
+    /**
+     * High 64 bits of the 128-bit product x y (Math.multiplyHigh() is Java 9+).
+     */
+    static long multiplyHigh(long x, long y)
+    {
+        final long x1 = x >> 32;
+        final long x2 = x & 0xFFFFFFFFL;
+        final long y1 = y >> 32;
+        final long y2 = y & 0xFFFFFFFFL;
+        final long z2 = x2 * y2;
+        final long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        final long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
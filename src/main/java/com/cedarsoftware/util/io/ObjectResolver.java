@@ -60,6 +60,7 @@ import static com.cedarsoftware.util.io.JsonObject.KEYS;
 public class ObjectResolver extends Resolver
 {
     private final ClassLoader classLoader;
+    private final int specializeAfter;
     protected JsonReader.MissingFieldHandler missingFieldHandler;
 
     /**
@@ -72,6 +73,7 @@ public class ObjectResolver extends Resolver
         super(reader);
         this.classLoader = classLoader;
         missingFieldHandler = reader.getMissingFieldHandler();
+        specializeAfter = JsonWriter.getIntSetting(reader.getArgs().get(JsonReader.SPECIALIZE_AFTER), -1);
     }
 
     /**
@@ -86,13 +88,28 @@ public class ObjectResolver extends Resolver
         final Object javaMate = jsonObj.target;
         final Iterator<Map.Entry<String, Object>> i = jsonObj.entrySet().iterator();
         final Class cls = javaMate.getClass();
+        final ClassPlan plan = ClassPlan.getPlan(cls, specializeAfter);
 
         while (i.hasNext())
         {
             Map.Entry<String, Object> e = i.next();
             String key = e.getKey();
-            final Field field = MetaUtils.getField(cls, key);
             Object rhs = e.getValue();
+            final Field field;
+            if (plan != null)
+            {   // Class has been specialized - primitives are set directly from the plan
+                final ClassPlan.FieldPlan fieldPlan = plan.getField(key);
+                if (fieldPlan != null && assignDirect(javaMate, fieldPlan, rhs))
+                {
+                    continue;
+                }
+                field = fieldPlan == null ? null : fieldPlan.getField();
+            }
+            else
+            {
+                field = MetaUtils.getField(cls, key);
+            }
+
             if (field != null)
             {
                 assignField(stack, jsonObj, field, rhs);
@@ -104,6 +121,79 @@ public class ObjectResolver extends Resolver
         }
     }
 
+    /**
+     * Set a field straight from its JSON value through the class's plan: primitive fields from a
+     * Long, Double or Boolean (typed setters, no boxing), and String fields from a String.  Anything
+     * that needs conversion, resolution or a custom reader is left to assignField().
+     * @return true if the field was assigned, false if the generic path must handle the value.
+     */
+    private boolean assignDirect(final Object target, final ClassPlan.FieldPlan fieldPlan, final Object rhs)
+    {
+        if (rhs instanceof String)
+        {
+            if (fieldPlan.type != String.class || !(getCustomReader(String.class) instanceof Readers.StringReader))
+            {
+                return false;
+            }
+            try
+            {
+                fieldPlan.set(target, rhs);
+                return true;
+            }
+            catch (Exception e)
+            {   // Let assignField() report it
+                return false;
+            }
+        }
+
+        if (fieldPlan.kind == ClassPlan.OBJECT || !(rhs instanceof Number || rhs instanceof Boolean) || getCustomReader(fieldPlan.type) != null)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (rhs instanceof Boolean)
+            {
+                if (fieldPlan.kind != ClassPlan.BOOLEAN)
+                {
+                    return false;
+                }
+                fieldPlan.setBoolean(target, (Boolean) rhs);
+                return true;
+            }
+
+            final Number number = (Number) rhs;
+            switch (fieldPlan.kind)
+            {
+                case ClassPlan.INT:
+                    fieldPlan.setInt(target, number.intValue());
+                    return true;
+                case ClassPlan.LONG:
+                    fieldPlan.setLong(target, number.longValue());
+                    return true;
+                case ClassPlan.DOUBLE:
+                    fieldPlan.setDouble(target, number.doubleValue());
+                    return true;
+                case ClassPlan.FLOAT:
+                    fieldPlan.setFloat(target, number.floatValue());
+                    return true;
+                case ClassPlan.SHORT:
+                    fieldPlan.setShort(target, number.shortValue());
+                    return true;
+                case ClassPlan.BYTE:
+                    fieldPlan.setByte(target, number.byteValue());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        catch (Exception e)
+        {   // Let assignField() report it
+            return false;
+        }
+    }
+
     static boolean isBasicWrapperType(Class clazz) {
         return clazz == Boolean.class || clazz == Integer.class ||
             clazz == Short.class || clazz == Character.class ||
@@ -111,6 +201,22 @@ public class ObjectResolver extends Resolver
             clazz == Double.class || clazz == Float.class;
     }
 
+    /**
+     * @return the parsed JSON value (JsonObject, Object[], String, Long, Double or Boolean) as JSON text again.
+     */
+    private static RawJson toRawJson(Object value)
+    {
+        if (value == JsonParser.EMPTY_OBJECT)
+        {
+            return RawJson.of("{}");
+        }
+        if (value instanceof Number || value instanceof Boolean)
+        {
+            return RawJson.of(value.toString());
+        }
+        return RawJson.of(JsonWriter.objectToJson(value));
+    }
+
     /**
      * Map Json Map object field to Java object field.
      *
@@ -144,6 +250,16 @@ public class ObjectResolver extends Resolver
                 }
                 return;
             }
+            if (rhs instanceof RawJson)
+            {   // RAW_JSON_FIELDS value - kept unparsed (or as its JSON text, for a String field)
+                field.set(target, fieldType == String.class ? rhs.toString() : rhs);
+                return;
+            }
+            if (fieldType == RawJson.class)
+            {   // Read without RAW_JSON_FIELDS, so parsed - back to JSON text
+                field.set(target, toRawJson(rhs));
+                return;
+            }
 
             // If there is a "tree" of objects (e.g, Map<String, List<Person>>), the subobjects may not have an
             // @type on them, if the source of the JSON is from JSON.stringify().  Deep traverse the args and
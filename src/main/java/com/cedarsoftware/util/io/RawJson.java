@@ -0,0 +1,116 @@
+package com.cedarsoftware.util.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON value that is already encoded - from a cache, a database column, an upstream service - to be embedded in a
+ * document written by JsonWriter.  JsonWriter copies it to the output as is, wherever it occurs (a field, a Map
+ * value, a Collection or array element, the root), without parsing it and without @type / @id.  It can hold a
+ * String, or UTF-8 bytes (byte[] or ByteBuffer), which are decoded when it is first written.<br>
+ * <br>
+ * JsonReader produces RawJson values for the fields listed in JsonReader.RAW_JSON_FIELDS, so a fragment can pass
+ * through a read and a write without ever being parsed into objects.<br>
+ * <br>
+ * The JSON is not checked unless validate() is called - invalid JSON in a RawJson makes the whole document invalid.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+public final class RawJson
+{
+    private volatile String json;
+    private final byte[] bytes;
+
+    private RawJson(String json, byte[] bytes)
+    {
+        this.json = json;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param json String containing one JSON value.
+     */
+    public static RawJson of(String json)
+    {
+        if (json == null)
+        {
+            throw new JsonIoException("RawJson cannot be null, use a null value instead");
+        }
+        return new RawJson(json, null);
+    }
+
+    /**
+     * @param utf8 byte[] containing one UTF-8 encoded JSON value.  It is not copied, so it must not change.
+     */
+    public static RawJson of(byte[] utf8)
+    {
+        if (utf8 == null)
+        {
+            throw new JsonIoException("RawJson cannot be null, use a null value instead");
+        }
+        return new RawJson(null, utf8);
+    }
+
+    /**
+     * @param utf8 ByteBuffer whose remaining bytes are one UTF-8 encoded JSON value.  They are copied, and the
+     * buffer's position is not changed.
+     */
+    public static RawJson of(ByteBuffer utf8)
+    {
+        if (utf8 == null)
+        {
+            throw new JsonIoException("RawJson cannot be null, use a null value instead");
+        }
+        byte[] copy = new byte[utf8.remaining()];
+        utf8.duplicate().get(copy);
+        return new RawJson(null, copy);
+    }
+
+    /**
+     * Check that this holds exactly one well-formed JSON value (with nothing but whitespace around it).
+     * @return this RawJson
+     * @throws JsonIoException describing the problem, if it does not.
+     */
+    public RawJson validate()
+    {
+        JsonReader.validate(toString(), null);
+        return this;
+    }
+
+    /**
+     * @return the JSON text.
+     */
+    public String toString()
+    {
+        String text = json;
+        if (text == null)
+        {   // Racing threads decode the same String
+            json = text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return text;
+    }
+
+    public boolean equals(Object o)
+    {
+        return o instanceof RawJson && toString().equals(o.toString());
+    }
+
+    public int hashCode()
+    {
+        return toString().hashCode();
+    }
+}
@@ -4,6 +4,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -144,7 +145,7 @@ public class Readers
                 {
                     throw new JsonIoException("Calendar missing 'time' field");
                 }
-                Date date = MetaUtils.dateFormat.get().parse(time);
+                Date date = IsoDateFormat.parseCalendar(time);
                 Class c;
                 if (jObj.getTarget() != null)
                 {
@@ -213,6 +214,237 @@ public class Readers
                 return null;
             }
 
+            Date date = parseIsoDate(dateStr);
+            return date != null ? date : parseDateWithPatterns(dateStr);
+        }
+
+        /**
+         * Single pass parse of the ISO-8601 style date-times written by JsonWriter (and most everything
+         * else): yyyy-MM-dd, optionally followed by 'T' or spaces, HH:mm[:ss[.fraction]] and a 'Z' or
+         * +/-HH[:]mm offset ('.' and '/' are accepted as date separators, '.' as a time separator, just
+         * as the patterns do).  The result is exactly the Date the regex patterns would produce.
+         * @param s trimmed date String
+         * @return Date, or null when the String is not in this form (or is out of range), in which
+         * case the regex patterns take over and produce the result (or error message).
+         */
+        static Date parseIsoDate(String s)
+        {
+            final int len = s.length();
+            if (len < 8 || !isDigits(s, 0, 4) || !isDateSeparator(s.charAt(4)))
+            {
+                return null;
+            }
+            final int y = digits(s, 0, 4);
+            int pos = 5;
+            int end = digitRun(s, pos, 2);
+            if (end == pos || end == len || !isDateSeparator(s.charAt(end)))
+            {
+                return null;
+            }
+            final int m = digits(s, pos, end);
+            pos = end + 1;
+            end = digitRun(s, pos, 2);
+            if (end == pos)
+            {
+                return null;
+            }
+            final int d = digits(s, pos, end);
+            if (m < 1 || m > 12 || d < 1 || d > 31)
+            {
+                return null;
+            }
+            pos = end;
+
+            if (pos == len)
+            {   // Date only
+                Calendar c = Calendar.getInstance();
+                c.clear();
+                c.set(y, m - 1, d);
+                return c.getTime();
+            }
+
+            // Date / time separator: 'T' or spaces
+            if (s.charAt(pos) == 'T')
+            {
+                pos++;
+            }
+            else if (s.charAt(pos) == ' ')
+            {
+                while (s.charAt(pos) == ' ')
+                {
+                    pos++;
+                }
+            }
+            else
+            {
+                return null;
+            }
+
+            // HH:mm[:ss[.fraction]]
+            if (len - pos < 5 || !isDigits(s, pos, 2) || !isTimeSeparator(s.charAt(pos + 2)) || !isDigits(s, pos + 3, 2))
+            {
+                return null;
+            }
+            final int h = digits(s, pos, pos + 2);
+            final int mn = digits(s, pos + 3, pos + 5);
+            int sec = 0;
+            int ms = 0;
+            pos += 5;
+            if (pos < len && isTimeSeparator(s.charAt(pos)))
+            {
+                if (len - pos < 3 || !isDigits(s, pos + 1, 2))
+                {
+                    return null;
+                }
+                sec = digits(s, pos + 1, pos + 3);
+                pos += 3;
+                if (pos < len && s.charAt(pos) == '.')
+                {   // Fraction is taken as a count of milliseconds, whatever its length (as the patterns do)
+                    end = digitRun(s, pos + 1, 10);
+                    if (end == pos + 1 || end - pos - 1 > 9)
+                    {
+                        return null;
+                    }
+                    ms = digits(s, pos + 1, end);
+                    pos = end;
+                }
+            }
+            if (h > 23 || mn > 59 || sec > 59)
+            {
+                return null;
+            }
+
+            if (pos == len)
+            {   // Local time in the default time zone
+                Calendar c = Calendar.getInstance();
+                c.clear();
+                c.set(y, m - 1, d, h, mn, sec);
+                c.set(Calendar.MILLISECOND, ms);
+                return c.getTime();
+            }
+
+            // Z or +/-HH[:]mm
+            int offset;
+            char ch = s.charAt(pos);
+            if (ch == 'Z' && pos + 1 == len)
+            {
+                offset = 0;
+            }
+            else if (ch == '+' || ch == '-')
+            {
+                pos++;
+                if (len - pos < 4 || !isDigits(s, pos, 2))
+                {
+                    return null;
+                }
+                int oh = digits(s, pos, pos + 2);
+                pos += 2;
+                if (s.charAt(pos) == ':')
+                {
+                    pos++;
+                }
+                if (len - pos != 2 || !isDigits(s, pos, 2))
+                {
+                    return null;
+                }
+                int om = digits(s, pos, pos + 2);
+                if (oh > 23 || om > 59)
+                {   // TimeZone.getTimeZone() quietly turns these into GMT - leave that to the patterns
+                    return null;
+                }
+                offset = (oh * 60 + om) * 60000;
+                if (ch == '-')
+                {
+                    offset = -offset;
+                }
+            }
+            else
+            {
+                return null;
+            }
+
+            // Before the Gregorian cut-over, or when the default Calendar is not Gregorian, the arithmetic
+            // below would not match Calendar.getInstance().
+            if (y < 1583 || !IsoDateFormat.isGregorian(Locale.getDefault(Locale.Category.FORMAT)))
+            {
+                return null;
+            }
+            long days = daysFromCivil(y, m) + d - 1;
+            return new Date(days * 86400000L + h * 3600000L + mn * 60000L + sec * 1000L + ms - offset);
+        }
+
+        /**
+         * @return days from 1970-01-01 to the first day of the given (proleptic Gregorian) year and month.
+         */
+        private static long daysFromCivil(int year, int month)
+        {
+            if (month <= 2)
+            {
+                year--;
+            }
+            int era = year / 400;
+            int yoe = year - era * 400;
+            int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+            int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+            return era * 146097L + doe - 719468L;
+        }
+
+        private static boolean isDateSeparator(char c)
+        {
+            return c == '-' || c == '/' || c == '.';
+        }
+
+        private static boolean isTimeSeparator(char c)
+        {
+            return c == ':' || c == '.';
+        }
+
+        private static boolean isDigits(String s, int start, int count)
+        {
+            if (start + count > s.length())
+            {
+                return false;
+            }
+            for (int i = start; i < start + count; i++)
+            {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9')
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return index just past the run of (at most max) digits starting at start.
+         */
+        private static int digitRun(String s, int start, int max)
+        {
+            int limit = Math.min(s.length(), start + max);
+            int i = start;
+            while (i < limit && s.charAt(i) >= '0' && s.charAt(i) <= '9')
+            {
+                i++;
+            }
+            return i;
+        }
+
+        private static int digits(String s, int start, int end)
+        {
+            int value = 0;
+            for (int i = start; i < end; i++)
+            {
+                value = value * 10 + s.charAt(i) - '0';
+            }
+            return value;
+        }
+
+        /**
+         * Regex based parse covering the many other formats (month names, day names, m/d/yyyy, Date.toString(), ...).
+         */
+        static Date parseDateWithPatterns(String dateStr)
+        {
             // Determine which date pattern (Matcher) to use
             Matcher matcher = datePattern1.matcher(dateStr);
 
@@ -859,6 +1091,56 @@ public class Readers
         }
     }
 
+    public static class ByteBufferReader implements JsonReader.JsonClassReaderEx
+    {
+        /**
+         * Reads "value" (Base64 String or list of numbers) into a heap ByteBuffer, or a direct and/or read-only
+         * ByteBuffer when one was written.  Position is 0 and limit the number of bytes.
+         */
+        public Object read(Object o, Deque<JsonObject<String, Object>> stack, Map<String, Object> args)
+        {
+            JsonObject jObj = (JsonObject) o;
+            Object value = jObj.get("value");
+            byte[] bytes;
+            if (value instanceof String)
+            {
+                bytes = JsonObject.decodeBase64((String) value);
+            }
+            else if (value instanceof Object[])
+            {
+                Object[] items = (Object[]) value;
+                bytes = new byte[items.length];
+                for (int i = 0; i < items.length; i++)
+                {
+                    bytes[i] = ((Number) items[i]).byteValue();
+                }
+            }
+            else
+            {
+                throw new JsonIoException("java.nio.ByteBuffer must specify 'value' field");
+            }
+
+            ByteBuffer kind = jObj.getTarget() instanceof ByteBuffer ? (ByteBuffer) jObj.getTarget() : null;
+            ByteBuffer buffer;
+            if (kind != null && kind.isDirect())
+            {
+                buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes);
+                buffer.rewind();
+            }
+            else
+            {
+                buffer = ByteBuffer.wrap(bytes);
+            }
+            if (kind != null && kind.isReadOnly())
+            {
+                buffer = buffer.asReadOnlyBuffer();
+            }
+            jObj.setTarget(buffer);
+            return buffer;
+        }
+    }
+
     public static class RecordReader implements JsonReader.JsonClassReaderEx
     {
         @Override
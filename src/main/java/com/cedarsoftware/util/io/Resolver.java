@@ -353,6 +353,10 @@ abstract class Resolver
                     jsonObj.moveCharsToMate();
                     mate = jsonObj.target;
                 }
+                else if (c == byte[].class && JsonObject.isBase64(items))
+                {
+                    mate = JsonObject.decodeBase64((String) items[0]);
+                }
                 else
                 {
                     mate = Array.newInstance(c.getComponentType(), size);
@@ -403,8 +407,15 @@ abstract class Resolver
             // if clazz.isArray(), then it must be an [] type.
             if (clazz.isArray() || (items != null && clazz == Object.class && !jsonObj.containsKey(KEYS)))
             {
-                int size = (items == null) ? 0 : items.length;
-                mate = Array.newInstance(clazz.isArray() ? clazz.getComponentType() : Object.class, size);
+                if (clazz == byte[].class && JsonObject.isBase64(items))
+                {
+                    mate = JsonObject.decodeBase64((String) items[0]);
+                }
+                else
+                {
+                    int size = (items == null) ? 0 : items.length;
+                    mate = Array.newInstance(clazz.isArray() ? clazz.getComponentType() : Object.class, size);
+                }
             }
             else if (clazz.isEnum())
             {
@@ -0,0 +1,112 @@
+package com.cedarsoftware.util.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-document table of short aliases for @type values and field names (JsonWriter.SYMBOL_TABLE) and
+ * String values (JsonWriter.SHARED_STRINGS).  The first time a name is written it is defined inline as
+ * "^:name", which assigns it the next index (0, 1, 2, ...).  Every later use is written as "^index".
+ * Names shorter than 4 characters are not worth an alias and are written as-is, unless they start with
+ * '^' (those are always defined, so that they can never be mistaken for a reference).<br>
+ * <br>
+ * The reader expands names and Strings only when JsonReader.SYMBOL_TABLE is set - otherwise text that happens
+ * to start with '^' is ordinary JSON and is taken literally.  Every use of an alias returns the same String instance.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+final class SymbolTable
+{
+    static final char MARK = '^';
+    private static final String DEFINE = "^:";
+    private static final int MIN_ALIAS_LENGTH = 4;
+
+    private final Map<String, String> refs = new HashMap<>();     // writing: name -> "^index"
+    private final List<String> names = new ArrayList<>();         // reading: index -> name
+
+    /**
+     * Writing side.
+     * @param name field name, @type value or String value
+     * @return text to write in place of the name: "^:name" the first time, "^index" afterwards.
+     */
+    String alias(String name)
+    {
+        String ref = refs.get(name);
+        if (ref != null)
+        {
+            return ref;
+        }
+        if (name.length() < MIN_ALIAS_LENGTH && (name.isEmpty() || name.charAt(0) != MARK))
+        {
+            return name;
+        }
+        refs.put(name, MARK + Integer.toString(refs.size()));
+        return DEFINE + name;
+    }
+
+    /**
+     * Reading side.
+     * @param text field name, @type value or String value as read
+     * @return the name text stands for - defining it when text is "^:name".
+     * @throws JsonIoException if text references an index that has not been defined.
+     */
+    String expand(String text)
+    {
+        if (text.length() < 2 || text.charAt(0) != MARK)
+        {
+            return text;
+        }
+        if (text.charAt(1) == ':')
+        {
+            String name = JsonParser.cachedString(text.substring(2));
+            names.add(name);
+            return name;
+        }
+        if (names.isEmpty())
+        {   // No definition seen - plain JSON
+            return text;
+        }
+
+        int index = 0;
+        for (int i = 1; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9' || index >= names.size())
+            {
+                index = -1;
+                break;
+            }
+            index = index * 10 + c - '0';
+        }
+        if (index < 0 || index >= names.size())
+        {
+            throw new JsonIoException("Unknown name reference in JSON: " + text);
+        }
+        return names.get(index);
+    }
+
+    /**
+     * Forget all names - the next document starts a new table.
+     */
+    void clear()
+    {
+        refs.clear();
+        names.clear();
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.text.Format;
 import java.text.SimpleDateFormat;
@@ -61,9 +62,8 @@ public class Writers
         public void write(Object obj, boolean showType, Writer output) throws IOException
         {
             Calendar cal = (Calendar) obj;
-            MetaUtils.dateFormat.get().setTimeZone(cal.getTimeZone());
             output.write("\"time\":\"");
-            output.write(MetaUtils.dateFormat.get().format(cal.getTime()));
+            IsoDateFormat.formatCalendar(cal, output);
             output.write("\",\"zone\":\"");
             output.write(cal.getTimeZone().getID());
             output.write('"');
@@ -85,8 +85,10 @@ public class Writers
             Date date = (Date)obj;
             Object dateFormat = args.get(DATE_FORMAT);
             if (dateFormat instanceof String)
-            {   // Passed in as String, turn into a SimpleDateFormat instance to be used throughout this stream write.
-                dateFormat = new SimpleDateFormat((String) dateFormat, Locale.ENGLISH);
+            {   // Passed in as String, turn into an IsoDateFormat (ISO patterns) or SimpleDateFormat instance to be
+                // used throughout this stream write.
+                IsoDateFormat iso = IsoDateFormat.forPattern((String) dateFormat, TimeZone.getDefault());
+                dateFormat = iso != null ? iso : new SimpleDateFormat((String) dateFormat, Locale.ENGLISH);
                 args.put(DATE_FORMAT, dateFormat);
             }
             if (showType)
@@ -94,7 +96,13 @@ public class Writers
                 output.write("\"value\":");
             }
 
-            if (dateFormat instanceof Format)
+            if (dateFormat instanceof IsoDateFormat)
+            {
+                output.write('"');
+                ((IsoDateFormat) dateFormat).format(date, output);
+                output.write('"');
+            }
+            else if (dateFormat instanceof Format)
             {
                 output.write("\"");
                 output.write(((Format) dateFormat).format(date));
@@ -396,6 +404,52 @@ public class Writers
         }
     }
 
+    public static class ByteBufferWriter implements JsonWriter.JsonClassWriterEx
+    {
+        /**
+         * Writes the bytes between position and limit (the buffer's position is not changed) as "value", either
+         * a Base64 String (JsonWriter.BYTES_AS_BASE64) or a list of numbers.
+         */
+        public void write(Object obj, boolean showType, Writer output, Map<String, Object> args) throws IOException
+        {
+            ByteBuffer buffer = ((ByteBuffer) obj).duplicate();
+            int length = buffer.remaining();
+            byte[] bytes;
+            int offset;
+            if (buffer.hasArray())
+            {
+                bytes = buffer.array();
+                offset = buffer.arrayOffset() + buffer.position();
+            }
+            else
+            {   // Direct or read-only buffer
+                bytes = new byte[length];
+                buffer.get(bytes);
+                offset = 0;
+            }
+
+            output.write("\"value\":");
+            if (JsonWriter.isTrue(args.get(JsonWriter.BYTES_AS_BASE64)))
+            {
+                output.write('"');
+                JsonWriter.writeBase64(bytes, offset, length, output);
+                output.write('"');
+                return;
+            }
+            final Object[] byteStrs = JsonWriter.byteStrings;
+            output.write('[');
+            for (int i = 0; i < length; i++)
+            {
+                if (i > 0)
+                {
+                    output.write(',');
+                }
+                output.write((char[]) byteStrs[bytes[offset + i] + 128]);
+            }
+            output.write(']');
+        }
+    }
+
     // ========== Maintain knowledge about relationships below this line ==========
     static final String DATE_FORMAT = JsonWriter.DATE_FORMAT;
 
@@ -0,0 +1,556 @@
+package com.cedarsoftware.util.io.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor that generates a {@code com.cedarsoftware.util.io.ClassCodec} for every class
+ * annotated with {@code @JsonIoCodec}, and lists the generated codecs in
+ * META-INF/services/com.cedarsoftware.util.io.ClassCodec so json-io registers them at runtime.<br>
+ * <br>
+ * The generated codec mirrors MetaUtils.getDeepDeclaredFields(): the same fields, in the same order,
+ * with the same 'Declaring.name' keys for shadowed fields, so that JSON written through a codec is
+ * identical to the reflective output.  Fields the generated code can reach (non-private, non-final
+ * fields in an accessible class) are read and written directly; the rest are delegated to the
+ * ClassCodec defaults.<br>
+ * <br>
+ * The processor is not registered in META-INF/services/javax.annotation.processing.Processor, so it
+ * only runs when requested, e.g. {@code javac -processor com.cedarsoftware.util.io.processor.CodecProcessor}.
+ *
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License");
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+@SupportedAnnotationTypes(CodecProcessor.ANNOTATION)
+public class CodecProcessor extends AbstractProcessor
+{
+    static final String ANNOTATION = "com.cedarsoftware.util.io.JsonIoCodec";
+    static final String SERVICE_FILE = "META-INF/services/com.cedarsoftware.util.io.ClassCodec";
+    static final String CODEC_SUFFIX = "_JsonIoCodec";
+    private static final String[] PRIMITIVES = {"boolean", "byte", "short", "int", "long", "float", "double", "char"};
+    private static final String[] ACCESSORS = {"Boolean", "Byte", "Short", "Int", "Long", "Float", "Double", "Char"};
+    private final Set<String> codecs = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        if (roundEnv.processingOver())
+        {
+            writeServiceFile();
+            return false;
+        }
+
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (annotation == null)
+        {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+        {
+            if (!isSupported(element))
+            {
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try
+            {
+                codecs.add(generate(type));
+            }
+            catch (IOException e)
+            {
+                error("Unable to generate json-io codec: " + e.getMessage(), type);
+            }
+        }
+        return true;
+    }
+
+    private boolean isSupported(Element element)
+    {
+        if (element.getKind() != ElementKind.CLASS)
+        {
+            error("@JsonIoCodec is only supported on classes (enums, records and interfaces are handled by json-io directly)", element);
+            return false;
+        }
+        TypeElement type = (TypeElement) element;
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT))
+        {
+            error("@JsonIoCodec class must be concrete", type);
+            return false;
+        }
+        if (modifiers.contains(Modifier.PRIVATE))
+        {
+            error("@JsonIoCodec class must not be private", type);
+            return false;
+        }
+        NestingKind nesting = type.getNestingKind();
+        if (nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS || (nesting == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)))
+        {
+            error("@JsonIoCodec class must be top-level or a static nested class", type);
+            return false;
+        }
+        if (isSubtype(type, "java.util.Collection") || isSubtype(type, "java.util.Map"))
+        {
+            error("@JsonIoCodec does not apply to Collections or Maps (json-io writes their contents, not their fields)", type);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isSubtype(TypeElement type, String name)
+    {
+        TypeElement other = processingEnv.getElementUtils().getTypeElement(name);
+        Types types = processingEnv.getTypeUtils();
+        return other != null && types.isAssignable(types.erasure(type.asType()), types.erasure(other.asType()));
+    }
+
+    /**
+     * Mirror of MetaUtils.getDeepDeclaredFields(): declared, non-static fields of the class and then of
+     * each superclass, with later (shadowed) duplicates keyed as 'BinaryClassName.field'.
+     */
+    private Map<String, VariableElement> collectFields(TypeElement type)
+    {
+        final Elements elements = processingEnv.getElementUtils();
+        final Map<String, VariableElement> fields = new LinkedHashMap<>();
+        TypeElement curr = type;
+
+        while (curr != null)
+        {
+            for (Element member : curr.getEnclosedElements())
+            {
+                if (member.getKind() != ElementKind.FIELD || member.getModifiers().contains(Modifier.STATIC))
+                {
+                    continue;
+                }
+                VariableElement field = (VariableElement) member;
+                String name = field.getSimpleName().toString();
+                if ("metaClass".equals(name) && "groovy.lang.MetaClass".equals(erasedName(field.asType())))
+                {
+                    continue;
+                }
+                if (fields.containsKey(name))
+                {
+                    fields.put(elements.getBinaryName(curr) + "." + name, field);
+                }
+                else
+                {
+                    fields.put(name, field);
+                }
+            }
+
+            TypeMirror superType = curr.getSuperclass();
+            if (superType.getKind() != TypeKind.DECLARED)
+            {
+                break;
+            }
+            curr = (TypeElement) ((DeclaredType) superType).asElement();
+        }
+        return fields;
+    }
+
+    private String generate(TypeElement type) throws IOException
+    {
+        final Elements elements = processingEnv.getElementUtils();
+        final String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+        final String typeName = type.getQualifiedName().toString();
+        final String binaryName = elements.getBinaryName(type).toString();
+        final String codecSimpleName = binaryName.substring(pkg.isEmpty() ? 0 : pkg.length() + 1).replace('$', '_') + CODEC_SUFFIX;
+        final String codecName = pkg.isEmpty() ? codecSimpleName : pkg + "." + codecSimpleName;
+
+        final Map<String, VariableElement> fields = collectFields(type);
+        final List<String> names = new ArrayList<>(fields.keySet());
+        final List<VariableElement> members = new ArrayList<>(fields.values());
+        final int count = names.size();
+        final boolean[] direct = new boolean[count];
+        final boolean[] writable = new boolean[count];
+
+        StringBuilder src = new StringBuilder(4096);
+        if (!pkg.isEmpty())
+        {
+            src.append("package ").append(pkg).append(";\n\n");
+        }
+        src.append("/**\n * json-io codec for ").append(typeName).append(".  Generated by ")
+           .append(CodecProcessor.class.getName()).append(" - do not edit.\n */\n");
+        src.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        src.append("public final class ").append(codecSimpleName).append(" extends com.cedarsoftware.util.io.ClassCodec\n{\n");
+
+        // Constructor (field metadata)
+        src.append("    public ").append(codecSimpleName).append("()\n    {\n");
+        src.append("        super(").append(typeName).append(".class,\n");
+        src.append("              new String[] {");
+        for (int i = 0; i < count; i++)
+        {
+            src.append(i == 0 ? "" : ", ").append(quote(names.get(i)));
+        }
+        src.append("},\n              new Class[] {");
+        for (int i = 0; i < count; i++)
+        {
+            VariableElement field = members.get(i);
+            TypeMirror fieldType = processingEnv.getTypeUtils().erasure(field.asType());
+            boolean typeVisible = isAccessible(fieldType, pkg);
+            direct[i] = typeVisible && isAccessible(field, pkg);
+            writable[i] = direct[i] && !field.getModifiers().contains(Modifier.FINAL);
+
+            src.append(i == 0 ? "" : ", ");
+            if (typeVisible)
+            {
+                src.append(sourceName(fieldType)).append(".class");
+            }
+            else
+            {
+                src.append("loadType(").append(typeName).append(".class, ").append(quote(runtimeName(fieldType))).append(')');
+            }
+        }
+        src.append("},\n              new boolean[] {");
+        for (int i = 0; i < count; i++)
+        {
+            src.append(i == 0 ? "" : ", ").append(members.get(i).getModifiers().contains(Modifier.TRANSIENT));
+        }
+        boolean instantiable = hasNoArgConstructor(type);
+        src.append("},\n              ").append(instantiable).append(");\n    }\n");
+
+        if (instantiable)
+        {
+            src.append("\n    public Object newInstance(Class c)\n    {\n        return new ").append(typeName).append("();\n    }\n");
+        }
+
+        // Boxed accessors
+        StringBuilder get = new StringBuilder();
+        StringBuilder set = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            VariableElement field = members.get(i);
+            if (!direct[i])
+            {
+                continue;
+            }
+            String target = "((" + sourceName(processingEnv.getTypeUtils().erasure(field.getEnclosingElement().asType())) + ") obj)." + field.getSimpleName();
+            get.append("            case ").append(i).append(":\n                return ").append(target).append(";\n");
+            if (writable[i])
+            {
+                set.append("            case ").append(i).append(":\n                ").append(target).append(" = ")
+                   .append(unboxed(processingEnv.getTypeUtils().erasure(field.asType()))).append(";\n                return;\n");
+            }
+        }
+        appendSwitch(src, "protected Object get(Object obj, int index)", get, "return super.get(obj, index);");
+        appendSwitch(src, "protected void set(Object obj, int index, Object value)", set, "super.set(obj, index, value);");
+
+        // Typed (non-boxing) primitive accessors
+        for (int p = 0; p < PRIMITIVES.length; p++)
+        {
+            StringBuilder typedGet = new StringBuilder();
+            StringBuilder typedSet = new StringBuilder();
+            for (int i = 0; i < count; i++)
+            {
+                VariableElement field = members.get(i);
+                if (!direct[i] || !PRIMITIVES[p].equals(field.asType().toString()))
+                {
+                    continue;
+                }
+                String target = "((" + sourceName(processingEnv.getTypeUtils().erasure(field.getEnclosingElement().asType())) + ") obj)." + field.getSimpleName();
+                typedGet.append("            case ").append(i).append(":\n                return ").append(target).append(";\n");
+                if (writable[i])
+                {
+                    typedSet.append("            case ").append(i).append(":\n                ").append(target).append(" = value;\n                return;\n");
+                }
+            }
+            appendSwitch(src, "protected " + PRIMITIVES[p] + " get" + ACCESSORS[p] + "(Object obj, int index)", typedGet, "return super.get" + ACCESSORS[p] + "(obj, index);");
+            if (!"char".equals(PRIMITIVES[p]))
+            {
+                appendSwitch(src, "protected void set" + ACCESSORS[p] + "(Object obj, int index, " + PRIMITIVES[p] + " value)", typedSet, "super.set" + ACCESSORS[p] + "(obj, index, value);");
+            }
+        }
+        src.append("}\n");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(codecName, type);
+        try (Writer writer = file.openWriter())
+        {
+            writer.write(src.toString());
+        }
+        return codecName;
+    }
+
+    private static void appendSwitch(StringBuilder src, String signature, StringBuilder cases, String fallback)
+    {
+        if (cases.length() == 0)
+        {
+            return;
+        }
+        src.append("\n    ").append(signature).append("\n    {\n        switch (index)\n        {\n");
+        src.append(cases);
+        src.append("            default:\n                ").append(fallback).append('\n');
+        if (fallback.startsWith("super.set"))
+        {
+            src.append("                return;\n");
+        }
+        src.append("        }\n    }\n");
+    }
+
+    private static String unboxed(TypeMirror type)
+    {
+        switch (type.getKind())
+        {
+            case BOOLEAN:
+                return "(Boolean) value";
+            case CHAR:
+                return "(Character) value";
+            case BYTE:
+                return "((Number) value).byteValue()";
+            case SHORT:
+                return "((Number) value).shortValue()";
+            case INT:
+                return "((Number) value).intValue()";
+            case LONG:
+                return "((Number) value).longValue()";
+            case FLOAT:
+                return "((Number) value).floatValue()";
+            case DOUBLE:
+                return "((Number) value).doubleValue()";
+            default:
+                return "(" + sourceName(type) + ") value";
+        }
+    }
+
+    private boolean hasNoArgConstructor(TypeElement type)
+    {
+        for (Element member : type.getEnclosedElements())
+        {
+            if (member.getKind() == ElementKind.CONSTRUCTOR && ((ExecutableElement) member).getParameters().isEmpty())
+            {
+                return !member.getModifiers().contains(Modifier.PRIVATE);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if generated code in package 'pkg' can name the field (and its declaring class).
+     */
+    private boolean isAccessible(VariableElement field, String pkg)
+    {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE))
+        {
+            return false;
+        }
+        TypeElement declaring = (TypeElement) field.getEnclosingElement();
+        if (!isAccessible(declaring, pkg))
+        {
+            return false;
+        }
+        return modifiers.contains(Modifier.PUBLIC) || packageOf(declaring).equals(pkg);
+    }
+
+    private boolean isAccessible(TypeMirror type, String pkg)
+    {
+        if (type.getKind().isPrimitive())
+        {
+            return true;
+        }
+        if (type.getKind() == TypeKind.ARRAY)
+        {
+            return isAccessible(((ArrayType) type).getComponentType(), pkg);
+        }
+        if (type.getKind() == TypeKind.DECLARED)
+        {
+            return isAccessible((TypeElement) ((DeclaredType) type).asElement(), pkg);
+        }
+        return false;
+    }
+
+    private boolean isAccessible(TypeElement type, String pkg)
+    {
+        Element curr = type;
+        boolean samePackage = packageOf(type).equals(pkg);
+        while (curr instanceof TypeElement)
+        {
+            Set<Modifier> modifiers = curr.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC)))
+            {
+                return false;
+            }
+            curr = curr.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private String packageOf(Element element)
+    {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(element);
+        return pkg.getQualifiedName().toString();
+    }
+
+    private static String sourceName(TypeMirror type)
+    {
+        if (type.getKind() == TypeKind.ARRAY)
+        {
+            return sourceName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type.getKind() == TypeKind.DECLARED)
+        {
+            return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private String erasedName(TypeMirror type)
+    {
+        return sourceName(processingEnv.getTypeUtils().erasure(type));
+    }
+
+    /**
+     * @return the Class.getName() form of the (erased) type, e.g. "[Lcom.acme.Outer$Inner;".
+     */
+    private String runtimeName(TypeMirror type)
+    {
+        if (type.getKind() == TypeKind.ARRAY)
+        {
+            TypeMirror component = ((ArrayType) type).getComponentType();
+            String name = runtimeName(component);
+            if (component.getKind() == TypeKind.ARRAY)
+            {
+                return "[" + name;
+            }
+            switch (component.getKind())
+            {
+                case BOOLEAN: return "[Z";
+                case BYTE: return "[B";
+                case SHORT: return "[S";
+                case INT: return "[I";
+                case LONG: return "[J";
+                case FLOAT: return "[F";
+                case DOUBLE: return "[D";
+                case CHAR: return "[C";
+                default: return "[L" + name + ";";
+            }
+        }
+        if (type.getKind() == TypeKind.DECLARED)
+        {
+            return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+        }
+        return type.toString();
+    }
+
+    private static String quote(String s)
+    {
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                quoted.append('\\');
+            }
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Write (or merge into, for incremental builds) the ServiceLoader registration of all generated codecs.
+     */
+    private void writeServiceFile()
+    {
+        if (codecs.isEmpty())
+        {
+            return;
+        }
+        Filer filer = processingEnv.getFiler();
+        Set<String> all = new TreeSet<>(codecs);
+        try
+        {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Reader in = existing.openReader(true))
+            {
+                BufferedReader lines = new BufferedReader(in);
+                String line;
+                while ((line = lines.readLine()) != null)
+                {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#"))
+                    {
+                        all.add(line);
+                    }
+                }
+            }
+        }
+        catch (IOException | IllegalArgumentException ignored)
+        {   // No earlier registration to merge with
+        }
+
+        try
+        {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer out = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8))
+            {
+                for (String codec : all)
+                {
+                    out.write(codec);
+                    out.write('\n');
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            error("Unable to write " + SERVICE_FILE + ": " + e.getMessage(), null);
+        }
+    }
+
+    private void error(String message, Element element)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,194 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestBinaryJson
+{
+    static class Node
+    {
+        String name
+        long id
+        double weight
+        Node next
+        List<Object> things = []
+        Map<Object, Object> lookup = [:]
+        char[] code
+        BigInteger big
+        Date when
+    }
+
+    static class Values
+    {
+        float f = 1.1f
+        Float boxedF = 3.3f
+        double d = 0.1d
+        Double boxedD = -0.0d
+        double nan = Double.NaN
+        double inf = Double.NEGATIVE_INFINITY
+        long l = Long.MIN_VALUE
+        int i = Integer.MIN_VALUE
+        short s = -7
+        byte b = -128
+        char c = '"'
+        long[] longs = [1L, -2L] as long[]
+        float[] floats = [0.1f, 2.0f] as float[]
+        String text = 'plain \\ "escaped" \t é中😀'
+        String caret = '^:x'
+    }
+
+    private static Node graph()
+    {
+        Node a = new Node(name:'a "quoted"\né中😀', id:Long.MIN_VALUE, weight:-0.125d, code:'xyz' as char[],
+                big:new BigInteger('123456789012345678901234567890'), when:new Date(1234567890123L))
+        Node b = new Node(name:'', id:Long.MAX_VALUE, weight:1.0E300d, next:a)
+        a.next = b
+        a.things.addAll([1, 2.5d, 'three', null, true, [4L, 5L] as long[], b, [] as Object[], [:], new Node(name:'n')])
+        a.lookup.put(7L, 'seven')
+        a.lookup.put(b, a)
+        b.lookup.put('k', [1, [2, [3]]])
+        return a
+    }
+
+    private static byte[] binary(Object o, Map args)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(bytes, args + [(JsonWriter.BINARY):true])
+        writer.write(o)
+        writer.close()
+        return bytes.toByteArray()
+    }
+
+    @Test
+    void testRoundTripMatchesText()
+    {
+        Node a = graph()
+        for (Map args : [[:], [(JsonWriter.SHORT_META_KEYS):true, (JsonWriter.BYTES_AS_BASE64):true], [(JsonWriter.TYPE_NAME_MAP):[(Node.class.name):'N']]])
+        {
+            String json = JsonWriter.objectToJson(a, args)
+            byte[] bin = binary(a, args)
+            assertTrue(bin.length < json.getBytes('UTF-8').length)
+
+            // Converter gives back exactly the text JsonWriter writes, and converts that text to the same bytes
+            assertEquals(json, BinaryJson.toJson(bin))
+            assertTrue(Arrays.equals(bin, BinaryJson.fromJson(json)))
+            assertTrue(Arrays.equals(bin, binary(a, args + [(JsonWriter.PRETTY_PRINT):true])))
+
+            Map readArgs = [(JsonReader.BINARY):true]
+            if (args.containsKey(JsonWriter.TYPE_NAME_MAP))
+            {
+                readArgs[JsonReader.TYPE_NAME_MAP] = [(Node.class.name):'N']
+            }
+            Node fromBinary = (Node) new JsonReader(new ByteArrayInputStream(bin), readArgs).readObject()
+            Node fromText = (Node) JsonReader.jsonToJava(json, readArgs.findAll { k, v -> k != JsonReader.BINARY })
+            assertTrue(DeepEquals.deepEquals(fromText, fromBinary))
+            assertTrue(fromBinary.next.next.is(fromBinary))
+            assertEquals(a.name, fromBinary.name)
+        }
+    }
+
+    @Test
+    void testDirectTokensMatchText()
+    {   // Strings and numbers go to the Encoder as values (not text), except floats and strings inside a token
+        Values values = new Values()
+        JsonWriter.allowNanAndInfinity = true
+        try
+        {
+            for (Map args : [[:], [(JsonWriter.WRITE_LONGS_AS_STRINGS):true], [(JsonWriter.SHARED_STRINGS):true, (JsonWriter.SYMBOL_TABLE):true]])
+            {
+                Object[] root = [values, values.text, 5L, 2.5d, 1.5f, 'x' as char, [values.text, values.caret]] as Object[]
+                assertTrue(Arrays.equals(BinaryJson.fromJson(JsonWriter.objectToJson(root, args)), binary(root, args)))
+            }
+        }
+        finally
+        {
+            JsonWriter.allowNanAndInfinity = false
+        }
+        Object[] root = [values] as Object[]
+        assertTrue(Arrays.equals(BinaryJson.fromJson(JsonWriter.objectToJson(root)), binary(root, [:])))
+    }
+
+    @Test
+    void testMapsMode()
+    {
+        Node a = new Node(name:'a', things:[1, 'two', new Node(name:'b', weight:2.5d)], lookup:[x:[1L, 2L] as long[]])
+        a.next = a
+        String json = JsonWriter.objectToJson(a)
+        Map maps = (Map) new JsonReader(binary(a, [:]), [(JsonReader.BINARY):true, (JsonReader.USE_MAPS):true]).readObject()
+        assertEquals(JsonWriter.objectToJson(JsonReader.jsonToMaps(json)), JsonWriter.objectToJson(maps))
+        assertTrue(maps.next.is(maps))
+    }
+
+    @Test
+    void testSeveralValuesOnOneStream()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(bytes, [(JsonWriter.BINARY):true])
+        writer.write(new Node(name:'first'))
+        writer.write([new Node(name:'second')] as Object[])
+        writer.write(42L)
+        writer.close()
+
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(bytes.toByteArray()), [(JsonReader.BINARY):true])
+        assertEquals('first', ((Node) reader.readObject()).name)
+        assertEquals('second', ((Node) ((Object[]) reader.readObject())[0]).name)
+        assertEquals(42L, reader.readObject())
+        reader.close()
+    }
+
+    @Test
+    void testNumbersAndLiterals()
+    {
+        String json = '{"a":[0,-1,9223372036854775807,-9223372036854775808,99999999999999999999,1.5E-7,-0.0,1e3],"b":[true,false,null,"\\u0041\\/"],"c":{}}'
+        byte[] bin = BinaryJson.fromJson(json)
+        assertEquals('{"a":[0,-1,9223372036854775807,-9223372036854775808,99999999999999999999,1.5E-7,-0.0,1000.0],"b":[true,false,null,"A/"],"c":{}}', BinaryJson.toJson(bin))
+        assertEquals('', BinaryJson.toJson(BinaryJson.fromJson('')))
+    }
+
+    @Test
+    void testBadInput()
+    {
+        for (byte[] bad : ['{"a":1}'.getBytes('UTF-8'), [(byte) 'J', (byte) 'B', 1, BinaryJson.BEGIN_OBJECT, BinaryJson.STRING] as byte[],
+                           [(byte) 'J', (byte) 'B', 1, BinaryJson.BEGIN_OBJECT, BinaryJson.NAME_REF, 3] as byte[]])
+        {
+            try
+            {
+                new JsonReader(bad, [(JsonReader.BINARY):true]).readObject()
+                fail()
+            }
+            catch (JsonIoException ignored)
+            { }
+        }
+
+        try
+        {
+            JsonWriter.objectToJson(new Node(), [(JsonWriter.BINARY):true])
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.cause.message.contains('BINARY'))
+        }
+    }
+}
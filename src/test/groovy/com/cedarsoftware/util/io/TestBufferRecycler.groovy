@@ -0,0 +1,192 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestBufferRecycler
+{
+    private static Object graph()
+    {
+        StringBuilder big = new StringBuilder()
+        for (int i = 0; i < 3000; i++)
+        {
+            big.append('é中😀 ')      // crosses the 8K byte and char buffer boundaries with multi-byte sequences
+        }
+        List<Object> list = []
+        for (int i = 0; i < 500; i++)
+        {
+            list.add(['name':'item ' + i, 'text':'tab\tquote"\\ \u0001 é', 'n':i * 1.5d, 'big':12345678901234L] as LinkedHashMap)
+        }
+        list.add(big.toString())
+        return list
+    }
+
+    @Test
+    void testRoundTrip()
+    {
+        Object o = graph()
+        for (BufferRecycler recycler : [BufferRecycler.NONE, BufferRecycler.shared(4), BufferRecycler.threadLocal()])
+        {
+            Map args = [(JsonWriter.BUFFER_RECYCLER):recycler, (JsonReader.BUFFER_RECYCLER):recycler]
+            for (int pass = 0; pass < 3; pass++)
+            {
+                String json = JsonWriter.objectToJson(o, args)
+
+                ByteArrayOutputStream stream = new ByteArrayOutputStream()
+                JsonWriter writer = new JsonWriter(stream, args)
+                writer.write(o)
+                writer.close()
+                byte[] bytes = stream.toByteArray()
+                assertTrue(Arrays.equals(json.getBytes(StandardCharsets.UTF_8), bytes))
+
+                assertTrue(DeepEquals.deepEquals(o, JsonReader.jsonToJava(json, args)))
+                assertTrue(DeepEquals.deepEquals(o, new JsonReader(bytes, args).readObject()))
+                assertTrue(DeepEquals.deepEquals(o, JsonReader.jsonToJava(new ByteArrayInputStream(bytes), args)))
+            }
+        }
+    }
+
+    @Test
+    void testBuffersReused()
+    {
+        BufferRecycler recycler = BufferRecycler.shared(2)
+        Map args = [(JsonReader.BUFFER_RECYCLER):recycler, (JsonWriter.BUFFER_RECYCLER):recycler]
+
+        JsonReader reader = new JsonReader('{"a":"some text"}', args)
+        BufferRecycler.Buffers buffers = reader.buffers
+        reader.readObject()
+        reader.close()
+        assertNull(reader.buffers)
+
+        reader = new JsonReader('[1,2,3]', args)
+        assertTrue(reader.buffers.is(buffers))
+        reader.close()
+
+        JsonWriter writer = new JsonWriter(new ByteArrayOutputStream(), args)
+        assertTrue(writer.buffers.is(buffers))
+        writer.write(['x':[1, 2]])
+        writer.close()
+
+        // Grew too large to keep
+        StringBuilder huge = new StringBuilder('"')
+        for (int i = 0; i < 70000; i++)
+        {
+            huge.append('z')
+        }
+        huge.append('"')
+        reader = new JsonReader(huge.toString(), args)
+        assertTrue(reader.buffers.is(buffers))
+        assertEquals(70000, ((String) reader.readObject()).length())
+        reader.close()
+        reader = new JsonReader('[]', args)
+        assertFalse(reader.buffers.is(buffers))
+        reader.close()
+
+        recycler = BufferRecycler.NONE
+        args = [(JsonReader.BUFFER_RECYCLER):recycler]
+        reader = new JsonReader('[]', args)
+        buffers = reader.buffers
+        reader.close()
+        reader = new JsonReader('[]', args)
+        assertFalse(reader.buffers.is(buffers))
+        reader.close()
+    }
+
+    @Test
+    void testThreadLocal()
+    {
+        BufferRecycler recycler = BufferRecycler.threadLocal()
+        Map args = [(JsonReader.BUFFER_RECYCLER):recycler]
+        JsonReader reader = new JsonReader('[]', args)
+        BufferRecycler.Buffers buffers = reader.buffers
+        reader.close()
+
+        BufferRecycler.Buffers other = null
+        Thread thread = new Thread({
+            JsonReader r = new JsonReader('[]', args)
+            other = r.buffers
+            r.close()
+        })
+        thread.start()
+        thread.join()
+        assertFalse(other.is(buffers))
+
+        reader = new JsonReader('[]', args)
+        assertTrue(reader.buffers.is(buffers))
+        JsonReader nested = new JsonReader('[]', args)      // not closed yet - gets its own
+        assertFalse(nested.buffers.is(buffers))
+        nested.close()
+        reader.close()
+    }
+
+    @Test
+    void testErrorLocationAfterReuse()
+    {
+        BufferRecycler recycler = BufferRecycler.shared(1)
+        Map args = [(JsonReader.BUFFER_RECYCLER):recycler]
+        JsonReader.jsonToJava('{"@type":"java.util.ArrayList","@items":["abcdefghijklmnopqrstuvwxyz"]}', args)
+        try
+        {
+            JsonReader.jsonToJava('{"a":1,\n"b":[1,2,}', args)
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.message.contains('line: 2'))
+            assertTrue(e.message.contains('"b":[1,2,}'))
+            assertFalse(e.message.contains('abcdefg'))    // snippet ring was cleared before reuse
+        }
+    }
+
+    @Test
+    void testMalformedUtf8()
+    {
+        byte[] bytes = [(byte) '"', (byte) 'a', (byte) 0xc3, (byte) 'b', (byte) 0xff, (byte) '"'] as byte[]
+        String expected = new String(bytes, StandardCharsets.UTF_8)
+        assertEquals(expected.substring(1, expected.length() - 1), new JsonReader(bytes, [:]).readObject())
+    }
+
+    @Test
+    void testBadSetting()
+    {
+        try
+        {
+            JsonWriter.objectToJson('x', [(JsonWriter.BUFFER_RECYCLER):'pool'])
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null)
+            {
+                t = t.cause
+            }
+            assertTrue(t.message.contains('BUFFER_RECYCLER must be a BufferRecycler'))
+        }
+    }
+}
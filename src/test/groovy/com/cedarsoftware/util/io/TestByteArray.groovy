@@ -2,7 +2,13 @@ package com.cedarsoftware.util.io
 
 import org.junit.Test
 
+import java.nio.ByteBuffer
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
 import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
 
 /**
  * @author John DeRegnaucourt (jdereg@gmail.com)
@@ -39,5 +45,96 @@ class TestByteArray
         }
     }
 
+    static class Thumbnail
+    {
+        String name
+        byte[] image
+        Object extra
+        byte[][] tiles
+        ByteBuffer buffer
+    }
+
+    private static final Map BASE64 = [(JsonWriter.BYTES_AS_BASE64):true]
+
+    @Test
+    void testBase64MatchesJdkEncoder()
+    {
+        Random random = new Random(3)
+        for (int len = 0; len < 3000; len += (len < 20 ? 1 : 997))
+        {
+            byte[] bytes = new byte[len]
+            random.nextBytes(bytes)
+            String json = JsonWriter.objectToJson(bytes, BASE64)
+            String expected = len == 0 ? '[]' : '["' + Base64.encoder.encodeToString(bytes) + '"]'
+            assertTrue(json, json.endsWith(expected + '}'))
+            assertTrue(Arrays.equals(bytes, (byte[]) JsonReader.jsonToJava(json)))
+        }
+
+        byte[] big = new byte[10000]
+        random.nextBytes(big)
+        StringWriter sw = new StringWriter()
+        JsonWriter.writeBase64(big, 7, 9000, sw)
+        assertEquals(Base64.encoder.encodeToString(Arrays.copyOfRange(big, 7, 9007)), sw.toString())
+    }
+
+    @Test
+    void testBase64Fields()
+    {
+        Thumbnail thumb = new Thumbnail(name:'t', image:[1, 2, 3, -1] as byte[], extra:[-128, 127] as byte[], tiles:[[9] as byte[], null, [] as byte[]] as byte[][])
+        String json = JsonWriter.objectToJson(thumb, BASE64)
+        assertTrue(json.contains('"image":["AQID/w=="]'))
+        assertTrue(json.contains('"@items":["gH8="]'))
+
+        for (String text : [json, JsonWriter.objectToJson(thumb)])
+        {   // Base64 and the numeric format both read back
+            Thumbnail copy = (Thumbnail) JsonReader.jsonToJava(text)
+            assertTrue(Arrays.equals(thumb.image, copy.image))
+            assertTrue(Arrays.equals((byte[]) thumb.extra, (byte[]) copy.extra))
+            assertTrue(Arrays.equals(thumb.tiles[0], copy.tiles[0]))
+            assertNull(copy.tiles[1])
+            assertEquals(0, copy.tiles[2].length)
+        }
+
+        try
+        {
+            JsonReader.jsonToJava('{"@type":"' + Thumbnail.class.name + '","image":["not*base64"]}')
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t != null && !t.message?.contains('Base64'))
+            {
+                t = t.cause
+            }
+            assertNotNull(t)
+        }
+    }
+
+    @Test
+    void testByteBuffer()
+    {
+        ByteBuffer heap = ByteBuffer.wrap([5, 6, 7, 8, 9] as byte[])
+        heap.position(1)
+        ByteBuffer direct = ByteBuffer.allocateDirect(3)
+        direct.put([-1, 0, 1] as byte[])
+        direct.flip()
 
+        for (Map args : [BASE64, [:]])
+        {
+            for (ByteBuffer buffer : [heap, heap.asReadOnlyBuffer(), direct])
+            {
+                Thumbnail thumb = new Thumbnail(buffer:buffer, extra:buffer)
+                String json = JsonWriter.objectToJson(thumb, args)
+                Thumbnail copy = (Thumbnail) JsonReader.jsonToJava(json)
+                assertEquals(buffer, copy.buffer)
+                assertEquals(buffer.isDirect(), copy.buffer.isDirect())
+                assertEquals(buffer.isReadOnly(), copy.buffer.isReadOnly())
+                assertTrue(copy.extra.is(copy.buffer))
+            }
+        }
+        assertEquals(1, heap.position())
+        assertTrue(JsonWriter.objectToJson(heap, BASE64).contains('"value":"BgcICQ=="'))
+        assertTrue(JsonWriter.objectToJson(heap).contains('"value":[6,7,8,9]'))
+    }
 }
@@ -0,0 +1,231 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.io.processor.CodecProcessor
+import org.junit.Test
+
+import javax.tools.Diagnostic
+import javax.tools.DiagnosticCollector
+import javax.tools.JavaCompiler
+import javax.tools.JavaFileObject
+import javax.tools.StandardJavaFileManager
+import javax.tools.ToolProvider
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestClassCodec
+{
+    private static final String BASE = '''
+package com.acme.codec;
+
+public class Base
+{
+    protected String name;
+    int id;
+    private long secret;
+
+    protected void setSecret(long secret) { this.secret = secret; }
+}
+'''
+
+    private static final String WIDGET = '''
+package com.acme.codec;
+
+import com.cedarsoftware.util.io.JsonIoCodec;
+import java.util.ArrayList;
+import java.util.List;
+
+@JsonIoCodec
+public class Widget extends Base
+{
+    private static class Part
+    {
+        String label;
+    }
+
+    int id;
+    double price;
+    boolean active;
+    char grade;
+    final short shelf;
+    transient int scratch;
+    Integer count;
+    List<Widget> related = new ArrayList<>();
+    Object part;
+    private float weight;
+
+    public Widget()
+    {
+        shelf = 7;
+    }
+
+    public static Widget sample()
+    {
+        Widget widget = new Widget();
+        widget.name = "gear";
+        ((Base) widget).id = 1;
+        widget.setSecret(42L);
+        widget.id = 2;
+        widget.price = 9.75d;
+        widget.active = true;
+        widget.grade = 'A';
+        widget.scratch = 5;
+        widget.weight = 1.5f;
+        Part part = new Part();
+        part.label = "cog";
+        widget.part = part;
+
+        Widget other = new Widget();
+        other.name = "sprocket";
+        other.related.add(widget);
+        widget.related.add(other);
+        widget.related.add(widget);
+        return widget;
+    }
+}
+'''
+
+    private static final String INNER = '''
+package com.acme.codec;
+
+import com.cedarsoftware.util.io.JsonIoCodec;
+
+public class Outer
+{
+    @JsonIoCodec
+    public class Inner
+    {
+        int x;
+    }
+}
+'''
+
+    private static List<Diagnostic> compile(Path dir, Map<String, String> sources)
+    {
+        JavaCompiler compiler = ToolProvider.systemJavaCompiler
+        if (compiler == null)
+        {   // Running on a JRE
+            return null
+        }
+
+        List<File> files = []
+        sources.each { String name, String source ->
+            Path file = dir.resolve('src/com/acme/codec/' + name + '.java')
+            Files.createDirectories(file.parent)
+            file.toFile().text = source
+            files.add(file.toFile())
+        }
+        Path out = dir.resolve('classes')
+        Files.createDirectories(out)
+
+        String classpath = new File(ClassCodec.class.protectionDomain.codeSource.location.toURI()).path
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>()
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)
+        List<String> options = ['-classpath', classpath, '-d', out.toString(), '-s', out.toString(), '-processor', CodecProcessor.class.name]
+        compiler.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromFiles(files)).call()
+        fileManager.close()
+        return diagnostics.diagnostics.findAll { it.kind == Diagnostic.Kind.ERROR }
+    }
+
+    @Test
+    void testGeneratedCodecMatchesReflectiveOutput()
+    {
+        Path dir = Files.createTempDirectory('json-io-codec')
+        List<Diagnostic> errors = compile(dir, [Base:BASE, Widget:WIDGET])
+        if (errors == null)
+        {
+            return
+        }
+        assertTrue(errors.toString(), errors.isEmpty())
+
+        Path classes = dir.resolve('classes')
+        String services = classes.resolve('META-INF/services/com.cedarsoftware.util.io.ClassCodec').toFile().text
+        assertEquals('com.acme.codec.Widget_JsonIoCodec', services.trim())
+        String generated = classes.resolve('com/acme/codec/Widget_JsonIoCodec.java').toFile().text
+        assertTrue(generated.contains('((com.acme.codec.Widget) obj).price'))
+        assertFalse(generated.contains('obj).weight'))
+        assertFalse(generated.contains('obj).shelf ='))
+
+        URLClassLoader loader = new URLClassLoader([classes.toUri().toURL()] as URL[], ClassCodec.class.classLoader)
+        Class widgetClass = loader.loadClass('com.acme.codec.Widget')
+        Object widget = widgetClass.getMethod('sample').invoke(null)
+        String reflective = JsonWriter.objectToJson(widget)
+        String reflectivePretty = JsonWriter.objectToJson(widget, [(JsonWriter.PRETTY_PRINT):true] as Map)
+
+        ClassCodec codec = (ClassCodec) loader.loadClass('com.acme.codec.Widget_JsonIoCodec').newInstance()
+        assertEquals(widgetClass, codec.type)
+        ClassCodec.register(codec)
+
+        String viaCodec = JsonWriter.objectToJson(widget)
+        assertEquals(reflective, viaCodec)
+        assertEquals(reflectivePretty, JsonWriter.objectToJson(widget, [(JsonWriter.PRETTY_PRINT):true] as Map))
+        assertTrue(viaCodec.contains('"@ref"'))
+        assertTrue(viaCodec.contains('"com.acme.codec.Base.id":1'))
+        assertTrue(viaCodec.contains('"secret":42'))
+        assertFalse(viaCodec.contains('scratch'))
+
+        Object copy = JsonReader.jsonToJava(viaCodec, [(JsonReader.CLASSLOADER):loader] as Map)
+        assertEquals(widgetClass, copy.class)
+        assertEquals(viaCodec, JsonWriter.objectToJson(copy))
+        List related = (List) copy.related
+        assertTrue(related[1].is(copy))
+        assertTrue(((List) related[0].related)[0].is(copy))
+    }
+
+    @Test
+    void testCodecFoundThroughClassLoaderCreatedLater()
+    {
+        Path dir = Files.createTempDirectory('json-io-codec')
+        List<Diagnostic> errors = compile(dir, [Base:BASE, Widget:WIDGET])
+        if (errors == null)
+        {
+            return
+        }
+        assertTrue(errors.toString(), errors.isEmpty())
+
+        // json-io is already in use - the plugin ClassLoader is not the context ClassLoader
+        JsonWriter.objectToJson([1, 2])
+        URLClassLoader plugin = new URLClassLoader([dir.resolve('classes').toUri().toURL()] as URL[], ClassCodec.class.classLoader)
+        Class widgetClass = plugin.loadClass('com.acme.codec.Widget')
+        assertTrue(Thread.currentThread().contextClassLoader != plugin)
+
+        String json = JsonWriter.objectToJson(widgetClass.getMethod('sample').invoke(null))
+        ClassPlan plan = ClassPlan.getPlan(widgetClass, -1)
+        assertNotNull(plan)
+        assertEquals(json, JsonWriter.objectToJson(JsonReader.jsonToJava(json, [(JsonReader.CLASSLOADER):plugin] as Map)))
+    }
+
+    @Test
+    void testInnerClassRejected()
+    {
+        Path dir = Files.createTempDirectory('json-io-codec')
+        List<Diagnostic> errors = compile(dir, [Outer:INNER])
+        if (errors == null)
+        {
+            return
+        }
+        assertEquals(1, errors.size())
+        assertTrue(errors[0].getMessage(null).contains('static nested'))
+    }
+}
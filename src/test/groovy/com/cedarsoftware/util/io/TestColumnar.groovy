@@ -0,0 +1,151 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestColumnar
+{
+    static class Trade
+    {
+        String symbol
+        long quantity
+        double price
+        boolean buy
+        Object note
+        Date when
+        transient String cached = 'x'
+    }
+
+    static class Blotter
+    {
+        List<Trade> trades
+        Trade[] history
+        Object[] mixed
+    }
+
+    /**
+     * Reader options for JSON written with COLUMNAR.
+     */
+    private static Map columnar()
+    {
+        return [(JsonReader.COLUMNAR):true] as Map
+    }
+
+    private static List<Trade> trades(int count)
+    {
+        List<Trade> trades = []
+        for (int i = 0; i < count; i++)
+        {
+            trades.add(new Trade(symbol:'SYM' + (i % 7), quantity:i * 100L, price:i / 8.0d, buy:i % 2 == 0,
+                    note:i % 3 == 0 ? null : (i % 3 == 1 ? 'n' + i : [i, 'x'] as Object[]), when:new Date(1000000L * i)))
+        }
+        return trades
+    }
+
+    private static Blotter blotter()
+    {
+        List<Trade> list = trades(50)
+        Trade shared = new Trade(symbol:'S')
+        return new Blotter(trades:list, history:trades(10) as Trade[], mixed:[new Trade(symbol:'A'), shared, shared, 5L] as Object[])
+    }
+
+    @Test
+    void testRoundTrip()
+    {
+        List<Trade> trades = trades(100)
+        String plain = JsonWriter.objectToJson(trades)
+        String json = JsonWriter.objectToJson(trades, [(JsonWriter.COLUMNAR):true] as Map)
+
+        assertEquals(1, json.count(Trade.class.name))
+        assertEquals(1, json.count('"@columns":["symbol","quantity","price","buy","note","when"]'))
+        assertTrue(json.length() < plain.length() * 0.6)
+        assertTrue(DeepEquals.deepEquals(trades, JsonReader.jsonToJava(json, columnar())))
+        assertTrue(DeepEquals.deepEquals(JsonReader.jsonToJava(plain), JsonReader.jsonToJava(json, columnar())))
+        assertEquals(JsonWriter.objectToJson(JsonReader.jsonToMaps(plain)), JsonWriter.objectToJson(JsonReader.jsonToMaps(json, columnar())))
+    }
+
+    @Test
+    void testFieldsArraysAndFallback()
+    {
+        Blotter blotter = blotter()
+        String plain = JsonWriter.objectToJson(blotter)
+        String json = JsonWriter.objectToJson(blotter, [(JsonWriter.COLUMNAR):true] as Map)
+        assertEquals(2, json.count('"@columns":'))     // trades and history, not mixed (different classes, shared element)
+        assertTrue(DeepEquals.deepEquals(blotter, JsonReader.jsonToJava(json, columnar())))
+        assertTrue(DeepEquals.deepEquals(JsonReader.jsonToJava(plain), JsonReader.jsonToJava(json, columnar())))
+
+        // ClassPlan path, short meta keys, no @type, and the binary form
+        Map args = [(JsonWriter.COLUMNAR):true, (JsonWriter.SPECIALIZE_AFTER):0, (JsonWriter.SHORT_META_KEYS):true, (JsonWriter.PRETTY_PRINT):true]
+        String planned = JsonWriter.objectToJson(blotter, args)
+        assertEquals(2, planned.count('"@c":'))
+        assertTrue(DeepEquals.deepEquals(blotter, JsonReader.jsonToJava(planned, columnar())))
+
+        String untyped = JsonWriter.objectToJson(trades(3), [(JsonWriter.COLUMNAR):true, (JsonWriter.TYPE):false] as Map)
+        assertTrue(untyped.startsWith('[{"@columns":["symbol","quantity","price","buy","note","when"]},["SYM0",0,0.0,true,null,0],'))
+        assertEquals(3, (JsonReader.jsonToJava(untyped, columnar()) as Object[]).length)
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(bytes, [(JsonWriter.COLUMNAR):true, (JsonWriter.BINARY):true])
+        writer.write(blotter)
+        writer.close()
+        assertTrue(DeepEquals.deepEquals(blotter, JsonReader.jsonToJava(new ByteArrayInputStream(bytes.toByteArray()), [(JsonReader.BINARY):true, (JsonReader.COLUMNAR):true])))
+    }
+
+    @Test
+    void testBadRows()
+    {
+        try
+        {
+            JsonReader.jsonToJava('[{"@type":"' + Trade.class.name + '","@columns":["symbol","quantity"]},["A",1],["B"]]', columnar())
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null && !t.message.contains('@columns'))
+            {
+                t = t.cause
+            }
+            assertTrue(t.message.contains('Columnar element 1 does not have one value per @columns name'))
+        }
+    }
+
+    @Test
+    void testPlainJsonIsLiteral()
+    {   // Without JsonReader.COLUMNAR, @c is an ordinary field and a @columns element an ordinary object
+        Map map = JsonReader.jsonToMaps('{"@c":["a"],"rows":[{"@columns":["x"]},[1]]}')
+        assertEquals(['a'], map['@c'] as List)
+        assertFalse(map.containsKey('@columns'))
+        Object[] rows = map['rows'] as Object[]
+        assertEquals(2, rows.length)
+        assertEquals(['x'], (rows[0] as Map)['@columns'] as List)
+        assertEquals([1L], rows[1] as List)
+
+        Map<String, Object> data = new LinkedHashMap<>()
+        data['@c'] = 'short'
+        data['list'] = [['@columns':['a', 'b']], ['x', 'y']]
+        assertTrue(DeepEquals.deepEquals(data, JsonReader.jsonToJava(JsonWriter.objectToJson(data))))
+    }
+}
@@ -293,4 +293,36 @@ class TestCustomWriter
         assert jsonCustom.contains("_version\":12");
         assert jsonCustom.contains("Michael");
     }
-}
\ No newline at end of file
+
+    static class Permanent
+    {
+        String name = 'p'
+    }
+
+    static class PermanentWriter implements JsonWriter.JsonClassWriter
+    {
+        void write(Object o, boolean showType, Writer output) throws IOException
+        {
+            output.write('"permanent":true')
+        }
+
+        boolean hasPrimitiveForm() { return false }
+
+        void writePrimitiveForm(Object o, Writer output) throws IOException { }
+    }
+
+    @Test
+    void testAddWriterPermanent()
+    {
+        JsonWriter before = new JsonWriter(new ByteArrayOutputStream())
+        JsonWriter.addWriterPermanent(Permanent.class, new PermanentWriter())
+        assert before.getCustomWriter(Permanent.class) == null
+        assert JsonWriter.objectToJson(new Permanent()).contains('"permanent":true')
+
+        // A writer's own addWriter() does not change the permanent writers
+        JsonWriter own = new JsonWriter(new ByteArrayOutputStream())
+        own.addWriter(Person.class, new CustomPersonWriter())
+        assert own.getCustomWriter(Permanent.class) instanceof PermanentWriter
+        assert new JsonWriter(new ByteArrayOutputStream()).getCustomWriter(Person.class) == null
+    }
+}
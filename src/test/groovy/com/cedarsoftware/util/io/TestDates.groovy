@@ -724,4 +724,46 @@ class TestDates
         Date date1 = reader.read(date, new ArrayDeque<JsonObject<String, Object>>(), [:])
         // Not having exception while including the 'Z' is the test (no assertion)
     }
+
+    @Test
+    void testIsoFastPathMatchesPatterns()
+    {
+        List<String> times = ['', 'T10:20', ' 23:59', 'T10:20:30', 'T00:00:00.1', ' 10.20.30.123', 'T10:20:30.123456789',
+                              'T10:20Z', 'T10:20:30Z', 'T10:20:30.5+05:30', 'T10:20:30-0800', ' 01:02:03.004+0000', 'T10:20-23:59']
+        List<String> dates = ['2014-06-13', '1999/1/1', '2020.2.29', '2021-02-31', '1600-12-31', '1200-03-04', '2037-11-5']
+        TimeZone saved = TimeZone.getDefault()
+        try
+        {
+            for (String zone : ['UTC', 'America/New_York', 'Asia/Kolkata', 'Australia/Lord_Howe'])
+            {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone))
+                for (String date : dates)
+                {
+                    for (String time : times)
+                    {
+                        String text = date + time
+                        Date fast = Readers.DateReader.parseIsoDate(text)
+                        if (!date.startsWith('1200') || !time.matches('.*([Z+-].*)$'))
+                        {
+                            assert fast != null : text
+                        }
+                        assertEquals(text, Readers.DateReader.parseDateWithPatterns(text), Readers.DateReader.parseDate(text))
+                    }
+                }
+            }
+        }
+        finally
+        {
+            TimeZone.setDefault(saved)
+        }
+
+        assertEquals(Date.parse('Fri, 13 Jun 2014 15:20:30 GMT'), Readers.DateReader.parseDate('2014-06-13T10:20:30-05:00').time)
+
+        // Everything else (or anything out of range) is left to the regex patterns
+        for (String text : ['6/13/2014', 'June 13, 2014', '2014-06-13 10:20:30 Fri', '2014-13-01', '2014-06-13T24:00',
+                            '2014-06-13T10:2', '2014-06-13T10:20:30.12345678901', '2014-06-13T10:20+25:00', '2014-06-13T'])
+        {
+            assertNull(text, Readers.DateReader.parseIsoDate(text))
+        }
+    }
 }
@@ -0,0 +1,223 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.lang.management.ManagementFactory
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestDeepGraph
+{
+    static class Link
+    {
+        int n
+        Link next
+    }
+
+    static class Node
+    {
+        int n
+        Object next
+    }
+
+    static class Named
+    {
+        Named next
+        String name
+    }
+
+    static class Box
+    {
+        int n
+        Object inner
+    }
+
+    static class BoxWriter implements JsonWriter.JsonClassWriterEx
+    {
+        void write(Object o, boolean showType, Writer output, Map<String, Object> args) throws IOException
+        {
+            Box box = (Box) o
+            output.write('"n":' + box.n + ',"inner":')
+            JsonWriter.JsonClassWriterEx.Support.getWriter(args).writeImpl(box.inner, true)
+        }
+    }
+
+    private static long threadsStarted()
+    {
+        return ManagementFactory.threadMXBean.totalStartedThreadCount
+    }
+
+    private static Link chain(int length)
+    {
+        Link head = null
+        for (int i = length - 1; i >= 0; i--)
+        {
+            head = new Link(n:i, next:head)
+        }
+        return head
+    }
+
+    private static String expected(int length)
+    {
+        StringBuilder s = new StringBuilder('{"@type":"' + Link.class.name + '",')
+        for (int i = 0; i < length; i++)
+        {
+            s.append('"n":').append(i).append(',"next":').append(i == length - 1 ? 'null' : '{')
+        }
+        for (int i = 1; i < length; i++)
+        {
+            s.append('}')
+        }
+        return s.append('}').toString()
+    }
+
+    @Test
+    void testLongChain()
+    {
+        Link head = chain(200000)
+        String json = JsonWriter.objectToJson(head)
+        assertEquals(expected(200000), json)
+
+        // Pretty-printed output has the same indentation as when written recursively
+        String nl = System.getProperty('line.separator')
+        StringBuilder pretty = new StringBuilder('{' + nl + '  "@type":"' + Link.class.name + '",' + nl)
+        for (int i = 0; i < 3000; i++)
+        {
+            String indent = '  ' * (i + 1)
+            pretty.append(indent).append('"n":').append(i).append(',').append(nl)
+            pretty.append(indent).append('"next":').append(i == 2999 ? 'null' : '{' + nl)
+        }
+        for (int i = 2999; i >= 0; i--)
+        {
+            pretty.append(nl).append('  ' * i).append('}')
+        }
+        assertEquals(pretty.toString(), JsonWriter.objectToJson(chain(3000), [(JsonWriter.PRETTY_PRINT):true]))
+    }
+
+    @Test
+    void testNestedContainers()
+    {
+        List root = []
+        List list = root
+        for (int i = 0; i < 50000; i++)
+        {
+            Map map = ['i':i, 'list':[]] as LinkedHashMap
+            list.add(map)
+            list = (List) map.get('list')
+        }
+        String json = JsonWriter.objectToJson(root, [(JsonWriter.TYPE):false])
+        assertTrue(json.startsWith('[{"i":0,"list":[{"i":1,"list":[{"i":2,'))
+        assertTrue(json.endsWith('{"i":49999,"list":[]}' + ']}' * 49999 + ']'))
+    }
+
+    @Test
+    void testMaxDepth()
+    {
+        try
+        {
+            JsonWriter.objectToJson(chain(1000), [(JsonWriter.MAX_DEPTH):500])
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null)
+            {
+                t = t.cause
+            }
+            assertTrue(t.message.contains('Maximum nesting depth of 500'))
+        }
+        assertEquals(expected(500), JsonWriter.objectToJson(chain(500), [(JsonWriter.MAX_DEPTH):500]))
+    }
+
+    @Test
+    void testNoHelperThreads()
+    {
+        long started = threadsStarted()
+        assertEquals(expected(200000), JsonWriter.objectToJson(chain(200000)))
+        assertEquals(started, threadsStarted())
+    }
+
+    @Test
+    void testCustomWritersInDeepGraph()
+    {
+        // Reflective objects with a custom-written one every 100 levels, the deep ones run in document order
+        Object head = null
+        for (int i = 19999; i >= 0; i--)
+        {
+            head = i % 100 == 99 ? new Box(n:i, inner:head) : new Node(n:i, next:head)
+        }
+        StringBuilder expected = new StringBuilder()
+        for (int i = 0; i < 20000; i++)
+        {
+            String field = i % 100 == 99 ? 'inner' : 'next'
+            Class c = i % 100 == 99 ? Box.class : Node.class
+            expected.append('{"@type":"').append(c.name).append('","n":').append(i).append(',"').append(field).append('":')
+        }
+        expected.append('null').append('}' * 20000)
+        String json = JsonWriter.objectToJson(head, [(JsonWriter.CUSTOM_WRITER_MAP):[(Box.class):new BoxWriter()]])
+        assertEquals(expected.toString(), json)
+    }
+
+    @Test
+    void testStackSegments()
+    {
+        // Custom writers nested inside each other need stack - STACK_SEGMENTS moves them to helper threads
+        Box head = null
+        for (int i = 19999; i >= 0; i--)
+        {
+            head = new Box(n:i, inner:head)
+        }
+        long started = threadsStarted()
+        String json = JsonWriter.objectToJson(head, [(JsonWriter.CUSTOM_WRITER_MAP):[(Box.class):new BoxWriter()], (JsonWriter.STACK_SEGMENTS):true])
+        assertTrue(threadsStarted() > started)
+        assertTrue(json.startsWith('{"@type":"' + Box.class.name + '","n":0,"inner":{"@type":"' + Box.class.name + '","n":1,'))
+        assertTrue(json.endsWith('"n":19999,"inner":null' + '}' * 20000))
+    }
+
+    @Test
+    void testSymbolsInDeepGraph()
+    {
+        // Names and strings after a deep value are aliased in document order
+        Named head = null
+        for (int i = 799; i >= 0; i--)
+        {
+            head = new Named(next:head, name:'name' + (i % 7))
+        }
+        Map args = [(JsonWriter.SYMBOL_TABLE):true, (JsonWriter.SHARED_STRINGS):true]
+        String json = JsonWriter.objectToJson(head, args)
+        Named named = (Named) JsonReader.jsonToJava(json, [(JsonReader.SYMBOL_TABLE):true] as Map)
+        for (int i = 0; i < 800; i++)
+        {
+            assertEquals('name' + (i % 7), named.name)
+            named = named.next
+        }
+        assertEquals(null, named)
+    }
+
+    @Test
+    void testOutputBudget()
+    {
+        String json = JsonWriter.objectToJson(chain(200000), [(JsonWriter.MAX_OUTPUT_CHARS):100000])
+        assertEquals(expected(200000).substring(0, 100000), json)
+    }
+}
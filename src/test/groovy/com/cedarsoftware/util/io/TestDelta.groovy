@@ -0,0 +1,312 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestDelta
+{
+    static class Item
+    {
+        String name
+        int qty
+        double[] weights
+    }
+
+    static class Order
+    {
+        long id
+        String status
+        Item main
+        List<Item> items = new ArrayList<>()
+        Map<String, Object> notes = new LinkedHashMap<>()
+        Set<String> tags = new LinkedHashSet<>()
+        Object[] extra
+        transient String cache
+    }
+
+    static class Cust
+    {
+        String name
+    }
+
+    static class Purchase
+    {
+        Cust cust
+        Set<Cust> cc = new LinkedHashSet<>()
+    }
+
+    static class Shop
+    {
+        List<Cust> all = new ArrayList<>()
+        List<Purchase> orders = new ArrayList<>()
+        Set<Cust> custs = new LinkedHashSet<>()
+    }
+
+    private static Shop shop()
+    {
+        Shop shop = new Shop()
+        shop.all.add(new Cust(name:'ann'))
+        shop.all.add(new Cust(name:'bob'))
+        shop.orders.add(new Purchase(cust:shop.all[0]))
+        shop.custs.add(new Cust(name:'cid'))
+        return shop
+    }
+
+    private static Order order()
+    {
+        Order order = new Order(id:7, status:'open')
+        for (int i = 0; i < 20; i++)
+        {
+            order.items.add(new Item(name:'item ' + i, qty:i, weights:[i, i / 2.0d] as double[]))
+        }
+        order.main = order.items[0]
+        order.notes.put('a', 'first')
+        order.notes.put('b', 2L)
+        order.tags.addAll(['x', 'y'])
+        order.extra = ['e', 1L, new Item(name:'extra')] as Object[]
+        return order
+    }
+
+    private static Object copy(Object o)
+    {
+        return JsonReader.jsonToJava(JsonWriter.objectToJson(o))
+    }
+
+    private static void assertApplies(Object previous, Object current)
+    {
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        Object result = JsonReader.applyDelta(copy(previous), delta, null)
+        assertTrue(delta, DeepEquals.deepEquals(current, result))
+    }
+
+    @Test
+    void testNoChange()
+    {
+        Order order = order()
+        assertEquals('[]', JsonWriter.objectToJsonDelta(order, order, null))
+        assertEquals('[]', JsonWriter.objectToJsonDelta(order, copy(order), null))
+    }
+
+    @Test
+    void testFieldChanges()
+    {
+        Order previous = order()
+        Order current = (Order) copy(previous)
+        current.status = 'shipped'
+        current.items[5].qty = 50
+        current.items[6].weights[1] = 9.5d
+        current.extra[1] = 2L
+        current.cache = 'not sent'
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertTrue(delta.contains('"status"'))
+        assertTrue(delta.contains('"shipped"'))
+        assertFalse(delta.contains('item 1"'))         // unchanged items are not sent
+        assertFalse(delta.contains('not sent'))
+        assertTrue(delta.length() < JsonWriter.objectToJson(current).length() / 5)
+
+        Order result = (Order) JsonReader.applyDelta(copy(previous), delta, null)
+        assertEquals('shipped', result.status)
+        assertEquals(50, result.items[5].qty)
+        assertEquals(9.5d, result.items[6].weights[1], 0.0d)
+        assertEquals(2L, result.extra[1])
+        assertTrue(result.main.is(result.items[0]))
+    }
+
+    @Test
+    void testListChanges()
+    {
+        Order previous = order()
+        Order current = (Order) copy(previous)
+        current.items.add(3, new Item(name:'new'))
+        current.items.add(new Item(name:'last'))
+        assertApplies(previous, current)
+
+        current = (Order) copy(previous)
+        current.items.subList(4, 9).clear()
+        current.items[10].name = 'renamed'
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertTrue(delta.contains('"remove"'))
+        assertApplies(previous, current)
+
+        current = (Order) copy(previous)
+        current.items.clear()
+        assertApplies(previous, current)
+        assertApplies(current, previous)
+    }
+
+    @Test
+    void testMapsAndSets()
+    {
+        Order previous = order()
+        Order current = (Order) copy(previous)
+        current.notes.remove('a')
+        current.notes.put('b', 3L)
+        current.notes.put('c', new Item(name:'note'))
+        current.tags.remove('x')
+        current.tags.add('z')
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertTrue(delta.contains('"delete"'))
+        assertTrue(delta.contains('"add"'))
+        assertApplies(previous, current)
+
+        Map<Object, Object> before = [(1):'one', (2):[1L, 2L]] as LinkedHashMap
+        Map<Object, Object> after = [(1):'uno', (2):[1L, 2L, 3L], (3):null] as LinkedHashMap
+        assertApplies(before, after)
+    }
+
+    @Test
+    void testSharedInstances()
+    {
+        // Snapshots sharing unchanged objects, moved object sent as a reference to where it was
+        Order previous = order()
+        Order current = new Order(id:previous.id, status:previous.status, items:new ArrayList<>(previous.items),
+                notes:previous.notes, tags:previous.tags, extra:previous.extra)
+        current.main = previous.items[19]
+        current.items.add(0, previous.items[12])
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertTrue(delta.contains('"setRef"'))
+        assertFalse(delta.contains('item 19'))
+        assertTrue(delta.contains('"insertRef"'))
+        assertFalse(delta.contains('item 12'))
+
+        Order result = (Order) JsonReader.applyDelta(copy(previous), delta, null)
+        assertTrue(DeepEquals.deepEquals(current, result))
+        assertTrue(result.main.is(result.items[20]))
+        assertTrue(result.items[0].is(result.items[13]))
+    }
+
+    @Test
+    void testRoot()
+    {
+        assertApplies('abc', 'xyz')
+        assertApplies(null, order())
+        assertApplies([1L, 2L], ['a':1L])
+        assertEquals('xyz', JsonReader.applyDelta('abc', JsonWriter.objectToJsonDelta('abc', 'xyz', null), null))
+    }
+
+    @Test
+    void testMismatch()
+    {
+        Order previous = order()
+        Order current = (Order) copy(previous)
+        current.items[3].qty = 99
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        try
+        {
+            JsonReader.applyDelta(['a':1L], delta, null)
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.message.contains('Delta path not found'))
+        }
+        try
+        {
+            JsonReader.applyDelta(previous, '{"a":1}', null)
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.message.contains('JSON array of operations'))
+        }
+    }
+
+    @Test
+    void testSetOfPlainObjects()
+    {
+        // Cust has no equals(): an unchanged copy of an element is matched by its contents
+        Shop previous = shop()
+        assertEquals('[]', JsonWriter.objectToJsonDelta(previous, copy(previous), null))
+
+        Shop current = (Shop) copy(previous)
+        current.custs.add(new Cust(name:'dan'))
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertFalse(delta.contains('"delete"'))
+        Shop result = (Shop) JsonReader.applyDelta(copy(previous), delta, null)
+        assertEquals(['cid', 'dan'], result.custs*.name)
+
+        current = (Shop) copy(previous)
+        current.custs.clear()
+        result = (Shop) JsonReader.applyDelta(copy(previous), JsonWriter.objectToJsonDelta(previous, current, null), null)
+        assertTrue(result.custs.isEmpty())
+
+        current = (Shop) copy(previous)
+        current.custs.iterator().next().name = 'cy'
+        result = (Shop) JsonReader.applyDelta(copy(previous), JsonWriter.objectToJsonDelta(previous, current, null), null)
+        assertEquals(['cy'], result.custs*.name)
+    }
+
+    @Test
+    void testNewValueReferences()
+    {
+        // New values refer to objects the target already has - they are set by reference, not copied
+        Shop previous = shop()
+        Shop current = new Shop(all:previous.all, orders:new ArrayList<>(previous.orders), custs:previous.custs)
+        current.orders.add(new Purchase(cust:previous.all[1]))
+        current.orders.add(new Purchase(cust:previous.all[0]))
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertFalse(delta.contains('ann'))
+        assertFalse(delta.contains('bob'))
+        assertTrue(delta.contains('"setRef"'))
+
+        Shop result = (Shop) JsonReader.applyDelta(copy(previous), delta, null)
+        assertTrue(DeepEquals.deepEquals(current, result))
+        assertTrue(result.orders[1].cust.is(result.all[1]))
+        assertTrue(result.orders[2].cust.is(result.all[0]))
+        assertTrue(result.orders[0].cust.is(result.all[0]))
+
+        // A Set element has no path to set it by, so that object is written in full (everywhere in the delta)
+        current.orders.add(new Purchase(cust:previous.all[0], cc:[previous.all[1]] as LinkedHashSet))
+        delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertTrue(delta.contains('bob'))
+        assertFalse(delta.contains('ann'))
+        result = (Shop) JsonReader.applyDelta(copy(previous), delta, null)
+        assertTrue(DeepEquals.deepEquals(current, result))
+        assertTrue(result.orders[3].cust.is(result.all[0]))
+        assertTrue(result.orders[3].cc.iterator().next().is(result.orders[1].cust))
+
+        // A field set to a new object that refers to an existing one
+        current = new Shop(all:previous.all, orders:previous.orders, custs:previous.custs)
+        current.orders = [new Purchase(cust:previous.all[1])]
+        delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertFalse(delta.contains('bob'))
+        result = (Shop) JsonReader.applyDelta(copy(previous), delta, null)
+        assertTrue(result.orders[0].cust.is(result.all[1]))
+    }
+
+    @Test
+    void testPreviousAsJsonObjects()
+    {
+        Order order = order()
+        Object previous = JsonReader.jsonToMaps(JsonWriter.objectToJson(order))
+        Order current = (Order) copy(order)
+        current.items[2].qty = 22
+        String delta = JsonWriter.objectToJsonDelta(previous, current, null)
+        assertFalse(delta.contains('item 1"'))
+        Order result = (Order) JsonReader.applyDelta(copy(order), delta, null)
+        assertEquals(22, result.items[2].qty)
+        assertTrue(DeepEquals.deepEquals(current, result))
+    }
+}
@@ -0,0 +1,239 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestFragmentCache
+{
+    static class Currency
+    {
+        String code
+        int digits
+    }
+
+    static class Instrument
+    {
+        String symbol
+        Currency currency
+        double tickSize
+        long[] sessions
+    }
+
+    static class Trade
+    {
+        Instrument instrument
+        long qty
+        Object note
+    }
+
+    static class Listing
+    {
+        String code
+        Date listed
+        int scale
+    }
+
+    static class ListingWriter implements JsonWriter.JsonClassWriter
+    {
+        void write(Object o, boolean showType, Writer output) throws IOException
+        {
+            output.write('"code":"' + ((Listing) o).code + '"')
+        }
+
+        boolean hasPrimitiveForm() { return false }
+
+        void writePrimitiveForm(Object o, Writer output) throws IOException { }
+    }
+
+    private static final Currency USD = new Currency(code:'USD', digits:2)
+    private static final Currency JPY = new Currency(code:'JPY', digits:0)
+
+    private static List<Instrument> instruments()
+    {
+        List<Instrument> list = []
+        for (int i = 0; i < 20; i++)
+        {
+            list.add(new Instrument(symbol:'SYM' + i, currency:i % 2 == 0 ? USD : JPY, tickSize:0.01d * i, sessions:[i, i + 1] as long[]))
+        }
+        return list
+    }
+
+    private static void assertSameOutput(Object root, Map args, FragmentCache cache)
+    {
+        Map cached = new HashMap(args)
+        cached.put(JsonWriter.FRAGMENT_CACHE, cache)
+        assertEquals(JsonWriter.objectToJson(root, args), JsonWriter.objectToJson(root, cached))
+    }
+
+    @Test
+    void testReusedAcrossDocuments()
+    {
+        FragmentCache cache = new FragmentCache(100000).cache(Instrument.class)
+        List<Instrument> instruments = instruments()
+        for (int i = 0; i < 100; i++)
+        {
+            assertSameOutput(new Trade(instrument:instruments[i % 20], qty:i), [:], cache)
+        }
+        assertEquals(20, cache.size())
+        assertEquals(20, cache.misses)
+        assertEquals(80, cache.hits)
+
+        Map args = [(JsonWriter.FRAGMENT_CACHE):cache]
+        Trade trade = (Trade) JsonReader.jsonToJava(JsonWriter.objectToJson(new Trade(instrument:instruments[3], qty:5), args))
+        assertEquals('SYM3', trade.instrument.symbol)
+        assertEquals('JPY', trade.instrument.currency.code)
+    }
+
+    @Test
+    void testSettings()
+    {
+        FragmentCache cache = new FragmentCache(100000).cache(Instrument.class)
+        Trade trade = new Trade(instrument:instruments()[4], qty:1, note:'x')
+        List<Map> settings = [[:], [(JsonWriter.SHORT_META_KEYS):true], [(JsonWriter.TYPE):true], [(JsonWriter.TYPE):false],
+                              [(JsonWriter.PRETTY_PRINT):true], [(JsonWriter.WRITE_LONGS_AS_STRINGS):true]]
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (Map args : settings)
+            {
+                assertSameOutput(trade, args, cache)
+                assertSameOutput([[trade]], args, cache)    // deeper - different indentation when pretty printing
+            }
+        }
+        assertEquals(7, cache.misses)         // 5 settings, and 2 more depths when pretty printing
+        assertEquals(17, cache.hits)
+        assertEquals(cache.misses, cache.size())
+
+        // Instrument as the root (shown with @type) and as a field value (type implied) are cached separately
+        assertSameOutput(trade.instrument, [:], cache)
+        assertSameOutput(trade.instrument, [:], cache)
+        assertTrue(JsonWriter.objectToJson(trade.instrument, [(JsonWriter.FRAGMENT_CACHE):cache]).contains('"@type"'))
+    }
+
+    @Test
+    void testSharedObjects()
+    {
+        FragmentCache cache = new FragmentCache(100000).cache(Instrument.class)
+        List<Instrument> instruments = instruments()
+        assertSameOutput(new Trade(instrument:instruments[0]), [:], cache)
+        long hits = cache.hits
+
+        // Instrument written twice in one document - it gets an @id, so the fragment is not used
+        List trades = [new Trade(instrument:instruments[0]), new Trade(instrument:instruments[0])]
+        assertSameOutput(trades, [:], cache)
+        assertTrue(JsonWriter.objectToJson(trades, [(JsonWriter.FRAGMENT_CACHE):cache]).contains('"@ref"'))
+        assertEquals(hits, cache.hits)
+
+        // Its Currency also written elsewhere in the document
+        assertSameOutput(new Trade(instrument:instruments[0], note:USD), [:], cache)
+        assertEquals(hits, cache.hits)
+
+        // Currencies shared by instruments in the same document
+        assertSameOutput(instruments, [:], cache)
+        assertSameOutput(instruments.subList(0, 2), [:], cache)
+        assertEquals(hits, cache.hits)
+
+        // Cached objects nested in a cached object
+        cache.cache(Currency.class)
+        assertSameOutput(instruments.subList(0, 2), [:], cache)
+        assertSameOutput(instruments.subList(0, 2), [:], cache)
+        assertSameOutput(new Trade(instrument:instruments[1]), [:], cache)
+        assertTrue(cache.hits > hits)
+    }
+
+    @Test
+    void testKeyProvider()
+    {
+        FragmentCache cache = new FragmentCache(100000).cache(Currency.class, new FragmentCache.KeyProvider() {
+            Object getKey(Object obj)
+            {
+                return ((Currency) obj).code
+            }
+        })
+        Map args = [(JsonWriter.FRAGMENT_CACHE):cache]
+        String first = JsonWriter.objectToJson(new Trade(note:new Currency(code:'EUR', digits:2)), args)
+        String second = JsonWriter.objectToJson(new Trade(note:new Currency(code:'EUR', digits:2)), args)
+        assertEquals(first, second)
+        assertEquals(1, cache.hits)
+        assertEquals(1, cache.size())
+    }
+
+    @Test
+    void testEviction()
+    {
+        FragmentCache cache = new FragmentCache(500).cache(Instrument.class)
+        List<Instrument> instruments = instruments()
+        for (int pass = 0; pass < 3; pass++)
+        {
+            for (Instrument instrument : instruments)
+            {
+                assertSameOutput(new Trade(instrument:instrument), [:], cache)
+                assertTrue(cache.chars <= 500)
+            }
+        }
+        assertTrue(cache.evictions > 0)
+        assertTrue(cache.size() < 20)
+        assertEquals(60, cache.hits + cache.misses)
+
+        // Recently used fragments stay
+        cache = new FragmentCache(500).cache(Instrument.class)
+        for (int i = 0; i < 20; i++)
+        {
+            assertSameOutput(new Trade(instrument:instruments[0]), [:], cache)
+            assertSameOutput(new Trade(instrument:instruments[i]), [:], cache)
+        }
+        assertEquals(1, cache.misses - 19)
+
+        cache.clear()
+        assertEquals(0, cache.size())
+        assertEquals(0, cache.chars)
+    }
+
+    @Test
+    void testWritersConfiguredDifferently()
+    {
+        // One cache shared by JsonWriters whose type names, date format, black list and custom writers differ
+        FragmentCache cache = new FragmentCache(100000).cache(Listing.class)
+        List<Map> configurations = [
+                [(JsonWriter.TYPE_NAME_MAP):[(Listing.class.name):'ccy'], (JsonWriter.DATE_FORMAT):JsonWriter.ISO_DATE_FORMAT,
+                 (JsonWriter.FIELD_NAME_BLACK_LIST):[(Listing.class):['scale']]],
+                [:],
+                [(JsonWriter.DATE_FORMAT):JsonWriter.ISO_DATE_FORMAT],
+                [(JsonWriter.CUSTOM_WRITER_MAP):[(Listing.class):new ListingWriter()]],
+                [(JsonWriter.FIELD_SPECIFIERS):[(Listing.class):['code']]]]
+        List<Listing> listings = [new Listing(code:'USD', listed:new Date(0), scale:2), new Listing(code:'JPY', listed:new Date(0), scale:0)]
+        for (int round = 0; round < 2; round++)
+        {
+            for (Map args : configurations)
+            {
+                assertSameOutput(listings, args, cache)
+            }
+        }
+        assertEquals(10, cache.size())
+        assertEquals(10, cache.hits)
+
+        String json = JsonWriter.objectToJson(listings, [(JsonWriter.FRAGMENT_CACHE):cache])
+        assertTrue(json.contains('"@type":"' + Listing.class.name + '"'))
+        assertTrue(json.contains('"listed":0'))
+        assertTrue(json.contains('"scale":2'))
+    }
+}
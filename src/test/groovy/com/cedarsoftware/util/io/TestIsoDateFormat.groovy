@@ -0,0 +1,129 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.text.SimpleDateFormat
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestIsoDateFormat
+{
+    private static final List<String> ZONES = ['UTC', 'America/New_York', 'Asia/Kolkata', 'Australia/Lord_Howe', 'Europe/Amsterdam', 'Pacific/Chatham']
+
+    private static List<Long> instants()
+    {
+        List<Long> instants = [0L, -1L, 1L, -62135769600000L, -12219292800000L, -11676096000000L, 253402300799999L, 253402300800000L, 951782400000L]
+        Random random = new Random(17)
+        for (int i = 0; i < 3000; i++)
+        {   // Mostly 1800..2200, some anywhere in years -5000..15000
+            long range = i % 10 == 0 ? 400000000000000L : 6300000000000L
+            long base = i % 10 == 0 ? -220000000000000L : -5364662400000L
+            instants.add(base + (long) (random.nextDouble() * range))
+        }
+        return instants
+    }
+
+    private static String text(Closure write)
+    {
+        StringWriter sw = new StringWriter()
+        write(sw)
+        return sw.toString()
+    }
+
+    @Test
+    void testMatchesSimpleDateFormat()
+    {
+        List<Long> instants = instants()
+        for (String id : ZONES)
+        {
+            TimeZone zone = TimeZone.getTimeZone(id)
+            for (String pattern : [JsonWriter.ISO_DATE_FORMAT, JsonWriter.ISO_DATE_TIME_FORMAT])
+            {
+                IsoDateFormat iso = IsoDateFormat.forPattern(pattern, zone)
+                SimpleDateFormat sdf = new SimpleDateFormat(pattern, Locale.ENGLISH)
+                sdf.timeZone = zone
+                for (long millis : instants)
+                {
+                    Date date = new Date(millis)
+                    assertEquals(sdf.format(date), text { Writer w -> iso.format(date, w) })
+                }
+            }
+
+            SimpleDateFormat sdf = new SimpleDateFormat(IsoDateFormat.CALENDAR_FORMAT)
+            sdf.timeZone = zone
+            for (long millis : instants)
+            {
+                Calendar cal = Calendar.getInstance(zone)
+                cal.timeInMillis = millis
+                String expected = sdf.format(cal.time)
+                assertEquals(expected, text { Writer w -> IsoDateFormat.formatCalendar(cal, w) })
+                assertEquals(sdf.parse(expected), IsoDateFormat.parseCalendar(expected))
+            }
+        }
+    }
+
+    @Test
+    void testNonGregorianDefaultLocale()
+    {
+        Locale saved = Locale.getDefault(Locale.Category.FORMAT)
+        try
+        {
+            Locale.setDefault(Locale.Category.FORMAT, new Locale('th', 'TH'))
+            Calendar cal = Calendar.getInstance(TimeZone.getTimeZone('UTC'))
+            cal.timeInMillis = 1000000000000L
+            SimpleDateFormat sdf = new SimpleDateFormat(IsoDateFormat.CALENDAR_FORMAT)
+            sdf.timeZone = cal.timeZone
+            String expected = sdf.format(cal.time)
+            assertTrue(expected.startsWith('2544'))     // Buddhist calendar, as SimpleDateFormat has always written it
+            assertEquals(expected, text { Writer w -> IsoDateFormat.formatCalendar(cal, w) })
+            assertEquals(cal.time, IsoDateFormat.parseCalendar(expected))
+        }
+        finally
+        {
+            Locale.setDefault(Locale.Category.FORMAT, saved)
+        }
+    }
+
+    @Test
+    void testDateFormatOptionSharedAcrossThreads()
+    {
+        Date date = new Date(1400000000123L)
+        SimpleDateFormat sdf = new SimpleDateFormat(JsonWriter.ISO_DATE_TIME_FORMAT, Locale.ENGLISH)
+        String expected = '"' + sdf.format(date) + '"'
+        List<Thread> threads = []
+        List<String> results = Collections.synchronizedList([])
+        for (int i = 0; i < 8; i++)
+        {
+            threads.add(Thread.start {
+                for (int j = 0; j < 200; j++)
+                {
+                    results.add(JsonWriter.objectToJson([date] as Date[], [(JsonWriter.DATE_FORMAT):JsonWriter.ISO_DATE_TIME_FORMAT, (JsonWriter.TYPE):false]))
+                }
+            })
+        }
+        threads*.join()
+        assertEquals(1600, results.size())
+        for (String json : results)
+        {
+            assertEquals('[' + expected + ']', json)
+        }
+    }
+}
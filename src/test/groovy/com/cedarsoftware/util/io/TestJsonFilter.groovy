@@ -0,0 +1,169 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestJsonFilter
+{
+    static class Secret
+    {
+        String key
+    }
+
+    static class Account
+    {
+        String user
+        String password
+        Object credential
+        List<Object> history = []
+    }
+
+    @Test
+    void testDropAndMaskByName()
+    {
+        JsonFilter filter = new JsonFilter().drop('password').mask('pan')
+        assertEquals('{"user":"joe"}', filter.filter('{"user":"joe","password":"x"}'))
+        assertEquals('{"user":"joe"}', filter.filter('{"password":"x","user":"joe"}'))
+        assertEquals('{}', filter.filter('{"password":{"a":[1,{"b":"}"}]}}'))
+        assertEquals('[{"card":{"pan":"****","exp":"12/29"}},{"user":"x"}]', filter.filter('[{"card":{"pan":"4111111111111111","exp":"12/29"}},{"password":[],"user":"x"}]'))
+        assertEquals('{"a":1,"c":3}', filter.filter('{"a":1,"password":2,"c":3}'))
+
+        // Everything else is copied as is - whitespace, escapes, number text
+        String json = '{ "n" : 1.10000000000000000001,\n  "big":1E400, "s":"\\u00e9\\"", "password" : null ,"t":true }'
+        assertEquals('{ "n" : 1.10000000000000000001,\n  "big":1E400, "s":"\\u00e9\\"" ,"t":true }', filter.filter(json))
+        assertEquals('[1, 2 ,3]', filter.filter('[1, 2 ,3]'))
+
+        // Names are matched by their value
+        assertEquals('{}', filter.filter('{"pass\\u0077ord":1}'))
+    }
+
+    @Test
+    void testJsonPointer()
+    {
+        JsonFilter filter = new JsonFilter().drop('/session/token', '/items/1').mask('/cards/0/pan', 'null').mask('/a~1b')
+        assertEquals('{"session":{"id":7},"token":"kept"}', filter.filter('{"session":{"token":"abc","id":7},"token":"kept"}'))
+        assertEquals('{"items":[10,30]}', filter.filter('{"items":[10,20,30]}'))
+        assertEquals('{"cards":[{"pan":null},{"pan":"5500"}]}', filter.filter('{"cards":[{"pan":"4111"},{"pan":"5500"}]}'))
+        assertEquals('{"a/b":"****","a":{"b":1}}', filter.filter('{"a/b":2,"a":{"b":1}}'))
+    }
+
+    @Test
+    void testByType()
+    {
+        Account account = new Account(user:'joe', password:'pw', credential:new Secret(key:'k'))
+        account.history.add(new Secret(key:'old'))
+        account.history.add('login')
+        String json = JsonWriter.objectToJson(account)
+
+        JsonFilter filter = new JsonFilter().dropType(Secret.class.name)
+        String filtered = filter.filter(json)
+        assertFalse(filtered.contains('Secret'))
+        Account read = (Account) JsonReader.jsonToJava(filtered)
+        assertEquals('joe', read.user)
+        assertEquals(null, read.credential)
+        assertEquals(['login'], read.history)
+
+        filter = new JsonFilter().maskType(Secret.class.name).drop('password')
+        read = (Account) JsonReader.jsonToJava(filter.filter(json))
+        assertEquals('****', read.credential)
+        assertEquals(null, read.password)
+        assertEquals(['****', 'login'], read.history)
+
+        assertEquals('null', new JsonFilter().dropType(Secret.class.name).filter(JsonWriter.objectToJson(new Secret(key:'k'))))
+        assertEquals('{"@type":"x.Other","key":"k"}', filter.filter('{"@type":"x.Other","key":"k"}'))
+        assertEquals('{"key":"k","@type":"' + Secret.class.name + '"}', filter.filter('{"key":"k","@type":"' + Secret.class.name + '"}'))
+    }
+
+    @Test
+    void testSharedByType()
+    {   // A shared instance is written with its @id ahead of the @type, and then as @ref
+        Secret secret = new Secret(key:'s')
+        Account account = new Account(user:'joe', credential:secret)
+        account.history.add(secret)
+        account.history.add('login')
+        String json = JsonWriter.objectToJson(account)
+        assertTrue(json.contains('"@id":1,"@type":"' + Secret.class.name + '"'))
+
+        String filtered = new JsonFilter().dropType(Secret.class.name).filter(json)
+        assertFalse(filtered.contains('"s"'))
+        assertFalse(filtered.contains('@ref'))
+        Account read = (Account) JsonReader.jsonToJava(filtered)
+        assertEquals(null, read.credential)
+        assertEquals(['login'], read.history)
+
+        filtered = new JsonFilter().maskType(Secret.class.name).filter(json)
+        assertFalse(filtered.contains('"s"'))
+        read = (Account) JsonReader.jsonToJava(filtered)
+        assertEquals('****', read.credential)
+        assertEquals(['****', 'login'], read.history)
+
+        JsonFilter filter = new JsonFilter().dropType('D6$Secret')
+        assertEquals('[]', filter.filter('[{"@id":1,"@type":"D6$Secret","v":"s"},{"@ref":1}]'))
+        assertEquals('[{"@i":2,"@t":"x.Other","v":"s"},{"@r":2}]', filter.filter('[{"@i":2,"@t":"x.Other","v":"s"},{"@r":2}]'))
+        assertEquals('{"a":null,"b":{"@ref":1}}', new JsonFilter().maskType('D6$Secret').mask('a', 'null').filter('{"a":{"@id":1,"@type":"D6$Secret"},"b":{"@ref":1}}'))
+        assertEquals('{"b":{"@ref":1},"a":"****"}', new JsonFilter().maskType('D6$Secret').filter('{"b":{"@ref":1},"a":{"@id":1,"@type":"D6$Secret"}}'))
+    }
+
+    @Test
+    void testStreams()
+    {
+        StringBuilder json = new StringBuilder('[')
+        for (int i = 0; i < 20000; i++)
+        {
+            json.append(i == 0 ? '' : ',').append('{"id":').append(i).append(',"password":"secret","name":"élève"}')
+        }
+        json.append(']')
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        new JsonFilter().drop('password').filter(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)), out)
+        assertEquals(json.toString().replace(',"password":"secret"', ''), new String(out.toByteArray(), StandardCharsets.UTF_8))
+    }
+
+    @Test
+    void testErrors()
+    {
+        JsonFilter filter = new JsonFilter().drop('password')
+        for (String bad : ['', '{"a":1,}', '[1 2]', '{"a"}', '{a:1}', '"abc', '[1]x', '{"password":[1,2}', '{"password":"x'])
+        {
+            try
+            {
+                filter.filter(bad)
+                fail('should not filter: ' + bad)
+            }
+            catch (JsonIoException e)
+            {
+                assertTrue(e.message.contains('line: 1, col: '))
+            }
+        }
+
+        try
+        {
+            new JsonFilter().mask('pan', '{bad')
+            fail()
+        }
+        catch (JsonIoException ignored)
+        { }
+    }
+}
@@ -0,0 +1,197 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestJsonGenerator
+{
+    static class Point
+    {
+        long x
+        long y
+        String label
+        List<Point> near = []
+    }
+
+    static class PointWriter implements JsonWriter.JsonClassWriterEx
+    {
+        void write(Object o, boolean showType, Writer output, Map<String, Object> args) throws IOException
+        {
+            Point p = (Point) o
+            JsonGenerator gen = JsonWriter.JsonClassWriterEx.Support.getGenerator(args)
+            gen.name('x').value(p.x)
+            gen.name('y').value(p.y)
+            gen.name('label').value(p.label)
+            gen.name('near').value(p.near)
+        }
+    }
+
+    static class BrokenWriter implements JsonWriter.JsonClassWriterEx
+    {
+        void write(Object o, boolean showType, Writer output, Map<String, Object> args) throws IOException
+        {
+            JsonGenerator gen = JsonWriter.JsonClassWriterEx.Support.getGenerator(args)
+            gen.name('open').beginArray().value(1)
+        }
+    }
+
+    private static String generate(Map args, Closure body)
+    {
+        StringWriter sw = new StringWriter()
+        JsonGenerator gen = new JsonGenerator(sw, args)
+        body(gen)
+        assertTrue(gen.isComplete())
+        gen.close()
+        return sw.toString()
+    }
+
+    @Test
+    void testStandaloneCompact()
+    {
+        String json = generate(null) { JsonGenerator gen ->
+            gen.beginObject()
+            gen.name('id').value(Long.MIN_VALUE)
+            gen.name('max').value(Long.MAX_VALUE)
+            gen.name('zero').value(0)
+            gen.name('neg').value(-42)
+            gen.name('pi').value(3.5d)
+            gen.name('f').value(0.1f)
+            gen.name('nan').value(Double.NaN)
+            gen.name('text').value('a"b\n')
+            gen.name('ch').value('c' as char)
+            gen.name('flag').value(true)
+            gen.name('none').nullValue()
+            gen.name('raw').writeRaw('{"k":[1,2]}')
+            gen.name('list').beginArray().value(1).beginArray().endArray().beginObject().endObject().value('x').endArray()
+            gen.endObject()
+        }
+        assertEquals('{"id":-9223372036854775808,"max":9223372036854775807,"zero":0,"neg":-42,"pi":3.5,"f":0.1,"nan":null,' +
+                '"text":"a\\"b\\n","ch":"c","flag":true,"none":null,"raw":{"k":[1,2]},"list":[1,[],{},"x"]}', json)
+
+        Map map = (Map) JsonReader.jsonToJava(json, [(JsonReader.USE_MAPS):true] as Map)
+        assertEquals(Long.MIN_VALUE, map.id)
+        assertEquals('a"b\n', map.text)
+    }
+
+    @Test
+    void testStandalonePrettyPrintAndLongsAsStrings()
+    {
+        String json = generate([(JsonWriter.PRETTY_PRINT):true, (JsonWriter.WRITE_LONGS_AS_STRINGS):true] as Map) { JsonGenerator gen ->
+            gen.beginArray()
+            gen.beginObject().name('a').value(12L).name('b').beginArray().value(false).endArray().endObject()
+            gen.endArray()
+        }
+        String nl = System.getProperty('line.separator')
+        assertEquals('[' + nl + '  {' + nl + '    "a":"12",' + nl + '    "b":[' + nl + '      false' + nl + '    ]' + nl + '  }' + nl + ']', json)
+    }
+
+    @Test
+    void testMalformedCallsRejected()
+    {
+        List<Closure> bad = [
+                { JsonGenerator g -> g.beginObject().value(1) },
+                { JsonGenerator g -> g.beginArray().name('a') },
+                { JsonGenerator g -> g.beginArray().endObject() },
+                { JsonGenerator g -> g.beginObject().name('a').endObject() },
+                { JsonGenerator g -> g.value(1).value(2) },
+                { JsonGenerator g -> g.endArray() },
+                { JsonGenerator g -> g.value(new Point()) }
+        ]
+        for (Closure body : bad)
+        {
+            try
+            {
+                body(new JsonGenerator(new StringWriter()))
+                fail()
+            }
+            catch (JsonIoException ignored)
+            { }
+        }
+
+        JsonGenerator gen = new JsonGenerator(new StringWriter())
+        gen.beginObject()
+        assertFalse(gen.isComplete())
+        try
+        {
+            gen.close()
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.message.contains('Incomplete'))
+        }
+    }
+
+    @Test
+    void testCustomWriterUsingGenerator()
+    {
+        Point a = new Point(x:1, y:-2, label:'a')
+        Point b = new Point(x:3, y:4, label:null)
+        a.near.add(b)
+        b.near.add(a)
+
+        Map args = [(JsonWriter.CUSTOM_WRITER_MAP):[(Point.class):new PointWriter()]] as Map
+        String json = JsonWriter.objectToJson(a, args)
+        assertEquals('{"@id":1,"@type":"' + Point.class.name + '","x":1,"y":-2,"label":"a","near":{"@type":"java.util.ArrayList","@items":[' +
+                '{"@type":"' + Point.class.name + '","x":3,"y":4,"label":null,"near":{"@type":"java.util.ArrayList","@items":[{"@ref":1}]}}]}}', json)
+
+        Point copy = (Point) JsonReader.jsonToJava(json)
+        assertEquals(-2L, copy.y)
+        assertTrue(copy.near[0].near[0].is(copy))
+
+        args[JsonWriter.PRETTY_PRINT] = true
+        String pretty = JsonWriter.objectToJson(a, args)
+        assertEquals(JsonWriter.formatJson(json), pretty)
+    }
+
+    @Test
+    void testIncompleteCustomWriterRejected()
+    {
+        Map args = [(JsonWriter.CUSTOM_WRITER_MAP):[(Point.class):new BrokenWriter()]] as Map
+        try
+        {
+            JsonWriter.objectToJson(new Point(), args)
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null)
+            {
+                t = t.cause
+            }
+            assertTrue(t.message.contains('incomplete JSON'))
+        }
+
+        try
+        {
+            new JsonWriter(new ByteArrayOutputStream()).getGenerator()
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.message.contains('custom writer'))
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.util.stream.LongStream
+import java.util.stream.Stream
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestLazySources
+{
+    static class Row
+    {
+        int id
+        String name
+        Row self
+        Object shared
+    }
+
+    @Test
+    void testStreamOfPrimitives()
+    {
+        assertEquals('[1,2,3]', JsonWriter.objectToJson(LongStream.rangeClosed(1, 3)))
+        assertEquals('[]', JsonWriter.objectToJson(Stream.empty()))
+        assertEquals('["a",null,4.5,true]', JsonWriter.objectToJson(Stream.of('a', null, 4.5d, true)))
+        assertEquals('["x","y"]', JsonWriter.objectToJson(['x', 'y'].spliterator()))
+    }
+
+    @Test
+    void testIteratorScopesReferencesPerElement()
+    {
+        Date shared = new Date(0)
+        List<Row> rows = []
+        for (int i = 0; i < 3; i++)
+        {
+            Row row = new Row(id:i, name:'row' + i, shared:shared)
+            row.self = row
+            rows.add(row)
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(bytes)
+        Iterator<Row> source = rows.iterator()
+        Iterator<Row> checking = new Iterator<Row>() {
+            boolean hasNext() { return source.hasNext() }
+            Row next()
+            {   // Earlier elements are completely written (and forgotten) before the next one is pulled
+                assertTrue(writer.objectsVisited.isEmpty())
+                assertTrue(writer.objectsReferenced.isEmpty())
+                return source.next()
+            }
+        }
+        writer.write(Spliterators.spliteratorUnknownSize(checking, 0))
+        writer.close()
+        String json = new String(bytes.toByteArray(), 'UTF-8')
+
+        String type = Row.class.name
+        assertEquals('[{"@id":1,"@type":"' + type + '","id":0,"name":"row0","self":{"@ref":1},"shared":{"@type":"date","value":0}},' +
+                '{"@id":2,"@type":"' + type + '","id":1,"name":"row1","self":{"@ref":2},"shared":{"@type":"date","value":0}},' +
+                '{"@id":3,"@type":"' + type + '","id":2,"name":"row2","self":{"@ref":3},"shared":{"@type":"date","value":0}}]', json)
+
+        Object[] copy = (Object[]) JsonReader.jsonToJava(json)
+        assertEquals(3, copy.length)
+        for (int i = 0; i < 3; i++)
+        {
+            Row row = (Row) copy[i]
+            assertEquals(i, row.id)
+            assertTrue(row.self.is(row))
+        }
+    }
+
+    static class Countdown implements Iterator<Integer>
+    {
+        int left
+
+        boolean hasNext() { return left > 0 }
+        Integer next() { return left-- }
+    }
+
+    @Test
+    void testOwnIteratorWrittenAsObject()
+    {
+        Map args = [(JsonWriter.TYPE):false]
+        assertEquals('{"left":3}', JsonWriter.objectToJson(new Countdown(left:3), args))
+        assertEquals('[3,2,1]', JsonWriter.objectToJson(Spliterators.spliteratorUnknownSize(new Countdown(left:3), 0), args))
+        assertEquals('[3,2,1]', JsonWriter.objectToJson([3, 2, 1].iterator(), args))
+    }
+
+    @Test
+    void testPrettyPrintMatchesList()
+    {
+        List data = [1L, 'two', [3, 4] as int[], new Row(id:5)]
+        Map args = [(JsonWriter.PRETTY_PRINT):true]
+        String fromStream = JsonWriter.objectToJson(data.stream(), args)
+        String fromArray = JsonWriter.objectToJson(data.toArray(), args)
+        assertEquals(fromArray, fromStream)
+    }
+}
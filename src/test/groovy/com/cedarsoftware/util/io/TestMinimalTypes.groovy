@@ -0,0 +1,137 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestMinimalTypes
+{
+    static class Price
+    {
+        String currency
+        long cents
+    }
+
+    static class SalePrice extends Price
+    {
+        int percentOff
+    }
+
+    static class Key
+    {
+        String region
+        int code
+    }
+
+    static class Order
+    {
+        String id
+        Price price
+    }
+
+    static class Book
+    {
+        List<Order> orders = new ArrayList<>()
+        Set<Order> unique = new LinkedHashSet<>()
+        Map<String, Price> prices = new LinkedHashMap<>()
+        Map<Key, Price> byKey = new LinkedHashMap<>()
+        Map<String, List<Order>> nested = new LinkedHashMap<>()
+        List<Price> mixed = new ArrayList<>()
+        List<Integer> counts = new ArrayList<>()
+        List<Object> untyped = new ArrayList<>()
+    }
+
+    static class OrderWriter implements JsonWriter.JsonClassWriter
+    {
+        void write(Object o, boolean showType, Writer output)
+        {
+            output.write('"id":"' + ((Order) o).id + '"')
+        }
+
+        boolean hasPrimitiveForm() { return false }
+
+        void writePrimitiveForm(Object o, Writer output) { }
+    }
+
+    private static Book book()
+    {
+        Book book = new Book()
+        for (int i = 0; i < 5; i++)
+        {
+            Order order = new Order(id:'o' + i, price:new Price(currency:'USD', cents:i * 100))
+            book.orders.add(order)
+            book.unique.add(new Order(id:'u' + i))
+            book.prices.put('p' + i, new Price(currency:'EUR', cents:i))
+            book.byKey.put(new Key(region:'r' + i, code:i), new Price(currency:'GBP', cents:i))
+            book.counts.add(i)
+            book.untyped.add(new Price(currency:'JPY', cents:i))
+        }
+        book.nested.put('all', [new Order(id:'n')])
+        book.mixed.add(new Price(currency:'USD', cents:1))
+        book.mixed.add(new SalePrice(currency:'USD', cents:2, percentOff:10))
+        book.mixed.add(book.orders[0].price)     // referenced
+        return book
+    }
+
+    @Test
+    void testRoundTrip()
+    {
+        Book book = book()
+        String full = JsonWriter.objectToJson(book)
+        String json = JsonWriter.objectToJson(book, [(JsonWriter.MINIMAL_TYPES):true])
+        assertTrue(json.length() < full.length())
+        assertTrue(DeepEquals.deepEquals(book, JsonReader.jsonToJava(json)))
+
+        json = JsonWriter.objectToJson(book, [(JsonWriter.MINIMAL_TYPES):true, (JsonWriter.PRETTY_PRINT):true])
+        Book read = (Book) JsonReader.jsonToJava(json)
+        assertTrue(DeepEquals.deepEquals(book, read))
+        assertTrue(read.mixed[1] instanceof SalePrice)
+        assertTrue(read.mixed[2].is(read.orders[0].price))
+    }
+
+    @Test
+    void testLeavesOutImpliedTypes()
+    {
+        String json = JsonWriter.objectToJson(book(), [(JsonWriter.MINIMAL_TYPES):true])
+        assertEquals(1, json.count('TestMinimalTypes$Order'))      // only the one in Map<String, List<Order>>
+        assertFalse(json.contains('TestMinimalTypes$Key'))
+        assertEquals(5, json.count('TestMinimalTypes$Price'))      // only the ones in List<Object>
+        assertEquals(1, json.count('TestMinimalTypes$SalePrice'))
+        assertTrue(json.contains('"@type":"java.util.ArrayList"'))
+    }
+
+    @Test
+    void testOtherOptionsWin()
+    {
+        Book book = book()
+        String full = JsonWriter.objectToJson(book)
+        assertEquals(full, JsonWriter.objectToJson(book, [(JsonWriter.MINIMAL_TYPES):false]))
+        assertEquals(JsonWriter.objectToJson(book, [(JsonWriter.TYPE):true]), JsonWriter.objectToJson(book, [(JsonWriter.MINIMAL_TYPES):true, (JsonWriter.TYPE):true]))
+
+        // A custom writer's JSON is not known to the reader, so its @type is kept
+        Map args = [(JsonWriter.MINIMAL_TYPES):true, (JsonWriter.CUSTOM_WRITER_MAP):[(Order.class):new OrderWriter()]]
+        String json = JsonWriter.objectToJson(book, args)
+        assertTrue(json.contains('TestMinimalTypes$Order'))
+    }
+}
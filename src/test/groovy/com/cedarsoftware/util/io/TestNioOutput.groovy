@@ -0,0 +1,138 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.nio.ByteBuffer
+import java.nio.channels.WritableByteChannel
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestNioOutput
+{
+    /**
+     * Channel that accepts at most 1000 bytes per write() call, like a non-blocking socket under load.
+     */
+    static class TrickleChannel implements WritableByteChannel
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        boolean open = true
+        int writes = 0
+
+        int write(ByteBuffer src)
+        {
+            writes++
+            int count = Math.min(src.remaining(), 1000)
+            byte[] chunk = new byte[count]
+            src.get(chunk)
+            bytes.write(chunk)
+            return count
+        }
+
+        boolean isOpen() { return open }
+
+        void close() { open = false }
+    }
+
+    private static Object graph()
+    {
+        List<Object> list = []
+        for (int i = 0; i < 2000; i++)
+        {
+            list.add(['name':'item ' + i, 'text':'é中😀\u0001"\\', 'n':i * 1.5d] as LinkedHashMap)
+        }
+        list.add('lone \uD800 high and \uDC00 low, high at end \uD83D')
+        return list
+    }
+
+    private static byte[] viaStream(Object o, Map args)
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(stream, args)
+        writer.write(o)
+        writer.close()
+        return stream.toByteArray()
+    }
+
+    @Test
+    void testChannel()
+    {
+        Object o = graph()
+        TrickleChannel channel = new TrickleChannel()
+        JsonWriter writer = new JsonWriter(channel)
+        writer.write(o)
+        assertTrue(channel.bytes.size() > 0)       // write() flushes through to the channel
+        writer.close()
+        assertFalse(channel.open)
+        assertTrue(channel.writes > 100)
+        assertTrue(Arrays.equals(viaStream(o, null), channel.bytes.toByteArray()))
+
+        channel = new TrickleChannel()
+        writer = new JsonWriter(channel, [(JsonWriter.BINARY):true])
+        writer.write(o)
+        writer.close()
+        assertTrue(Arrays.equals(viaStream(o, [(JsonWriter.BINARY):true]), channel.bytes.toByteArray()))
+    }
+
+    @Test
+    void testByteBuffer()
+    {
+        Object o = graph()
+        byte[] expected = viaStream(o, null)
+
+        ByteBuffer small = ByteBuffer.allocate(64)
+        small.put('HDR'.getBytes(StandardCharsets.US_ASCII))
+        ByteBuffer result = JsonWriter.objectToJson(o, null, small)
+        assertFalse(result.is(small))
+        assertFalse(result.isDirect())
+        assertEquals(0, result.position())
+        assertEquals(expected.length + 3, result.remaining())
+        byte[] bytes = new byte[result.remaining()]
+        result.get(bytes)
+        assertEquals('HDR', new String(bytes, 0, 3, StandardCharsets.US_ASCII))
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(bytes, 3, bytes.length)))
+
+        ByteBuffer big = ByteBuffer.allocateDirect(expected.length + 10)
+        result = JsonWriter.objectToJson(o, null, big)
+        assertTrue(result.is(big))
+        assertEquals(expected.length, result.remaining())
+
+        result = JsonWriter.objectToJson('x', [(JsonWriter.TYPE):false], null)
+        assertTrue(result.isDirect())
+        assertEquals('"x"', StandardCharsets.UTF_8.decode(result).toString())
+
+        result = JsonWriter.objectToJson(o, [(JsonWriter.BINARY):true], null)
+        bytes = new byte[result.remaining()]
+        result.get(bytes)
+        assertTrue(Arrays.equals(viaStream(o, [(JsonWriter.BINARY):true]), bytes))
+    }
+
+    @Test
+    void testObjectToJsonText()
+    {
+        Object o = graph()
+        String json = JsonWriter.objectToJson(o)
+        // No UTF-8 round trip any more, so unpaired surrogates are kept instead of becoming '?' (pairs match as one code point)
+        assertEquals(new String(viaStream(o, null), StandardCharsets.UTF_8), json.replaceAll('[\uD800-\uDFFF]', '?'))
+        assertTrue(json.contains('lone \uD800 high'))
+    }
+}
@@ -0,0 +1,131 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestNumberEncoder
+{
+    private final NumberEncoder encoder = new NumberEncoder()
+    private final StringWriter writer = new StringWriter()
+
+    private String text(Closure write)
+    {
+        writer.buffer.length = 0
+        write(writer)
+        return writer.toString()
+    }
+
+    @Test
+    void testIntegersMatchToString()
+    {
+        List<Long> longs = [0L, 1L, -1L, 9L, 10L, 99L, 100L, -100L, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                            Integer.MAX_VALUE + 1L, Integer.MIN_VALUE - 1L, Long.MAX_VALUE, Long.MIN_VALUE, 1000000000000000000L]
+        Random random = new Random(7)
+        for (int i = 0; i < 20000; i++)
+        {
+            longs.add(random.nextLong() >> random.nextInt(64))
+        }
+        for (long value : longs)
+        {
+            assertEquals(Long.toString(value), text { Writer w -> encoder.writeLong(value, w) })
+            int intValue = (int) value
+            assertEquals(Integer.toString(intValue), text { Writer w -> encoder.writeInt(intValue, w) })
+        }
+    }
+
+    @Test
+    void testDoublesMatchToString()
+    {
+        Random random = new Random(11)
+        List<Double> doubles = [0.0d, -0.0d, 1.0d, 0.1d, 0.001d, 9.999999E-4d, 1.0E7d, 9999999.0d, Double.MIN_VALUE, Double.MAX_VALUE,
+                                Double.MIN_NORMAL, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Math.PI, 123456.789d]
+        for (int i = 0; i < 20000; i++)
+        {
+            doubles.add(Double.longBitsToDouble(random.nextLong()))
+            doubles.add(random.nextInt(2000000) / 100.0d)
+        }
+        for (double value : doubles)
+        {
+            assertEquals(Double.toString(value), text { Writer w -> encoder.writeDouble(value, w) })
+            float f = (float) value
+            assertEquals(Float.toString(f), text { Writer w -> encoder.writeFloat(f, w) })
+        }
+    }
+
+    @Test
+    void testShortestRendering()
+    {   // Java 19+ Double.toString() / Float.toString() results - older JDKs print some of these longer
+        assertEquals('2.0E23', text { Writer w -> encoder.writeShortest(2.0E23d, w) })
+        assertEquals('1.0E23', text { Writer w -> encoder.writeShortest(1.0E23d, w) })
+        assertEquals('9.9E-324', text { Writer w -> encoder.writeShortest(Double.longBitsToDouble(2L), w) })
+        assertEquals('4.9E-324', text { Writer w -> encoder.writeShortest(Double.MIN_VALUE, w) })
+        assertEquals('1.7976931348623157E308', text { Writer w -> encoder.writeShortest(Double.MAX_VALUE, w) })
+        assertEquals('-0.0', text { Writer w -> encoder.writeShortest(Math.copySign(0.0d, -1.0d), w) })
+        assertEquals('0.001', text { Writer w -> encoder.writeShortest(0.001d, w) })
+        assertEquals('1.0E-4', text { Writer w -> encoder.writeShortest(0.0001d, w) })
+        assertEquals('1234567.0', text { Writer w -> encoder.writeShortest(1234567.0d, w) })
+        assertEquals('1.2345678E7', text { Writer w -> encoder.writeShortest(12345678.0d, w) })
+        assertEquals('4.0371408E11', text { Writer w -> encoder.writeShortest(4.0371408E11f, w) })
+        assertEquals('1.4E-45', text { Writer w -> encoder.writeShortest(Float.MIN_VALUE, w) })
+        assertEquals('3.4028235E38', text { Writer w -> encoder.writeShortest(Float.MAX_VALUE, w) })
+        assertEquals('0.1', text { Writer w -> encoder.writeShortest(0.1f, w) })
+
+        Random random = new Random(13)
+        for (int i = 0; i < 20000; i++)
+        {
+            double d = Double.longBitsToDouble(random.nextLong())
+            String shortest = text { Writer w -> encoder.writeShortest(d, w) }
+            assertTrue(Double.isNaN(d) || Double.parseDouble(shortest) == d)
+            assertTrue(shortest.length() <= Double.toString(d).length())
+
+            float f = Float.intBitsToFloat(random.nextInt())
+            shortest = text { Writer w -> encoder.writeShortest(f, w) }
+            assertTrue(Float.isNaN(f) || Float.parseFloat(shortest) == f)
+            assertTrue(shortest.length() <= Float.toString(f).length())
+        }
+    }
+
+    @Test
+    void testJsonWriterNumbers()
+    {
+        long[] longs = [Long.MIN_VALUE, -5, 0, 42, Long.MAX_VALUE] as long[]
+        double[] doubles = [1.5d, Math.copySign(0.0d, -1.0d), 1.0E-5d, Double.NaN, 3.0E10d] as double[]
+        float[] floats = [0.1f, Float.POSITIVE_INFINITY, 2.5E-8f] as float[]
+        Object[] mixed = [7L, 8.25d, 9, (short) -3, (byte) 4, 1.5f, true] as Object[]
+
+        assertEquals('[-9223372036854775808,-5,0,42,9223372036854775807]', JsonWriter.objectToJson(longs, [(JsonWriter.TYPE):false] as Map))
+        assertEquals('["-9223372036854775808","-5","0","42","9223372036854775807"]', JsonWriter.objectToJson(longs, [(JsonWriter.TYPE):false, (JsonWriter.WRITE_LONGS_AS_STRINGS):true] as Map))
+        assertEquals('[1.5,-0.0,1.0E-5,null,3.0E10]', JsonWriter.objectToJson(doubles, [(JsonWriter.TYPE):false] as Map))
+        assertEquals('[0.1,null,2.5E-8]', JsonWriter.objectToJson(floats, [(JsonWriter.TYPE):false] as Map))
+        assertEquals('[7,8.25,9,-3,4,1.5,true]', JsonWriter.objectToJson(mixed, [(JsonWriter.TYPE):false] as Map))
+
+        JsonWriter.allowNanAndInfinity = true
+        try
+        {
+            assertEquals('[1.5,-0.0,1.0E-5,NaN,3.0E10]', JsonWriter.objectToJson(doubles, [(JsonWriter.TYPE):false] as Map))
+        }
+        finally
+        {
+            JsonWriter.allowNanAndInfinity = false
+        }
+    }
+}
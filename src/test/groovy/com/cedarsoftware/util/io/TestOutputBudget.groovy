@@ -0,0 +1,136 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestOutputBudget
+{
+    static class Node
+    {
+        String name
+        Node next
+        List<Node> children = []
+    }
+
+    /**
+     * Counts how many of its elements are visited.
+     */
+    static class CountingList extends AbstractList<Integer>
+    {
+        final int size
+        int reads = 0
+
+        CountingList(int size)
+        {
+            this.size = size
+        }
+
+        Integer get(int index)
+        {
+            reads++
+            return index
+        }
+
+        int size()
+        {
+            return size
+        }
+    }
+
+    @Test
+    void testMaxOutputChars()
+    {
+        CountingList list = new CountingList(1000000)
+        String json = JsonWriter.objectToJson(list, [(JsonWriter.MAX_OUTPUT_CHARS):100, (JsonWriter.TYPE):false])
+        assertEquals(100, json.length())
+        assertTrue(json.startsWith('[0,1,2,3,'))
+        assertTrue(list.reads < 100)
+
+        List<Integer> small = [1, 2, 3]
+        assertEquals(JsonWriter.objectToJson(small), JsonWriter.objectToJson(small, [(JsonWriter.MAX_OUTPUT_CHARS):1000]))
+        assertEquals(JsonWriter.objectToJson(small).substring(0, 10), JsonWriter.objectToJson(small, [(JsonWriter.MAX_OUTPUT_CHARS):10]))
+        assertEquals('', JsonWriter.objectToJson(small, [(JsonWriter.MAX_OUTPUT_CHARS):0]))
+    }
+
+    @Test
+    void testMaxOutputCharsCycle()
+    {   // No reference trace, so the cycle is written out until the budget ends it
+        Node node = new Node(name: 'loop')
+        node.next = node
+        String json = JsonWriter.objectToJson(node, [(JsonWriter.MAX_OUTPUT_CHARS):500])
+        assertEquals(500, json.length())
+        assertTrue(json.contains('"name":"loop","next":{'))
+        assertTrue(!json.contains('@ref'))
+    }
+
+    @Test
+    void testMaxElements()
+    {
+        Map args = [(JsonWriter.MAX_ELEMENTS):2, (JsonWriter.TYPE):false]
+        assertEquals('[1,2]', JsonWriter.objectToJson([1, 2, 3, 4], args))
+        assertEquals('[1,2]', JsonWriter.objectToJson([1, 2, 3, 4] as int[], args))
+        assertEquals('["a","b"]', JsonWriter.objectToJson(['a', 'b', 'c'] as String[], args))
+        assertEquals('{"a":1,"b":2}', JsonWriter.objectToJson(new LinkedHashMap([a:1, b:2, c:3]), args))
+        assertEquals('{"@keys":[1,2],"@items":["x","y"]}', JsonWriter.objectToJson(new LinkedHashMap([(1):'x', (2):'y', (3):'z']), args))
+        assertEquals('[]', JsonWriter.objectToJson([1, 2, 3], [(JsonWriter.MAX_ELEMENTS):0, (JsonWriter.TYPE):false]))
+
+        Node root = new Node(name: 'root')
+        (1..5).each { root.children.add(new Node(name: 'c' + it)) }
+        String json = JsonWriter.objectToJson(root, args)
+        assertTrue(json.contains('"c1"'))
+        assertTrue(json.contains('"c2"'))
+        assertTrue(!json.contains('"c3"'))
+    }
+
+    @Test
+    void testTruncateDepth()
+    {
+        Node root = new Node(name: 'a', next: new Node(name: 'b', next: new Node(name: 'c')))
+        root.children.add(new Node(name: 'd'))
+        Map args = [(JsonWriter.TRUNCATE_DEPTH):2, (JsonWriter.TYPE):false]
+        assertEquals('{"name":"a","next":{"name":"b","next":{},"children":[]},"children":[{}]}', JsonWriter.objectToJson(root, args))
+        assertEquals('[[1,[]],2]', JsonWriter.objectToJson([[1, [2]], 2], args))
+
+        // References are still traced without MAX_OUTPUT_CHARS
+        Node loop = new Node(name: 'loop')
+        loop.next = loop
+        assertEquals('{"@id":1,"name":"loop","next":{"@ref":1},"children":[]}', JsonWriter.objectToJson(loop, args))
+
+        // A reference past the depth still points back to the object already written
+        loop.children.add(loop)
+        loop.children.add(new Node(name: 'cut', next: loop))
+        assertEquals('{"@id":1,"name":"loop","next":{"@ref":1},"children":[{"@ref":1},{}]}', JsonWriter.objectToJson(loop, args))
+    }
+
+    @Test
+    void testLogMessage()
+    {
+        CountingList list = new CountingList(1000000)
+        String msg = MetaUtils.getLogMessage('sum', [list] as Object[])
+        assertTrue(msg.startsWith('sum([0,1,2,3,'))
+        assertTrue(msg.endsWith('...)'))
+        assertEquals('sum('.length() + 64 + '...)'.length(), msg.length())
+        assertTrue(list.reads < 64)
+
+        assertEquals('sum([1,2,3])', MetaUtils.getLogMessage('sum', [[1, 2, 3]] as Object[]))
+    }
+}
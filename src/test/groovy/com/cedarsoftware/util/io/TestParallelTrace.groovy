@@ -0,0 +1,137 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import java.util.concurrent.ForkJoinPool
+import java.util.regex.Matcher
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestParallelTrace
+{
+    static class Vertex
+    {
+        int n
+        Vertex parent
+        List<Vertex> edges = new ArrayList<>()
+        Object[] extra
+    }
+
+    /**
+     * Wide tree of vertices, every 10th vertex also linked to a 'hub', every 97th to its parent, and every
+     * 101st to its grandparent's first child.
+     */
+    private static Vertex graph(int count)
+    {
+        Vertex root = new Vertex(n:0)
+        Vertex hub = new Vertex(n:-1)
+        List<Vertex> all = [root]
+        Random random = new Random(42)
+        for (int i = 1; i < count; i++)
+        {
+            Vertex parent = all[random.nextInt(all.size())]
+            Vertex v = new Vertex(n:i)
+            parent.edges.add(v)
+            if (i % 10 == 0)
+            {
+                v.extra = [hub, 'x', i] as Object[]
+            }
+            if (i % 97 == 0)
+            {
+                v.parent = parent
+            }
+            if (i % 101 == 0 && parent.parent != null)
+            {
+                v.edges.add(parent.parent.edges[0])
+            }
+            all.add(v)
+        }
+        return root
+    }
+
+    private static List<Long> ids(String json)
+    {
+        List<Long> ids = []
+        Matcher m = json =~ /"@id":(\d+)/
+        while (m.find())
+        {
+            ids.add(Long.parseLong(m.group(1)))
+        }
+        return ids
+    }
+
+    @Test
+    void testDeterministicIds()
+    {
+        Vertex root = graph(50000)
+        String sequential = JsonWriter.objectToJson(root)
+        ForkJoinPool pool = new ForkJoinPool(4)
+        String json = JsonWriter.objectToJson(root, [(JsonWriter.PARALLEL_TRACE):pool])
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(json, JsonWriter.objectToJson(root, [(JsonWriter.PARALLEL_TRACE):pool]))
+            assertEquals(json, JsonWriter.objectToJson(root, [(JsonWriter.PARALLEL_TRACE):true]))
+        }
+
+        // Same objects get an @id, numbered in document order
+        List<Long> numbers = ids(json)
+        assertEquals(ids(sequential).size(), numbers.size())
+        assertTrue(numbers.size() > 100)
+        for (int i = 0; i < numbers.size(); i++)
+        {
+            assertEquals(i + 1L, numbers[i])
+        }
+        assertEquals(sequential.count('"@ref":'), json.count('"@ref":'))
+
+        Vertex read = (Vertex) JsonReader.jsonToJava(json)
+        assertTrue(DeepEquals.deepEquals(root, read))
+    }
+
+    @Test
+    void testWithParallelWrite()
+    {
+        Vertex root = graph(20000)
+        List<Object> list = new ArrayList<>()
+        for (int i = 0; i < 3000; i++)
+        {
+            list.add(['index':i, 'shared':i % 500 == 0 ? root.edges[0] : null, 'own':new Vertex(n:i)] as LinkedHashMap)
+        }
+        list.add(root)
+        Map args = [(JsonWriter.PARALLEL_TRACE):true]
+        String json = JsonWriter.objectToJson(list, args)
+        args.put(JsonWriter.PARALLEL, new ForkJoinPool(4))
+        assertEquals(json, JsonWriter.objectToJson(list, args))
+        assertTrue(DeepEquals.deepEquals(list, JsonReader.jsonToJava(json)))
+    }
+
+    @Test
+    void testSmallGraphs()
+    {
+        Map args = [(JsonWriter.PARALLEL_TRACE):true]
+        assertEquals('null', JsonWriter.objectToJson(null, args))
+        assertEquals('"abc"', JsonWriter.objectToJson('abc', args))
+
+        Vertex a = new Vertex(n:1)
+        a.parent = a
+        assertEquals(JsonWriter.objectToJson(a), JsonWriter.objectToJson(a, args))
+    }
+}
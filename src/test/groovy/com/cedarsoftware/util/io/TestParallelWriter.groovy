@@ -0,0 +1,231 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestParallelWriter
+{
+    static class Node
+    {
+        String name
+        long[] values
+        Object payload
+        Map<String, Object> attributes = new LinkedHashMap<>()
+        List<Node> children = new ArrayList<>()
+    }
+
+    static class Tagged
+    {
+        int n
+    }
+
+    /**
+     * Records the threads it ran on.  Custom writers used with PARALLEL must be thread-safe.
+     */
+    static class TaggedWriter implements JsonWriter.JsonClassWriter
+    {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet()
+
+        void write(Object o, boolean showType, Writer output)
+        {
+            threads.add(Thread.currentThread())
+            output.write('"n":' + ((Tagged) o).n)
+        }
+
+        boolean hasPrimitiveForm() { return false }
+
+        void writePrimitiveForm(Object o, Writer output) { }
+    }
+
+    /**
+     * Fails on the Tagged with n == failAt, counting how often it was asked to write it.
+     */
+    static class FailingWriter implements JsonWriter.JsonClassWriter
+    {
+        int failAt
+        AtomicInteger attempts = new AtomicInteger()
+
+        void write(Object o, boolean showType, Writer output)
+        {
+            int n = ((Tagged) o).n
+            if (n == failAt)
+            {
+                attempts.incrementAndGet()
+                throw new JsonIoException('Failed at ' + n)
+            }
+            output.write('"n":' + n)
+        }
+
+        boolean hasPrimitiveForm() { return false }
+
+        void writePrimitiveForm(Object o, Writer output) { }
+    }
+
+    private static Node node(int i, Object shared)
+    {
+        Node node = new Node()
+        node.name = 'node ' + i
+        node.values = [i, i * 2L, -i] as long[]
+        node.payload = i % 3 == 0 ? new Date(i * 1000L) : new BigDecimal(i).movePointLeft(2)
+        node.attributes.put('index', i)
+        node.attributes.put('tag', new Tagged(n:i))
+        Node child = new Node()
+        child.name = 'child of ' + i
+        child.payload = shared != null && i % 777 == 0 ? shared : 'plain'
+        node.children.add(child)
+        return node
+    }
+
+    private static List<Node> nodes(int count, Object shared)
+    {
+        List<Node> list = new ArrayList<>()
+        for (int i = 0; i < count; i++)
+        {
+            list.add(node(i, shared))
+        }
+        return list
+    }
+
+    private static void assertSameOutput(Object root, Map args)
+    {
+        String expected = JsonWriter.objectToJson(root, new HashMap(args))
+        Map parallel = new HashMap(args)
+        parallel.put(JsonWriter.PARALLEL, new ForkJoinPool(4))
+        assertEquals(expected, JsonWriter.objectToJson(root, parallel))
+        parallel.put(JsonWriter.PARALLEL, true)
+        assertEquals(expected, JsonWriter.objectToJson(root, parallel))
+    }
+
+    @Test
+    void testSameOutput()
+    {
+        List<Node> list = nodes(5000, null)
+        assertSameOutput(list, [:])
+        assertSameOutput(list, [(JsonWriter.PRETTY_PRINT):true])
+        assertSameOutput(list, [(JsonWriter.SHORT_META_KEYS):true, (JsonWriter.TYPE):true])
+        assertSameOutput(list, [(JsonWriter.TYPE):false])
+        assertSameOutput(list.toArray(), [:])
+        assertSameOutput(list.toArray(new Node[0]), [(JsonWriter.PRETTY_PRINT):true])
+
+        Map<String, Node> byName = new LinkedHashMap<>()
+        Map<Integer, Node> byIndex = new LinkedHashMap<>()
+        for (int i = 0; i < list.size(); i++)
+        {
+            byName.put(list[i].name, list[i])
+            byIndex.put(i, list[i])
+        }
+        assertSameOutput(byName, [:])
+        assertSameOutput(byIndex, [(JsonWriter.PRETTY_PRINT):true])
+    }
+
+    @Test
+    void testSharedObjects()
+    {
+        Node shared = new Node()
+        shared.name = 'shared'
+        List<Node> list = nodes(5000, shared)
+        list.add(list[10])          // an element that is also a later element
+        list[20].children.add(list[4000])   // forward reference across parts
+        assertSameOutput(list, [:])
+        assertSameOutput(list, [(JsonWriter.PRETTY_PRINT):true])
+
+        String json = JsonWriter.objectToJson(list, [(JsonWriter.PARALLEL):true])
+        assertTrue(json.contains('"@ref":'))
+        List<Node> read = (List<Node>) JsonReader.jsonToJava(json)
+        assertTrue(DeepEquals.deepEquals(list, read))
+        assertTrue(read[777].children[0].payload.is(read[1554].children[0].payload))
+        assertTrue(read[5000].is(read[10]))
+    }
+
+    @Test
+    void testRunsOnPool()
+    {
+        TaggedWriter tagged = new TaggedWriter()
+        Map args = [(JsonWriter.CUSTOM_WRITER_MAP):[(Tagged.class):tagged], (JsonWriter.PARALLEL):new ForkJoinPool(4)]
+        String json = JsonWriter.objectToJson(nodes(5000, null), args)
+        assertTrue(tagged.threads.any { Thread t -> t != Thread.currentThread() })
+        assertTrue(json.contains('Tagged","n":4999}'))
+    }
+
+    @Test
+    void testErrorInPart()
+    {
+        List<Object> list = new ArrayList<Object>(nodes(3000, null))
+        list.set(2500, new TestCustomWriter.Person(firstName:'x', lastName:'y'))
+        Map args = [(JsonWriter.CUSTOM_WRITER_MAP):[(TestCustomWriter.Person.class):new TestCustomWriter.BadCustomPWriter()], (JsonWriter.PARALLEL):true]
+        try
+        {
+            JsonWriter.objectToJson(list, args)
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null)
+            {
+                t = t.cause
+            }
+            assertEquals('Bad custom writer', t.message)
+        }
+    }
+
+    @Test
+    void testErrorNotRetried()
+    {
+        FailingWriter failing = new FailingWriter(failAt:2500)
+        Map args = [(JsonWriter.CUSTOM_WRITER_MAP):[(Tagged.class):failing], (JsonWriter.PARALLEL):new ForkJoinPool(4)]
+        try
+        {
+            JsonWriter.objectToJson(nodes(3000, null), args)
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null)
+            {
+                t = t.cause
+            }
+            assertEquals('Failed at 2500', t.message)
+        }
+        assertEquals(1, failing.attempts.get())
+    }
+
+    @Test
+    void testDateFormat()
+    {
+        List<Date> dates = new ArrayList<>()
+        for (int i = 0; i < 20000; i++)
+        {
+            dates.add(new Date(i * 86399999L))
+        }
+        assertSameOutput(dates, [(JsonWriter.DATE_FORMAT):'EEE, d MMM yyyy HH:mm:ss.SSS Z'])
+        assertSameOutput(dates.toArray(), [(JsonWriter.DATE_FORMAT):new java.text.SimpleDateFormat('yyyy/MM/dd HH:mm:ss.SSS', Locale.ENGLISH)])
+        assertSameOutput(dates, [(JsonWriter.DATE_FORMAT):JsonWriter.ISO_DATE_TIME_FORMAT])
+    }
+}
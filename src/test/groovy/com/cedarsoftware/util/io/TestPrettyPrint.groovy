@@ -3,8 +3,12 @@ package com.cedarsoftware.util.io
 import groovy.transform.CompileStatic
 import org.junit.Test
 
+import java.nio.charset.StandardCharsets
+
 import static org.junit.Assert.assertEquals
 import static org.junit.Assert.assertNotEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
 
 /**
  * @author John DeRegnaucourt (jdereg@gmail.com)
@@ -85,4 +89,121 @@ class TestPrettyPrint
         json2 = json2.replaceAll("[\\r]","");
         assertEquals(json2, json)
     }
+
+    private static String format(String json, boolean pretty)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        InputStream input = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))
+        if (pretty)
+        {
+            JsonWriter.formatJson(input, out)
+        }
+        else
+        {
+            JsonWriter.minifyJson(input, out)
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).replaceAll("[\\r]","")
+    }
+
+    @Test
+    void testStreamingFormat()
+    {
+        Nice nice = new Nice(name:'Louie', items:['One', 1L, 1, true], dictionary:['grade':'A', 'empty':[:], 'none':[]])
+        String pretty = JsonWriter.objectToJson(nice, [(JsonWriter.PRETTY_PRINT):true] as Map).replaceAll("[\\r]","")
+        String compact = JsonWriter.objectToJson(nice)
+        assertEquals(pretty, format(compact, true))
+        assertEquals(compact, format(pretty, false))
+        assertEquals(compact, JsonWriter.minifyJson(pretty))
+        assertEquals('[{},[],{"x":[]},null,true,false,-0.5e-3]', JsonWriter.minifyJson(' [ {\t}, [ ] ,{ "x" :[]},null, true,false , -0.5e-3 ] '))
+        assertEquals('"abc"', format(' "abc"\n', true))
+    }
+
+    @Test
+    void testStreamingFormatKeepsText()
+    {
+        // Numbers and Strings are copied, not parsed and written again
+        String json = '{"big":12345678901234567890123,"exact":1.10000000000000000001,"huge":1E400,"s":"\\u00e9\\n\\"q\\" \u00e9"}'
+        assertEquals(json, JsonWriter.minifyJson(json))
+        assertEquals(json, format(json, false))
+        assertEquals(json, JsonWriter.minifyJson(format(json, true)))
+        assertTrue(format(json, true).contains('"huge":1E400'))
+    }
+
+    @Test
+    void testStreamingFormatErrors()
+    {
+        for (String bad : ['', '   ', '{"a":1,}', '[1 2]', '{"a"}', '{a:1}', '"abc', '[1]x', '[1', '{"a":tru}', '-', '[01,]', '"\\x"', 'NaN'])
+        {
+            try
+            {
+                JsonWriter.minifyJson(bad)
+                fail('should not format: ' + bad)
+            }
+            catch (JsonIoException e)
+            {
+                assertTrue(e.message.contains('line: 1, col: '))
+            }
+        }
+    }
+
+    @Test
+    void testStreamingFormatLargeInput()
+    {
+        // Input generated on the fly, output only counted - nothing the size of the document is held
+        final int count = 500000
+        InputStream input = new InputStream() {
+            private final byte[] element = '{"id":12345,"name":"element","values":[1.5,2.5,null]}'.getBytes(StandardCharsets.UTF_8)
+            private int n = -1
+            private int pos = 0
+            int read()
+            {
+                if (n < 0)
+                {
+                    n = 0
+                    return (int) ('[' as char)
+                }
+                if (n == count)
+                {
+                    n++
+                    return (int) (']' as char)
+                }
+                if (n > count)
+                {
+                    return -1
+                }
+                if (pos == element.length)
+                {
+                    pos = 0
+                    n++
+                    return n == count ? read() : (int) (',' as char)
+                }
+                return element[pos++]
+            }
+        }
+        long[] size = [0L]
+        OutputStream out = new OutputStream() {
+            void write(int b)
+            {
+                size[0]++
+            }
+            void write(byte[] b, int off, int len)
+            {
+                size[0] += len
+            }
+        }
+        JsonWriter.formatJson(input, out)
+        assertTrue(size[0] > 53L * count)
+
+        // Deep nesting, no recursion
+        StringBuilder deep = new StringBuilder()
+        for (int i = 0; i < 100000; i++)
+        {
+            deep.append('[')
+        }
+        for (int i = 0; i < 100000; i++)
+        {
+            deep.append(']')
+        }
+        assertEquals(deep.toString(), JsonWriter.minifyJson(deep.toString()))
+    }
 }
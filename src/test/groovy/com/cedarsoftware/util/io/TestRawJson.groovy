@@ -0,0 +1,149 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestRawJson
+{
+    static class Envelope
+    {
+        String id
+        RawJson payload
+        String text
+        Object any
+    }
+
+    @Test
+    void testWrite()
+    {
+        RawJson raw = RawJson.of('{"price": 12.5, "tags":["a","b"]}')
+        Envelope envelope = new Envelope(id:'e1', payload:raw, any:RawJson.of('[1, 2]'))
+        assertEquals('{"@type":"' + Envelope.class.name + '","id":"e1","payload":{"price": 12.5, "tags":["a","b"]},"text":null,"any":[1, 2]}',
+                JsonWriter.objectToJson(envelope))
+
+        // Same instance twice - copied twice, no @id / @ref
+        Map map = ['x':raw, 'y':raw, 'z':RawJson.of('null')] as LinkedHashMap
+        assertEquals('{"x":{"price": 12.5, "tags":["a","b"]},"y":{"price": 12.5, "tags":["a","b"]},"z":null}',
+                JsonWriter.objectToJson(map, [(JsonWriter.TYPE):false]))
+        assertEquals('[true,"s",17]', JsonWriter.objectToJson([RawJson.of('true'), 's', RawJson.of('17')] as Object[]))
+        assertEquals('"root"', JsonWriter.objectToJson(RawJson.of('"root"')))
+        assertEquals('{"@type":"java.util.ArrayList","@items":[{"a":1},{"a":2}]}',
+                JsonWriter.objectToJson([RawJson.of('{"a":1}'), RawJson.of('{"a":2}')], [(JsonWriter.COLUMNAR):true]))
+
+        String pretty = JsonWriter.objectToJson(envelope, [(JsonWriter.PRETTY_PRINT):true])
+        assertTrue(pretty.contains('"payload":{"price": 12.5, "tags":["a","b"]},'))
+    }
+
+    @Test
+    void testBytes()
+    {
+        String text = '{"name":"Zoë 中文 😀"}'
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8)
+        assertEquals('[' + text + ']', JsonWriter.objectToJson([RawJson.of(utf8)] as Object[]))
+
+        ByteBuffer buffer = ByteBuffer.allocate(100)
+        buffer.put((byte) 'x').put(utf8).flip()
+        buffer.get()
+        assertEquals(text, RawJson.of(buffer).toString())
+        assertEquals(1, buffer.position())
+        assertEquals(RawJson.of(text), RawJson.of(utf8))
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(stream, [(JsonWriter.TYPE):false])
+        writer.write(['raw':RawJson.of(utf8)])
+        writer.close()
+        assertEquals('{"raw":' + text + '}', new String(stream.toByteArray(), StandardCharsets.UTF_8))
+    }
+
+    @Test
+    void testValidate()
+    {
+        RawJson.of('  {"a":[1,2,{"b":null}]} ').validate()
+        RawJson.of('"x"').validate()
+        RawJson.of('-1.5e3').validate()
+        for (String bad : ['{"a":1', '1 2', ']', '', '{"a" 1}', '[1,2]]'])
+        {
+            try
+            {
+                RawJson.of(bad).validate()
+                fail(bad)
+            }
+            catch (JsonIoException ignored)
+            { }
+        }
+    }
+
+    @Test
+    void testRead()
+    {
+        String json = '{"@type":"' + Envelope.class.name + '","id":"e1","payload":{"price": 12.5, "tags":["a", "b"]},"text":[ 1,2 ],"any":null}'
+        Map args = [(JsonReader.RAW_JSON_FIELDS):['payload', 'text']]
+        Envelope envelope = (Envelope) JsonReader.jsonToJava(json, args)
+        assertEquals('e1', envelope.id)
+        assertEquals('{"price": 12.5, "tags":["a", "b"]}', envelope.payload.toString())
+        assertEquals('[ 1,2 ]', envelope.text)
+
+        // Back out unchanged, never parsed
+        String written = JsonWriter.objectToJson(envelope)
+        assertTrue(written, written.contains('"payload":{"price": 12.5, "tags":["a", "b"]}'))
+
+        // Dotted paths from the root, in maps mode
+        json = '{"orders":[{"id":1,"detail":{"a":"x,}]\\"y"}},{"id":2,"detail":17}],"detail":"top"}'
+        Map maps = JsonReader.jsonToMaps(json, [(JsonReader.RAW_JSON_FIELDS):['orders.detail']])
+        Object[] orders = (Object[]) maps.get('orders')
+        assertEquals(RawJson.of('{"a":"x,}]\\"y"}'), ((Map) orders[0]).get('detail'))
+        assertEquals(RawJson.of('17'), ((Map) orders[1]).get('detail'))
+        assertEquals(2L, ((Map) orders[1]).get('id'))
+        assertEquals('top', maps.get('detail'))
+        RawJson.of('{"a":"x,}]\\"y"}').validate()
+
+        try
+        {
+            JsonReader.jsonToMaps('{"a":{"b":[1,2}', [(JsonReader.RAW_JSON_FIELDS):['a']])
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            assertTrue(e.message.contains('EOF'))
+        }
+    }
+
+    @Test
+    void testReadWithoutRawFields()
+    {
+        // RawJson fields written by JsonWriter, read back without RAW_JSON_FIELDS: parsed, then written as JSON again
+        Envelope envelope = new Envelope(id:'e2', payload:RawJson.of('{"price":12.5,"tags":["a","b"],"ok":true}'))
+        Envelope read = (Envelope) JsonReader.jsonToJava(JsonWriter.objectToJson(envelope))
+        assertEquals('{"price":12.5,"tags":["a","b"],"ok":true}', read.payload.toString())
+
+        for (String raw : ['[1,"x",{"c":null}]', '"text"', '17', '-2.5', 'false', '[]', '{}'])
+        {
+            envelope.payload = RawJson.of(raw)
+            read = (Envelope) JsonReader.jsonToJava(JsonWriter.objectToJson(envelope))
+            assertEquals(raw, read.payload.toString())
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestSpecialization
+{
+    static class Quote
+    {
+        boolean active
+        byte flags
+        short venue
+        int size
+        long timestamp
+        float spread
+        double price
+        char side
+        String symbol
+        Integer boxed
+        Object tag
+        transient int scratch
+    }
+
+    private static Quote makeQuote(int i)
+    {
+        Quote quote = new Quote()
+        quote.active = (i & 1) == 0
+        quote.flags = (byte) -i
+        quote.venue = (short) (i * 3)
+        quote.size = i * 100
+        quote.timestamp = 1600000000000L + i
+        quote.spread = 0.25f * i
+        quote.price = 101.5d + i
+        quote.side = i % 2 == 0 ? 'B' as char : '"' as char
+        quote.symbol = 'IBM' + i
+        quote.boxed = i == 3 ? null : i
+        quote.tag = i == 2 ? new Date(0) : 'tag'
+        quote.scratch = 99
+        return quote
+    }
+
+    @Test
+    void testSpecializedOutputMatchesReflective()
+    {
+        List<Quote> quotes = []
+        for (int i = 0; i < 10; i++)
+        {
+            quotes.add(makeQuote(i))
+        }
+
+        String reflective = TestUtil.getJsonString(quotes)
+        String specialized = TestUtil.getJsonString(quotes, [(JsonWriter.SPECIALIZE_AFTER):2] as Map)
+        assertEquals(reflective, specialized)
+
+        Map args = [(JsonWriter.SPECIALIZE_AFTER):0, (JsonWriter.PRETTY_PRINT):true, (JsonWriter.SKIP_NULL_FIELDS):true, (JsonWriter.WRITE_LONGS_AS_STRINGS):true] as Map
+        reflective = TestUtil.getJsonString(quotes, [(JsonWriter.PRETTY_PRINT):true, (JsonWriter.SKIP_NULL_FIELDS):true, (JsonWriter.WRITE_LONGS_AS_STRINGS):true] as Map)
+        specialized = TestUtil.getJsonString(quotes, args)
+        assertEquals(reflective, specialized)
+        assertTrue(specialized.contains('"timestamp":"1600000000003"'))
+        assertTrue(!specialized.contains('scratch'))
+    }
+
+    @Test
+    void testSpecializedRead()
+    {
+        List<Quote> quotes = []
+        for (int i = 0; i < 10; i++)
+        {
+            quotes.add(makeQuote(i))
+        }
+        String json = TestUtil.getJsonString(quotes)
+
+        List<Quote> copy = (List<Quote>) JsonReader.jsonToJava(json, [(JsonReader.SPECIALIZE_AFTER):3] as Map)
+        assertEquals(10, copy.size())
+        for (int i = 0; i < 10; i++)
+        {
+            Quote expected = quotes[i]
+            Quote actual = copy[i]
+            assertEquals(expected.active, actual.active)
+            assertEquals(expected.flags, actual.flags)
+            assertEquals(expected.venue, actual.venue)
+            assertEquals(expected.size, actual.size)
+            assertEquals(expected.timestamp, actual.timestamp)
+            assertEquals(expected.spread, actual.spread, 0.0f)
+            assertEquals(expected.price, actual.price, 0.0d)
+            assertEquals(expected.side, actual.side)
+            assertEquals(expected.symbol, actual.symbol)
+            assertEquals(expected.boxed, actual.boxed)
+            assertEquals(expected.tag, actual.tag)
+            assertEquals(0, actual.scratch)
+        }
+        assertNull(copy[3].boxed)
+    }
+
+    @Test
+    void testSpecializedReadConvertsStrings()
+    {
+        String json = '{"@type":"' + Quote.class.name + '","size":"42","timestamp":"7","price":3,"active":true,"side":"x"}'
+        Quote quote = (Quote) JsonReader.jsonToJava(json, [(JsonReader.SPECIALIZE_AFTER):'0'] as Map)
+        assertEquals(42, quote.size)
+        assertEquals(7L, quote.timestamp)
+        assertEquals(3.0d, quote.price, 0.0d)
+        assertTrue(quote.active)
+        assertEquals('x' as char, quote.side)
+    }
+}
@@ -0,0 +1,206 @@
+package com.cedarsoftware.util.io
+
+import com.cedarsoftware.util.DeepEquals
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestSymbolTable
+{
+    static class OrderLineItem
+    {
+        String productCode
+        int quantity
+        OrderLineItem replacedBy
+    }
+
+    static class ShippingInstruction
+    {
+        String carrierName
+        Map<String, Object> attributes = [:]
+    }
+
+    /**
+     * Reader options for JSON written with SYMBOL_TABLE / SHARED_STRINGS.
+     */
+    private static Map aliased()
+    {
+        return [(JsonReader.SYMBOL_TABLE):true] as Map
+    }
+
+    private static List<Object> order()
+    {
+        List<Object> items = []
+        for (int i = 0; i < 20; i++)
+        {
+            items.add(new OrderLineItem(productCode:'P' + i, quantity:i))
+            items.add(new ShippingInstruction(carrierName:'C' + i, attributes:['^caret':i, 'priority':i % 2 == 0, 'id':i]))
+        }
+        ((OrderLineItem) items[2]).replacedBy = (OrderLineItem) items[0]
+        return items
+    }
+
+    @Test
+    void testRoundTrip()
+    {
+        List<Object> items = order()
+        String plain = JsonWriter.objectToJson(items)
+        String json = JsonWriter.objectToJson(items, [(JsonWriter.SYMBOL_TABLE):true] as Map)
+
+        assertEquals(1, json.count(OrderLineItem.class.name))
+        assertEquals(1, json.count('"^:productCode":'))
+        assertEquals(1, json.count('"^:^caret":'))
+        assertTrue(json.length() < plain.length() / 2)
+        assertTrue(DeepEquals.deepEquals(items, JsonReader.jsonToJava(json, aliased())))
+        assertTrue(DeepEquals.deepEquals(JsonReader.jsonToJava(plain), JsonReader.jsonToJava(json, aliased())))
+
+        // ClassPlan path, SHORT_META_KEYS, PRETTY_PRINT and maps mode read the same
+        Map args = [(JsonWriter.SYMBOL_TABLE):true, (JsonWriter.SPECIALIZE_AFTER):0, (JsonWriter.SHORT_META_KEYS):true, (JsonWriter.PRETTY_PRINT):true]
+        String planned = JsonWriter.objectToJson(items, args)
+        assertTrue(DeepEquals.deepEquals(items, JsonReader.jsonToJava(planned, aliased())))
+        assertEquals(JsonWriter.objectToJson(JsonReader.jsonToMaps(plain)), JsonWriter.objectToJson(JsonReader.jsonToMaps(json, aliased())))
+    }
+
+    @Test
+    void testTypeNameMapAndBinary()
+    {
+        List<Object> items = order()
+        Map writeArgs = [(JsonWriter.SYMBOL_TABLE):true, (JsonWriter.TYPE_NAME_MAP):[(OrderLineItem.class.name):'line']]
+        String json = JsonWriter.objectToJson(items, writeArgs)
+        assertEquals(1, json.count('"@type":"^:line"'))
+        assertFalse(json.contains(OrderLineItem.class.name))
+        Map readArgs = [(JsonReader.TYPE_NAME_MAP):[(OrderLineItem.class.name):'line'], (JsonReader.SYMBOL_TABLE):true]
+        assertTrue(DeepEquals.deepEquals(items, JsonReader.jsonToJava(json, readArgs)))
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(bytes, [(JsonWriter.SYMBOL_TABLE):true, (JsonWriter.BINARY):true])
+        writer.write(items)
+        writer.write(items)
+        writer.close()
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(bytes.toByteArray()), [(JsonReader.BINARY):true, (JsonReader.SYMBOL_TABLE):true])
+        assertTrue(DeepEquals.deepEquals(items, reader.readObject()))
+        assertTrue(DeepEquals.deepEquals(items, reader.readObject()))
+        reader.close()
+    }
+
+    static class Account
+    {
+        String status
+        String currency
+        Object note
+        char[] code
+        String[] tags
+    }
+
+    @Test
+    void testSharedStrings()
+    {
+        List<Account> accounts = []
+        for (int i = 0; i < 50; i++)
+        {
+            accounts.add(new Account(status:i % 2 == 0 ? 'ACTIVE' : 'SUSPENDED', currency:'USD', note:i % 5 == 0 ? '^0' : ['^caret':'^:x'],
+                    code:'^1' as char[], tags:['premium', 'premium', 'a'] as String[]))
+        }
+        String plain = JsonWriter.objectToJson(accounts)
+        String json = JsonWriter.objectToJson(accounts, [(JsonWriter.SHARED_STRINGS):true] as Map)
+        assertEquals(1, json.count('"^:ACTIVE"'))
+        assertEquals(1, json.count('"^:premium"'))
+        assertEquals(50, json.count('"USD"'))
+        assertTrue(json.length() < plain.length() * 0.95)
+
+        List<Account> read = (List<Account>) JsonReader.jsonToJava(json, aliased())
+        assertTrue(DeepEquals.deepEquals(accounts, read))
+        assertTrue(read[0].status.is(read[2].status))
+        assertTrue(read[1].tags[0].is(read[3].tags[1]))
+
+        // Text starting with '^' always goes through the table once one is in use - values are not aliased here
+        for (Map args : [[(JsonWriter.SYMBOL_TABLE):true], [(JsonWriter.SYMBOL_TABLE):true, (JsonWriter.SHARED_STRINGS):true, (JsonWriter.BINARY):true]])
+        {
+            if (args.containsKey(JsonWriter.BINARY))
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+                JsonWriter writer = new JsonWriter(bytes, args)
+                writer.write(accounts)
+                writer.close()
+                assertTrue(DeepEquals.deepEquals(accounts, JsonReader.jsonToJava(new ByteArrayInputStream(bytes.toByteArray()), [(JsonReader.BINARY):true, (JsonReader.SYMBOL_TABLE):true])))
+            }
+            else
+            {
+                json = JsonWriter.objectToJson(accounts, args)
+                assertEquals(50, json.count('"SUSPENDED"') + json.count('"ACTIVE"'))
+                assertTrue(DeepEquals.deepEquals(accounts, JsonReader.jsonToJava(json, aliased())))
+            }
+        }
+    }
+
+    @Test
+    void testPlainJsonIsLiteral()
+    {
+        Map map = JsonReader.jsonToJava('{"^0":1,"^x":2,"@type":"java.util.LinkedHashMap"}', aliased()) as Map
+        assertEquals(1L, map['^0'])
+        assertEquals(2L, map['^x'])
+
+        // Without JsonReader.SYMBOL_TABLE, names are never aliases
+        map = JsonReader.jsonToMaps('{"^:key":1,"^0":2,"^3":3}')
+        assertEquals([1L, 2L, 3L], [map['^:key'], map['^0'], map['^3']])
+        Map<String, Object> keys = new LinkedHashMap<>()
+        keys['^:key'] = 1
+        keys['^0'] = 2
+        keys['^3'] = 3
+        assertTrue(DeepEquals.deepEquals(keys, JsonReader.jsonToJava(JsonWriter.objectToJson(keys))))
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        JsonWriter writer = new JsonWriter(bytes, [(JsonWriter.BINARY):true])
+        writer.write(keys)
+        writer.close()
+        assertTrue(DeepEquals.deepEquals(keys, JsonReader.jsonToJava(new ByteArrayInputStream(bytes.toByteArray()), [(JsonReader.BINARY):true])))
+
+        // ... and neither are String values
+        map = JsonReader.jsonToMaps('{"a":"^:caret","b":"^0"}')
+        assertEquals('^:caret', map['a'])
+        assertEquals('^0', map['b'])
+        List<String> values = ['^:abcd', '^0', '^', '^:', '^12']
+        assertEquals(values, JsonReader.jsonToJava(JsonWriter.objectToJson(values)))
+        Account account = new Account(status:'^:ACTIVE', currency:'^0', note:'^1', code:'^2' as char[], tags:['^:x', '^3'] as String[])
+        assertTrue(DeepEquals.deepEquals(account, JsonReader.jsonToJava(JsonWriter.objectToJson(account))))
+        bytes = new ByteArrayOutputStream()
+        writer = new JsonWriter(bytes, [(JsonWriter.BINARY):true])
+        writer.write(values)
+        writer.close()
+        assertEquals(values, JsonReader.jsonToJava(new ByteArrayInputStream(bytes.toByteArray()), [(JsonReader.BINARY):true]))
+
+        try
+        {
+            JsonReader.jsonToJava('{"^:name":1,"^1":2}', aliased())
+            fail()
+        }
+        catch (JsonIoException e)
+        {
+            Throwable t = e
+            while (t.cause != null && !t.message.contains('Unknown name reference'))
+            {
+                t = t.cause
+            }
+            assertTrue(t.message.contains('Unknown name reference in JSON: ^1'))
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.cedarsoftware.util.io
+
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ * @author John DeRegnaucourt (jdereg@gmail.com)
+ *         <br>
+ *         Copyright (c) Cedar Software LLC
+ *         <br><br>
+ *         Licensed under the Apache License, Version 2.0 (the "License")
+ *         you may not use this file except in compliance with the License.
+ *         You may obtain a copy of the License at
+ *         <br><br>
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <br><br>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *         See the License for the specific language governing permissions and
+ *         limitations under the License.
+ */
+class TestValidate
+{
+    private static boolean reads(String json, int maxDepth = 1000)
+    {
+        try
+        {
+            JsonReader.jsonToMaps(json, [:], maxDepth)
+            return true
+        }
+        catch (JsonIoException ignored)
+        {
+            return false
+        }
+    }
+
+    private static boolean validates(String json, int maxDepth = 1000)
+    {
+        try
+        {
+            JsonReader.validate(json, null, maxDepth)
+            return true
+        }
+        catch (JsonIoException ignored)
+        {
+            return false
+        }
+    }
+
+    private static String error(String json, Map args = null, int maxDepth = 1000)
+    {
+        try
+        {
+            JsonReader.validate(json, args, maxDepth)
+        }
+        catch (JsonIoException e)
+        {
+            return e.message
+        }
+        fail('should not validate: ' + json)
+        return null
+    }
+
+    @Test
+    void testValid()
+    {
+        TestMinimalTypes.Order order = new TestMinimalTypes.Order(id:'a\tb "c" é', price:new TestMinimalTypes.Price(currency:'USD', cents:-5))
+        List list = [order, order, 1.5d, Long.MIN_VALUE, Long.MAX_VALUE, null, true, [:], [], 'x' as char]
+        for (Map args : [[:], [(JsonWriter.PRETTY_PRINT):true], [(JsonWriter.SHORT_META_KEYS):true]])
+        {
+            String json = JsonWriter.objectToJson(list, args)
+            JsonReader.validate(json, [(JsonReader.VALIDATE_REFERENCES):true])
+            JsonReader.validate(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null)
+        }
+        for (String json : ['0', '-0', '"\\u00e9\\n"', ' [ ] ', '{}', '1.5e10', '2E-3', '1.', '{"a":[{"b":{}}]}', '-9223372036854775808', 'null'])
+        {
+            JsonReader.validate(json, null)
+            JsonReader.jsonToMaps('{"v":' + json + '}')     // the reader agrees
+        }
+    }
+
+    @Test
+    void testInvalid()
+    {
+        for (String json : ['', ' ', '{"a":1,}', '[1 2]', '[1,,]', '{"a"}', '{a:1}', '"abc', '[1]x', '[1', '{"a":1',
+                            'tru', '-', '1e', '1.5e+', '9223372036854775808', '"\\x"', '"\\u12g4"', 'NaN', '[Infinity]', '{"a":1}}'])
+        {
+            assertTrue(json, error(json).contains('\nline: '))
+        }
+        String message = error('{\n  "a":1,\n  "b":}')
+        assertTrue(message.contains('line: 3, col: 7'))
+        assertTrue(message.contains('"b":}'))
+    }
+
+    @Test
+    void testLimits()
+    {
+        assertTrue(error('[[[[[[1]]]]]]', null, 5).contains('Maximum parsing depth exceeded'))
+        JsonReader.validate('[[[[[1]]]]]', null, 5)
+
+        Map args = [(JsonReader.MAX_INPUT_SIZE):10]
+        JsonReader.validate('[1,2,3,45]', args)
+        assertTrue(error('[1,2,3,456]', args).contains('maximum of 10 characters'))
+        assertTrue(error('  [1,2,3,4]', args).contains('maximum of 10 characters'))
+
+        JsonReader.setAllowNanAndInfinity(true)
+        try
+        {
+            JsonReader.validate('[NaN,-Infinity,Infinity,1]', null)
+        }
+        finally
+        {
+            JsonReader.setAllowNanAndInfinity(false)
+        }
+        error('[NaN]')
+    }
+
+    @Test
+    void testReferences()
+    {
+        Map args = [(JsonReader.VALIDATE_REFERENCES):true]
+        JsonReader.validate('[{"@ref":1},{"@id":1,"a":2}]', args)
+        JsonReader.validate('[{"@r":1},{"@i":1}]', args)
+        JsonReader.validate('[{"@ref":5}]', null)
+        String message = error('[{"@id":1},\n{"@ref":5}]', args)
+        assertTrue(message.startsWith('Dangling @ref 5'))
+        assertTrue(message.contains('line: 2'))
+        error('{"@r":3,"x":{"@id":4}}', args)
+    }
+
+    @Test
+    void testLargeStream()
+    {
+        final byte[] element = '{"id":123456,"name":"element","values":[1.5,2.5,null,true]},'.getBytes(StandardCharsets.UTF_8)
+        final int count = 200000
+        InputStream input = new InputStream() {
+            private long pos = -1
+            int read()
+            {
+                long end = (long) element.length * count
+                if (pos < 0)
+                {
+                    pos = 0
+                    return (int) ('[' as char)
+                }
+                if (pos < end)
+                {
+                    return element[(int) (pos++ % element.length)]
+                }
+                if (pos++ == end)
+                {
+                    return (int) ('0' as char)
+                }
+                return pos == end + 2 ? (int) (']' as char) : -1
+            }
+        }
+        JsonReader.validate(input, null)
+    }
+
+    @Test
+    void testSameAsReader()
+    {   // validate() accepts exactly what jsonToMaps() accepts, apart from content after the value
+        for (String json : ['[1,]', '[[1,],]', '[1\n,\n]', 'TRUE', '[False,nUll,tRUE]', '"\\\'"', '01', '1.', '-.5', '1.e3',
+                            '{"@id":"5"}', '{"@id":1.5}', '{"@id":null}', '{"@i":true}', '{"@type":1}', '{"@t":[]}', '{"@type":null}',
+                            '{"@items":1}', '{"@e":null}', '{"@ref":"x"}', '{"@ref":1.5}', '{"@\\u0074ype":2}', '"\\u00E9"',
+                            '"\\u0660\\u0661\\u0662\\u0663"', '1-2', '1e+-5', '1e5.5', '--1', 'Null', '{"a":]}'])
+        {
+            assertEquals(json, reads(json), validates(json))
+        }
+        for (String json : ['1 2', '[1]x', '{"a":1}}', '{} {}', '[1],', ']'])
+        {
+            assertTrue(json, reads(json))
+            assertTrue(error(json).startsWith(json == ']' ? 'Unknown JSON value type' : 'Unexpected content after the end'))
+        }
+        for (String json : ['[]', '[[]]', '[[1]]', '{"a":{}}', '{"a":{"b":1}}', '[{}]', '[{"a":1}]', '{"a":[]}', '[1,[]]'])
+        {
+            for (int maxDepth = 0; maxDepth < 3; maxDepth++)
+            {
+                assertEquals(json + ' ' + maxDepth, reads(json, maxDepth), validates(json, maxDepth))
+            }
+        }
+
+        String[] atoms = ['{', '}', '[', ']', ',', ':', ' ', '"a"', '"@id"', '"@ref"', '"@type"', '"@e"', '"x"', '"\\\'"', '"\\q"',
+                          '1', '-', '0', '.', 'e', '+', '1.5', 'true', 'TRUE', 'nUll', 'False', 'NaN', 'Infinity', 'x']
+        Random random = new Random(42)
+        for (int i = 0; i < 100000; i++)
+        {
+            StringBuilder json = new StringBuilder()
+            for (int n = 1 + random.nextInt(8); n > 0; n--)
+            {
+                json.append(atoms[random.nextInt(atoms.length)])
+            }
+            String text = json.toString()
+            if (validates(text, 3) != reads(text, 3))
+            {
+                assertTrue(text, error(text, null, 3).startsWith('Unexpected content after the end') || text.trim().startsWith(']'))
+            }
+        }
+    }
+
+    @Test
+    void testReferencesAreIntegers()
+    {
+        Map args = [(JsonReader.VALIDATE_REFERENCES):true]
+        for (String json : ['{"@ref":"x"}', '{"@ref":1.5}', '{"@r":null}', '{"@ref":[1]}', '[{"@id":1},{"@ref":"1"}]'])
+        {
+            JsonReader.validate(json, null)
+            assertTrue(json, error(json, args).startsWith('@ref must be an integer'))
+        }
+    }
+}